@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+
+/**
+ * Single invocation of the code being measured. Results should be passed to
+ * Blackhole.consume() so the JIT cannot remove the work.
+ */
+@FunctionalInterface
+public interface BenchmarkOperation {
+
+	void run() throws Exception;
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+
+/**
+ * Measurements of a single benchmark.
+ */
+public class BenchmarkResult {
+
+	private final String name;
+	private final long operations;
+	private final long elapsedNanos;
+	private final long p50Nanos;
+	private final long p99Nanos;
+	private final long maxNanos;
+	private final long allocatedBytes;
+	private final long gcCount;
+	private final long gcMillis;
+
+
+	public BenchmarkResult(String name, long operations, long elapsedNanos,
+	                       long p50Nanos, long p99Nanos, long maxNanos,
+	                       long allocatedBytes, long gcCount, long gcMillis) {
+		this.name = name;
+		this.operations = operations;
+		this.elapsedNanos = elapsedNanos;
+		this.p50Nanos = p50Nanos;
+		this.p99Nanos = p99Nanos;
+		this.maxNanos = maxNanos;
+		this.allocatedBytes = allocatedBytes;
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+	}
+
+
+	public String getName() {
+		return name;
+	}
+
+	public long getOperations() {
+		return operations;
+	}
+
+	/**
+	 * @return Operations per second.
+	 */
+	public double getThroughput() {
+		return operations * 1e9 / elapsedNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * @return Bytes allocated on the heap by a single operation, on average.
+	 */
+	public double getAllocatedBytesPerOperation() {
+		return operations == 0 ? 0 : (double)allocatedBytes / operations;
+	}
+
+	/**
+	 * @return Bytes allocated on the heap per second of measurement.
+	 */
+	public double getAllocationRate() {
+		return allocatedBytes * 1e9 / elapsedNanos;
+	}
+
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public long getGcMillis() {
+		return gcMillis;
+	}
+
+
+	public static String header() {
+		return String.format("%-48s %14s %10s %10s %10s %12s %12s %6s %8s",
+				"Benchmark", "ops/s", "p50 us", "p99 us", "max us",
+				"B/op", "MB/s alloc", "gc", "gc ms");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-48s %14.1f %10.2f %10.2f %10.2f %12.1f %12.2f %6d %8d",
+				name, getThroughput(), p50Nanos / 1e3, p99Nanos / 1e3, maxNanos / 1e3,
+				getAllocatedBytesPerOperation(), getAllocationRate() / (1024 * 1024),
+				gcCount, gcMillis);
+	}
+}
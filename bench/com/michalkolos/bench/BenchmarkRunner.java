@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Minimal benchmark harness. Every operation is run repeatedly for a warm-up
+ * period, so the JIT compiles it, and then for a measurement period during
+ * which throughput, latency of individual invocations, heap allocation of the
+ * measuring thread and garbage collections are recorded.
+ * <p>
+ * Allocation is taken from com.sun.management.ThreadMXBean, the same source
+ * JMH's gc profiler uses.
+ */
+public class BenchmarkRunner {
+
+	public static final long DEFAULT_WARMUP_MILLIS = 2_000;
+	public static final long DEFAULT_MEASUREMENT_MILLIS = 5_000;
+
+	/**
+	 * Latencies of at most that many invocations are kept for percentiles.
+	 * Later ones overwrite the oldest.
+	 */
+	private static final int LATENCY_CAPACITY = 1 << 20;
+
+	private final long warmupNanos;
+	private final long measurementNanos;
+	private final com.sun.management.ThreadMXBean threadBean =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private final long[] latencies = new long[LATENCY_CAPACITY];
+
+
+	public BenchmarkRunner() {
+		this(DEFAULT_WARMUP_MILLIS, DEFAULT_MEASUREMENT_MILLIS);
+	}
+
+	/**
+	 * @param warmupMillis Duration of the warm-up period of every benchmark.
+	 * @param measurementMillis Duration of the measurement period of every
+	 *                          benchmark.
+	 */
+	public BenchmarkRunner(long warmupMillis, long measurementMillis) {
+		this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(warmupMillis);
+		this.measurementNanos = TimeUnit.MILLISECONDS.toNanos(measurementMillis);
+	}
+
+
+	/**
+	 * Warms up and measures an operation.
+	 * @param name Name of the benchmark.
+	 * @param operation Measured code.
+	 * @return Measurements.
+	 * @throws Exception Thrown by the operation.
+	 */
+	public BenchmarkResult run(String name, BenchmarkOperation operation) throws Exception {
+		long warmupEnd = System.nanoTime() + warmupNanos;
+		while(System.nanoTime() - warmupEnd < 0) {
+			operation.run();
+		}
+
+		long gcCountBefore = gcCount();
+		long gcMillisBefore = gcMillis();
+		long allocatedBefore = threadBean.getCurrentThreadAllocatedBytes();
+
+		long operations = 0;
+		long start = System.nanoTime();
+		long end = start + measurementNanos;
+		long now = start;
+
+		while(now - end < 0) {
+			long before = now;
+			operation.run();
+			now = System.nanoTime();
+			latencies[(int)(operations % LATENCY_CAPACITY)] = now - before;
+			operations++;
+		}
+
+		long elapsed = now - start;
+		long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+		long gcCount = gcCount() - gcCountBefore;
+		long gcMillis = gcMillis() - gcMillisBefore;
+
+		int kept = (int)Math.min(operations, LATENCY_CAPACITY);
+		Arrays.sort(latencies, 0, kept);
+
+		return new BenchmarkResult(name, operations, elapsed,
+				percentile(kept, 0.50), percentile(kept, 0.99),
+				kept == 0 ? 0 : latencies[kept - 1],
+				allocated, gcCount, gcMillis);
+	}
+
+
+	private long percentile(int kept, double fraction) {
+		if(kept == 0) {
+			return 0;
+		}
+
+		return latencies[(int)Math.min(kept - 1, Math.round(fraction * (kept - 1)))];
+	}
+
+	private static long gcCount() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionCount)
+				.filter(count -> count > 0)
+				.sum();
+	}
+
+	private static long gcMillis() {
+		return ManagementFactory.getGarbageCollectorMXBeans().stream()
+				.mapToLong(GarbageCollectorMXBean::getCollectionTime)
+				.filter(time -> time > 0)
+				.sum();
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+
+/**
+ * Sink for results of measured operations. Folding every result into a
+ * volatile field keeps the JIT from treating the operation as dead code.
+ */
+public final class Blackhole {
+
+	private static volatile long sink;
+
+
+	private Blackhole() {
+	}
+
+
+	public static void consume(long value) {
+		sink += value;
+	}
+
+	public static void consume(float value) {
+		sink += Float.floatToRawIntBits(value);
+	}
+
+	public static void consume(Object value) {
+		sink += System.identityHashCode(value);
+	}
+
+	public static void consume(String value) {
+		sink += value == null ? 0 : value.length();
+	}
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+import com.michalkolos.cgroup.CgroupTable;
+import com.michalkolos.console.Dashboard;
+import com.michalkolos.cpu.CpuFrequency;
+import com.michalkolos.cpu.ProcStat;
+import com.michalkolos.cpu.data.CpuTimesTable;
+import com.michalkolos.cpu.data.CpuUsageKernel;
+import com.michalkolos.disk.DiskStats;
+import com.michalkolos.export.CollectorMetrics;
+import com.michalkolos.export.MetricsRenderer;
+import com.michalkolos.hwmon.Hwmon;
+import com.michalkolos.hwmon.HwmonSampler;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.memory.ProcMeminfo;
+import com.michalkolos.net.NetDev;
+import com.michalkolos.pressure.ProcPressure;
+import com.michalkolos.process.ProcessTable;
+import com.michalkolos.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * Benchmarks of the collectors' hot paths, run against the live "/proc" and
+ * "/sys", against checked-in fixtures of realistic sizes and against a
+ * SyntheticSystem of a machine much larger than the one running them.
+ * <p>
+ * Usage: java -cp out:out-bench com.michalkolos.bench.CollectorBenchmarks [filter]
+ * <br>
+ * Only benchmarks whose names contain the filter are run. System properties:
+ * bench.fixtures (fixtures directory, default "bench/fixtures"),
+ * bench.warmup and bench.measurement (durations in milliseconds),
+ * bench.synthetic.cpus, bench.synthetic.sensors, bench.synthetic.processes and
+ * bench.synthetic.cgroups (size of the synthetic system, generated in a
+ * temporary directory).
+ */
+public class CollectorBenchmarks {
+
+	public static final int[] FIXTURE_CORE_COUNTS = {8, 64, 256};
+	public static final int[] USAGE_KERNEL_CORE_COUNTS = {64, 256};
+
+	private final File fixtures;
+	private final int syntheticCpus;
+	private final int syntheticSensors;
+	private final int syntheticProcesses;
+	private final int syntheticCgroups;
+	private final Map<String, BenchmarkOperation> benchmarks = new LinkedHashMap<>();
+
+
+	/**
+	 * @param fixtures Directory of the checked-in fixtures.
+	 * @param syntheticCpus Number of CPUs of the synthetic system.
+	 * @param syntheticSensors Number of Hwmon channels of the synthetic system.
+	 * @param syntheticProcesses Number of processes of the synthetic system.
+	 * @param syntheticCgroups Number of containers of the synthetic system.
+	 */
+	public CollectorBenchmarks(File fixtures, int syntheticCpus, int syntheticSensors,
+	                           int syntheticProcesses, int syntheticCgroups) {
+		this.fixtures = fixtures;
+		this.syntheticCpus = syntheticCpus;
+		this.syntheticSensors = syntheticSensors;
+		this.syntheticProcesses = syntheticProcesses;
+		this.syntheticCgroups = syntheticCgroups;
+	}
+
+
+	/**
+	 * Creates all benchmarks whose inputs are available. Missing inputs, e.g.
+	 * no cpufreq in a virtual machine, are reported and skipped.
+	 */
+	public void setUp() {
+		addProcStat("live", ProcStat.SYS_FILE_PATH);
+		addReadLines("live", ProcStat.SYS_FILE_PATH);
+		for(int cores : FIXTURE_CORE_COUNTS) {
+			String path = statFixture(cores).getPath();
+			addProcStat("fixture-" + cores, path);
+			addProcStat("fixture-" + cores, path, true);
+			addReadLines("fixture-" + cores, path);
+		}
+		for(int cores : USAGE_KERNEL_CORE_COUNTS) {
+			addUsageKernel(cores);
+		}
+		for(int cores : FIXTURE_CORE_COUNTS) {
+			addMetricsRenderer(cores);
+			addDashboard(cores);
+		}
+
+		addProcMeminfo("live", ProcMeminfo.SYS_FILE_PATH);
+		addProcMeminfo("fixture", new File(fixtures, "proc/meminfo").getPath());
+
+		addDiskStats("live", DiskStats.SYS_FILE_PATH);
+		addDiskStats("fixture", new File(fixtures, "proc/diskstats").getPath());
+		addNetDev("live", NetDev.SYS_FILE_PATH);
+		addNetDev("fixture", new File(fixtures, "proc/net-dev").getPath());
+		addProcPressure("live", ProcPressure.SYS_PATH);
+		addProcPressure("fixture", new File(fixtures, "proc/pressure").getPath());
+
+		addExtractString("live", new File(CpuFrequency.SYS_PATH + "/cpu0" + CpuFrequency.FREQ_FILE_PATH_PART));
+		addExtractString("fixture", new File(fixtures, "sys/scaling_cur_freq"));
+
+		try {
+			CpuFrequency cpuFrequency = new CpuFrequency();
+			if(cpuFrequency.getLogicalCoreNo() > 0) {
+				benchmarks.put("CpuFrequency.toString:live",
+						() -> Blackhole.consume(cpuFrequency.toString()));
+			}
+		} catch (IOException e) {
+			skipped("CpuFrequency.toString:live", e);
+		}
+
+		try {
+			Hwmon hwmon = new Hwmon();
+			hwmon.getSubsystemNames().stream().findFirst().ifPresent(name ->
+					benchmarks.put("Hwmon.subsystemToString:live",
+							() -> Blackhole.consume(hwmon.subsystemToString(name))));
+		} catch (IOException e) {
+			skipped("Hwmon.subsystemToString:live", e);
+		}
+
+		try {
+			ProcessTable processTable = new ProcessTable();
+			processTable.dataAcquisition();
+			benchmarks.put("ProcessTable.dataAcquisition:live", () -> {
+				processTable.dataAcquisition();
+				Blackhole.consume(processTable.getSnapshot());
+			});
+		} catch (IOException e) {
+			skipped("ProcessTable.dataAcquisition:live", e);
+		}
+
+		try {
+			CgroupTable cgroupTable = new CgroupTable();
+			cgroupTable.dataAcquisition();
+			benchmarks.put("CgroupTable.dataAcquisition:live", () -> {
+				cgroupTable.dataAcquisition();
+				Blackhole.consume(cgroupTable.getSnapshot());
+			});
+		} catch (IOException e) {
+			skipped("CgroupTable.dataAcquisition:live", e);
+		}
+
+		try {
+			addSynthetic();
+		} catch (IOException e) {
+			skipped("synthetic", e);
+		}
+	}
+
+
+	private void addSynthetic() throws IOException {
+		int devices = Math.max(1, syntheticSensors / SyntheticSystem.DEFAULT_SENSORS_PER_DEVICE);
+		SyntheticSystem system = new SyntheticSystem(
+				Files.createTempDirectory("synthetic-system").toFile(),
+				syntheticCpus, devices, Math.max(1, syntheticSensors / devices),
+				syntheticProcesses, syntheticCgroups, 1L);
+		system.generate();
+
+		String cpus = "synthetic-" + system.getCpuCount();
+		String sensors = "synthetic-" + system.getSensorCount();
+
+		ProcStat procStat = new ProcStat(system.getRoot());
+		system.advance();
+		benchmarks.put("ProcStat.dataAcquisition:" + cpus, () -> {
+			procStat.dataAcquisition();
+			Blackhole.consume(procStat.getSnapshot());
+		});
+
+		//  Shared reader's capacity is smaller than the number of files.
+		SmallFileReader reader = new SmallFileReader(system.getCpuCount() + system.getSensorCount());
+		CpuFrequency cpuFrequency = new CpuFrequency(system.getRoot(), reader);
+		int[] frequencies = new int[cpuFrequency.getLogicalCoreNo()];
+		benchmarks.put("CpuFrequency.sampleAll:" + cpus,
+				() -> Blackhole.consume(cpuFrequency.sampleAll(frequencies)));
+		benchmarks.put("CpuFrequency.toString:" + cpus,
+				() -> Blackhole.consume(cpuFrequency.toString()));
+
+		Hwmon hwmon = new Hwmon(system.getRoot());
+		HwmonSampler sampler = new HwmonSampler(hwmon.getChannels(), reader);
+		long[] values = new long[sampler.size()];
+		benchmarks.put("HwmonSampler.sample:" + sensors,
+				() -> Blackhole.consume(sampler.sample(values)));
+		hwmon.getSubsystemNames().stream().findFirst().ifPresent(name ->
+				benchmarks.put("Hwmon.subsystemToString:synthetic",
+						() -> Blackhole.consume(hwmon.subsystemToString(name))));
+
+		if(system.getProcessCount() > 0) {
+			ProcessTable processTable = new ProcessTable(system.getRoot(),
+					Runtime.getRuntime().availableProcessors(), ProcessTable.DEFAULT_PAGE_SIZE);
+			processTable.dataAcquisition();
+			benchmarks.put("ProcessTable.dataAcquisition:synthetic-" + system.getProcessCount(), () -> {
+				processTable.dataAcquisition();
+				Blackhole.consume(processTable.getSnapshot());
+			});
+		}
+
+		if(system.getCgroupCount() > 0) {
+			CgroupTable cgroupTable = new CgroupTable(system.getRoot(),
+					Runtime.getRuntime().availableProcessors(), CgroupTable.DEFAULT_HANDLE_CAPACITY);
+			cgroupTable.dataAcquisition();
+			benchmarks.put("CgroupTable.dataAcquisition:synthetic-" + system.getCgroupCount(), () -> {
+				cgroupTable.dataAcquisition();
+				Blackhole.consume(cgroupTable.getSnapshot());
+			});
+			benchmarks.put("CgroupTable.refresh:synthetic-" + system.getCgroupCount(),
+					() -> Blackhole.consume(cgroupTable.refresh()));
+		}
+	}
+
+
+	private void addProcStat(String variant, String path) {
+		addProcStat(variant, path, false);
+	}
+
+	private void addProcStat(String variant, String path, boolean interruptCounters) {
+		String name = "ProcStat.dataAcquisition:" + variant + (interruptCounters ? "-interrupts" : "");
+		try {
+			ProcStat procStat = new ProcStat(path, interruptCounters);
+			benchmarks.put(name, () -> {
+				procStat.dataAcquisition();
+				Blackhole.consume(procStat.getSnapshot());
+			});
+		} catch (IOException e) {
+			skipped(name, e);
+		}
+	}
+
+	/**
+	 * Usage calculation alone, row by row as before and for all rows at once,
+	 * on counters moving forward like on a busy machine.
+	 */
+	private void addUsageKernel(int cores) {
+		CpuTimesTable times = new CpuTimesTable(cores);
+		Random random = new Random(cores);
+		for(int field = 0; field < CpuTimesTable.FIELD_COUNT; field++) {
+			for(int row = 0; row < times.getRowCount(); row++) {
+				times.previous(field)[row] = random.nextInt(1_000_000_000);
+				times.current(field)[row] = times.previous(field)[row] + random.nextInt(100);
+			}
+		}
+
+		CpuUsageKernel kernel = new CpuUsageKernel(times);
+		benchmarks.put("CpuUsageKernel.calculateRow:" + cores, () -> {
+			for(int row = 0; row < times.getRowCount(); row++) {
+				kernel.calculateRow(row);
+			}
+			Blackhole.consume(times.usage(CpuTimesTable.TOTAL_USAGE));
+		});
+		benchmarks.put("CpuUsageKernel.calculateAll:" + cores, () -> {
+			kernel.calculateAll();
+			Blackhole.consume(times.usage(CpuTimesTable.TOTAL_USAGE));
+		});
+	}
+
+	/**
+	 * Compares rendering of the OpenMetrics body with the text report it
+	 * replaces for scrapers, both from the same fixture readings.
+	 */
+	private void addMetricsRenderer(int cores) {
+		try {
+			ProcStat procStat = new ProcStat(statFixture(cores).getPath(), true);
+			ProcMeminfo procMeminfo = new ProcMeminfo(new File(fixtures, "proc/meminfo").getPath(),
+					ProcMeminfo.DEFAULT_FIELDS);
+			ProcPressure procPressure = new ProcPressure(new File(fixtures, "proc/pressure").getPath());
+			DiskStats diskStats = new DiskStats(new File(fixtures, "proc/diskstats").getPath());
+			NetDev netDev = new NetDev(new File(fixtures, "proc/net-dev").getPath());
+			for(int i = 0; i < 2; i++) {
+				procStat.dataAcquisition();
+				procMeminfo.dataAcquisition();
+				procPressure.dataAcquisition();
+				diskStats.dataAcquisition();
+				netDev.dataAcquisition();
+			}
+
+			MetricsRenderer renderer = new MetricsRenderer()
+					.addSource(CollectorMetrics.procStat(procStat))
+					.addSource(CollectorMetrics.procMeminfo(procMeminfo))
+					.addSource(CollectorMetrics.procPressure(procPressure))
+					.addSource(CollectorMetrics.diskStats(diskStats))
+					.addSource(CollectorMetrics.netDev(netDev));
+			benchmarks.put("MetricsRenderer.render:fixture-" + cores, () -> {
+				renderer.render();
+				Blackhole.consume(renderer.getBody());
+			});
+			benchmarks.put("ProcStat.toString:fixture-" + cores,
+					() -> Blackhole.consume(procStat.toString()));
+		} catch (IOException e) {
+			skipped("MetricsRenderer.render:fixture-" + cores, e);
+		}
+	}
+
+	private void addDashboard(int cores) {
+		try {
+			ProcStat procStat = new ProcStat(statFixture(cores).getPath(), false);
+			ProcMeminfo procMeminfo = new ProcMeminfo(new File(fixtures, "proc/meminfo").getPath(),
+					ProcMeminfo.DEFAULT_FIELDS);
+			procStat.dataAcquisition();
+			procMeminfo.dataAcquisition();
+
+			//  Wide enough for 8 core columns, so 256 cores fit in 32 rows.
+			Dashboard dashboard = new Dashboard(Dashboard.HEADER_ROWS + 32,
+					8 * Dashboard.CELL_WIDTH, procStat, procMeminfo);
+			OutputStream out = OutputStream.nullOutputStream();
+			int[] frequencies = new int[cores];
+			int[] tick = {0};
+
+			//  Every core's frequency changes between frames, usage stays.
+			benchmarks.put("Dashboard.draw:fixture-" + cores, () -> {
+				int frequency = (tick[0]++ & 1) == 0 ? 3_400_000 : 2_200_000;
+				for(int i = 0; i < cores; i++) {
+					frequencies[i] = frequency;
+				}
+				dashboard.updateFrequencies(frequencies, cores);
+				Blackhole.consume(dashboard.draw(out));
+			});
+			benchmarks.put("Dashboard.redraw:fixture-" + cores, () -> {
+				dashboard.getScreen().invalidate();
+				Blackhole.consume(dashboard.draw(out));
+			});
+		} catch (IOException e) {
+			skipped("Dashboard.draw:fixture-" + cores, e);
+		}
+	}
+
+	private void addProcMeminfo(String variant, String path) {
+		String name = "ProcMeminfo.dataAcquisition:" + variant;
+		if(new File(path).canRead()) {
+			ProcMeminfo procMeminfo = new ProcMeminfo(path, ProcMeminfo.DEFAULT_FIELDS);
+			benchmarks.put(name, () -> {
+				procMeminfo.dataAcquisition();
+				Blackhole.consume(procMeminfo.getSnapshot());
+			});
+		} else {
+			skipped(name, null);
+		}
+	}
+
+	private void addDiskStats(String variant, String path) {
+		String name = "DiskStats.dataAcquisition:" + variant;
+		if(new File(path).canRead()) {
+			DiskStats diskStats = new DiskStats(path);
+			benchmarks.put(name, () -> {
+				diskStats.dataAcquisition();
+				Blackhole.consume(diskStats.getSnapshot());
+			});
+		} else {
+			skipped(name, null);
+		}
+	}
+
+	private void addNetDev(String variant, String path) {
+		String name = "NetDev.dataAcquisition:" + variant;
+		if(new File(path).canRead()) {
+			NetDev netDev = new NetDev(path);
+			benchmarks.put(name, () -> {
+				netDev.dataAcquisition();
+				Blackhole.consume(netDev.getSnapshot());
+			});
+		} else {
+			skipped(name, null);
+		}
+	}
+
+	private void addProcPressure(String variant, String path) {
+		String name = "ProcPressure.dataAcquisition:" + variant;
+		if(new File(path).canRead()) {
+			ProcPressure procPressure = new ProcPressure(path);
+			benchmarks.put(name, () -> {
+				procPressure.dataAcquisition();
+				Blackhole.consume(procPressure.getSnapshot());
+			});
+		} else {
+			skipped(name, null);
+		}
+	}
+
+	private void addReadLines(String variant, String path) {
+		LocalFile file = new LocalFile(path);
+		if(new File(path).canRead()) {
+			benchmarks.put("LocalFile.readLines:" + variant,
+					() -> Blackhole.consume(file.readLines()));
+		} else {
+			skipped("LocalFile.readLines:" + variant, null);
+		}
+	}
+
+	private void addExtractString(String variant, File file) {
+		String name = "Utils.extractStringFromFileOptional:" + variant;
+		if(file.canRead()) {
+			benchmarks.put(name, () -> Blackhole.consume(
+					Utils.extractStringFromFileOptional(file).orElse(null)));
+		} else {
+			skipped(name, null);
+		}
+	}
+
+	private static void skipped(String name, Exception e) {
+		System.err.println("Skipping " + name
+				+ (e != null ? ": " + e.getMessage() : ": input not available"));
+	}
+
+
+	/**
+	 * @param cores Number of cores, one of FIXTURE_CORE_COUNTS.
+	 * @return Recorded "/proc/stat" of a machine with a given number of cores.
+	 */
+	public File statFixture(int cores) {
+		return new File(fixtures, "proc/stat-" + cores);
+	}
+
+
+	/**
+	 * Runs benchmarks whose names contain a filter.
+	 * @param runner Harness used for measurements.
+	 * @param filter Part of the names, empty string selects all.
+	 * @return Results in order of execution.
+	 * @throws Exception Thrown by a benchmark.
+	 */
+	public List<BenchmarkResult> run(BenchmarkRunner runner, String filter) throws Exception {
+		List<BenchmarkResult> results = new ArrayList<>();
+		System.out.println(BenchmarkResult.header());
+
+		for(Map.Entry<String, BenchmarkOperation> entry : benchmarks.entrySet()) {
+			if(entry.getKey().contains(filter)) {
+				BenchmarkResult result = runner.run(entry.getKey(), entry.getValue());
+				System.out.println(result);
+				results.add(result);
+			}
+		}
+
+		return results;
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		CollectorBenchmarks suite = new CollectorBenchmarks(
+				new File(System.getProperty("bench.fixtures", "bench/fixtures")),
+				Integer.getInteger("bench.synthetic.cpus", SyntheticSystem.DEFAULT_CPU_COUNT),
+				Integer.getInteger("bench.synthetic.sensors", SyntheticSystem.DEFAULT_HWMON_DEVICES
+						* SyntheticSystem.DEFAULT_SENSORS_PER_DEVICE),
+				Integer.getInteger("bench.synthetic.processes", 20_000),
+				Integer.getInteger("bench.synthetic.cgroups", 500));
+		suite.setUp();
+
+		BenchmarkRunner runner = new BenchmarkRunner(
+				Long.getLong("bench.warmup", BenchmarkRunner.DEFAULT_WARMUP_MILLIS),
+				Long.getLong("bench.measurement", BenchmarkRunner.DEFAULT_MEASUREMENT_MILLIS));
+		suite.run(runner, args.length > 0 ? args[0] : "");
+	}
+}
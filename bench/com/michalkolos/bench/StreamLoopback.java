@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+import com.michalkolos.cpu.CpuFrequency;
+import com.michalkolos.cpu.ProcStat;
+import com.michalkolos.history.HistoryRecorder;
+import com.michalkolos.history.HistoryStore;
+import com.michalkolos.hwmon.Hwmon;
+import com.michalkolos.hwmon.HwmonSampler;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.stream.StreamExporter;
+import com.michalkolos.stream.StreamReceiver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+
+
+/**
+ * Streams readings of a SyntheticSystem through a StreamExporter to a
+ * StreamReceiver over loopback and reports the bytes spent per sample,
+ * compared with the text reports of the same readings.
+ * <p>
+ * Usage: java -cp out:out-bench com.michalkolos.bench.StreamLoopback [ticks]
+ * <br>
+ * System properties: bench.synthetic.cpus and bench.synthetic.sensors (size
+ * of the synthetic system), stream.protocol ("tcp" or "udp"),
+ * stream.flush.bytes and stream.keyframes.
+ */
+public class StreamLoopback {
+
+	public static final int DEFAULT_TICKS = 600;
+	public static final int DEFAULT_CPU_COUNT = 64;
+	public static final int DEFAULT_SENSOR_COUNT = 32;
+
+	/**
+	 * Milliseconds between ticks, so every tick gets its own timestamp.
+	 */
+	private static final long TICK_MILLIS = 2;
+
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int ticks = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+		int cpus = Integer.getInteger("bench.synthetic.cpus", DEFAULT_CPU_COUNT);
+		int sensors = Integer.getInteger("bench.synthetic.sensors", DEFAULT_SENSOR_COUNT);
+		boolean udp = "udp".equals(System.getProperty("stream.protocol"));
+		int flushBytes = Integer.getInteger("stream.flush.bytes", StreamExporter.DEFAULT_FLUSH_BYTES);
+		int keyframes = Integer.getInteger("stream.keyframes", StreamExporter.DEFAULT_KEYFRAME_INTERVAL);
+
+		int devices = Math.max(1, sensors / SyntheticSystem.DEFAULT_SENSORS_PER_DEVICE);
+		SyntheticSystem system = new SyntheticSystem(
+				Files.createTempDirectory("synthetic-system").toFile(),
+				cpus, devices, Math.max(1, sensors / devices), 1L);
+		system.generate();
+
+		ProcStat procStat = new ProcStat(system.getRoot());
+		CpuFrequency cpuFrequency = new CpuFrequency(system.getRoot(), SmallFileReader.getShared());
+		Hwmon hwmon = new Hwmon(system.getRoot());
+		HwmonSampler sampler = hwmon.compileSampler(channel -> true);
+		int[] frequencies = new int[cpuFrequency.getLogicalCoreNo()];
+		long[] values = new long[sampler.size()];
+
+		HistoryStore received = new HistoryStore();
+		InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+		StreamReceiver receiver = udp
+				? StreamReceiver.udp(loopback, received)
+				: StreamReceiver.tcp(loopback, received);
+		InetSocketAddress target = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				receiver.getPort());
+		StreamExporter exporter = udp
+				? StreamExporter.udp(target, flushBytes, keyframes)
+				: StreamExporter.tcp(target, flushBytes, keyframes);
+		HistoryRecorder recorder = new HistoryRecorder(exporter);
+
+		long textBytes = 0L;
+		for(int tick = 0; tick < ticks; tick++) {
+			system.advance();
+			procStat.dataAcquisition();
+			recorder.record(procStat.getSnapshot());
+
+			long timestamp = System.currentTimeMillis();
+			int count = cpuFrequency.sampleAll(frequencies);
+			recorder.recordFrequencies(timestamp, frequencies, count);
+			recorder.recordHwmon(timestamp, sampler, values, sampler.sample(values));
+
+			textBytes += procStat.toString().length() + cpuFrequency.toString().length()
+					+ hwmon.allSubsystemsToString().length();
+			Thread.sleep(TICK_MILLIS);
+		}
+		exporter.close();
+
+		//  Waits for the receiver to decode everything that was sent.
+		long deadline = System.currentTimeMillis() + 5_000;
+		while(receiver.getSampleCount() < exporter.getSentSampleCount()
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		receiver.close();
+
+		System.out.printf("%s, %d CPUs, %d sensors, %d ticks, flush at %d bytes, keyframe every %d batches%n",
+				udp ? "UDP" : "TCP", cpus, sampler.size(), ticks, flushBytes, keyframes);
+		System.out.printf("Sent:     %d samples, %d batches (%d dropped), %d bytes, %.2f bytes/sample%n",
+				exporter.getSentSampleCount(), exporter.getSentBatchCount(),
+				exporter.getDroppedBatchCount(), exporter.getSentByteCount(),
+				exporter.getBytesPerSample());
+		System.out.printf("Received: %d samples, %d batches (%d lost), %d bytes, %.2f bytes/sample%n",
+				receiver.getSampleCount(), receiver.getBatchCount(), receiver.getLostBatchCount(),
+				receiver.getByteCount(), receiver.getBytesPerSample());
+		System.out.printf("Text reports: %d bytes, %.2f bytes/sample%n", textBytes,
+				(double)textBytes / Math.max(1L, exporter.getSentSampleCount()));
+		System.out.printf("Metrics received: %d%n", received.getMetricNames().size());
+	}
+}
@@ -0,0 +1,482 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.bench;
+
+import com.michalkolos.input.SystemRoot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+
+/**
+ * Generates "/proc/stat", "/proc/[pid]/stat", cpufreq, Hwmon and cgroup v2
+ * trees of a machine that does not exist, e.g. with thousands of logical
+ * CPUs, hundreds of sensors, tens of thousands of processes and hundreds of
+ * containers. Every call to advance()
+ * moves the counters forward by one tick, so collectors see changing values,
+ * just like on a live system.
+ * <p>
+ * Usage: java -cp out:out-bench com.michalkolos.bench.SyntheticSystem
+ * directory [cpus] [hwmon devices] [sensors per device] [processes] [cgroups]
+ */
+public class SyntheticSystem {
+
+	public static final int DEFAULT_CPU_COUNT = 1024;
+	public static final int DEFAULT_HWMON_DEVICES = 16;
+	public static final int DEFAULT_SENSORS_PER_DEVICE = 24;
+	public static final int DEFAULT_PROCESS_COUNT = 0;
+	public static final int DEFAULT_CGROUP_COUNT = 0;
+
+	/**
+	 * Pid of the first generated process.
+	 */
+	private static final int FIRST_PID = 1;
+
+	/**
+	 * Jiffies passing on every CPU per tick, 100 ms at USER_HZ 100.
+	 */
+	private static final int JIFFIES_PER_TICK = 10;
+
+	private static final int CPU_FIELD_COUNT = 10;
+	private static final int USER = 0;
+	private static final int SYSTEM = 2;
+	private static final int IDLE = 3;
+	private static final int IOWAIT = 4;
+	private static final int SOFTIRQ = 6;
+
+	private static final int CGROUP_USAGE_USEC = 0;
+	private static final int CGROUP_NR_PERIODS = 1;
+	private static final int CGROUP_NR_THROTTLED = 2;
+	private static final int CGROUP_THROTTLED_USEC = 3;
+	private static final int CGROUP_RBYTES = 4;
+	private static final int CGROUP_WBYTES = 5;
+	private static final int CGROUP_MEMORY = 6;
+	private static final int CGROUP_FIELD_COUNT = 7;
+
+	private static final String[] SENSOR_PREFIXES = {"temp", "fan", "in"};
+
+	/**
+	 * Interface files that are written once, so walking the hierarchy sees
+	 * as many entries as on a live system.
+	 */
+	private static final String[] CGROUP_STATIC_FILES = {"cgroup.controllers", "cgroup.procs",
+			"cgroup.subtree_control", "cgroup.events", "cpu.max", "cpu.weight", "memory.max",
+			"memory.high", "memory.events", "io.max", "io.weight", "pids.current", "pids.max"};
+
+	/**
+	 * Parent of the generated containers.
+	 */
+	private static final String CGROUP_SLICE = "/sys/fs/cgroup/machine.slice";
+
+	private final SystemRoot root;
+	private final int cpuCount;
+	private final int hwmonDevices;
+	private final int sensorsPerDevice;
+	private final int processCount;
+	private final int cgroupCount;
+	private final Random random;
+
+	private final long[][] cpuTimes;
+	private final long[] interrupts;
+	private long contextSwitches = 100_000_000L;
+	private long processes = 1_000_000L;
+	private final int[] frequencies;
+	private final long[][] sensors;
+	private final long[] processTimes;
+	private final long[] processRss;
+	private final long[][] cgroupCounters;
+
+
+	/**
+	 * @param directory Directory the trees are written to.
+	 * @param cpuCount Number of logical CPUs.
+	 * @param hwmonDevices Number of Hwmon subsystems.
+	 * @param sensorsPerDevice Number of channels of every subsystem.
+	 * @param seed Seed of the generated values, same seed gives same trees.
+	 */
+	public SyntheticSystem(File directory, int cpuCount, int hwmonDevices,
+	                       int sensorsPerDevice, long seed) {
+		this(directory, cpuCount, hwmonDevices, sensorsPerDevice, DEFAULT_PROCESS_COUNT, seed);
+	}
+
+	/**
+	 * @param directory Directory the trees are written to.
+	 * @param cpuCount Number of logical CPUs.
+	 * @param hwmonDevices Number of Hwmon subsystems.
+	 * @param sensorsPerDevice Number of channels of every subsystem.
+	 * @param processCount Number of processes.
+	 * @param seed Seed of the generated values, same seed gives same trees.
+	 */
+	public SyntheticSystem(File directory, int cpuCount, int hwmonDevices,
+	                       int sensorsPerDevice, int processCount, long seed) {
+		this(directory, cpuCount, hwmonDevices, sensorsPerDevice, processCount,
+				DEFAULT_CGROUP_COUNT, seed);
+	}
+
+	/**
+	 * @param directory Directory the trees are written to.
+	 * @param cpuCount Number of logical CPUs.
+	 * @param hwmonDevices Number of Hwmon subsystems.
+	 * @param sensorsPerDevice Number of channels of every subsystem.
+	 * @param processCount Number of processes.
+	 * @param cgroupCount Number of containers, cgroups below a common slice.
+	 * @param seed Seed of the generated values, same seed gives same trees.
+	 */
+	public SyntheticSystem(File directory, int cpuCount, int hwmonDevices,
+	                       int sensorsPerDevice, int processCount, int cgroupCount,
+	                       long seed) {
+		this.root = new SystemRoot(directory);
+		this.cpuCount = cpuCount;
+		this.hwmonDevices = hwmonDevices;
+		this.sensorsPerDevice = sensorsPerDevice;
+		this.processCount = processCount;
+		this.cgroupCount = cgroupCount;
+		this.random = new Random(seed);
+
+		this.cpuTimes = new long[cpuCount][CPU_FIELD_COUNT];
+		for(long[] times : cpuTimes) {
+			times[USER] = 100_000 + random.nextInt(900_000);
+			times[SYSTEM] = 50_000 + random.nextInt(250_000);
+			times[IDLE] = 5_000_000 + random.nextInt(4_000_000);
+			times[IOWAIT] = 1_000 + random.nextInt(30_000);
+			times[SOFTIRQ] = 500 + random.nextInt(20_000);
+		}
+
+		this.interrupts = new long[Math.max(256, cpuCount * 8)];
+		this.frequencies = new int[cpuCount];
+		this.sensors = new long[hwmonDevices][sensorsPerDevice];
+		for(long[] device : sensors) {
+			for(int sensor = 0; sensor < sensorsPerDevice; sensor++) {
+				device[sensor] = initialSensorValue(sensor);
+			}
+		}
+
+		this.processTimes = new long[processCount];
+		this.processRss = new long[processCount];
+		for(int process = 0; process < processCount; process++) {
+			processTimes[process] = random.nextInt(100_000);
+			processRss[process] = random.nextInt(50_000);
+		}
+
+		//  Root, the slice and the containers.
+		this.cgroupCounters = new long[cgroupCount > 0 ? cgroupCount + 2 : 0][CGROUP_FIELD_COUNT];
+		for(long[] counters : cgroupCounters) {
+			counters[CGROUP_USAGE_USEC] = random.nextInt(1_000_000_000);
+			counters[CGROUP_NR_PERIODS] = random.nextInt(100_000);
+			counters[CGROUP_RBYTES] = random.nextInt(1_000_000_000);
+			counters[CGROUP_WBYTES] = random.nextInt(1_000_000_000);
+			counters[CGROUP_MEMORY] = random.nextInt(1 << 30);
+		}
+	}
+
+
+	private long initialSensorValue(int sensor) {
+		switch(SENSOR_PREFIXES[sensor % SENSOR_PREFIXES.length]) {
+			case "temp":
+				return 35_000 + random.nextInt(30_000);
+			case "fan":
+				return 600 + random.nextInt(2_000);
+			default:
+				return 800 + random.nextInt(11_200);
+		}
+	}
+
+
+	/**
+	 * Writes complete trees, including files that never change.
+	 * @throws IOException When the files cannot be written.
+	 */
+	public void generate() throws IOException {
+		for(int device = 0; device < hwmonDevices; device++) {
+			File dir = hwmonDir(device);
+			mkdirs(dir);
+			write(new File(dir, "name"), "synth" + device);
+
+			for(int sensor = 0; sensor < sensorsPerDevice; sensor++) {
+				String channel = channelId(sensor);
+				if(channel.startsWith("temp")) {
+					write(new File(dir, channel + "_label"), "Core " + sensor);
+					write(new File(dir, channel + "_max"), "95000");
+					write(new File(dir, channel + "_crit"), "105000");
+				}
+			}
+		}
+
+		for(int cpu = 0; cpu < cpuCount; cpu++) {
+			mkdirs(frequencyFile(cpu).getParentFile());
+		}
+		mkdirs(root.resolve("/proc"));
+		for(int process = 0; process < processCount; process++) {
+			mkdirs(root.resolve("/proc/" + (FIRST_PID + process)));
+		}
+
+		for(int cgroup = 0; cgroup < cgroupCounters.length; cgroup++) {
+			File dir = cgroupDir(cgroup);
+			mkdirs(dir);
+			for(String file : CGROUP_STATIC_FILES) {
+				write(new File(dir, file), cgroup == 0 && file.equals("cgroup.controllers")
+						? "cpuset cpu io memory pids"
+						: "");
+			}
+		}
+
+		writeCounters();
+	}
+
+
+	/**
+	 * Moves all counters one tick forward and rewrites the files holding them.
+	 * @throws IOException When the files cannot be written.
+	 */
+	public void advance() throws IOException {
+		for(long[] times : cpuTimes) {
+			int busy = random.nextInt(JIFFIES_PER_TICK + 1);
+			int user = random.nextInt(busy + 1);
+			int system = busy - user;
+			int iowait = random.nextInt(10) == 0 ? 1 : 0;
+
+			times[USER] += user;
+			times[SYSTEM] += system;
+			times[IOWAIT] += iowait;
+			times[IDLE] += JIFFIES_PER_TICK - busy - iowait;
+			times[SOFTIRQ] += random.nextInt(2);
+		}
+
+		for(int irq = 0; irq < interrupts.length; irq += 1 + random.nextInt(8)) {
+			interrupts[irq] += random.nextInt(1_000);
+		}
+		for(int process = 0; process < processCount; process++) {
+			//  Most processes sleep.
+			if(random.nextInt(20) == 0) {
+				processTimes[process] += random.nextInt(JIFFIES_PER_TICK + 1);
+			}
+		}
+
+		for(long[] counters : cgroupCounters) {
+			counters[CGROUP_USAGE_USEC] += random.nextInt(100_000);
+			counters[CGROUP_NR_PERIODS] += 1;
+			if(random.nextInt(10) == 0) {
+				counters[CGROUP_NR_THROTTLED] += 1;
+				counters[CGROUP_THROTTLED_USEC] += random.nextInt(10_000);
+			}
+			counters[CGROUP_RBYTES] += random.nextInt(1 << 20);
+			counters[CGROUP_WBYTES] += random.nextInt(1 << 20);
+			counters[CGROUP_MEMORY] = Math.max(0, counters[CGROUP_MEMORY] + random.nextInt(1 << 20) - (1 << 19));
+		}
+
+		contextSwitches += cpuCount * (long)random.nextInt(500);
+		processes += random.nextInt(50);
+
+		for(long[] device : sensors) {
+			for(int sensor = 0; sensor < device.length; sensor++) {
+				device[sensor] = Math.max(0, device[sensor] + random.nextInt(201) - 100);
+			}
+		}
+
+		writeCounters();
+	}
+
+
+	private void writeCounters() throws IOException {
+		write(root.resolve("/proc/stat"), procStat());
+
+		for(int cpu = 0; cpu < cpuCount; cpu++) {
+			frequencies[cpu] = 800_000 + random.nextInt(3_700) * 1_000;
+			write(frequencyFile(cpu), Integer.toString(frequencies[cpu]));
+		}
+
+		for(int process = 0; process < processCount; process++) {
+			int pid = FIRST_PID + process;
+			write(root.resolve("/proc/" + pid + "/stat"), pidStat(pid, process));
+		}
+
+		for(int cgroup = 0; cgroup < cgroupCounters.length; cgroup++) {
+			writeCgroup(cgroup);
+		}
+
+		for(int device = 0; device < hwmonDevices; device++) {
+			File dir = hwmonDir(device);
+			for(int sensor = 0; sensor < sensorsPerDevice; sensor++) {
+				write(new File(dir, channelId(sensor) + "_input"),
+						Long.toString(sensors[device][sensor]));
+			}
+		}
+	}
+
+
+	private String procStat() {
+		StringBuilder sb = new StringBuilder(cpuCount * 64 + interrupts.length * 4);
+
+		long[] total = new long[CPU_FIELD_COUNT];
+		for(long[] times : cpuTimes) {
+			for(int field = 0; field < CPU_FIELD_COUNT; field++) {
+				total[field] += times[field];
+			}
+		}
+		appendCpuLine(sb, "cpu ", total);
+		for(int cpu = 0; cpu < cpuCount; cpu++) {
+			appendCpuLine(sb, "cpu" + cpu, cpuTimes[cpu]);
+		}
+
+		long interruptsTotal = 0;
+		for(long count : interrupts) {
+			interruptsTotal += count;
+		}
+		sb.append("intr ").append(interruptsTotal);
+		for(long count : interrupts) {
+			sb.append(' ').append(count);
+		}
+		sb.append('\n');
+
+		sb.append("ctxt ").append(contextSwitches).append('\n')
+				.append("btime 1660000000\n")
+				.append("processes ").append(processes).append('\n')
+				.append("procs_running ").append(1 + random.nextInt(cpuCount)).append('\n')
+				.append("procs_blocked ").append(random.nextInt(4)).append('\n')
+				.append("softirq 0 0 0 0 0 0 0 0 0 0 0\n");
+
+		return sb.toString();
+	}
+
+	private String pidStat(int pid, int process) {
+		long utime = processTimes[process] * 3 / 4;
+		long stime = processTimes[process] - utime;
+
+		return pid + " (worker " + process + ") S 1 " + pid + " " + pid
+				+ " 0 -1 4194560 1200 0 3 0 " + utime + " " + stime
+				+ " 0 0 20 0 1 0 " + (1000 + process) + " 104857600 " + processRss[process]
+				+ " 18446744073709551615 1 1 0 0 0 0 0 4096 0 0 0 0 17 0 0 0 0 0 0";
+	}
+
+	private void writeCgroup(int cgroup) throws IOException {
+		long[] counters = cgroupCounters[cgroup];
+		File dir = cgroupDir(cgroup);
+
+		long usage = counters[CGROUP_USAGE_USEC];
+		write(new File(dir, "cpu.stat"), "usage_usec " + usage
+				+ "\nuser_usec " + usage * 3 / 4
+				+ "\nsystem_usec " + (usage - usage * 3 / 4)
+				+ "\nnr_periods " + counters[CGROUP_NR_PERIODS]
+				+ "\nnr_throttled " + counters[CGROUP_NR_THROTTLED]
+				+ "\nthrottled_usec " + counters[CGROUP_THROTTLED_USEC]
+				+ "\nnr_bursts 0\nburst_usec 0");
+
+		//  Like on a live system, the root cgroup has no memory files.
+		if(cgroup == 0) {
+			return;
+		}
+
+		long memory = counters[CGROUP_MEMORY];
+		write(new File(dir, "memory.current"), Long.toString(memory));
+		write(new File(dir, "memory.stat"), "anon " + memory / 2
+				+ "\nfile " + memory / 3
+				+ "\nkernel " + memory / 20
+				+ "\nkernel_stack 16384\npagetables 40960\nsec_pagetables 0\npercpu 4096"
+				+ "\nsock 0\nvmalloc 0\nshmem " + memory / 50
+				+ "\nzswap 0\nzswapped 0\nfile_mapped " + memory / 10
+				+ "\nfile_dirty " + memory / 100
+				+ "\nfile_writeback 0\nswapcached 0\nanon_thp 0\nfile_thp 0\nshmem_thp 0"
+				+ "\ninactive_anon " + memory / 4 + "\nactive_anon " + memory / 4
+				+ "\ninactive_file " + memory / 6 + "\nactive_file " + memory / 6
+				+ "\nunevictable 0\nslab_reclaimable 8192\nslab_unreclaimable 8192\nslab 16384"
+				+ "\npgfault 1000\npgmajfault 10");
+		write(new File(dir, "io.stat"), "259:0 rbytes=" + counters[CGROUP_RBYTES]
+				+ " wbytes=" + counters[CGROUP_WBYTES]
+				+ " rios=" + counters[CGROUP_RBYTES] / 4096
+				+ " wios=" + counters[CGROUP_WBYTES] / 4096
+				+ " dbytes=0 dios=0\n8:0 rbytes=4096 wbytes=0 rios=1 wios=0 dbytes=0 dios=0");
+	}
+
+	private static void appendCpuLine(StringBuilder sb, String key, long[] times) {
+		sb.append(key);
+		for(long value : times) {
+			sb.append(' ').append(value);
+		}
+		sb.append('\n');
+	}
+
+
+	private String channelId(int sensor) {
+		return SENSOR_PREFIXES[sensor % SENSOR_PREFIXES.length] + (sensor / SENSOR_PREFIXES.length + 1);
+	}
+
+	private File hwmonDir(int device) {
+		return root.resolve("/sys/class/hwmon/hwmon" + device);
+	}
+
+	/**
+	 * @param cgroup 0 for the root, 1 for the slice, containers afterwards.
+	 */
+	private File cgroupDir(int cgroup) {
+		if(cgroup == 0) {
+			return root.resolve("/sys/fs/cgroup");
+		}
+		if(cgroup == 1) {
+			return root.resolve(CGROUP_SLICE);
+		}
+		return root.resolve(CGROUP_SLICE + "/container-" + (cgroup - 2) + ".scope");
+	}
+
+	private File frequencyFile(int cpu) {
+		return root.resolve("/sys/devices/system/cpu/cpu" + cpu + "/cpufreq/scaling_cur_freq");
+	}
+
+	private static void mkdirs(File dir) throws IOException {
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Unable to create directory: " + dir.getAbsolutePath());
+		}
+	}
+
+	private static void write(File file, String contents) throws IOException {
+		Files.write(file.toPath(), (contents + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+
+	public SystemRoot getRoot() {
+		return root;
+	}
+
+	public int getCpuCount() {
+		return cpuCount;
+	}
+
+	/**
+	 * @return Total number of Hwmon channels.
+	 */
+	public int getSensorCount() {
+		return hwmonDevices * sensorsPerDevice;
+	}
+
+	public int getProcessCount() {
+		return processCount;
+	}
+
+	public int getCgroupCount() {
+		return cgroupCount;
+	}
+
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: SyntheticSystem directory [cpus] [hwmon devices] [sensors per device] [processes] [cgroups]");
+			return;
+		}
+
+		SyntheticSystem system = new SyntheticSystem(new File(args[0]),
+				args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CPU_COUNT,
+				args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_HWMON_DEVICES,
+				args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SENSORS_PER_DEVICE,
+				args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_PROCESS_COUNT,
+				args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_CGROUP_COUNT,
+				1L);
+		system.generate();
+		System.out.println("Generated " + system.getCpuCount() + " CPUs, "
+				+ system.getSensorCount() + " sensors, " + system.getProcessCount()
+				+ " processes and " + system.getCgroupCount() + " cgroups in " + system.getRoot());
+	}
+}
@@ -4,15 +4,40 @@
 
 package com.michalkolos;
 
+import com.michalkolos.cgroup.CgroupTable;
+import com.michalkolos.console.Dashboard;
 import com.michalkolos.cpu.CpuFrequency;
 import com.michalkolos.cpu.CpuTemp;
 import com.michalkolos.cpu.ProcStat;
-import com.sun.management.OperatingSystemMXBean;
+import com.michalkolos.disk.DiskStats;
+import com.michalkolos.export.CollectorMetrics;
+import com.michalkolos.export.MetricsRenderer;
+import com.michalkolos.export.MetricsServer;
+import com.michalkolos.export.SelfMetrics;
+import com.michalkolos.history.HistoryRecorder;
+import com.michalkolos.history.HistoryStore;
+import com.michalkolos.hwmon.Hwmon;
+import com.michalkolos.hwmon.HwmonSampler;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.memory.ProcMeminfo;
+import com.michalkolos.net.NetDev;
+import com.michalkolos.pressure.ProcPressure;
+import com.michalkolos.process.ProcessTable;
+import com.michalkolos.sampling.SamplingScheduler;
+import com.michalkolos.storage.TimeSeriesStore;
+import com.michalkolos.stream.StreamExporter;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Main {
 
@@ -20,37 +45,289 @@ public class Main {
 
         System.out.println("Hello World!");
 
-        OperatingSystemMXBean systemBean =
-                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        try {
+            ProcStat procStat = new ProcStat(SystemRoot.DEFAULT, true);
+            CpuFrequency cpuFrequency = new CpuFrequency();
+            Hwmon hwmon = new Hwmon();
+            CpuTemp cpuTemp = new CpuTemp(hwmon);
+            ProcMeminfo procMeminfo = new ProcMeminfo();
+            ProcPressure procPressure = new ProcPressure();
+            ProcessTable processTable = new ProcessTable();
+            CgroupTable cgroupTable = new CgroupTable();
+            DiskStats diskStats = new DiskStats();
+            NetDev netDev = new NetDev();
 
+            //  One hour of raw samples per metric, whatever its interval, rollups
+            //  for longer periods.
+            HistoryStore historyStore = new HistoryStore(1, TimeUnit.HOURS, HistoryStore.DEFAULT_LEVELS);
+            List<HistoryRecorder> recorders = new ArrayList<>();
+            recorders.add(new HistoryRecorder(historyStore));
+            int[] frequencies = new int[cpuFrequency.getLogicalCoreNo()];
+            AtomicReference<HwmonSampler> hwmonSampler =
+                    new AtomicReference<>(hwmon.compileSampler(channel -> true));
+            AtomicReference<long[]> hwmonValues =
+                    new AtomicReference<>(new long[hwmonSampler.get().size()]);
 
+            //  Samples are persisted only if a storage directory is given.
+            TimeSeriesStore timeSeriesStore = args.length > 0
+                    ? new TimeSeriesStore(new File(args[0]))
+                    : null;
+            if(timeSeriesStore != null) {
+                recorders.add(new HistoryRecorder(timeSeriesStore));
+            }
 
-        try {
-            ProcStat procStat = new ProcStat();
-            CpuFrequency cpuFrequency = new CpuFrequency();
-            CpuTemp cpuTemp = new CpuTemp();
+            //  Samples are streamed off the machine only if a receiver is given
+            //  with the "stream.target" system property, as host:port.
+            StreamExporter streamExporter = createStreamExporter();
+            if(streamExporter != null) {
+                recorders.add(new HistoryRecorder(streamExporter));
+            }
 
-            for(int i = 0; i < 100; i++) {
-                System.out.println(cpuFrequency.toString());
-                System.out.println(System.lineSeparator());
-                System.out.println(cpuTemp.checkTemp().map(Objects::toString).orElse("NULL"));
-                procStat.dataAcquisition();
-                System.out.println(procStat.toString());
+            //  Scrapers get the body rendered on the last tick. The endpoint is
+            //  served only if a port is given with the "metrics.port" system
+            //  property.
+            MetricsRenderer metricsRenderer = new MetricsRenderer()
+                    .addSource(CollectorMetrics.procStat(procStat))
+                    .addSource(CollectorMetrics.procMeminfo(procMeminfo))
+                    .addSource(CollectorMetrics.procPressure(procPressure))
+                    .addSource(CollectorMetrics.diskStats(diskStats))
+                    .addSource(CollectorMetrics.netDev(netDev))
+                    .addSource(CollectorMetrics.cgroupTable(cgroupTable))
+                    .addSource(CollectorMetrics.cpuFrequency(cpuFrequency))
+                    .addSource(CollectorMetrics.cpuTemp(cpuTemp))
+                    .addSource(CollectorMetrics.hwmon(hwmonSampler::get))
+                    .addSource(CollectorMetrics.processTable(processTable,
+                            CollectorMetrics.DEFAULT_TOP_PROCESSES));
+            MetricsServer metricsServer = createMetricsServer(metricsRenderer);
 
+            //  Live terminal view instead of the text reports, enabled with the
+            //  "dashboard" system property.
+            Dashboard dashboard = Boolean.getBoolean("dashboard")
+                    ? new Dashboard(terminalSize("dashboard.rows", "LINES", 50),
+                            terminalSize("dashboard.columns", "COLUMNS", 120),
+                            procStat, procMeminfo)
+                    : null;
 
-                System.out.println(System.lineSeparator());
-                System.out.println(System.lineSeparator());
+            SamplingScheduler scheduler = new SamplingScheduler();
+            scheduler.setMissedDeadlineListener((sampler, missedTicks, latenessNanos) ->
+                    System.err.println(sampler.getName() + " missed " + missedTicks
+                            + " tick(s), " + TimeUnit.NANOSECONDS.toMillis(latenessNanos)
+                            + " ms behind schedule."));
 
-                try {
-                    TimeUnit.SECONDS.sleep(1);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+            //  Cost of the monitor itself: run times and allocations of every
+            //  task, and errors that are otherwise only printed.
+            metricsRenderer.addSource(SelfMetrics.scheduler(scheduler))
+                    .addSource(SelfMetrics.fileReader(SmallFileReader.getShared()))
+                    .addSource(SelfMetrics.hwmon(hwmon))
+                    .addSource(SelfMetrics.procPressure(procPressure));
+            if(timeSeriesStore != null) {
+                metricsRenderer.addSource(SelfMetrics.timeSeriesStore(timeSeriesStore));
+            }
+
+            //  Tasks with the same interval run one after another in the order
+            //  of registration, so pressure covers the same interval as CPU
+            //  usage and the snapshots are recorded right after they are read.
+            //  Collectors and recording are separate tasks, so the duration of
+            //  every task is the cost of one thing.
+            scheduler.register("proc-stat", HistoryRecorder.CPU_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, procStat::dataAcquisition);
+            scheduler.register("proc-pressure", HistoryRecorder.CPU_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, procPressure::dataAcquisition);
+            scheduler.register("proc-meminfo", HistoryRecorder.MEMORY_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, procMeminfo::dataAcquisition);
+            scheduler.register("history-record", HistoryRecorder.CPU_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, () -> {
+                for(HistoryRecorder recorder : recorders) {
+                    recorder.record(procStat.getSnapshot());
+                    recorder.recordPressure(procPressure.getSnapshot());
+                    recorder.recordMemory(procMeminfo.getSnapshot());
+                }
+            });
+            scheduler.register("cpu-frequency", HistoryRecorder.FREQUENCY_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, () -> {
+                int count = cpuFrequency.sampleAll(frequencies);
+                long timestamp = System.currentTimeMillis();
+                for(HistoryRecorder recorder : recorders) {
+                    recorder.recordFrequencies(timestamp, frequencies, count);
+                }
+                if(dashboard != null) {
+                    dashboard.updateFrequencies(frequencies, count);
+                } else {
+                    System.out.println(cpuFrequency.toString());
+                    System.out.println(System.lineSeparator());
+                }
+            });
+            scheduler.register("cpu-temp", HistoryRecorder.TEMPERATURE_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, () -> {
+                Optional<Float> temp = cpuTemp.checkTemp();
+                temp.ifPresent(celsius -> {
+                    long timestamp = System.currentTimeMillis();
+                    for(HistoryRecorder recorder : recorders) {
+                        recorder.recordTemperature(timestamp, celsius);
+                    }
+                });
+                if(dashboard != null) {
+                    dashboard.updateTemperature(temp.orElse(Float.NaN));
+                } else {
+                    System.out.println(temp.map(Objects::toString).orElse("NULL"));
                 }
+            });
+            scheduler.register("process-table", 1, TimeUnit.SECONDS, processTable::dataAcquisition);
+            scheduler.register("cgroup-table", 1, TimeUnit.SECONDS, cgroupTable::dataAcquisition);
+            scheduler.register("cgroup-refresh", 10, TimeUnit.SECONDS, cgroupTable::refresh);
+            scheduler.register("disk-stats", 1, TimeUnit.SECONDS, diskStats::dataAcquisition);
+            scheduler.register("net-dev", 1, TimeUnit.SECONDS, netDev::dataAcquisition);
+            scheduler.register("hwmon", HistoryRecorder.HWMON_INTERVAL_MILLIS, TimeUnit.MILLISECONDS, () -> {
+                HwmonSampler sampler = hwmonSampler.get();
+                long[] values = hwmonValues.get();
+                //  Grown only when a refresh found more channels.
+                if(values.length < sampler.size()) {
+                    values = new long[sampler.size()];
+                    hwmonValues.set(values);
+                }
+                int count = sampler.sample(values);
+                long timestamp = System.currentTimeMillis();
+                for(HistoryRecorder recorder : recorders) {
+                    recorder.recordHwmon(timestamp, sampler, values, count);
+                }
+            });
+            scheduler.register("hwmon-refresh", 10, TimeUnit.SECONDS, () -> {
+                if(hwmon.refresh()) {
+                    hwmonSampler.set(hwmon.compileSampler(channel -> true));
+                }
+            });
+            if(metricsServer != null) {
+                scheduler.register("metrics-render", 1, TimeUnit.SECONDS, metricsRenderer::render);
+            }
+            scheduler.register("self-metrics", HistoryRecorder.TASKS_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS, () -> {
+                long timestamp = System.currentTimeMillis();
+                for(HistoryRecorder recorder : recorders) {
+                    recorder.recordTasks(timestamp, scheduler.getSamplers());
+                }
+            });
+            if(timeSeriesStore != null) {
+                scheduler.register("storage-flush", 1, TimeUnit.MINUTES, timeSeriesStore::flush);
+            }
+            if(streamExporter != null) {
+                scheduler.register("stream-flush", Long.getLong("stream.flush.millis", 1000),
+                        TimeUnit.MILLISECONDS, streamExporter::flush);
+            }
+            if(dashboard != null) {
+                scheduler.register("dashboard", 100, TimeUnit.MILLISECONDS,
+                        () -> dashboard.draw(System.out));
+            } else {
+                scheduler.register("proc-stat-report", 1, TimeUnit.SECONDS, () -> {
+                    System.out.println(procStat.toString());
+                    System.out.println(procMeminfo.toString());
+                    System.out.println(procPressure.toString());
+                    System.out.println(processTable.toString(5));
+                    System.out.println(cgroupTable.toString(5));
+                    System.out.println(diskStats.toString());
+                    System.out.println(netDev.toString());
+                    System.out.println(System.lineSeparator());
+                    System.out.println(System.lineSeparator());
+                });
             }
 
+            scheduler.start();
+            if(metricsServer != null) {
+                metricsServer.start();
+            }
+            TimeUnit.SECONDS.sleep(100);
+            if(metricsServer != null) {
+                metricsServer.close();
+            }
+            scheduler.stop();
+            if(dashboard != null) {
+                dashboard.release(System.out);
+            }
+            processTable.close();
+            cgroupTable.close();
+            diskStats.close();
+            procPressure.close();
+            netDev.close();
+            if(timeSeriesStore != null) {
+                timeSeriesStore.close();
+            }
+            if(streamExporter != null) {
+                streamExporter.close();
+            }
 
-        } catch (IOException e) {
+        } catch (IOException | InterruptedException e) {
             e.printStackTrace();
         }
     }
+
+
+    /**
+     * Looks up a size of the terminal, the environment variables are set by
+     * most shells but not exported to child processes by default.
+     * @param property System property overriding the size.
+     * @param variable Environment variable holding the size.
+     * @param defaultSize Size used if neither of them is a positive number.
+     * @return Number of rows or columns.
+     */
+    private static int terminalSize(String property, String variable, int defaultSize) {
+        String value = System.getProperty(property, System.getenv(variable));
+        try {
+            int size = value == null ? 0 : Integer.parseInt(value.trim());
+            return size > 0 ? size : defaultSize;
+        } catch (NumberFormatException e) {
+            return defaultSize;
+        }
+    }
+
+
+    /**
+     * Creates the OpenMetrics endpoint configured by system properties:
+     * "metrics.port" and "metrics.address" (interface to listen on, loopback
+     * by default). A port that cannot be bound is reported and the monitor
+     * runs without the endpoint.
+     * @param renderer Renderer whose body is served.
+     * @return Server or null if no port is given or it cannot be bound.
+     */
+    private static MetricsServer createMetricsServer(MetricsRenderer renderer) {
+        Integer port = Integer.getInteger("metrics.port");
+        if(port == null) {
+            return null;
+        }
+
+        String host = System.getProperty("metrics.address",
+                InetAddress.getLoopbackAddress().getHostAddress());
+        try {
+            return new MetricsServer(renderer, new InetSocketAddress(host, port),
+                    MetricsServer.DEFAULT_THREADS);
+        } catch (IOException e) {
+            System.err.println("Metrics endpoint disabled, unable to listen on " + host + ":" + port
+                    + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+
+    /**
+     * Creates the exporter configured by system properties: "stream.target"
+     * (host:port of the StreamReceiver), "stream.protocol" ("tcp" or "udp"),
+     * "stream.flush.bytes" and "stream.keyframes" (batches between
+     * keyframes).
+     * @return Exporter or null if no target is given.
+     * @throws IOException When the UDP socket cannot be opened.
+     */
+    private static StreamExporter createStreamExporter() throws IOException {
+        String target = System.getProperty("stream.target");
+        if(target == null) {
+            return null;
+        }
+
+        int separator = target.lastIndexOf(':');
+        InetSocketAddress address = new InetSocketAddress(target.substring(0, separator),
+                Integer.parseInt(target.substring(separator + 1)));
+        int flushBytes = Integer.getInteger("stream.flush.bytes", StreamExporter.DEFAULT_FLUSH_BYTES);
+        int keyframes = Integer.getInteger("stream.keyframes", StreamExporter.DEFAULT_KEYFRAME_INTERVAL);
+
+        return "udp".equals(System.getProperty("stream.protocol"))
+                ? StreamExporter.udp(address, flushBytes, keyframes)
+                : StreamExporter.tcp(address, flushBytes, keyframes);
+    }
 }
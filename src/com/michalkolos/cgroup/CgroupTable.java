@@ -0,0 +1,699 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cgroup;
+
+import com.michalkolos.cgroup.data.CgroupSnapshot;
+import com.michalkolos.device.DeviceCounterTable;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.input.SystemRoot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Collects CPU, memory and I/O usage of every cgroup of a cgroup v2
+ * hierarchy from its "cpu.stat", "memory.current", "memory.stat" and
+ * "io.stat" files, so per-container usage can be told apart on hosts where
+ * per-core numbers hide which workload is responsible.
+ * <p>
+ * Cgroups are kept in slots of a columnar table. The hierarchy is walked only
+ * by refresh(), which adds cgroups that were created and drops the ones that
+ * are gone since the previous walk. Between walks, a cgroup whose "cpu.stat"
+ * can no longer be read is dropped right away. Files are read through a
+ * SmallFileReader owned by the table, so every read of a known cgroup is a
+ * single pread on a cached handle, and the reads are spread over a fixed pool
+ * of worker threads, each taking chunks of slots until none are left.
+ * <p>
+ * Like ProcStat, every call to dataAcquisition() publishes a new immutable
+ * CgroupSnapshot. Hosts without a cgroup v2 hierarchy (v1 only layout,
+ * containers without cgroupfs) are detected once, the table then stays
+ * empty.
+ */
+public class CgroupTable implements Closeable {
+
+	/**
+	 * Absolute path to the cgroup v2 hierarchy.
+	 */
+	public static final String SYS_PATH = "/sys/fs/cgroup";
+
+	/**
+	 * Location of the cgroup v2 hierarchy relative to SYS_PATH on hosts
+	 * running the hybrid (v1 and v2) layout.
+	 */
+	public static final String HYBRID_DIR = "unified";
+
+	/**
+	 * Number of file handles kept open by default, enough for four files of
+	 * a thousand cgroups.
+	 */
+	public static final int DEFAULT_HANDLE_CAPACITY = 4096;
+
+	/**
+	 * Upper limit of the default number of reading threads, the same as for
+	 * ProcessTable.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * Number of slots a worker takes at once.
+	 */
+	private static final int CHUNK_SIZE = 16;
+
+	/**
+	 * Size of the per worker read buffer. "memory.stat" takes about 2 kB,
+	 * "io.stat" grows with the number of devices.
+	 */
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final String ROOT_PATH = "/";
+	private static final String CONTROLLERS_FILE = "cgroup.controllers";
+
+	//  Counters parsed for every cgroup.
+	private static final int USAGE_USEC = 0;
+	private static final int NR_PERIODS = 1;
+	private static final int NR_THROTTLED = 2;
+	private static final int THROTTLED_USEC = 3;
+	private static final int READ_BYTES = 4;
+	private static final int WRITE_BYTES = 5;
+	private static final int READ_IOS = 6;
+	private static final int WRITE_IOS = 7;
+	private static final int FIELD_COUNT = 8;
+
+	private static final byte[][] CPU_STAT_KEYS = {bytes("usage_usec "), bytes("nr_periods "),
+			bytes("nr_throttled "), bytes("throttled_usec ")};
+	private static final int[] CPU_STAT_FIELDS = {USAGE_USEC, NR_PERIODS, NR_THROTTLED, THROTTLED_USEC};
+
+	private static final byte[][] MEMORY_STAT_KEYS = {bytes("anon "), bytes("file "),
+			bytes("shmem "), bytes("file_dirty ")};
+	private static final int[] MEMORY_STAT_VALUES = {CgroupSnapshot.MEMORY_ANON,
+			CgroupSnapshot.MEMORY_FILE, CgroupSnapshot.MEMORY_SHMEM, CgroupSnapshot.MEMORY_FILE_DIRTY};
+
+	private static final byte[][] IO_STAT_KEYS = {bytes("rbytes="), bytes("wbytes="),
+			bytes("rios="), bytes("wios=")};
+	private static final int[] IO_STAT_FIELDS = {READ_BYTES, WRITE_BYTES, READ_IOS, WRITE_IOS};
+
+	private static final float MICROS_PER_SECOND = 1_000_000.0f;
+
+	private final File sysDir;
+
+	/**
+	 * Root of the cgroup v2 hierarchy, null if there is none.
+	 */
+	private final File hierarchyDir;
+	private final SmallFileReader reader;
+
+	private final Map<String, Integer> slotsByPath = new HashMap<>();
+
+	//  Cgroup table, indexed by slot.
+	private String[] paths = new String[INITIAL_CAPACITY];
+	private File[] cpuStatFiles = new File[INITIAL_CAPACITY];
+	private File[] memoryCurrentFiles = new File[INITIAL_CAPACITY];
+	private File[] memoryStatFiles = new File[INITIAL_CAPACITY];
+	private File[] ioStatFiles = new File[INITIAL_CAPACITY];
+	private boolean[] fresh = new boolean[INITIAL_CAPACITY];
+	private boolean[] readOk = new boolean[INITIAL_CAPACITY];
+	private long[][] values = new long[CgroupSnapshot.VALUE_COUNT][INITIAL_CAPACITY];
+	private final DeviceCounterTable counters =
+			new DeviceCounterTable(FIELD_COUNT, CgroupSnapshot.RATE_COUNT);
+	private int slotCount = 0;
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int freeSlotCount = 0;
+
+	/**
+	 * Slots read in every pass, in the order of the hierarchy walk.
+	 */
+	private int[] work = new int[INITIAL_CAPACITY];
+	private int workSize = 0;
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private boolean discovered = false;
+
+	private final ExecutorService pool;
+	private final List<Worker> workers = new ArrayList<>();
+
+	private long previousNanos = 0L;
+
+	private volatile CgroupSnapshot snapshot =
+			new CgroupSnapshot(0L, new String[0], new float[0], new long[0]);
+
+
+
+	public CgroupTable() {
+		this(SystemRoot.DEFAULT, Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_PARALLELISM),
+				DEFAULT_HANDLE_CAPACITY);
+	}
+
+	/**
+	 * @param root Root the cgroup hierarchy is looked up in.
+	 * @param parallelism Number of threads reading cgroup files. With 1 all
+	 *                    files are read by the calling thread.
+	 * @param handleCapacity Maximum number of file handles kept open. Every
+	 *                       cgroup takes up to four.
+	 */
+	public CgroupTable(SystemRoot root, int parallelism, int handleCapacity) {
+		this.sysDir = root.resolve(SYS_PATH);
+		this.hierarchyDir = findHierarchy();
+		this.reader = new SmallFileReader(handleCapacity);
+		counters.ensureCapacity(INITIAL_CAPACITY);
+
+		int threads = Math.max(1, parallelism);
+		for(int i = 0; i < threads; i++) {
+			workers.add(new Worker());
+		}
+
+		if(threads > 1) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "cgroup-reader-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.pool = null;
+		}
+	}
+
+
+	/**
+	 * Reads files of a range of slots. Every worker has its own buffer and
+	 * cursor, workers write to disjoint slots only.
+	 */
+	private class Worker implements Callable<Void> {
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+		private final ByteCursor cursor = new ByteCursor();
+
+		@Override
+		public Void call() {
+			int chunkStart;
+			while((chunkStart = nextChunk.getAndAdd(CHUNK_SIZE)) < workSize) {
+				int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, workSize);
+				for(int i = chunkStart; i < chunkEnd; i++) {
+					int slot = work[i];
+					readOk[slot] = readCgroup(slot, buffer, cursor);
+				}
+			}
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * Brings the table up to date with the cgroup hierarchy. Cgroups that
+	 * were created since the previous walk get a slot, cgroups that are gone
+	 * free theirs. Needs to be called periodically, at a lower rate than
+	 * dataAcquisition().
+	 * @return True if any cgroup was added or removed, false if there is no
+	 * cgroup v2 hierarchy.
+	 */
+	public synchronized boolean refresh() {
+		discovered = true;
+		if(hierarchyDir == null) {
+			return false;
+		}
+
+		boolean changed = false;
+		Set<String> present = new HashSet<>();
+		workSize = 0;
+
+		//  Walk in pre-order, so parents come before their children.
+		Deque<String> pending = new ArrayDeque<>();
+		pending.push(ROOT_PATH);
+		while(!pending.isEmpty()) {
+			String path = pending.pop();
+			File dir = directoryOf(path);
+			String[] entries = dir.list();
+			if(entries == null) {
+				//  Removed while being walked.
+				continue;
+			}
+
+			present.add(path);
+			Integer known = slotsByPath.get(path);
+			int slot;
+			if(known == null) {
+				slot = allocateSlot(path, dir);
+				changed = true;
+			} else {
+				slot = known;
+				findOptionalFiles(slot, dir);
+			}
+
+			if(workSize == work.length) {
+				work = Arrays.copyOf(work, work.length * 2);
+			}
+			work[workSize++] = slot;
+
+			Arrays.sort(entries);
+			for(int i = entries.length - 1; i >= 0; i--) {
+				if(new File(dir, entries[i]).isDirectory()) {
+					pending.push(ROOT_PATH.equals(path)
+							? ROOT_PATH + entries[i]
+							: path + "/" + entries[i]);
+				}
+			}
+		}
+
+		for(int slot = 0; slot < slotCount; slot++) {
+			if(paths[slot] != null && !present.contains(paths[slot])) {
+				freeSlot(slot);
+				changed = true;
+			}
+		}
+
+		return changed;
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to gather data of all known
+	 * cgroups. The hierarchy is walked only on the first call, afterwards see
+	 * refresh(). Without a cgroup v2 hierarchy an empty snapshot is
+	 * published.
+	 * @throws IOException Thrown when the reading threads are interrupted.
+	 */
+	public synchronized void dataAcquisition() throws IOException {
+		if(!discovered) {
+			refresh();
+		}
+		if(hierarchyDir == null) {
+			this.snapshot = new CgroupSnapshot(System.currentTimeMillis(),
+					new String[0], new float[0], new long[0]);
+			return;
+		}
+
+		readAll();
+
+		long nanos = System.nanoTime();
+		float seconds = (nanos - previousNanos) / 1e9f;
+		previousNanos = nanos;
+
+		//  Cgroups that could not be read are gone, they are dropped from the
+		//  work list as well.
+		int count = 0;
+		for(int i = 0; i < workSize; i++) {
+			int slot = work[i];
+			if(readOk[slot]) {
+				calculateRates(slot, seconds);
+				work[count++] = slot;
+			} else {
+				freeSlot(slot);
+			}
+		}
+		workSize = count;
+
+		String[] snapshotPaths = new String[count];
+		float[] snapshotRates = new float[CgroupSnapshot.RATE_COUNT * count];
+		long[] snapshotValues = new long[CgroupSnapshot.VALUE_COUNT * count];
+		for(int row = 0; row < count; row++) {
+			int slot = work[row];
+			snapshotPaths[row] = paths[slot];
+			for(int rate = 0; rate < CgroupSnapshot.RATE_COUNT; rate++) {
+				snapshotRates[rate * count + row] = counters.rates(rate)[slot];
+			}
+			for(int value = 0; value < CgroupSnapshot.VALUE_COUNT; value++) {
+				snapshotValues[value * count + row] = values[value][slot];
+			}
+		}
+
+		this.snapshot = new CgroupSnapshot(System.currentTimeMillis(),
+				snapshotPaths, snapshotRates, snapshotValues);
+	}
+
+
+	private void readAll() throws IOException {
+		nextChunk.set(0);
+
+		//  Handing a few cgroups over to the pool costs more than reading them.
+		if(pool == null || workSize <= CHUNK_SIZE) {
+			workers.get(0).call();
+			return;
+		}
+
+		try {
+			for(Future<Void> future : pool.invokeAll(workers)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading cgroups.", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+
+	/**
+	 * Reads files of a cgroup into its slot.
+	 * @return False if "cpu.stat", present in every cgroup, cannot be read,
+	 * which means the cgroup was removed.
+	 */
+	private boolean readCgroup(int slot, ByteBuffer buffer, ByteCursor cursor) {
+		try {
+			cursor.reset(reader.read(cpuStatFiles[slot], buffer));
+		} catch (IOException e) {
+			return false;
+		}
+		parseKeyed(cursor, CPU_STAT_KEYS, CPU_STAT_FIELDS, counters, slot);
+
+		values[CgroupSnapshot.MEMORY_CURRENT][slot] = CgroupSnapshot.NO_VALUE;
+		if(memoryCurrentFiles[slot] != null) {
+			try {
+				long current = cursor.reset(reader.read(memoryCurrentFiles[slot], buffer)).nextLong();
+				values[CgroupSnapshot.MEMORY_CURRENT][slot] = current;
+			} catch (IOException e) {
+				//  Memory controller disabled for the cgroup.
+				memoryCurrentFiles[slot] = null;
+			}
+		}
+
+		for(int value : MEMORY_STAT_VALUES) {
+			values[value][slot] = CgroupSnapshot.NO_VALUE;
+		}
+		if(memoryStatFiles[slot] != null) {
+			try {
+				cursor.reset(reader.read(memoryStatFiles[slot], buffer));
+				parseKeyed(cursor, MEMORY_STAT_KEYS, MEMORY_STAT_VALUES, null, slot);
+			} catch (IOException e) {
+				memoryStatFiles[slot] = null;
+			}
+		}
+
+		for(int field : IO_STAT_FIELDS) {
+			counters.current(field)[slot] = 0;
+		}
+		if(ioStatFiles[slot] != null) {
+			try {
+				cursor.reset(reader.read(ioStatFiles[slot], buffer));
+				parseIoStat(cursor, slot);
+			} catch (IOException e) {
+				ioStatFiles[slot] = null;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Parses "key value" lines. Values of the keys are stored as counters if
+	 * a counter table is given, as memory values otherwise. Parsing stops as
+	 * soon as all keys are found.
+	 */
+	private void parseKeyed(ByteCursor cursor, byte[][] keys, int[] fields,
+	                        DeviceCounterTable table, int slot) {
+		int found = 0;
+		while(found < keys.length && cursor.hasRemaining()) {
+			for(int key = 0; key < keys.length; key++) {
+				if(cursor.startsWith(keys[key])) {
+					cursor.skip(keys[key].length);
+					long value = cursor.nextLong();
+					if(table != null) {
+						table.current(fields[key])[slot] = value == ByteCursor.NO_VALUE ? 0 : value;
+					} else {
+						values[fields[key]][slot] = value;
+					}
+					found++;
+					break;
+				}
+			}
+
+			cursor.skipLine();
+		}
+	}
+
+
+	/**
+	 * Sums "io.stat" counters of all devices, lines in the format of
+	 * "8:0 rbytes=1 wbytes=2 rios=3 wios=4 dbytes=0 dios=0".
+	 */
+	private void parseIoStat(ByteCursor cursor, int slot) {
+		while(cursor.hasRemaining()) {
+			//  Device numbers.
+			cursor.skipToken();
+			cursor.skipBlanks();
+
+			while(!cursor.isEndOfLine()) {
+				int key = 0;
+				while(key < IO_STAT_KEYS.length && !cursor.startsWith(IO_STAT_KEYS[key])) {
+					key++;
+				}
+
+				if(key < IO_STAT_KEYS.length) {
+					cursor.skip(IO_STAT_KEYS[key].length);
+					long value = cursor.nextLong();
+					if(value != ByteCursor.NO_VALUE) {
+						counters.current(IO_STAT_FIELDS[key])[slot] += value;
+					}
+				}
+				cursor.skipToken();
+				cursor.skipBlanks();
+			}
+
+			cursor.skipLine();
+		}
+	}
+
+
+	private void calculateRates(int slot, float seconds) {
+		if(fresh[slot] || seconds <= 0) {
+			counters.clearRates(slot);
+			counters.advance(slot);
+			fresh[slot] = false;
+			return;
+		}
+
+		long periods = counters.delta(NR_PERIODS, slot);
+
+		counters.rates(CgroupSnapshot.CPU_USAGE)[slot] =
+				counters.delta(USAGE_USEC, slot) / MICROS_PER_SECOND / seconds;
+		counters.rates(CgroupSnapshot.CPU_THROTTLED_RATIO)[slot] = periods == 0
+				? 0.0f
+				: (float)counters.delta(NR_THROTTLED, slot) / periods;
+		counters.rates(CgroupSnapshot.CPU_THROTTLED_TIME)[slot] =
+				counters.delta(THROTTLED_USEC, slot) / MICROS_PER_SECOND / seconds;
+		//  I/O counters are sums over devices, zeroed when "io.stat" cannot
+		//  be read, so they are not monotonic.
+		counters.rates(CgroupSnapshot.READ_BYTES_RATE)[slot] =
+				counters.resettableDelta(READ_BYTES, slot) / seconds;
+		counters.rates(CgroupSnapshot.WRITE_BYTES_RATE)[slot] =
+				counters.resettableDelta(WRITE_BYTES, slot) / seconds;
+		counters.rates(CgroupSnapshot.READ_IOPS)[slot] = counters.resettableDelta(READ_IOS, slot) / seconds;
+		counters.rates(CgroupSnapshot.WRITE_IOPS)[slot] = counters.resettableDelta(WRITE_IOS, slot) / seconds;
+
+		counters.advance(slot);
+	}
+
+
+	/**
+	 * Finds the cgroup v2 hierarchy, either mounted directly at SYS_PATH or,
+	 * in the hybrid layout, at its "unified" subdirectory.
+	 * @return Root of the hierarchy or null if there is none.
+	 */
+	private File findHierarchy() {
+		if(new File(sysDir, CONTROLLERS_FILE).exists()) {
+			return sysDir;
+		}
+
+		File hybrid = new File(sysDir, HYBRID_DIR);
+		if(new File(hybrid, CONTROLLERS_FILE).exists()) {
+			return hybrid;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return True if a cgroup v2 hierarchy was found, otherwise the table
+	 * stays empty.
+	 */
+	public boolean isAvailable() {
+		return hierarchyDir != null;
+	}
+
+	private File directoryOf(String path) {
+		return ROOT_PATH.equals(path) ? hierarchyDir : new File(hierarchyDir, path.substring(1));
+	}
+
+
+	private int allocateSlot(String path, File dir) {
+		int slot;
+		if(freeSlotCount > 0) {
+			slot = freeSlots[--freeSlotCount];
+		} else {
+			if(slotCount == paths.length) {
+				grow(paths.length * 2);
+			}
+			slot = slotCount++;
+		}
+
+		paths[slot] = path;
+		cpuStatFiles[slot] = new File(dir, "cpu.stat");
+		memoryCurrentFiles[slot] = null;
+		memoryStatFiles[slot] = null;
+		ioStatFiles[slot] = null;
+		findOptionalFiles(slot, dir);
+		for(int field = 0; field < FIELD_COUNT; field++) {
+			counters.current(field)[slot] = 0;
+			counters.previous(field)[slot] = 0;
+		}
+		fresh[slot] = true;
+		slotsByPath.put(path, slot);
+
+		return slot;
+	}
+
+	/**
+	 * Looks up files of controllers that are enabled for some cgroups only,
+	 * e.g. none of them are present in the root cgroup.
+	 */
+	private void findOptionalFiles(int slot, File dir) {
+		if(memoryCurrentFiles[slot] == null) {
+			memoryCurrentFiles[slot] = existing(new File(dir, "memory.current"));
+		}
+		if(memoryStatFiles[slot] == null) {
+			memoryStatFiles[slot] = existing(new File(dir, "memory.stat"));
+		}
+		if(ioStatFiles[slot] == null) {
+			ioStatFiles[slot] = existing(new File(dir, "io.stat"));
+		}
+	}
+
+	private void freeSlot(int slot) {
+		slotsByPath.remove(paths[slot]);
+		evict(cpuStatFiles[slot]);
+		evict(memoryCurrentFiles[slot]);
+		evict(memoryStatFiles[slot]);
+		evict(ioStatFiles[slot]);
+
+		paths[slot] = null;
+		cpuStatFiles[slot] = null;
+		memoryCurrentFiles[slot] = null;
+		memoryStatFiles[slot] = null;
+		ioStatFiles[slot] = null;
+
+		if(freeSlotCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	private void grow(int capacity) {
+		paths = Arrays.copyOf(paths, capacity);
+		cpuStatFiles = Arrays.copyOf(cpuStatFiles, capacity);
+		memoryCurrentFiles = Arrays.copyOf(memoryCurrentFiles, capacity);
+		memoryStatFiles = Arrays.copyOf(memoryStatFiles, capacity);
+		ioStatFiles = Arrays.copyOf(ioStatFiles, capacity);
+		fresh = Arrays.copyOf(fresh, capacity);
+		readOk = Arrays.copyOf(readOk, capacity);
+		for(int value = 0; value < CgroupSnapshot.VALUE_COUNT; value++) {
+			values[value] = Arrays.copyOf(values[value], capacity);
+		}
+		counters.ensureCapacity(capacity);
+	}
+
+	private void evict(File file) {
+		if(file != null) {
+			reader.evict(file);
+		}
+	}
+
+	private static File existing(File file) {
+		return file.exists() ? file : null;
+	}
+
+	private static byte[] bytes(String key) {
+		return key.getBytes(StandardCharsets.US_ASCII);
+	}
+
+
+	/**
+	 * Stops the worker threads and closes all cached file handles.
+	 */
+	@Override
+	public void close() {
+		if(pool != null) {
+			pool.shutdownNow();
+		}
+		reader.clear();
+	}
+
+
+	/**
+	 * Returns the result of the most recent pass.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public CgroupSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return Directory of the cgroup v2 hierarchy found by the latest
+	 * refresh().
+	 */
+	public File getHierarchyDir() {
+		return hierarchyDir;
+	}
+
+	/**
+	 * @return Number of threads reading cgroup files.
+	 */
+	public int getParallelism() {
+		return workers.size();
+	}
+
+
+	@Override
+	public String toString() {
+		return toString(10);
+	}
+
+	/**
+	 * @param count Number of cgroups listed.
+	 * @return Cgroups using the most CPU time, the busiest first.
+	 */
+	public String toString(int count) {
+		CgroupSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("Cgroups: ").append(current.getCgroupCount())
+				.append(System.lineSeparator());
+
+		for(int index : current.topByCpuUsage(count)) {
+			long memory = current.getValue(CgroupSnapshot.MEMORY_CURRENT, index);
+			sb.append(String.format("%-48s cpu %6.2f  throttled %5.1f%%  mem %10s  read %10.1f kB/s  write %10.1f kB/s",
+					current.getPath(index),
+					current.getRate(CgroupSnapshot.CPU_USAGE, index),
+					current.getRate(CgroupSnapshot.CPU_THROTTLED_RATIO, index) * 100,
+					memory == CgroupSnapshot.NO_VALUE ? "N/A" : (memory / 1024) + " kB",
+					current.getRate(CgroupSnapshot.READ_BYTES_RATE, index) / 1024,
+					current.getRate(CgroupSnapshot.WRITE_BYTES_RATE, index) / 1024))
+					.append(System.lineSeparator());
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cgroup.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Immutable result of a single pass over a cgroup v2 hierarchy. Cgroups are
+ * stored column by column, a cgroup is identified by its index in the
+ * snapshot, 0 to getCgroupCount() - 1.
+ * <p>
+ * Rates are calculated from counters of two consecutive passes, values are
+ * taken from the latest pass as they are.
+ */
+public class CgroupSnapshot {
+
+	/**
+	 * CPU time used per second, in cores, e.g. 2.5 for a cgroup keeping two
+	 * and a half cores busy.
+	 */
+	public static final int CPU_USAGE = 0;
+	/**
+	 * Share of CFS bandwidth periods in which the cgroup was throttled.
+	 */
+	public static final int CPU_THROTTLED_RATIO = 1;
+	/**
+	 * Time the cgroup spent throttled per second.
+	 */
+	public static final int CPU_THROTTLED_TIME = 2;
+	public static final int READ_BYTES_RATE = 3;
+	public static final int WRITE_BYTES_RATE = 4;
+	public static final int READ_IOPS = 5;
+	public static final int WRITE_IOPS = 6;
+	public static final int RATE_COUNT = 7;
+
+	/**
+	 * Memory values in bytes: "memory.current" and fields of "memory.stat".
+	 */
+	public static final int MEMORY_CURRENT = 0;
+	public static final int MEMORY_ANON = 1;
+	public static final int MEMORY_FILE = 2;
+	public static final int MEMORY_SHMEM = 3;
+	public static final int MEMORY_FILE_DIRTY = 4;
+	public static final int VALUE_COUNT = 5;
+
+	/**
+	 * Value of memory fields the cgroup does not report, e.g. when the memory
+	 * controller is not enabled for it.
+	 */
+	public static final long NO_VALUE = -1L;
+
+	private final long timestamp;
+	private final String[] paths;
+	private final float[] rates;
+	private final long[] values;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param paths Paths of the cgroups relative to the hierarchy root, "/"
+	 *              for the root itself.
+	 * @param rates Rates of all cgroups, column after column.
+	 * @param values Values of all cgroups, column after column. The arrays
+	 *               are taken over by the snapshot and must not be modified
+	 *               afterwards.
+	 */
+	public CgroupSnapshot(long timestamp, String[] paths, float[] rates, long[] values) {
+		this.timestamp = timestamp;
+		this.paths = paths;
+		this.rates = rates;
+		this.values = values;
+	}
+
+
+	/**
+	 * @param rate One of the rate constants.
+	 * @param index Index of the cgroup.
+	 * @return Rate of the cgroup, 0 for cgroups that appeared in the latest
+	 * pass.
+	 */
+	public float getRate(int rate, int index) {
+		return rates[rate * paths.length + index];
+	}
+
+	/**
+	 * @param value One of the value constants.
+	 * @param index Index of the cgroup.
+	 * @return Value in bytes or NO_VALUE.
+	 */
+	public long getValue(int value, int index) {
+		return values[value * paths.length + index];
+	}
+
+	/**
+	 * @param path Path of the cgroup relative to the hierarchy root.
+	 * @return Index of the cgroup or -1 if it is not present.
+	 */
+	public int indexOf(String path) {
+		for(int index = 0; index < paths.length; index++) {
+			if(paths[index].equals(path)) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	public String getPath(int index) {
+		return paths[index];
+	}
+
+	public int getCgroupCount() {
+		return paths.length;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+
+	/**
+	 * Finds cgroups using the most CPU time. The root cgroup, which accounts
+	 * for the whole machine, is left out.
+	 * @param count Maximum number of cgroups returned.
+	 * @return Indices of the cgroups, the busiest first.
+	 */
+	public int[] topByCpuUsage(int count) {
+		int cgroupCount = paths.length;
+		int[] top = new int[Math.min(count, cgroupCount)];
+		int size = 0;
+
+		//  Insertion into a short sorted array, count is expected to be small.
+		for(int index = 0; index < cgroupCount; index++) {
+			if("/".equals(paths[index])) {
+				continue;
+			}
+
+			float usage = rates[CPU_USAGE * cgroupCount + index];
+			if(size == top.length && (size == 0 || usage <= rates[CPU_USAGE * cgroupCount + top[size - 1]])) {
+				continue;
+			}
+
+			int position = Math.min(size, top.length - 1);
+			while(position > 0 && rates[CPU_USAGE * cgroupCount + top[position - 1]] < usage) {
+				top[position] = top[position - 1];
+				position--;
+			}
+			top[position] = index;
+			size = Math.min(size + 1, top.length);
+		}
+
+		return Arrays.copyOf(top, size);
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.console;
+
+import com.michalkolos.cpu.ProcStat;
+import com.michalkolos.cpu.data.CpuTimesTable;
+import com.michalkolos.cpu.data.ProcStatSnapshot;
+import com.michalkolos.memory.ProcMeminfo;
+import com.michalkolos.memory.data.MeminfoField;
+import com.michalkolos.memory.data.MeminfoSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * Live terminal view of CPU usage per core, clock frequencies, memory use and
+ * CPU temperature. Usage and memory are read from the latest collector
+ * snapshots, frequencies and temperature are handed over by the tasks that
+ * sample them. Every draw() builds the whole frame in a TerminalScreen,
+ * which writes only the cells that changed since the previous one.
+ * <p>
+ * Cores are laid out in as many columns as the screen width allows, core
+ * rows that do not fit the screen height are cut.
+ */
+public class Dashboard {
+
+	/**
+	 * Rows above the grid of cores.
+	 */
+	public static final int HEADER_ROWS = 3;
+
+	/**
+	 * Width of a core cell: id, usage bar, usage and frequency.
+	 */
+	public static final int CELL_WIDTH = 30;
+
+	private static final int BAR_WIDTH = 20;
+	private static final int CORE_BAR_WIDTH = 10;
+	private static final long BYTES_PER_MIB = 1024L * 1024L;
+
+	private final TerminalScreen screen;
+	private final ProcStat procStat;
+	private final ProcMeminfo procMeminfo;
+
+	/**
+	 * Frequencies in kHz indexed by core number, 0 if unknown.
+	 */
+	private int[] frequencies = new int[0];
+	private int frequencyCount = 0;
+	private float temperature = Float.NaN;
+
+
+	/**
+	 * @param rows Number of rows of the terminal.
+	 * @param columns Number of columns of the terminal.
+	 * @param procStat Source of CPU usage.
+	 * @param procMeminfo Source of memory use.
+	 */
+	public Dashboard(int rows, int columns, ProcStat procStat, ProcMeminfo procMeminfo) {
+		this.screen = new TerminalScreen(rows, columns);
+		this.procStat = procStat;
+		this.procMeminfo = procMeminfo;
+	}
+
+
+	/**
+	 * Copies the latest clock frequencies.
+	 * @param frequencies Frequencies in kHz indexed by core number, 0 if
+	 *                    unknown, see CpuFrequency.sampleAll().
+	 * @param count Number of valid elements.
+	 */
+	public void updateFrequencies(int[] frequencies, int count) {
+		if(this.frequencies.length < count) {
+			this.frequencies = Arrays.copyOf(this.frequencies, count);
+		}
+		System.arraycopy(frequencies, 0, this.frequencies, 0, count);
+		this.frequencyCount = count;
+	}
+
+	/**
+	 * @param celsius Latest CPU temperature, NaN if unknown.
+	 */
+	public void updateTemperature(float celsius) {
+		this.temperature = celsius;
+	}
+
+
+	/**
+	 * Builds the current frame and draws its changes.
+	 * @param out Terminal output.
+	 * @return Number of bytes written.
+	 * @throws IOException When the output cannot be written.
+	 */
+	public int draw(OutputStream out) throws IOException {
+		render();
+		return screen.flush(out);
+	}
+
+	/**
+	 * Restores the terminal, see TerminalScreen.release().
+	 * @param out Terminal output.
+	 * @throws IOException When the output cannot be written.
+	 */
+	public void release(OutputStream out) throws IOException {
+		screen.release(out);
+	}
+
+	public TerminalScreen getScreen() {
+		return screen;
+	}
+
+
+	private void render() {
+		ProcStatSnapshot stat = procStat.getSnapshot();
+		MeminfoSnapshot meminfo = procMeminfo.getSnapshot();
+		screen.clear();
+
+		renderCpu(stat);
+		renderMemory(stat, meminfo);
+		renderCores(stat);
+	}
+
+	private void renderCpu(ProcStatSnapshot stat) {
+		int row = CpuTimesTable.TOTAL_ROW;
+		int column = screen.print(0, 0, "CPU  ");
+		column = screen.printBar(0, column, BAR_WIDTH, stat.getUsage(CpuTimesTable.TOTAL_USAGE, row));
+		column = printPercent(0, column + 1, stat.getUsage(CpuTimesTable.TOTAL_USAGE, row));
+
+		column = screen.print(0, column + 2, "user ");
+		column = printPercent(0, column, stat.getUsage(CpuTimesTable.USER_USAGE, row));
+		column = screen.print(0, column + 2, "sys ");
+		column = printPercent(0, column, stat.getUsage(CpuTimesTable.SYSTEM_USAGE, row));
+		column = screen.print(0, column + 2, "I/O ");
+		column = printPercent(0, column, stat.getUsage(CpuTimesTable.IO_USAGE, row));
+		column = screen.print(0, column + 2, "irq ");
+		column = printPercent(0, column, stat.getUsage(CpuTimesTable.HARD_IRQ_USAGE, row));
+		column = screen.print(0, column + 2, "softirq ");
+		printPercent(0, column, stat.getUsage(CpuTimesTable.SOFT_IRQ_USAGE, row));
+	}
+
+	private void renderMemory(ProcStatSnapshot stat, MeminfoSnapshot meminfo) {
+		int column = screen.print(1, 0, "Mem  ");
+		column = screen.printBar(1, column, BAR_WIDTH, meminfo.getUsedRatio());
+		column = printPercent(1, column + 1, meminfo.getUsedRatio());
+
+		long used = meminfo.getUsedBytes();
+		long total = meminfo.get(MeminfoField.MEM_TOTAL);
+		column = screen.print(1, column + 2, "used ");
+		column = printMebibytes(1, column, used);
+		column = screen.print(1, column, " of ");
+		column = printMebibytes(1, column, total);
+		column = screen.print(1, column, " MiB");
+
+		column = screen.print(1, column + 3, "temp ");
+		column = screen.printFloat(1, column, 5, temperature, 1);
+		column = screen.print(1, column, " C");
+
+		column = screen.print(1, column + 3, "running ");
+		column = screen.printFixed(1, column, 4, stat.getProcessesRunning(), 0);
+		column = screen.print(1, column + 2, "blocked ");
+		screen.printFixed(1, column, 4, stat.getProcessesBlockedOnIo(), 0);
+	}
+
+	private void renderCores(ProcStatSnapshot stat) {
+		int cores = stat.getCpuCoresCount();
+		if(cores == 0) {
+			return;
+		}
+
+		int column = screen.print(2, 0, "Cores ");
+		column = screen.printFixed(2, column, 4, cores, 0);
+		column = screen.print(2, column, "  online ");
+		screen.printFixed(2, column, 4, stat.getOnlineCoresCount(), 0);
+
+		int cellColumns = Math.max(1, screen.getColumns() / CELL_WIDTH);
+		int gridRows = (cores + cellColumns - 1) / cellColumns;
+		for(int core = 0; core < cores; core++) {
+			renderCore(stat, core, HEADER_ROWS + core % gridRows, core / gridRows * CELL_WIDTH);
+		}
+	}
+
+	/**
+	 * Core cell: "id [bar] usage% MHz".
+	 */
+	private void renderCore(ProcStatSnapshot stat, int core, int row, int column) {
+		int rowIndex = CpuTimesTable.coreRow(core);
+		column = screen.printFixed(row, column, 3, core, 0);
+		column = screen.print(row, column + 1, '[');
+
+		if(!stat.isOnline(rowIndex)) {
+			column = screen.print(row, column, "offline");
+			screen.print(row, column + CORE_BAR_WIDTH - 7, ']');
+			return;
+		}
+
+		float usage = stat.getUsage(CpuTimesTable.TOTAL_USAGE, rowIndex);
+		column = screen.printBar(row, column, CORE_BAR_WIDTH, usage);
+		column = screen.print(row, column, ']');
+		column = printPercent(row, column + 1, usage);
+
+		int frequency = core < frequencyCount ? frequencies[core] : 0;
+		if(frequency > 0) {
+			screen.printFixed(row, column + 1, 5, frequency / 1000, 0);
+		}
+	}
+
+
+	/**
+	 * Prints a ratio as "xx.x%", 6 columns wide.
+	 */
+	private int printPercent(int row, int column, float ratio) {
+		column = screen.printFloat(row, column, 5, ratio * 100.0f, 1);
+		return screen.print(row, column, '%');
+	}
+
+	private int printMebibytes(int row, int column, long bytes) {
+		if(bytes == MeminfoSnapshot.NO_VALUE) {
+			return screen.printRepeated(row, column, 7, '-');
+		}
+		return screen.printFixed(row, column, 7, bytes / BYTES_PER_MIB, 0);
+	}
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.console;
+
+import com.michalkolos.utils.FixedPoint;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * Grid of character cells drawn on an ANSI terminal. The content of a frame
+ * is put into the grid with the print methods, flush() then compares it with
+ * the frame on the terminal and writes only the cells that changed, each run
+ * of them after a cursor move. Numbers are formatted straight into the grid
+ * and escape sequences into a reused byte buffer, so frames with the same
+ * layout allocate nothing.
+ * <p>
+ * Cells hold printable ASCII only, other chars are shown as '?'. Not thread
+ * safe, a frame is built and flushed by one thread.
+ */
+public class TerminalScreen {
+
+	private static final byte ESC = 0x1B;
+
+	/**
+	 * Runs of changed cells separated by fewer unchanged cells than this are
+	 * written as one run, rewriting the cells is cheaper than a cursor move.
+	 */
+	private static final int MERGE_GAP = 8;
+
+	private int rows;
+	private int columns;
+
+	/**
+	 * Frame being built and frame shown on the terminal, row by row.
+	 */
+	private char[] cells;
+	private char[] shown;
+
+	/**
+	 * True if the terminal has to be cleared and redrawn by the next flush.
+	 */
+	private boolean invalid = true;
+
+	private byte[] bytes = new byte[4096];
+	private int length = 0;
+
+
+	/**
+	 * @param rows Number of rows of the terminal.
+	 * @param columns Number of columns of the terminal.
+	 */
+	public TerminalScreen(int rows, int columns) {
+		resize(rows, columns);
+	}
+
+
+	/**
+	 * Changes the size of the grid, the next flush redraws the whole screen.
+	 * @param rows Number of rows of the terminal.
+	 * @param columns Number of columns of the terminal.
+	 */
+	public void resize(int rows, int columns) {
+		if(rows <= 0 || columns <= 0) {
+			throw new IllegalArgumentException("Invalid screen size " + rows + "x" + columns + ".");
+		}
+
+		this.rows = rows;
+		this.columns = columns;
+		this.cells = new char[rows * columns];
+		this.shown = new char[rows * columns];
+		Arrays.fill(cells, ' ');
+		invalidate();
+	}
+
+	/**
+	 * Makes the next flush clear the terminal and redraw every cell, e.g.
+	 * after something else was printed over the screen.
+	 */
+	public void invalidate() {
+		invalid = true;
+	}
+
+	/**
+	 * Fills the grid with spaces, so a frame can be built from scratch.
+	 */
+	public void clear() {
+		Arrays.fill(cells, ' ');
+	}
+
+
+	/**
+	 * Puts text into the grid. Text reaching past the end of the row is cut.
+	 * @param row Row index counting from 0.
+	 * @param column Column of the first char.
+	 * @param text Text to be put.
+	 * @return Column following the text.
+	 */
+	public int print(int row, int column, CharSequence text) {
+		if(row < 0 || row >= rows) {
+			return column + text.length();
+		}
+
+		int base = row * columns;
+		for(int i = 0; i < text.length(); i++) {
+			int col = column + i;
+			if(col >= 0 && col < columns) {
+				cells[base + col] = printable(text.charAt(i));
+			}
+		}
+
+		return column + text.length();
+	}
+
+	/**
+	 * Puts a single char into the grid.
+	 * @param row Row index counting from 0.
+	 * @param column Column of the char.
+	 * @param c Char to be put.
+	 * @return Column following the char.
+	 */
+	public int print(int row, int column, char c) {
+		if(row >= 0 && row < rows && column >= 0 && column < columns) {
+			cells[row * columns + column] = printable(c);
+		}
+
+		return column + 1;
+	}
+
+	/**
+	 * Puts a fixed point number right aligned in a field. Numbers that do not
+	 * fit the field are shown as a field of '#' chars.
+	 * @param row Row index counting from 0.
+	 * @param column Column the field starts at.
+	 * @param width Width of the field.
+	 * @param unscaledValue Value multiplied by 10^fractionDigits.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @return Column following the field.
+	 */
+	public int printFixed(int row, int column, int width, long unscaledValue, int fractionDigits) {
+		if(row < 0 || row >= rows || column < 0 || column + width > columns) {
+			return column + width;
+		}
+
+		int offset = row * columns + column;
+		if(unscaledValue == Long.MIN_VALUE
+				|| FixedPoint.length(unscaledValue, fractionDigits) > width) {
+			Arrays.fill(cells, offset, offset + width, '#');
+		} else {
+			FixedPoint.format(cells, offset, unscaledValue, fractionDigits, width, ' ');
+		}
+
+		return column + width;
+	}
+
+	/**
+	 * Puts a float rounded to a given number of fraction digits right aligned
+	 * in a field, see printFixed().
+	 * @param row Row index counting from 0.
+	 * @param column Column the field starts at.
+	 * @param width Width of the field.
+	 * @param value Value to be put, NaN is shown as a field of '-' chars.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @return Column following the field.
+	 */
+	public int printFloat(int row, int column, int width, float value, int fractionDigits) {
+		if(Float.isNaN(value)) {
+			return printRepeated(row, column, width, '-');
+		}
+
+		return printFixed(row, column, width, FixedPoint.scale(value, fractionDigits), fractionDigits);
+	}
+
+	/**
+	 * Puts a horizontal bar filled in proportion to a ratio.
+	 * @param row Row index counting from 0.
+	 * @param column Column the bar starts at.
+	 * @param width Width of the bar.
+	 * @param ratio Filled part of the bar, 0 to 1.
+	 * @return Column following the bar.
+	 */
+	public int printBar(int row, int column, int width, float ratio) {
+		int filled = Float.isNaN(ratio) ? 0 : Math.round(Math.min(Math.max(ratio, 0.0f), 1.0f) * width);
+		printRepeated(row, column, filled, '|');
+
+		return printRepeated(row, column + filled, width - filled, ' ');
+	}
+
+	/**
+	 * Puts a run of the same char.
+	 * @param row Row index counting from 0.
+	 * @param column Column the run starts at.
+	 * @param count Length of the run.
+	 * @param c Char to be repeated.
+	 * @return Column following the run.
+	 */
+	public int printRepeated(int row, int column, int count, char c) {
+		for(int i = 0; i < count; i++) {
+			print(row, column + i, c);
+		}
+
+		return column + count;
+	}
+
+
+	/**
+	 * Writes the cells that differ from the frame on the terminal, or the
+	 * whole frame after invalidate().
+	 * @param out Terminal output, written with a single call.
+	 * @return Number of bytes written.
+	 * @throws IOException When the output cannot be written.
+	 */
+	public int flush(OutputStream out) throws IOException {
+		length = 0;
+
+		if(invalid) {
+			//  Hides the cursor and clears the screen, blank cells need no
+			//  drawing afterwards.
+			writeAscii("\u001B[?25l\u001B[2J");
+			Arrays.fill(shown, ' ');
+			invalid = false;
+		}
+
+		for(int row = 0; row < rows; row++) {
+			flushRow(row);
+		}
+
+		if(length > 0) {
+			out.write(bytes, 0, length);
+			out.flush();
+		}
+
+		return length;
+	}
+
+	private void flushRow(int row) {
+		int base = row * columns;
+		int column = nextChange(base, 0);
+
+		while(column < columns) {
+			//  Extends the run over short gaps of unchanged cells.
+			int lastChanged = column;
+			int next = nextChange(base, column + 1);
+			while(next < columns && next - lastChanged <= MERGE_GAP) {
+				lastChanged = next;
+				next = nextChange(base, next + 1);
+			}
+
+			moveCursor(row, column);
+			ensureCapacity(lastChanged + 1 - column);
+			for(int i = base + column; i <= base + lastChanged; i++) {
+				bytes[length++] = (byte)cells[i];
+			}
+			System.arraycopy(cells, base + column, shown, base + column, lastChanged + 1 - column);
+
+			column = next;
+		}
+	}
+
+	/**
+	 * Finds the first cell of a row that differs from the terminal, unchanged
+	 * stretches are skipped by the vectorized Arrays.mismatch().
+	 * @return Column of the cell or the number of columns if there is none.
+	 */
+	private int nextChange(int base, int column) {
+		if(column >= columns) {
+			return columns;
+		}
+
+		int mismatch = Arrays.mismatch(cells, base + column, base + columns,
+				shown, base + column, base + columns);
+		return mismatch < 0 ? columns : column + mismatch;
+	}
+
+	/**
+	 * Restores the cursor and moves it below the screen, so the terminal can
+	 * be used again.
+	 * @param out Terminal output.
+	 * @throws IOException When the output cannot be written.
+	 */
+	public void release(OutputStream out) throws IOException {
+		length = 0;
+		moveCursor(rows, 0);
+		writeAscii("\u001B[?25h\n");
+		out.write(bytes, 0, length);
+		out.flush();
+		invalidate();
+	}
+
+
+	public int getRows() {
+		return rows;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * @return Char of a given cell of the frame being built.
+	 */
+	public char getCell(int row, int column) {
+		return cells[row * columns + column];
+	}
+
+
+	/**
+	 * Writes "ESC [ row ; column H", positions are counted from 1.
+	 */
+	private void moveCursor(int row, int column) {
+		ensureCapacity(16);
+		bytes[length++] = ESC;
+		bytes[length++] = '[';
+		writeInt(row + 1);
+		bytes[length++] = ';';
+		writeInt(column + 1);
+		bytes[length++] = 'H';
+	}
+
+	private void writeInt(int value) {
+		if(value >= 10) {
+			writeInt(value / 10);
+		}
+		bytes[length++] = (byte)('0' + value % 10);
+	}
+
+	private void writeAscii(String text) {
+		ensureCapacity(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			bytes[length++] = (byte)text.charAt(i);
+		}
+	}
+
+	private void ensureCapacity(int count) {
+		if(length + count > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		}
+	}
+
+	private static char printable(char c) {
+		return c >= ' ' && c < 0x7F ? c : '?';
+	}
+}
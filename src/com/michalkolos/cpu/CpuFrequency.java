@@ -4,11 +4,15 @@
 
 package com.michalkolos.cpu;
 
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.utils.FixedPoint;
 import com.michalkolos.utils.Utils;
 
 import java.io.*;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -17,8 +21,10 @@ import java.util.stream.Collectors;
  * Provides CPU clock frequencies per core. The data is gathered from files located in
  * /sys/devices directory. Continuously updated frequency value represented in MHz
  * can be read from "/sys/devices/system/cpu/cpu##/cpufreq/scaling_cur_freq" files.
+ * Files are read through a SmallFileReader that keeps them open between
+ * readings.
  */
-public class CpuFrequency {
+public class CpuFrequency implements Closeable {
 
 	public static final String SYS_PATH = "/sys/devices/system/cpu";
 	public static final String FREQ_FILE_PATH_PART = "/cpufreq/scaling_cur_freq";
@@ -28,9 +34,32 @@ public class CpuFrequency {
 	 */
 	private final List<File> coreFreqFiles;
 
+	private final SmallFileReader reader;
+
+	private final File cpuDir;
+
 
 
 	public CpuFrequency() throws IOException {
+		this(SmallFileReader.getShared());
+	}
+
+	/**
+	 * @param reader Reader used for all the frequency files.
+	 * @throws IOException Thrown when "/sys/devices/system/cpu" is inaccessible.
+	 */
+	public CpuFrequency(SmallFileReader reader) throws IOException {
+		this(SystemRoot.DEFAULT, reader);
+	}
+
+	/**
+	 * @param root Root the "/sys/devices/system/cpu" directory is looked up in.
+	 * @param reader Reader used for all the frequency files.
+	 * @throws IOException Thrown when "/sys/devices/system/cpu" is inaccessible.
+	 */
+	public CpuFrequency(SystemRoot root, SmallFileReader reader) throws IOException {
+		this.reader = reader;
+		this.cpuDir = root.resolve(SYS_PATH);
 
 		this.coreFreqFiles = scanCoreDirs().stream()
 				.map(dir -> new File(dir.getAbsolutePath() + FREQ_FILE_PATH_PART))
@@ -41,18 +70,22 @@ public class CpuFrequency {
 	/**
 	 * Scans "/sys/devices/system/cpu" directory for matching folders that
 	 * represent logical cores of the CPU.
-	 * @return List of File objects representing individual CPU core folders.
+	 * @return List of File objects representing individual CPU core folders,
+	 * ordered by core number.
 	 * @throws IOException Thrown when "/sys/devices/system/cpu" is inaccessible.
 	 */
 	private List<File> scanCoreDirs() throws IOException {
 		FileFilter filter = file -> file.isDirectory() && file.getName().matches("cpu[0-9]+");
 
-		File dirFile = new File(SYS_PATH);
-		if (!dirFile.exists() || !dirFile.isDirectory()) {
-			throw new IOException("Cannot access " + SYS_PATH + " directory.");
+		if (!cpuDir.exists() || !cpuDir.isDirectory()) {
+			throw new IOException("Cannot access " + cpuDir.getPath() + " directory.");
 		}
 
-		return Utils.listDirectoryFiles(dirFile, filter);
+		//  Directory listing order is arbitrary, list index has to match the
+		//  core number.
+		return Utils.listDirectoryFiles(cpuDir, filter).stream()
+				.sorted(Comparator.comparingInt(dir -> Integer.parseInt(dir.getName().substring(3))))
+				.collect(Collectors.toList());
 	}
 
 
@@ -84,31 +117,114 @@ public class CpuFrequency {
 	 * Optional if data cannot be read or core number is invalid.
 	 */
 	public Optional<Float> getCoreFrequencyOptional(int coreNo) {
-		return Optional.ofNullable(coreFreqFiles.get(coreNo))
-				.flatMap(Utils::extractStringFromFileOptional)
-				.map(Float::parseFloat);
+		if(coreNo < 0 || coreNo >= coreFreqFiles.size()) {
+			return Optional.empty();
+		}
+
+		long frequency = readCoreFrequency(coreNo);
+		return frequency == ByteCursor.NO_VALUE
+				? Optional.empty()
+				: Optional.of((float)frequency);
+	}
+
+
+	/**
+	 * Reads current clock frequencies of all logical cores in one pass. Open
+	 * file handles and read buffers of the SmallFileReader are reused, values
+	 * are parsed straight from the bytes, so nothing is allocated.
+	 * @param frequencies Array to be filled with frequencies in kHz, indexed by
+	 *                    core number. Cores whose data cannot be read are set
+	 *                    to 0.
+	 * @return Number of array elements that were filled, that is the smaller of
+	 * the number of cores and the array length.
+	 */
+	public int sampleAll(int[] frequencies) {
+		int count = Math.min(frequencies.length, coreFreqFiles.size());
+
+		for(int i = 0; i < count; i++) {
+			long frequency = readCoreFrequency(i);
+			frequencies[i] = frequency == ByteCursor.NO_VALUE ? 0 : (int)frequency;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Reads current clock frequencies of all logical cores in one pass.
+	 * @param frequencies Array to be filled with frequencies in MHz, indexed by
+	 *                    core number. Cores whose data cannot be read are set
+	 *                    to 0.
+	 * @return Number of array elements that were filled.
+	 */
+	public int sampleAll(float[] frequencies) {
+		int count = Math.min(frequencies.length, coreFreqFiles.size());
+
+		for(int i = 0; i < count; i++) {
+			long frequency = readCoreFrequency(i);
+			frequencies[i] = frequency == ByteCursor.NO_VALUE ? 0F : frequency / 1000F;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Re-reads frequency file of a given core.
+	 * @param coreNo CPU core id number counting from 0.
+	 * @return Frequency in kHz or ByteCursor.NO_VALUE if it cannot be read.
+	 */
+	private long readCoreFrequency(int coreNo) {
+		return reader.readLong(coreFreqFiles.get(coreNo));
+	}
+
+
+	/**
+	 * Drops the frequency files from the reader's cache of open files.
+	 */
+	@Override
+	public void close() {
+		coreFreqFiles.forEach(reader::evict);
 	}
 
 
 	public String toStringCore(int coreNo) {
+		long frequency = coreNo < 0 || coreNo >= coreFreqFiles.size()
+				? ByteCursor.NO_VALUE
+				: readCoreFrequency(coreNo);
+
+		return appendCore(new StringBuilder(24), coreNo, frequency).toString();
+	}
+
+	/**
+	 * Appends a line with the frequency of a core in MHz, with as many
+	 * fraction digits as the kHz value needs but at least one.
+	 * @param frequency Frequency in kHz, 0 or ByteCursor.NO_VALUE if unknown.
+	 */
+	private static StringBuilder appendCore(StringBuilder sb, int coreNo, long frequency) {
+		sb.append("CPU").append(coreNo).append(": ");
+		if(frequency <= 0) {
+			sb.append("NULL ");
+		} else {
+			int fractionDigits = 3;
+			while(fractionDigits > 1 && frequency % 10 == 0) {
+				frequency /= 10;
+				fractionDigits--;
+			}
+			FixedPoint.append(sb, frequency, fractionDigits, 0, ' ');
+		}
 
-		return "CPU" +
-				coreNo +
-				": " +
-				getCoreFrequencyOptional(coreNo)
-						.map(freq -> freq / 1000)
-						.map(Objects::toString)
-						.orElse("NULL ") +
-				" MHz" +
-				System.lineSeparator();
+		return sb.append(" MHz").append(System.lineSeparator());
 	}
 
 
 	public String toString() {
-		StringBuilder sb = new StringBuilder();
+		int[] frequencies = new int[coreFreqFiles.size()];
+		sampleAll(frequencies);
 
-		for(int i = 0; i < coreFreqFiles.size(); i++) {
-			sb.append(toStringCore(i));
+		StringBuilder sb = new StringBuilder(24 * frequencies.length);
+		for(int i = 0; i < frequencies.length; i++) {
+			appendCore(sb, i, frequencies[i]);
 		}
 
 		return sb.toString();
@@ -5,7 +5,8 @@
 package com.michalkolos.cpu;
 
 import com.michalkolos.hwmon.Hwmon;
-import com.michalkolos.utils.Utils;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.SmallFileReader;
 import java.io.*;
 import java.util.List;
 import java.util.Optional;
@@ -25,12 +26,21 @@ public class CpuTemp {
 	 */
 	public static final String[] THERMAL_FIELDS = {"temp1_input"};
 
-	private final Hwmon hwmon = new Hwmon();
+	private final Hwmon hwmon;
 	private final File tempField;
 
 
 
 	public CpuTemp() throws IOException {
+		this(new Hwmon());
+	}
+
+	/**
+	 * @param hwmon Hwmon API the temperature file will be searched in.
+	 * @throws IOException Thrown when no known temperature file is available.
+	 */
+	public CpuTemp(Hwmon hwmon) throws IOException {
+		this.hwmon = hwmon;
 		tempField = scanTempField(List.of(THERMAL_SUBSYSTEMS), List.of(THERMAL_FIELDS))
 				.orElseThrow(() -> new IOException("Unable to access temperature API."));
 	}
@@ -42,10 +52,11 @@ public class CpuTemp {
 	 * providing the data is inaccessible.
 	 */
 	public Optional<Float> checkTemp() {
+		long milliCelsius = SmallFileReader.getShared().readSignedLong(tempField);
 
-		return Utils.extractStringFromFileOptional(tempField)
-				.map(Float::parseFloat)
-				.map(f->f/1000);
+		return milliCelsius == ByteCursor.NO_SIGNED_VALUE
+				? Optional.empty()
+				: Optional.of(milliCelsius / 1000F);
 	}
 
 
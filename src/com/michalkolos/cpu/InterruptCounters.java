@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cpu;
+
+import com.michalkolos.cpu.data.InterruptSnapshot;
+import com.michalkolos.device.Counters;
+import com.michalkolos.input.ByteCursor;
+
+import java.util.Arrays;
+
+
+/**
+ * Decodes "intr" and "softirq" lines of "/proc/stat" file into reused
+ * primitive arrays and calculates rates between consecutive readings. Used by
+ * ProcStat only when interrupt counters are requested.
+ */
+class InterruptCounters {
+
+	private long[] irqCurrent = new long[0];
+	private long[] irqPrevious = new long[0];
+	private float[] irqRates = new float[0];
+	private int irqCount = 0;
+	private int previousIrqCount = 0;
+	private long total = 0L;
+	private long previousTotal = 0L;
+
+	private long[] softirqCurrent = new long[InterruptSnapshot.SOFTIRQ_NAMES.length];
+	private long[] softirqPrevious = new long[softirqCurrent.length];
+	private final float[] softirqRates = new float[softirqCurrent.length];
+	private int softirqTypeCount = 0;
+	private int previousSoftirqTypeCount = 0;
+	private long softirqTotal = 0L;
+	private long previousSoftirqTotal = 0L;
+
+	private boolean interruptsParsed = false;
+	private boolean softirqsParsed = false;
+	private long previousNanos = 0L;
+
+
+	/**
+	 * Decodes an "intr" line: total followed by a counter per IRQ number.
+	 * @param cursor Cursor placed right after the line's key. It is left at
+	 *               the end of the line.
+	 */
+	void parseInterrupts(ByteCursor cursor) {
+		long value = cursor.nextLong();
+		if(value == ByteCursor.NO_VALUE) {
+			return;
+		}
+		total = value;
+
+		int count = 0;
+		while((value = cursor.nextLong()) != ByteCursor.NO_VALUE) {
+			if(count == irqCurrent.length) {
+				int capacity = Math.max(256, irqCurrent.length * 2);
+				irqCurrent = Arrays.copyOf(irqCurrent, capacity);
+				irqPrevious = Arrays.copyOf(irqPrevious, capacity);
+			}
+			irqCurrent[count++] = value;
+		}
+
+		irqCount = count;
+		interruptsParsed = true;
+	}
+
+	/**
+	 * Decodes a "softirq" line: total followed by a counter per softirq type.
+	 * @param cursor Cursor placed right after the line's key. It is left at
+	 *               the end of the line.
+	 */
+	void parseSoftirqs(ByteCursor cursor) {
+		long value = cursor.nextLong();
+		if(value == ByteCursor.NO_VALUE) {
+			return;
+		}
+		softirqTotal = value;
+
+		int count = 0;
+		while(count < softirqCurrent.length
+				&& (value = cursor.nextLong()) != ByteCursor.NO_VALUE) {
+			softirqCurrent[count++] = value;
+		}
+
+		softirqTypeCount = count;
+		softirqsParsed = true;
+	}
+
+
+	/**
+	 * Calculates rates of the lines parsed since the previous call and makes
+	 * the current counters the previous ones.
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param previous Snapshot of the previous reading.
+	 * @return New snapshot or the previous one if any of the lines was not
+	 * parsed.
+	 */
+	InterruptSnapshot update(long timestamp, InterruptSnapshot previous) {
+		boolean parsed = interruptsParsed && softirqsParsed;
+		interruptsParsed = false;
+		softirqsParsed = false;
+		if(!parsed) {
+			return previous;
+		}
+
+		long nanos = System.nanoTime();
+		float seconds = previousNanos == 0L ? 0.0f : (nanos - previousNanos) / 1e9f;
+		previousNanos = nanos;
+
+		if(irqRates.length < irqCount) {
+			irqRates = new float[irqCurrent.length];
+		}
+		rates(irqCurrent, irqPrevious, irqRates, irqCount, previousIrqCount, seconds);
+		rates(softirqCurrent, softirqPrevious, softirqRates, softirqTypeCount,
+				previousSoftirqTypeCount, seconds);
+
+		InterruptSnapshot snapshot = new InterruptSnapshot(timestamp,
+				total,
+				seconds > 0 ? Counters.delta(previousTotal, total) / seconds : 0.0f,
+				Arrays.copyOf(irqCurrent, irqCount), Arrays.copyOf(irqRates, irqCount),
+				softirqTotal,
+				seconds > 0 ? Counters.delta(previousSoftirqTotal, softirqTotal) / seconds : 0.0f,
+				Arrays.copyOf(softirqCurrent, softirqTypeCount),
+				Arrays.copyOf(softirqRates, softirqTypeCount));
+
+		long[] swapped = irqPrevious;
+		irqPrevious = irqCurrent;
+		irqCurrent = swapped;
+		previousIrqCount = irqCount;
+		previousTotal = total;
+
+		swapped = softirqPrevious;
+		softirqPrevious = softirqCurrent;
+		softirqCurrent = swapped;
+		previousSoftirqTypeCount = softirqTypeCount;
+		previousSoftirqTotal = softirqTotal;
+
+		return snapshot;
+	}
+
+
+	/**
+	 * Fills per second rates of counters. Counters that have no previous
+	 * value, e.g. on the first reading, get rate 0.
+	 */
+	private static void rates(long[] current, long[] previous, float[] rates, int count,
+	                          int previousCount, float seconds) {
+		int known = seconds > 0 ? Math.min(count, previousCount) : 0;
+		for(int i = 0; i < known; i++) {
+			rates[i] = Counters.delta(previous[i], current[i]) / seconds;
+		}
+		Arrays.fill(rates, known, count, 0.0f);
+	}
+}
@@ -4,14 +4,21 @@
 
 package com.michalkolos.cpu;
 
-import com.michalkolos.cpu.data.CpuCoreTimes;
 import com.michalkolos.cpu.data.CpuCoreUsageDetails;
+import com.michalkolos.cpu.data.CpuTimesTable;
+import com.michalkolos.cpu.data.CpuUsageKernel;
+import com.michalkolos.cpu.data.InterruptSnapshot;
+import com.michalkolos.cpu.data.ProcStatSnapshot;
+import com.michalkolos.input.ByteCursor;
 import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.utils.FixedPoint;
+import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 /**
@@ -19,188 +26,353 @@ import java.util.stream.Stream;
  * usage per core, total number of context switches, time of system boot,
  * processes created since boot, processes that are currently running and
  * processes that are blocked by I/O request.
+ * <p>
+ * Cores are tracked by their id, the N of a "cpuN" line, not by the line's
+ * position. Cores that go offline disappear from the file, they keep their
+ * row and are reported as offline until they come back. A core with a higher
+ * id than seen before grows the table without rebuilding the collector. The
+ * first reading of a core that came online has no previous counters to
+ * compare with, so its usage is reported as 0.
+ * <p>
+ * Every parse records where each of the other sections started and which
+ * section followed it. Lines that are not decoded, like the long "intr" line
+ * when per-IRQ counters are not requested, are skipped by their length known
+ * from that index, without looking at most of their bytes. Lines are still
+ * recognized by their keys, so the index never decides what a line is.
  */
-public class ProcStat {
+public class ProcStat implements Closeable {
 
 	/**
 	 * Absolute path to the "proc/stat" file.
 	 */
 	public static final String SYS_FILE_PATH = "/proc/stat";
 
+	/**
+	 * Key of the "cpu" and "cpuN" lines.
+	 */
+	private static final byte[] CPU_KEY = "cpu".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Sections of the file other than "cpu" lines, indexes of SECTION_KEYS.
+	 */
+	private static final int INTR_SECTION = 0;
+	private static final int CTXT_SECTION = 1;
+	private static final int BTIME_SECTION = 2;
+	private static final int PROCESSES_SECTION = 3;
+	private static final int PROCS_RUNNING_SECTION = 4;
+	private static final int PROCS_BLOCKED_SECTION = 5;
+	private static final int SOFTIRQ_SECTION = 6;
+	private static final int SECTION_COUNT = 7;
+	private static final int NO_SECTION = -1;
+
+	/**
+	 * Keys of the sections together with the trailing space.
+	 */
+	private static final byte[][] SECTION_KEYS = {
+			"intr ".getBytes(StandardCharsets.US_ASCII),
+			"ctxt ".getBytes(StandardCharsets.US_ASCII),
+			"btime ".getBytes(StandardCharsets.US_ASCII),
+			"processes ".getBytes(StandardCharsets.US_ASCII),
+			"procs_running ".getBytes(StandardCharsets.US_ASCII),
+			"procs_blocked ".getBytes(StandardCharsets.US_ASCII),
+			"softirq ".getBytes(StandardCharsets.US_ASCII)};
+
+	/**
+	 * Number of bytes a skipped line may shrink by between readings and
+	 * still be skipped without scanning. Lines grow as counters grow, they
+	 * shrink only when some of the counters wrap around.
+	 */
+	private static final int SKIP_SLACK = 64;
+
+	/**
+	 * Highest core id accepted from a "cpuN" line. Bounds the table in case
+	 * of a corrupted line.
+	 */
+	private static final int MAX_CORE_ID = 65535;
+
 	private final LocalFile statFile;
 
 	/**
-	 * Number of logical CPU cores. Calculated by counting rows in stat file
-	 * that start with "cpu##" string.
+	 * Cursor reused for scanning the file contents on every reading.
 	 */
-	private int cpuCoresCount = 0;
+	private final ByteCursor cursor = new ByteCursor();
 
 	/**
-	 * Data for all cores combined measured in previous execution of
-	 * dataAcquisitionLoop() method.
+	 * Number of logical CPU cores the table holds rows for, which is the
+	 * highest core id seen so far plus one.
 	 */
-	private CpuCoreTimes previousTotalTimes;
+	private int cpuCoresCount = 0;
 
 	/**
-	 * Data for individual logical cores measured in previous execution of
-	 * dataAcquisitionLoop() method.
+	 * Counters measured in the current and previous execution of
+	 * dataAcquisition() method together with the usage data calculated from
+	 * them, for all cores combined and for individual logical cores.
 	 */
-	private final List<CpuCoreTimes> previousCoreTimes;
+	private final CpuTimesTable times;
 
 	/**
-	 * Current CPU usage data.
+	 * Calculates usage ratios of the times table.
 	 */
-	private CpuCoreUsageDetails totalCpuUsage;
+	private final CpuUsageKernel usageKernel;
 
 	/**
-	 * Curent usage data per logical core. List index represents core ID number.
+	 * Flags marking which rows of the table had their line in the current
+	 * reading, and which of those lines were successfully parsed.
 	 */
-	private final List<CpuCoreUsageDetails> coreCpuUsage;
+	private boolean[] rowPresent;
+	private boolean[] rowParsed;
 
-	private long contextSwitchesCount = 0;
-	private Instant bootTime = Instant.MIN;
-	private long processesCreated = 0;
-	private long processesRunning = 0;
-	private long processesBlockedOnIo = 0;
+	/**
+	 * Flags marking which rows had a successfully parsed line in the previous
+	 * reading, so their counters can be compared with the current ones.
+	 */
+	private boolean[] rowOnline;
 
+	/**
+	 * Index of the sections built by the previous parse: position of every
+	 * section's line and the section of the line right after it, NO_SECTION
+	 * if that was some other line or the end of the file.
+	 */
+	private final int[] sectionStarts = new int[SECTION_COUNT];
+	private final int[] sectionFollowers = new int[SECTION_COUNT];
 
+	/**
+	 * Values of the single value sections parsed in the current reading.
+	 */
+	private final long[] sectionValues = new long[SECTION_COUNT];
 
-	public ProcStat() throws IOException {
-		this.statFile = new LocalFile(SYS_FILE_PATH);
-		List<String> statFileLines = statFile.readLines();
+	/**
+	 * Result of the most recent reading. Replaced as a whole after every
+	 * reading, so readers on other threads never see a mix of two readings.
+	 */
+	private volatile ProcStatSnapshot snapshot;
 
-		this.cpuCoresCount = countCores(statFileLines);
+	/**
+	 * Decoder of the "intr" and "softirq" lines, null if interrupt counters
+	 * were not requested.
+	 */
+	private final InterruptCounters interruptCounters;
+	private volatile InterruptSnapshot interruptSnapshot;
 
-		this.previousTotalTimes = new CpuCoreTimes();
-		this.previousCoreTimes = Stream.generate(CpuCoreTimes::new)
-				.limit(this.cpuCoresCount)
-				.collect(Collectors.toList());
 
-		this.totalCpuUsage = new CpuCoreUsageDetails();
 
-		this.coreCpuUsage = Stream.generate(CpuCoreUsageDetails::new)
-				.limit(this.cpuCoresCount)
-				.collect(Collectors.toList());
+	public ProcStat() throws IOException {
+		this(SYS_FILE_PATH);
 	}
 
+	/**
+	 * @param root Root the "proc/stat" file is looked up in.
+	 * @throws IOException When the file cannot be read.
+	 */
+	public ProcStat(SystemRoot root) throws IOException {
+		this(root.resolve(SYS_FILE_PATH).getPath());
+	}
 
-	//  TODO: Research core count changing in time on some systems (eg. Android
-	//   phones). https://stackoverflow.com/questions/22405403/android-cpu-cores-reported-in-proc-stat
+	/**
+	 * @param path Path to a file in the "proc/stat" format, e.g. a recorded
+	 *             fixture.
+	 * @throws IOException When the file cannot be read.
+	 */
+	public ProcStat(String path) throws IOException {
+		this(path, false);
+	}
 
+	/**
+	 * @param root Root the "proc/stat" file is looked up in.
+	 * @param interruptCounters True if per-IRQ and per-softirq-type counters
+	 *                          should be collected.
+	 * @throws IOException When the file cannot be read.
+	 */
+	public ProcStat(SystemRoot root, boolean interruptCounters) throws IOException {
+		this(root.resolve(SYS_FILE_PATH).getPath(), interruptCounters);
+	}
 
 	/**
-	 * Calculates number of logical cores by counting rows in stat file that
-	 * start with "cpu##" string.
-	 * @return Number of logical CPU cores.
+	 * @param path Path to a file in the "proc/stat" format, e.g. a recorded
+	 *             fixture.
+	 * @param interruptCounters True if per-IRQ and per-softirq-type counters
+	 *                          should be collected.
+	 * @throws IOException When the file cannot be read.
 	 */
-	private int countCores(List<String> lines) {
-		return (int)Optional.ofNullable(lines).orElse(new ArrayList<>())
-				.stream()
-				.filter((String line) -> line.matches("cpu[0-9]+.*"))
-				.count();
+	public ProcStat(String path, boolean interruptCounters) throws IOException {
+		this.statFile = new LocalFile(path);
+		BitSet onlineCores = findCores(statFile.readBuffer());
+
+		this.cpuCoresCount = onlineCores.length();
+
+		this.times = new CpuTimesTable(this.cpuCoresCount);
+		this.usageKernel = new CpuUsageKernel(this.times);
+		this.rowPresent = new boolean[this.times.getRowCount()];
+		this.rowParsed = new boolean[this.times.getRowCount()];
+
+		//  Cores present at start are compared with zeroed counters on the
+		//  first reading, which gives their usage since boot.
+		this.rowOnline = new boolean[this.times.getRowCount()];
+		this.rowOnline[CpuTimesTable.TOTAL_ROW] = true;
+		for(int core = onlineCores.nextSetBit(0); core >= 0; core = onlineCores.nextSetBit(core + 1)) {
+			this.rowOnline[CpuTimesTable.coreRow(core)] = true;
+		}
+
+		Arrays.fill(this.sectionFollowers, NO_SECTION);
+
+		this.snapshot = new ProcStatSnapshot(0L, this.cpuCoresCount,
+				ProcStatSnapshot.copyUsage(this.times), this.rowOnline.clone(),
+				0L, Instant.MIN, 0L, 0L, 0L);
+
+		this.interruptCounters = interruptCounters ? new InterruptCounters() : null;
+		this.interruptSnapshot = new InterruptSnapshot(0L, 0L, 0.0f, new long[0], new float[0],
+				0L, 0.0f, new long[0], new float[0]);
 	}
 
 
 	/**
-	 * Reads CPU data from appropriate line in the "proc/stat" file.
-	 * @param line One line from the "proc/stat" file begging with "cpu".
-	 * @return Parsed data from every column in the line.
-	 */
-	private Optional<CpuCoreTimes> parseCpuLine(String line) {
-		Optional<CpuCoreTimes> parsedDataOptional = Optional.empty();
-
-		List<String> fields = Arrays.asList(line.split(" +"));
-		if(fields.size() >= 10) {
-			try{
-				CpuCoreTimes parsedData = new CpuCoreTimes();
-
-				parsedData.setUser(Long.parseLong(fields.get(1)));
-				parsedData.setNice(Long.parseLong(fields.get(2)));
-				parsedData.setSystem(Long.parseLong(fields.get(3)));
-				parsedData.setIdle(Long.parseLong(fields.get(4)));
-				parsedData.setIowait(Long.parseLong(fields.get(5)));
-				parsedData.setIrq(Long.parseLong(fields.get(6)));
-				parsedData.setSoftirq(Long.parseLong(fields.get(7)));
-				parsedData.setSteal(Long.parseLong(fields.get(8)));
-				parsedData.setGuest(Long.parseLong(fields.get(9)));
-
-				parsedDataOptional = Optional.of(parsedData);
-			} catch (NumberFormatException e) {
-				e.printStackTrace();
-//				TODO: Logging
+	 * Finds ids of the logical cores listed in the file by their "cpuN"
+	 * lines.
+	 * @param buffer Contents of the file.
+	 * @return Set of the core ids that are online.
+	 */
+	private BitSet findCores(ByteBuffer buffer) {
+		BitSet cores = new BitSet();
+		cursor.reset(buffer);
+
+		while(cursor.hasRemaining()) {
+			int core = parseCoreId(cursor);
+			if(core >= 0) {
+				cores.set(core);
 			}
+			cursor.skipLine();
 		}
 
-		return parsedDataOptional;
+		return cores;
 	}
 
 
 	/**
-	 * Reads value from a single line of "proc/stat" file that golds single name -
-	 * value pair.
-	 * @param line One line from the "proc/stat" file that holds single name -
-	 *             numeric value pair.
-	 * @return  Parsed value.
-	 */
-	private Optional<Long> parseSingleValueLine(String line) {
-		List<String> fields = Arrays.asList(line.split(" "));
-		Long parsedVal = null;
-
-		try {
-			parsedVal = Long.parseLong(fields.get(1));
-		} catch (NumberFormatException e) {
-//			TODO: Logg parsing error.
+	 * Reads the id of a core from a "cpuN" line.
+	 * @param cursor Cursor placed at the beginning of a line. It is left
+	 *               right after the id if one was found.
+	 * @return Core id or -1 if the line is not a valid "cpuN" line.
+	 */
+	private int parseCoreId(ByteCursor cursor) {
+		int position = cursor.getPosition();
+		byte digit = cursor.peek(position + CPU_KEY.length);
+		if(!cursor.startsWith(CPU_KEY) || digit < '0' || digit > '9') {
+			return -1;
+		}
+
+		cursor.skip(CPU_KEY.length);
+		long core = cursor.nextLong();
+		if(core > MAX_CORE_ID) {
+//			TODO: Logging
+			cursor.setPosition(position);
+			return -1;
+		}
+
+		return (int)core;
+	}
+
+
+	/**
+	 * Adds rows for cores up to a given count, when a core with a higher id
+	 * than seen before comes online.
+	 * @param coreCount Number of logical cores the table should hold.
+	 */
+	private void ensureCores(int coreCount) {
+		if(coreCount <= this.cpuCoresCount) {
+			return;
 		}
 
-		return Optional.ofNullable(parsedVal);
+		this.times.grow(coreCount);
+		int rowCount = this.times.getRowCount();
+		this.rowPresent = Arrays.copyOf(this.rowPresent, rowCount);
+		this.rowParsed = Arrays.copyOf(this.rowParsed, rowCount);
+		this.rowOnline = Arrays.copyOf(this.rowOnline, rowCount);
+		this.cpuCoresCount = coreCount;
 	}
 
 
 	/**
-	 * Calculates different usage modes ratios based on raw elapsed time data.
-	 * @param previous Data gathered in the previous execution of the
-	 *                 dataAcquisitionLoop() method.
-	 * @param current Data gathered in the most recent execution of the
-	 *                dataAcquisitionLoop() method.
-	 * @return Object containing all the usage data.
+	 * Reads CPU data from appropriate line in the "proc/stat" file.
+	 * @param cursor Cursor placed at the beginning of a line starting with
+	 *               "cpu", right after the key, or right after the core id.
+	 *               It is left right after the last parsed column.
+	 * @param row Row of the times table that will be filled with parsed data
+	 *            from every column in the line.
+	 * @return True if all the columns were present and parsed.
 	 */
-	private CpuCoreUsageDetails calculateCpuUsage(CpuCoreTimes previous, CpuCoreTimes current) {
+	private boolean parseCpuLine(ByteCursor cursor, int row) {
+		for(int field = 0; field < CpuTimesTable.FIELD_COUNT; field++) {
+			long value = cursor.nextLong();
+			if(value == ByteCursor.NO_VALUE) {
+//				TODO: Logging
+				return false;
+			}
 
-		long previousIdle = previous.getIdle() + previous.getIowait();
-		long currentIdle = current.getIdle() + current.getIowait();
+			times.current(field)[row] = value;
+		}
 
+		return true;
+	}
 
 
-		long previousNonIdle = previous.getUser() + previous.getNice()
-				+ previous.getSystem() + previous.getIrq()
-				+ previous.getSoftirq() + previous.getSteal();
+	/**
+	 * Reads value from a single line of "proc/stat" file that golds single name -
+	 * value pair.
+	 * @param cursor Cursor placed at the beginning of a line that holds single
+	 *               name - numeric value pair.
+	 * @param key Name of the value together with the trailing space.
+	 * @return  Parsed value or ByteCursor.NO_VALUE if it cannot be parsed.
+	 */
+	private long parseSingleValueLine(ByteCursor cursor, byte[] key) {
+		cursor.skip(key.length);
 
-		long currentNonIdle =  current.getUser() + current.getNice()
-				+ current.getSystem() + current.getIrq()
-				+ current.getSoftirq() + current.getSteal();
+//		TODO: Logg parsing error.
+		return cursor.nextLong();
+	}
 
-		long previousTotal = previousIdle + previousNonIdle;
-		long currentTotal = currentIdle + currentNonIdle;
 
-		long totalDifference = currentTotal - previousTotal;
-		long idleDifference = currentIdle - previousIdle;
+	/**
+	 * Recognizes the section of a line by its key.
+	 * @param cursor Cursor placed at the beginning of a line.
+	 * @return One of the section constants or NO_SECTION.
+	 */
+	private int findSection(ByteCursor cursor) {
+		for(int section = 0; section < SECTION_COUNT; section++) {
+			if(cursor.startsWith(SECTION_KEYS[section])) {
+				return section;
+			}
+		}
+
+		return NO_SECTION;
+	}
 
-		CpuCoreUsageDetails usageDetails = new CpuCoreUsageDetails();
-		usageDetails.setTotalUsage((float)(totalDifference - idleDifference)
-				/ totalDifference);
-		usageDetails.setIoUsage((float)(current.getIowait() - previous.getIowait())
-				/ totalDifference);
-		usageDetails.setSystemUsage((float)(current.getSystem() - previous.getSystem())
-				/ totalDifference);
-		usageDetails.setUserUsage((float)(current.getUser() - previous.getUser())
-				/ totalDifference);
-		usageDetails.setHardIrqUsage((float)(current.getIrq() - previous.getIrq())
-				/ totalDifference);
-		usageDetails.setSoftIrqUsage((float)(current.getSoftirq() - previous.getSoftirq())
-				/ totalDifference);
 
+	/**
+	 * Moves the cursor to the end of a section's line. Lines like "intr" hold
+	 * a counter for every IRQ number, thousands on big machines, so instead of
+	 * scanning the line, the cursor jumps close to where it ended in the
+	 * previous reading. The jump is accepted only if the line found there is
+	 * followed by the same section as in the previous reading, otherwise the
+	 * line is scanned.
+	 * @param cursor Cursor placed at the beginning of the line.
+	 * @param previousLength Length of the line in the previous reading, 0 if
+	 *                       unknown.
+	 * @param follower Section that followed the line in the previous reading.
+	 */
+	private void skipSectionLine(ByteCursor cursor, int previousLength, int follower) {
+		int start = cursor.getPosition();
+
+		if(previousLength > 0 && follower != NO_SECTION) {
+			cursor.setPosition(start + Math.max(0, previousLength - SKIP_SLACK));
+			int end = cursor.lineEnd();
+			if(cursor.matchesAt(end + 1, SECTION_KEYS[follower])) {
+				cursor.setPosition(end);
+				return;
+			}
+			cursor.setPosition(start);
+		}
 
-		return usageDetails;
+		cursor.setPosition(cursor.lineEnd());
 	}
 
 
@@ -213,178 +385,351 @@ public class ProcStat {
 	 */
 	public void dataAcquisition() throws IOException{
 
-		List<String> statLines = statFile.readLines();
-		//  Check if stat file contains enough lines:
-		if(statLines.size() < this.cpuCoresCount + 7) { return; }
+		cursor.reset(statFile.readBuffer());
+		Arrays.fill(this.sectionValues, ByteCursor.NO_VALUE);
+		int previousSection = NO_SECTION;
+
+		//  Single pass over the file. Lines are recognized by their keys, all
+		//  the other lines are skipped undecoded.
+		while(cursor.hasRemaining()) {
+			int lineStart = cursor.getPosition();
+			int section = NO_SECTION;
+
+			if(cursor.startsWith(CPU_KEY)) {
+				int row = CpuTimesTable.TOTAL_ROW;
+				if(cursor.peek(lineStart + CPU_KEY.length) == ' ') {
+					//  Total CPU usage.
+					cursor.skip(CPU_KEY.length);
+				} else {
+					//  CPU usage per core, by core id.
+					int core = parseCoreId(cursor);
+					if(core >= 0) {
+						ensureCores(core + 1);
+						row = CpuTimesTable.coreRow(core);
+					} else {
+						row = -1;
+					}
+				}
+
+				if(row >= 0) {
+					this.rowPresent[row] = true;
+					this.rowParsed[row] = parseCpuLine(cursor, row);
+				}
+			} else {
+				section = findSection(cursor);
+			}
 
-		ListIterator<String> linesIterator = statLines.listIterator();
+			if(section != NO_SECTION) {
+				//  Length and follower from the previous parse are taken
+				//  before the index is updated with the current one.
+				int follower = this.sectionFollowers[section];
+				int previousLength = follower != NO_SECTION
+						? this.sectionStarts[follower] - this.sectionStarts[section] - 1
+						: 0;
+				this.sectionStarts[section] = lineStart;
+
+				if(section == INTR_SECTION || section == SOFTIRQ_SECTION) {
+					if(this.interruptCounters == null) {
+						skipSectionLine(cursor, previousLength, follower);
+					} else if(section == INTR_SECTION) {
+						//  Interrupts serviced since boot, total and per IRQ number.
+						cursor.skip(SECTION_KEYS[INTR_SECTION].length);
+						this.interruptCounters.parseInterrupts(cursor);
+					} else {
+						//  Softirqs serviced since boot, total and per type.
+						cursor.skip(SECTION_KEYS[SOFTIRQ_SECTION].length);
+						this.interruptCounters.parseSoftirqs(cursor);
+					}
+				} else {
+					this.sectionValues[section] = parseSingleValueLine(cursor, SECTION_KEYS[section]);
+				}
+			}
 
-		//  Total CPU usage.
-		parseCpuLine(linesIterator.next()).ifPresent(current -> {
-			this. totalCpuUsage = calculateCpuUsage(this.previousTotalTimes, current);
-		});
+			if(previousSection != NO_SECTION) {
+				this.sectionFollowers[previousSection] = section;
+			}
+			previousSection = section;
 
-		//  CPU usage per core.
-		for(int i = 0; i < cpuCoresCount; i++) {
-			Optional<CpuCoreTimes> currentCpuCoreTimes = parseCpuLine(linesIterator.next());
-			if(currentCpuCoreTimes.isPresent()) {
-				this.coreCpuUsage.set(i, calculateCpuUsage(
-						this.previousCoreTimes.get(i), currentCpuCoreTimes.get()));
+			cursor.skipLine();
+		}
 
-				this.previousCoreTimes.set(i, currentCpuCoreTimes.get());			}
+		if(previousSection != NO_SECTION) {
+			this.sectionFollowers[previousSection] = NO_SECTION;
 		}
 
+		if(this.interruptCounters != null) {
+			this.interruptSnapshot = this.interruptCounters.update(
+					System.currentTimeMillis(), this.interruptSnapshot);
+		}
 
-		//  System interrupts section - not recorded.
-		linesIterator.next();
+		//  Usage of all rows is calculated at once, unless some rows have to
+		//  keep their previous data or have no previous data to compare with.
+		boolean allRowsContinued = true;
+		for(int row = 0; row < this.times.getRowCount(); row++) {
+			allRowsContinued &= this.rowParsed[row] && this.rowOnline[row];
+		}
 
-		//  Total number of context switches since boot.
-		parseSingleValueLine(linesIterator.next())
-				.ifPresent((val)->{ this.contextSwitchesCount = val; });
-//		this.contextSwitchesCount = parseSingleValueLine(reader.readLine());
+		if(allRowsContinued) {
+			this.usageKernel.calculateAll();
+		}
 
-		//  Time of boot.
-		parseSingleValueLine(linesIterator.next())
-				.ifPresent((val)->{ this.bootTime = Instant.ofEpochSecond(val); });
-//		long bootTimeEpoch = parseSingleValueLine(reader.readLine());
-//		this.bootTime = Instant.ofEpochSecond(bootTimeEpoch);
+		for(int row = 0; row < this.times.getRowCount(); row++) {
+			if(!allRowsContinued) {
+				if(this.rowParsed[row]) {
+					if(this.rowOnline[row]) {
+						this.usageKernel.calculateRow(row);
+					} else {
+						//  Core that came online, its counters become the
+						//  baseline of the next reading.
+						this.times.clearUsage(row);
+						this.rowOnline[row] = true;
+					}
+				} else {
+					this.times.keepPrevious(row);
+					if(!this.rowPresent[row] && row != CpuTimesTable.TOTAL_ROW) {
+						//  Core that is offline.
+						this.times.clearUsage(row);
+						this.rowOnline[row] = false;
+					}
+				}
+			}
+			this.rowPresent[row] = false;
+			this.rowParsed[row] = false;
+		}
 
-		//  Total number of processes created since boot.
-		parseSingleValueLine(linesIterator.next())
-				.ifPresent((val)->{ this.processesCreated = val; });
-//		this.processesCreated = parseSingleValueLine(reader.readLine());
+		//  Current times become previous ones, the old previous arrays are
+		//  reused for the next reading.
+		this.times.swap();
+
+		//  Values that could not be parsed are carried over from the previous
+		//  reading.
+		ProcStatSnapshot previous = this.snapshot;
+		long contextSwitches = this.sectionValues[CTXT_SECTION];
+		long bootTimeEpoch = this.sectionValues[BTIME_SECTION];
+		long created = this.sectionValues[PROCESSES_SECTION];
+		long running = this.sectionValues[PROCS_RUNNING_SECTION];
+		long blocked = this.sectionValues[PROCS_BLOCKED_SECTION];
+		this.snapshot = new ProcStatSnapshot(
+				System.currentTimeMillis(),
+				this.cpuCoresCount,
+				ProcStatSnapshot.copyUsage(this.times),
+				this.rowOnline.clone(),
+				contextSwitches != ByteCursor.NO_VALUE
+						? contextSwitches : previous.getContextSwitchesCount(),
+				bootTimeEpoch != ByteCursor.NO_VALUE
+						? Instant.ofEpochSecond(bootTimeEpoch) : previous.getBootTime(),
+				created != ByteCursor.NO_VALUE
+						? created : previous.getProcessesCreated(),
+				running != ByteCursor.NO_VALUE
+						? running : previous.getProcessesRunning(),
+				blocked != ByteCursor.NO_VALUE
+						? blocked : previous.getProcessesBlockedOnIo());
+	}
 
-		//  Number of currently running processes.
-		parseSingleValueLine(linesIterator.next())
-				.ifPresent((val)->{ this.processesRunning = val; });
-//		this.processesRunning = parseSingleValueLine(reader.readLine());
 
-		//  Number of processes currently being blocked on IO requests.
-		parseSingleValueLine(linesIterator.next())
-				.ifPresent((val)->{ this.processesBlockedOnIo = val; });
-//		this.processesBlockedOnIo = parseSingleValueLine(reader.readLine());
+	/**
+	 * Releases the "proc/stat" file handle kept open between readings.
+	 * @throws IOException Thrown when the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		statFile.close();
 	}
 
 
+	/**
+	 * Returns the result of the most recent reading. Getters of this class
+	 * read from the current snapshot on every call, so a reader that needs
+	 * several values from the same reading should take the snapshot once and
+	 * read them from it.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public ProcStatSnapshot getSnapshot() {
+		return snapshot;
+	}
+
 	public int getCpuCoresCount() {
-		return cpuCoresCount;
+		return snapshot.getCpuCoresCount();
+	}
+
+	/**
+	 * Returns interrupt counters of the most recent reading.
+	 * @return Immutable snapshot or empty if interrupt counters were not
+	 * requested.
+	 */
+	public Optional<InterruptSnapshot> getInterruptSnapshot() {
+		return this.interruptCounters != null
+				? Optional.of(this.interruptSnapshot)
+				: Optional.empty();
 	}
 
 	public float getTotalCpuUsage() {
-		return totalCpuUsage.getTotalUsage();
+		return snapshot.getUsage(CpuTimesTable.TOTAL_USAGE, CpuTimesTable.TOTAL_ROW);
 	}
 
 	public CpuCoreUsageDetails getCoreCpuUsageDetails(int coreNumber) {
-		if(coreNumber >= 0 && coreNumber < coreCpuUsage.size()) {
-			return coreCpuUsage.get(coreNumber);
+		ProcStatSnapshot current = this.snapshot;
+		if(coreNumber >= 0 && coreNumber < current.getCpuCoresCount()) {
+			return current.getUsageDetails(CpuTimesTable.coreRow(coreNumber));
 		} else {
 			return new CpuCoreUsageDetails();
 		}
 	}
 
 	public float getCoreCpuUsage(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getTotalUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.TOTAL_USAGE);
 	}
 
 	public float getCoreCpuIoWait(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getIoUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.IO_USAGE);
 	}
 
 	public float getCoreCpuUserSpaceUsage(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getUserUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.USER_USAGE);
 	}
 
 	public float getCoreCpuSystemSpaceUsage(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getSystemUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.SYSTEM_USAGE);
 	}
 
 	public float getCoreCpuSoftwareIrqUsage(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getSoftIrqUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.SOFT_IRQ_USAGE);
 	}
 	public float getCoreCpuHardwareIrqUsage(int coreNumber) {
-		return getCoreCpuUsageDetails(coreNumber).getHardIrqUsage();
+		return getCoreUsage(coreNumber, CpuTimesTable.HARD_IRQ_USAGE);
+	}
+
+	/**
+	 * Reads one usage ratio of a given core from the current snapshot.
+	 * @param coreNumber CPU core id number counting from 0.
+	 * @param usageField One of CpuTimesTable usage constants.
+	 * @return Usage ratio or 0 if the core number is invalid or the core is
+	 * offline.
+	 */
+	private float getCoreUsage(int coreNumber, int usageField) {
+		ProcStatSnapshot current = this.snapshot;
+		if(coreNumber >= 0 && coreNumber < current.getCpuCoresCount()) {
+			return current.getUsage(usageField, CpuTimesTable.coreRow(coreNumber));
+		} else {
+			return 0.0f;
+		}
 	}
 
 
 	public long getContextSwitchesCount() {
-		return contextSwitchesCount;
+		return snapshot.getContextSwitchesCount();
 	}
 
 	public Instant getBootTime() {
-		return bootTime;
+		return snapshot.getBootTime();
 	}
 
 	public long getProcessesCreated() {
-		return processesCreated;
+		return snapshot.getProcessesCreated();
 	}
 
 	public long getProcessesRunning() {
-		return processesRunning;
+		return snapshot.getProcessesRunning();
 	}
 
 	public long getProcessesBlockedOnIo() {
-		return processesBlockedOnIo;
+		return snapshot.getProcessesBlockedOnIo();
 	}
 
 
 
 
-	private String floatToPercent(float fraction) {
-		return String.format("%05.2f", fraction * 100);
-	}
-	private String intLeadingZeros(int number) {
-		return String.format("%02d", number);
+	/**
+	 * Appends a usage ratio as a percentage, like "%05.2f" of the percentage.
+	 * Ratios of an interval without any ticks are NaN.
+	 */
+	private static StringBuilder appendPercent(StringBuilder sb, float fraction) {
+		if(!Float.isFinite(fraction)) {
+			return sb.append(String.format("%05.2f", fraction * 100));
+		}
+		return FixedPoint.append(sb, FixedPoint.scale(fraction * 100, 2), 2, 5, '0');
 	}
 
 	public String coreStatsToString(CpuCoreUsageDetails usage) {
-		return floatToPercent(usage.getTotalUsage()) +
-				" (I/O: " +
-				floatToPercent(usage.getIoUsage()) +
-				", user: " +
-				floatToPercent(usage.getUserUsage()) +
-				", system: " +
-				floatToPercent(usage.getSystemUsage()) +
-				", soft IRQ: " +
-				floatToPercent(usage.getSoftIrqUsage()) +
-				", hard IRQ: " +
-				floatToPercent(usage.getHardIrqUsage()) +
-				")" +
-				System.lineSeparator();
+		return appendCoreStats(new StringBuilder(96), usage.getTotalUsage(), usage.getIoUsage(),
+				usage.getUserUsage(), usage.getSystemUsage(), usage.getSoftIrqUsage(),
+				usage.getHardIrqUsage()).toString();
 	}
 
-	public String toString() {
-		StringBuilder sb = new StringBuilder();
+	private static StringBuilder appendCoreStats(StringBuilder sb, ProcStatSnapshot current, int row) {
+		return appendCoreStats(sb,
+				current.getUsage(CpuTimesTable.TOTAL_USAGE, row),
+				current.getUsage(CpuTimesTable.IO_USAGE, row),
+				current.getUsage(CpuTimesTable.USER_USAGE, row),
+				current.getUsage(CpuTimesTable.SYSTEM_USAGE, row),
+				current.getUsage(CpuTimesTable.SOFT_IRQ_USAGE, row),
+				current.getUsage(CpuTimesTable.HARD_IRQ_USAGE, row));
+	}
 
-		sb.append("Total: ")
-				.append(coreStatsToString(totalCpuUsage));
+	private static StringBuilder appendCoreStats(StringBuilder sb, float total, float io, float user,
+	                                             float system, float softIrq, float hardIrq) {
+		appendPercent(sb, total).append(" (I/O: ");
+		appendPercent(sb, io).append(", user: ");
+		appendPercent(sb, user).append(", system: ");
+		appendPercent(sb, system).append(", soft IRQ: ");
+		appendPercent(sb, softIrq).append(", hard IRQ: ");
+		return appendPercent(sb, hardIrq).append(')').append(System.lineSeparator());
+	}
 
-		for(int i = 0; i < coreCpuUsage.size(); i++) {
-			sb.append("CPU")
-					.append(intLeadingZeros(i))
-					.append(": ")
-					.append(coreStatsToString(coreCpuUsage.get(i)));
+	public String toString() {
+		//  Single snapshot is used so all the values come from one reading.
+		ProcStatSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder(128 * (current.getCpuCoresCount() + 8));
+
+		sb.append("Total: ");
+		appendCoreStats(sb, current, CpuTimesTable.TOTAL_ROW);
+
+		for(int i = 0; i < current.getCpuCoresCount(); i++) {
+			sb.append("CPU");
+			FixedPoint.append(sb, i, 0, 2, '0').append(": ");
+			if(current.isOnline(CpuTimesTable.coreRow(i))) {
+				appendCoreStats(sb, current, CpuTimesTable.coreRow(i));
+			} else {
+				sb.append("offline").append(System.lineSeparator());
+			}
 		}
 
 		sb.append("Boot time:         ")
-				.append(getBootTime().toString())
+				.append(current.getBootTime().toString())
 				.append(System.lineSeparator());
 
 		sb.append("Context switches:  ")
-				.append(getContextSwitchesCount())
+				.append(current.getContextSwitchesCount())
 				.append(System.lineSeparator());
 
 		sb.append("Processes created: ")
-				.append(getProcessesCreated())
+				.append(current.getProcessesCreated())
 				.append(System.lineSeparator());
 
 		sb.append("Processes running: ")
-				.append(getProcessesRunning())
+				.append(current.getProcessesRunning())
 				.append(System.lineSeparator());
 
 		sb.append("Processes blocked: ")
-				.append(getProcessesBlockedOnIo())
+				.append(current.getProcessesBlockedOnIo())
 				.append(System.lineSeparator());
 
+		getInterruptSnapshot().ifPresent(interrupts -> {
+			sb.append(String.format("Interrupts:        %.0f/s, hottest IRQs:",
+					interrupts.getInterruptRate()));
+			for(int irq : interrupts.hottestIrqs(5)) {
+				sb.append(String.format(" %d (%.0f/s)", irq, interrupts.getIrqRate(irq)));
+			}
+			sb.append(System.lineSeparator());
+
+			sb.append(String.format("Softirqs:          %.0f/s", interrupts.getSoftirqRate()));
+			for(int type = 0; type < interrupts.getSoftirqTypeCount(); type++) {
+				sb.append(String.format(", %s %.0f/s", InterruptSnapshot.SOFTIRQ_NAMES[type],
+						interrupts.getSoftirqRate(type)));
+			}
+			sb.append(System.lineSeparator());
+		});
+
 		return sb.toString();
 	}
 }
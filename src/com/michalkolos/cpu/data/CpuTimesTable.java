@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cpu.data;
+
+import java.util.Arrays;
+
+/**
+ * Holds parsed temporal data from /proc/stat file for all cores in columnar
+ * form. Every counter has its own primitive array indexed by row, where row 0
+ * holds data for all cores combined and row n + 1 holds data for logical core
+ * n. Usage ratios calculated from the counters are kept in the same layout.
+ * <p>
+ * Two sets of counter arrays are kept: the one being filled by the current
+ * reading and the one from the previous reading. They are swapped after every
+ * reading instead of being reallocated.
+ * <p>
+ * Row of a core is fixed by the core's id, so the table grows when a core
+ * with a higher id comes online, and keeps rows of offline cores.
+ */
+public class CpuTimesTable {
+
+	//	The time is measured in USER_HZ (also called Jiffies) which are
+	//	typically 1/100ths of a second. USER_HZ is a compile time constant which
+	//	can be queried using:
+	//      * Shell: getconf CLK_TCK
+
+	//  TODO: Get CLK_TCK value at runtime.
+
+	public static final int USER = 0;       //  Time spent with normal processing in user mode.
+	public static final int NICE = 1;       //  Time spent with niced processes in user mode.
+	public static final int SYSTEM = 2;     //  Time spent running in kernel mode.
+	public static final int IDLE = 3;       //  Time spent in vacations twiddling thumbs.
+	public static final int IOWAIT = 4;     //  Time spent waiting for I/O to completed. This is considered idle time too.
+	public static final int IRQ = 5;        //  Time spent serving hardware interrupts.
+	public static final int SOFTIRQ = 6;    //  Time spent serving software interrupts.
+	public static final int STEAL = 7;      //  Time stolen by other operating systems running in a virtual environment.
+	public static final int GUEST = 8;      //  Time spent for running a virtual CPU or guest OS under the control of the kernel.
+
+	/**
+	 * Number of counters read from every "cpu" line, in the order of columns.
+	 */
+	public static final int FIELD_COUNT = 9;
+
+	public static final int TOTAL_USAGE = 0;
+	public static final int IO_USAGE = 1;
+	public static final int USER_USAGE = 2;
+	public static final int SYSTEM_USAGE = 3;
+	public static final int HARD_IRQ_USAGE = 4;
+	public static final int SOFT_IRQ_USAGE = 5;
+
+	/**
+	 * Number of usage ratios calculated for every row.
+	 */
+	public static final int USAGE_FIELD_COUNT = 6;
+
+	/**
+	 * Row holding data for all cores combined.
+	 */
+	public static final int TOTAL_ROW = 0;
+
+	private int rowCount;
+	private long[][] current;
+	private long[][] previous;
+	private final float[][] usage;
+
+
+	/**
+	 * @param coreCount Number of logical cores. The table will hold one more
+	 *                  row for all cores combined.
+	 */
+	public CpuTimesTable(int coreCount) {
+		this.rowCount = coreCount + 1;
+		this.current = new long[FIELD_COUNT][rowCount];
+		this.previous = new long[FIELD_COUNT][rowCount];
+		this.usage = new float[USAGE_FIELD_COUNT][rowCount];
+	}
+
+
+	/**
+	 * Returns the row that holds data of a given logical core.
+	 * @param coreNo CPU core id number counting from 0.
+	 * @return Row index.
+	 */
+	public static int coreRow(int coreNo) {
+		return coreNo + 1;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Returns counter column being filled by the current reading.
+	 * @param field One of the counter constants, e.g. USER.
+	 * @return Array indexed by row.
+	 */
+	public long[] current(int field) {
+		return current[field];
+	}
+
+	/**
+	 * Returns counter column filled by the previous reading.
+	 * @param field One of the counter constants, e.g. USER.
+	 * @return Array indexed by row.
+	 */
+	public long[] previous(int field) {
+		return previous[field];
+	}
+
+	/**
+	 * Returns usage ratio column.
+	 * @param usageField One of the usage constants, e.g. TOTAL_USAGE.
+	 * @return Array indexed by row.
+	 */
+	public float[] usage(int usageField) {
+		return usage[usageField];
+	}
+
+
+	/**
+	 * Discards current counters of a given row by restoring the previous ones,
+	 * so the row keeps its previous data after the next swap().
+	 * @param row Row index.
+	 */
+	public void keepPrevious(int row) {
+		for(int field = 0; field < FIELD_COUNT; field++) {
+			current[field][row] = previous[field][row];
+		}
+	}
+
+	/**
+	 * Zeroes usage ratios of a given row, e.g. of a core that went offline or
+	 * whose counters have no valid previous reading yet.
+	 * @param row Row index.
+	 */
+	public void clearUsage(int row) {
+		for(int field = 0; field < USAGE_FIELD_COUNT; field++) {
+			usage[field][row] = 0.0f;
+		}
+	}
+
+	/**
+	 * Adds rows for cores up to a given count. Data of the existing rows is
+	 * kept, new rows start with zeroed counters and ratios.
+	 * @param coreCount Number of logical cores the table should hold. Smaller
+	 *                  counts are ignored, the table never shrinks.
+	 */
+	public void grow(int coreCount) {
+		int grownRowCount = coreCount + 1;
+		if(grownRowCount <= rowCount) {
+			return;
+		}
+
+		for(int field = 0; field < FIELD_COUNT; field++) {
+			current[field] = Arrays.copyOf(current[field], grownRowCount);
+			previous[field] = Arrays.copyOf(previous[field], grownRowCount);
+		}
+		for(int field = 0; field < USAGE_FIELD_COUNT; field++) {
+			usage[field] = Arrays.copyOf(usage[field], grownRowCount);
+		}
+
+		rowCount = grownRowCount;
+	}
+
+	/**
+	 * Makes current counters the previous ones. Arrays of the old previous
+	 * counters are reused for the next reading.
+	 */
+	public void swap() {
+		long[][] swapped = previous;
+		previous = current;
+		current = swapped;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cpu.data;
+
+
+/**
+ * Calculates usage ratios of a CpuTimesTable from its current and previous
+ * counters.
+ * <p>
+ * calculateAll() handles all rows at once, one column at a time. Every loop
+ * is a plain pass over primitive arrays with no branches and no calls, the
+ * shape the JIT compiler turns into SIMD instructions by itself, so the
+ * whole table takes a few vector operations per column instead of a dozen
+ * scalar ones per row. calculateRow() is the scalar path for single rows.
+ * Both give bit for bit the same results.
+ */
+public class CpuUsageKernel {
+
+	/**
+	 * Usage ratios calculated from a single counter each, and the counters.
+	 */
+	private static final int[] SINGLE_COUNTER_USAGES = {CpuTimesTable.IO_USAGE,
+			CpuTimesTable.USER_USAGE, CpuTimesTable.SYSTEM_USAGE,
+			CpuTimesTable.HARD_IRQ_USAGE, CpuTimesTable.SOFT_IRQ_USAGE};
+	private static final int[] SINGLE_COUNTER_FIELDS = {CpuTimesTable.IOWAIT,
+			CpuTimesTable.USER, CpuTimesTable.SYSTEM,
+			CpuTimesTable.IRQ, CpuTimesTable.SOFTIRQ};
+
+	private final CpuTimesTable times;
+
+	//  Per row intermediate results of calculateAll(), reallocated when the
+	//  table grows.
+	private long[] totalDifference;
+	private long[] idleDifference;
+	private float[] totalDifferenceFloat;
+
+
+	/**
+	 * @param times Table the ratios are calculated for.
+	 */
+	public CpuUsageKernel(CpuTimesTable times) {
+		this.times = times;
+		this.totalDifference = new long[times.getRowCount()];
+		this.idleDifference = new long[times.getRowCount()];
+		this.totalDifferenceFloat = new float[times.getRowCount()];
+	}
+
+
+	/**
+	 * Calculates usage ratios of all rows of the table.
+	 */
+	public void calculateAll() {
+		int rows = times.getRowCount();
+		if(totalDifference.length < rows) {
+			totalDifference = new long[rows];
+			idleDifference = new long[rows];
+			totalDifferenceFloat = new float[rows];
+		}
+
+		long[] previousUser = times.previous(CpuTimesTable.USER);
+		long[] previousNice = times.previous(CpuTimesTable.NICE);
+		long[] previousSystem = times.previous(CpuTimesTable.SYSTEM);
+		long[] previousIdle = times.previous(CpuTimesTable.IDLE);
+		long[] previousIowait = times.previous(CpuTimesTable.IOWAIT);
+		long[] previousIrq = times.previous(CpuTimesTable.IRQ);
+		long[] previousSoftirq = times.previous(CpuTimesTable.SOFTIRQ);
+		long[] previousSteal = times.previous(CpuTimesTable.STEAL);
+		long[] currentUser = times.current(CpuTimesTable.USER);
+		long[] currentNice = times.current(CpuTimesTable.NICE);
+		long[] currentSystem = times.current(CpuTimesTable.SYSTEM);
+		long[] currentIdle = times.current(CpuTimesTable.IDLE);
+		long[] currentIowait = times.current(CpuTimesTable.IOWAIT);
+		long[] currentIrq = times.current(CpuTimesTable.IRQ);
+		long[] currentSoftirq = times.current(CpuTimesTable.SOFTIRQ);
+		long[] currentSteal = times.current(CpuTimesTable.STEAL);
+
+		//  Differences of the sums are sums of the differences, long
+		//  arithmetic is exact either way.
+		for(int row = 0; row < rows; row++) {
+			long idle = (currentIdle[row] - previousIdle[row])
+					+ (currentIowait[row] - previousIowait[row]);
+			long nonIdle = (currentUser[row] - previousUser[row])
+					+ (currentNice[row] - previousNice[row])
+					+ (currentSystem[row] - previousSystem[row])
+					+ (currentIrq[row] - previousIrq[row])
+					+ (currentSoftirq[row] - previousSoftirq[row])
+					+ (currentSteal[row] - previousSteal[row]);
+
+			idleDifference[row] = idle;
+			totalDifference[row] = idle + nonIdle;
+		}
+
+		for(int row = 0; row < rows; row++) {
+			totalDifferenceFloat[row] = (float)totalDifference[row];
+		}
+
+		float[] totalUsage = times.usage(CpuTimesTable.TOTAL_USAGE);
+		for(int row = 0; row < rows; row++) {
+			totalUsage[row] = (float)(totalDifference[row] - idleDifference[row])
+					/ totalDifferenceFloat[row];
+		}
+
+		for(int i = 0; i < SINGLE_COUNTER_USAGES.length; i++) {
+			divideDifference(times.current(SINGLE_COUNTER_FIELDS[i]),
+					times.previous(SINGLE_COUNTER_FIELDS[i]),
+					times.usage(SINGLE_COUNTER_USAGES[i]), rows);
+		}
+	}
+
+	private void divideDifference(long[] current, long[] previous, float[] usage, int rows) {
+		for(int row = 0; row < rows; row++) {
+			usage[row] = (float)(current[row] - previous[row]) / totalDifferenceFloat[row];
+		}
+	}
+
+
+	/**
+	 * Calculates different usage modes ratios based on raw elapsed time data.
+	 * Counters gathered in the previous and the most recent reading are taken
+	 * from a given row of the table and the ratios are stored in the same row.
+	 * @param row Row of the times table.
+	 */
+	public void calculateRow(int row) {
+		long[] previousUser = times.previous(CpuTimesTable.USER);
+		long[] previousSystem = times.previous(CpuTimesTable.SYSTEM);
+		long[] previousIowait = times.previous(CpuTimesTable.IOWAIT);
+		long[] previousIrq = times.previous(CpuTimesTable.IRQ);
+		long[] previousSoftirq = times.previous(CpuTimesTable.SOFTIRQ);
+		long[] currentUser = times.current(CpuTimesTable.USER);
+		long[] currentSystem = times.current(CpuTimesTable.SYSTEM);
+		long[] currentIowait = times.current(CpuTimesTable.IOWAIT);
+		long[] currentIrq = times.current(CpuTimesTable.IRQ);
+		long[] currentSoftirq = times.current(CpuTimesTable.SOFTIRQ);
+
+		long previousIdle = times.previous(CpuTimesTable.IDLE)[row] + previousIowait[row];
+		long currentIdle = times.current(CpuTimesTable.IDLE)[row] + currentIowait[row];
+
+		long previousNonIdle = previousUser[row] + times.previous(CpuTimesTable.NICE)[row]
+				+ previousSystem[row] + previousIrq[row]
+				+ previousSoftirq[row] + times.previous(CpuTimesTable.STEAL)[row];
+
+		long currentNonIdle =  currentUser[row] + times.current(CpuTimesTable.NICE)[row]
+				+ currentSystem[row] + currentIrq[row]
+				+ currentSoftirq[row] + times.current(CpuTimesTable.STEAL)[row];
+
+		long previousTotal = previousIdle + previousNonIdle;
+		long currentTotal = currentIdle + currentNonIdle;
+
+		long totalDifference = currentTotal - previousTotal;
+		long idleDifference = currentIdle - previousIdle;
+
+		times.usage(CpuTimesTable.TOTAL_USAGE)[row] = (float)(totalDifference - idleDifference)
+				/ totalDifference;
+		times.usage(CpuTimesTable.IO_USAGE)[row] = (float)(currentIowait[row] - previousIowait[row])
+				/ totalDifference;
+		times.usage(CpuTimesTable.SYSTEM_USAGE)[row] = (float)(currentSystem[row] - previousSystem[row])
+				/ totalDifference;
+		times.usage(CpuTimesTable.USER_USAGE)[row] = (float)(currentUser[row] - previousUser[row])
+				/ totalDifference;
+		times.usage(CpuTimesTable.HARD_IRQ_USAGE)[row] = (float)(currentIrq[row] - previousIrq[row])
+				/ totalDifference;
+		times.usage(CpuTimesTable.SOFT_IRQ_USAGE)[row] = (float)(currentSoftirq[row] - previousSoftirq[row])
+				/ totalDifference;
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cpu.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Immutable interrupt counters of a single reading of "/proc/stat" file:
+ * the "intr" line, one counter per IRQ number, and the "softirq" line, one
+ * counter per softirq type. Rates are calculated against the previous
+ * reading.
+ */
+public class InterruptSnapshot {
+
+	/**
+	 * Softirq types in the order of the "softirq" line columns.
+	 */
+	public static final String[] SOFTIRQ_NAMES = {"HI", "TIMER", "NET_TX", "NET_RX",
+			"BLOCK", "IRQ_POLL", "TASKLET", "SCHED", "HRTIMER", "RCU"};
+
+	private final long timestamp;
+	private final long interruptCount;
+	private final float interruptRate;
+	private final long[] irqCounts;
+	private final float[] irqRates;
+	private final long softirqCount;
+	private final float softirqRate;
+	private final long[] softirqCounts;
+	private final float[] softirqRates;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param interruptCount Interrupts serviced since boot.
+	 * @param interruptRate Interrupts serviced per second.
+	 * @param irqCounts Interrupts since boot indexed by IRQ number.
+	 * @param irqRates Interrupts per second indexed by IRQ number.
+	 * @param softirqCount Softirqs serviced since boot.
+	 * @param softirqRate Softirqs serviced per second.
+	 * @param softirqCounts Softirqs since boot indexed like SOFTIRQ_NAMES.
+	 * @param softirqRates Softirqs per second indexed like SOFTIRQ_NAMES.
+	 * All arrays are taken over by the snapshot and must not be modified
+	 * afterwards.
+	 */
+	public InterruptSnapshot(long timestamp, long interruptCount, float interruptRate,
+	                         long[] irqCounts, float[] irqRates,
+	                         long softirqCount, float softirqRate,
+	                         long[] softirqCounts, float[] softirqRates) {
+		this.timestamp = timestamp;
+		this.interruptCount = interruptCount;
+		this.interruptRate = interruptRate;
+		this.irqCounts = irqCounts;
+		this.irqRates = irqRates;
+		this.softirqCount = softirqCount;
+		this.softirqRate = softirqRate;
+		this.softirqCounts = softirqCounts;
+		this.softirqRates = softirqRates;
+	}
+
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public long getInterruptCount() {
+		return interruptCount;
+	}
+
+	public float getInterruptRate() {
+		return interruptRate;
+	}
+
+	/**
+	 * @return Number of IRQs listed in the "intr" line.
+	 */
+	public int getIrqCount() {
+		return irqCounts.length;
+	}
+
+	public long getIrqCount(int irq) {
+		return irqCounts[irq];
+	}
+
+	public float getIrqRate(int irq) {
+		return irqRates[irq];
+	}
+
+	public long getSoftirqCount() {
+		return softirqCount;
+	}
+
+	public float getSoftirqRate() {
+		return softirqRate;
+	}
+
+	/**
+	 * @return Number of softirq types listed in the "softirq" line.
+	 */
+	public int getSoftirqTypeCount() {
+		return softirqCounts.length;
+	}
+
+	/**
+	 * @param type Index of the type, see SOFTIRQ_NAMES.
+	 */
+	public long getSoftirqCount(int type) {
+		return softirqCounts[type];
+	}
+
+	/**
+	 * @param type Index of the type, see SOFTIRQ_NAMES.
+	 */
+	public float getSoftirqRate(int type) {
+		return softirqRates[type];
+	}
+
+
+	/**
+	 * Finds IRQs firing most often since the previous reading.
+	 * @param count Maximum number of IRQs returned.
+	 * @return IRQ numbers, the busiest first. IRQs that did not fire are left
+	 * out.
+	 */
+	public int[] hottestIrqs(int count) {
+		int[] top = new int[Math.min(count, irqRates.length)];
+		int size = 0;
+
+		//  Insertion into a short sorted array, count is expected to be small.
+		for(int irq = 0; irq < irqRates.length; irq++) {
+			float rate = irqRates[irq];
+			if(rate <= 0.0f || (size == top.length && (size == 0 || rate <= irqRates[top[size - 1]]))) {
+				continue;
+			}
+
+			int position = Math.min(size, top.length - 1);
+			while(position > 0 && irqRates[top[position - 1]] < rate) {
+				top[position] = top[position - 1];
+				position--;
+			}
+			top[position] = irq;
+			size = Math.min(size + 1, top.length);
+		}
+
+		return Arrays.copyOf(top, size);
+	}
+}
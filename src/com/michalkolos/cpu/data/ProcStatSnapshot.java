@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.cpu.data;
+
+import java.time.Instant;
+
+
+/**
+ * Immutable result of a single reading of "/proc/stat" file. All the values
+ * come from the same reading, so a snapshot can be freely shared between
+ * threads and always gives a consistent view of all the cores and counters.
+ */
+public class ProcStatSnapshot {
+
+	private final long timestamp;
+	private final int cpuCoresCount;
+
+	/**
+	 * Usage ratios of all rows laid out column after column, the same way
+	 * they are kept in CpuTimesTable.
+	 */
+	private final float[] usage;
+
+	/**
+	 * Flags of rows whose cores were online in the reading.
+	 */
+	private final boolean[] online;
+
+	private final long contextSwitchesCount;
+	private final Instant bootTime;
+	private final long processesCreated;
+	private final long processesRunning;
+	private final long processesBlockedOnIo;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param cpuCoresCount Number of logical cores.
+	 * @param usage Usage ratios of cpuCoresCount + 1 rows, column after column.
+	 *              The array is taken over by the snapshot and must not be
+	 *              modified afterwards.
+	 * @param online Flags of cpuCoresCount + 1 rows, true for cores that were
+	 *               online. Taken over by the snapshot like usage.
+	 * @param contextSwitchesCount Total number of context switches since boot.
+	 * @param bootTime Time of boot.
+	 * @param processesCreated Total number of processes created since boot.
+	 * @param processesRunning Number of currently running processes.
+	 * @param processesBlockedOnIo Number of processes blocked on IO requests.
+	 */
+	public ProcStatSnapshot(long timestamp, int cpuCoresCount, float[] usage,
+	                        boolean[] online, long contextSwitchesCount, Instant bootTime,
+	                        long processesCreated, long processesRunning,
+	                        long processesBlockedOnIo) {
+		this.timestamp = timestamp;
+		this.cpuCoresCount = cpuCoresCount;
+		this.usage = usage;
+		this.online = online;
+		this.contextSwitchesCount = contextSwitchesCount;
+		this.bootTime = bootTime;
+		this.processesCreated = processesCreated;
+		this.processesRunning = processesRunning;
+		this.processesBlockedOnIo = processesBlockedOnIo;
+	}
+
+
+	/**
+	 * Copies current usage ratios of all rows out of a times table.
+	 * @param times Table with freshly calculated usage ratios.
+	 * @return Array suitable for the snapshot's constructor.
+	 */
+	public static float[] copyUsage(CpuTimesTable times) {
+		int rowCount = times.getRowCount();
+		float[] usage = new float[CpuTimesTable.USAGE_FIELD_COUNT * rowCount];
+
+		for(int field = 0; field < CpuTimesTable.USAGE_FIELD_COUNT; field++) {
+			System.arraycopy(times.usage(field), 0, usage, field * rowCount, rowCount);
+		}
+
+		return usage;
+	}
+
+
+	/**
+	 * Returns one usage ratio of a given row.
+	 * @param usageField One of CpuTimesTable usage constants.
+	 * @param row Row index, see CpuTimesTable.coreRow().
+	 * @return Usage ratio or 0 if the row is invalid.
+	 */
+	public float getUsage(int usageField, int row) {
+		if(row >= 0 && row <= cpuCoresCount) {
+			return usage[usageField * (cpuCoresCount + 1) + row];
+		} else {
+			return 0.0f;
+		}
+	}
+
+	/**
+	 * Checks whether the core of a given row was online in the reading.
+	 * Offline cores keep their row with zeroed usage ratios.
+	 * @param row Row index, see CpuTimesTable.coreRow().
+	 * @return True if the core was online, false if it was offline or the
+	 * row is invalid.
+	 */
+	public boolean isOnline(int row) {
+		return row >= 0 && row <= cpuCoresCount && online[row];
+	}
+
+	/**
+	 * Counts cores that were online in the reading.
+	 * @return Number of online logical cores.
+	 */
+	public int getOnlineCoresCount() {
+		int count = 0;
+		for(int core = 0; core < cpuCoresCount; core++) {
+			if(online[CpuTimesTable.coreRow(core)]) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Copies usage ratios of a given row into a standalone object.
+	 * @param row Row index, see CpuTimesTable.coreRow().
+	 * @return Object containing all the usage data of the row.
+	 */
+	public CpuCoreUsageDetails getUsageDetails(int row) {
+		CpuCoreUsageDetails details = new CpuCoreUsageDetails();
+		details.setTotalUsage(getUsage(CpuTimesTable.TOTAL_USAGE, row));
+		details.setIoUsage(getUsage(CpuTimesTable.IO_USAGE, row));
+		details.setUserUsage(getUsage(CpuTimesTable.USER_USAGE, row));
+		details.setSystemUsage(getUsage(CpuTimesTable.SYSTEM_USAGE, row));
+		details.setHardIrqUsage(getUsage(CpuTimesTable.HARD_IRQ_USAGE, row));
+		details.setSoftIrqUsage(getUsage(CpuTimesTable.SOFT_IRQ_USAGE, row));
+
+		return details;
+	}
+
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Returns the number of rows for logical cores, which is the highest
+	 * core id seen so far plus one. Some of the cores may be offline, see
+	 * isOnline().
+	 * @return Number of logical cores.
+	 */
+	public int getCpuCoresCount() {
+		return cpuCoresCount;
+	}
+
+	public long getContextSwitchesCount() {
+		return contextSwitchesCount;
+	}
+
+	public Instant getBootTime() {
+		return bootTime;
+	}
+
+	public long getProcessesCreated() {
+		return processesCreated;
+	}
+
+	public long getProcessesRunning() {
+		return processesRunning;
+	}
+
+	public long getProcessesBlockedOnIo() {
+		return processesBlockedOnIo;
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.device;
+
+
+/**
+ * Arithmetic on cumulative kernel counters.
+ */
+public final class Counters {
+
+	private static final long WRAP_32 = 1L << 32;
+
+
+	private Counters() {
+	}
+
+
+	/**
+	 * Calculates increase of a counter that may have wrapped around. Counters
+	 * that were below 2^32 are assumed to be 32-bit ones (e.g. "unsigned int"
+	 * fields of "/proc/diskstats" on older kernels, "/proc/net/dev" on 32-bit
+	 * machines), larger ones wrap at 2^64, which two's complement subtraction
+	 * handles by itself.
+	 * @param previous Previous reading.
+	 * @param current Current reading.
+	 * @return Increase of the counter.
+	 */
+	public static long delta(long previous, long current) {
+		if(Long.compareUnsigned(current, previous) >= 0) {
+			return current - previous;
+		}
+
+		if(Long.compareUnsigned(previous, WRAP_32) < 0) {
+			return current + WRAP_32 - previous;
+		}
+
+		return current - previous;
+	}
+
+	/**
+	 * Calculates increase of a counter that may be reset, e.g. a sum over
+	 * devices that come and go, or a value reported as 0 while its file
+	 * cannot be read. Such counters never wrap in practice, a decrease is
+	 * taken as a reset rather than as a 32-bit wraparound.
+	 * @param previous Previous reading.
+	 * @param current Current reading.
+	 * @return Increase of the counter, 0 if it decreased.
+	 */
+	public static long resettableDelta(long previous, long current) {
+		return Long.compareUnsigned(current, previous) >= 0 ? current - previous : 0L;
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.device;
+
+import java.util.Arrays;
+
+
+/**
+ * Columnar storage of per-device counters and rates calculated from them.
+ * Every column is a primitive array indexed by DeviceIndex slot, so per-tick
+ * parsing and rate math work on existing arrays only.
+ */
+public class DeviceCounterTable {
+
+	private final int fieldCount;
+	private final int rateCount;
+
+	private long[][] previous;
+	private long[][] current;
+	private float[][] rates;
+	private int capacity = 0;
+
+
+	/**
+	 * @param fieldCount Number of parsed counters per device.
+	 * @param rateCount Number of rates calculated per device.
+	 */
+	public DeviceCounterTable(int fieldCount, int rateCount) {
+		this.fieldCount = fieldCount;
+		this.rateCount = rateCount;
+		this.previous = new long[fieldCount][0];
+		this.current = new long[fieldCount][0];
+		this.rates = new float[rateCount][0];
+	}
+
+
+	/**
+	 * Grows the columns to hold a given number of slots.
+	 * @param slots Required number of slots, see DeviceIndex.getCapacity().
+	 */
+	public void ensureCapacity(int slots) {
+		if(slots <= capacity) {
+			return;
+		}
+
+		for(int field = 0; field < fieldCount; field++) {
+			previous[field] = Arrays.copyOf(previous[field], slots);
+			current[field] = Arrays.copyOf(current[field], slots);
+		}
+		for(int rate = 0; rate < rateCount; rate++) {
+			rates[rate] = Arrays.copyOf(rates[rate], slots);
+		}
+		capacity = slots;
+	}
+
+
+	/**
+	 * @param field Counter index defined by the collector.
+	 * @return Counters of the current reading indexed by slot.
+	 */
+	public long[] current(int field) {
+		return current[field];
+	}
+
+	/**
+	 * @param field Counter index defined by the collector.
+	 * @return Counters of the previous reading indexed by slot.
+	 */
+	public long[] previous(int field) {
+		return previous[field];
+	}
+
+	/**
+	 * @param rate Rate index defined by the collector.
+	 * @return Rates indexed by slot.
+	 */
+	public float[] rates(int rate) {
+		return rates[rate];
+	}
+
+	/**
+	 * Increase of a counter of a slot between the previous and the current
+	 * reading, see Counters.delta().
+	 */
+	public long delta(int field, int slot) {
+		return Counters.delta(previous[field][slot], current[field][slot]);
+	}
+
+	/**
+	 * Increase of a counter of a slot that may be reset, see
+	 * Counters.resettableDelta().
+	 */
+	public long resettableDelta(int field, int slot) {
+		return Counters.resettableDelta(previous[field][slot], current[field][slot]);
+	}
+
+
+	/**
+	 * Makes current counters of a slot the previous ones.
+	 * @param slot Slot of a device.
+	 */
+	public void advance(int slot) {
+		for(int field = 0; field < fieldCount; field++) {
+			previous[field][slot] = current[field][slot];
+		}
+	}
+
+	/**
+	 * Sets all rates of a slot to 0, e.g. for a device that has just appeared.
+	 * @param slot Slot of a device.
+	 */
+	public void clearRates(int slot) {
+		for(int rate = 0; rate < rateCount; rate++) {
+			rates[rate][slot] = 0.0f;
+		}
+	}
+
+
+	/**
+	 * Copies rates of devices resolved in the current pass into a snapshot.
+	 * @param index Index the devices were resolved with.
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @return Snapshot with devices in the order of the file.
+	 */
+	public DeviceSnapshot toSnapshot(DeviceIndex index, long timestamp) {
+		int count = index.getRowCount();
+		String[] names = new String[count];
+		float[] snapshotRates = new float[rateCount * count];
+
+		for(int row = 0; row < count; row++) {
+			int slot = index.getRowSlot(row);
+			names[row] = index.getName(slot);
+			for(int rate = 0; rate < rateCount; rate++) {
+				snapshotRates[rate * count + row] = rates[rate][slot];
+			}
+		}
+
+		return new DeviceSnapshot(timestamp, names, rateCount, snapshotRates);
+	}
+
+
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	public int getRateCount() {
+		return rateCount;
+	}
+}
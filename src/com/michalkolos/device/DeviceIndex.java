@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.device;
+
+import com.michalkolos.input.ByteCursor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Assigns stable slots to devices listed by name in files such as
+ * "/proc/diskstats" or "/proc/net/dev", so per-device counters can be kept in
+ * primitive arrays indexed by slot.
+ * <p>
+ * Names are compared directly with the file's bytes. Devices are listed in
+ * the same order on every reading, so the device found in a given row in the
+ * previous pass is checked first and known devices are resolved without
+ * hashing or allocation. A device that appears gets a free slot, a device
+ * missing from a pass has its slot freed.
+ */
+public class DeviceIndex {
+
+	public static final int NO_SLOT = -1;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private byte[][] nameBytes = new byte[INITIAL_CAPACITY][];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private boolean[] active = new boolean[INITIAL_CAPACITY];
+	private boolean[] fresh = new boolean[INITIAL_CAPACITY];
+	private int[] seenInPass = new int[INITIAL_CAPACITY];
+	private int capacity = INITIAL_CAPACITY;
+	private int activeCount = 0;
+
+	/**
+	 * Slots of devices in order of rows of the previous and the current pass.
+	 */
+	private int[] rowSlots = new int[INITIAL_CAPACITY];
+	private int previousRowCount = 0;
+	private int row = 0;
+	private int pass = 0;
+
+
+	/**
+	 * Starts resolving rows of a new reading.
+	 */
+	public void beginPass() {
+		pass++;
+		row = 0;
+	}
+
+
+	/**
+	 * Resolves name of the device listed in the next row.
+	 * @param cursor Cursor over the file's contents.
+	 * @param nameStart Absolute position of the name's first byte.
+	 * @param nameEnd Absolute position right after the name's last byte.
+	 * @return Slot of the device.
+	 */
+	public int resolve(ByteCursor cursor, int nameStart, int nameEnd) {
+		int slot = row < previousRowCount ? rowSlots[row] : NO_SLOT;
+		if(slot == NO_SLOT || !active[slot] || !matches(slot, cursor, nameStart, nameEnd)) {
+			slot = find(cursor, nameStart, nameEnd);
+		}
+		if(slot == NO_SLOT) {
+			slot = add(cursor, nameStart, nameEnd);
+		}
+
+		seenInPass[slot] = pass;
+		if(row == rowSlots.length) {
+			rowSlots = Arrays.copyOf(rowSlots, rowSlots.length * 2);
+		}
+		rowSlots[row++] = slot;
+
+		return slot;
+	}
+
+
+	/**
+	 * Finishes a pass. Devices that were not listed are removed and devices
+	 * added in this pass stop being fresh.
+	 * @return Number of removed devices.
+	 */
+	public int endPass() {
+		int removed = 0;
+		for(int slot = 0; slot < capacity; slot++) {
+			if(!active[slot]) {
+				continue;
+			}
+
+			if(seenInPass[slot] != pass) {
+				active[slot] = false;
+				nameBytes[slot] = null;
+				names[slot] = null;
+				activeCount--;
+				removed++;
+			}
+			fresh[slot] = false;
+		}
+		previousRowCount = row;
+
+		return removed;
+	}
+
+
+	private boolean matches(int slot, ByteCursor cursor, int nameStart, int nameEnd) {
+		byte[] name = nameBytes[slot];
+		if(name.length != nameEnd - nameStart) {
+			return false;
+		}
+		for(int i = 0; i < name.length; i++) {
+			if(cursor.peek(nameStart + i) != name[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private int find(ByteCursor cursor, int nameStart, int nameEnd) {
+		for(int slot = 0; slot < capacity; slot++) {
+			if(active[slot] && matches(slot, cursor, nameStart, nameEnd)) {
+				return slot;
+			}
+		}
+
+		return NO_SLOT;
+	}
+
+	private int add(ByteCursor cursor, int nameStart, int nameEnd) {
+		int slot = 0;
+		while(slot < capacity && active[slot]) {
+			slot++;
+		}
+		if(slot == capacity) {
+			grow(capacity * 2);
+		}
+
+		byte[] name = new byte[nameEnd - nameStart];
+		for(int i = 0; i < name.length; i++) {
+			name[i] = cursor.peek(nameStart + i);
+		}
+
+		nameBytes[slot] = name;
+		names[slot] = new String(name, StandardCharsets.US_ASCII);
+		active[slot] = true;
+		fresh[slot] = true;
+		activeCount++;
+
+		return slot;
+	}
+
+	private void grow(int newCapacity) {
+		nameBytes = Arrays.copyOf(nameBytes, newCapacity);
+		names = Arrays.copyOf(names, newCapacity);
+		active = Arrays.copyOf(active, newCapacity);
+		fresh = Arrays.copyOf(fresh, newCapacity);
+		seenInPass = Arrays.copyOf(seenInPass, newCapacity);
+		capacity = newCapacity;
+	}
+
+
+	/**
+	 * @return Number of slots, arrays indexed by slot need at least that size.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @param slot Slot of a device.
+	 * @return True if the device appeared in the current pass, so it has no
+	 * previous counters.
+	 */
+	public boolean isFresh(int slot) {
+		return fresh[slot];
+	}
+
+	public String getName(int slot) {
+		return names[slot];
+	}
+
+	/**
+	 * @return Number of rows resolved in the current pass.
+	 */
+	public int getRowCount() {
+		return row;
+	}
+
+	/**
+	 * @param row Row of the current pass.
+	 * @return Slot of the device listed in the row.
+	 */
+	public int getRowSlot(int row) {
+		return rowSlots[row];
+	}
+}
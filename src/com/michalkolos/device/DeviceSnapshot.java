@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.device;
+
+
+/**
+ * Immutable result of a single reading of a per-device statistics file. Rates
+ * are stored column by column, a device is identified by its index in the
+ * snapshot, 0 to getDeviceCount() - 1, in the order of the file.
+ */
+public class DeviceSnapshot {
+
+	private final long timestamp;
+	private final String[] names;
+	private final int rateCount;
+	private final float[] rates;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param names Names of the devices.
+	 * @param rateCount Number of rate columns.
+	 * @param rates Rates of all devices, column after column. The arrays are
+	 *              taken over by the snapshot and must not be modified
+	 *              afterwards.
+	 */
+	public DeviceSnapshot(long timestamp, String[] names, int rateCount, float[] rates) {
+		this.timestamp = timestamp;
+		this.names = names;
+		this.rateCount = rateCount;
+		this.rates = rates;
+	}
+
+
+	/**
+	 * @param rateField One of the rate constants of the collector.
+	 * @param index Index of the device.
+	 * @return Rate of the device.
+	 */
+	public float getRate(int rateField, int index) {
+		return rates[rateField * names.length + index];
+	}
+
+	/**
+	 * @param name Name of the device.
+	 * @return Index of the device or -1 if it is not present.
+	 */
+	public int indexOf(String name) {
+		for(int index = 0; index < names.length; index++) {
+			if(names[index].equals(name)) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	public int getDeviceCount() {
+		return names.length;
+	}
+
+	public int getRateCount() {
+		return rateCount;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
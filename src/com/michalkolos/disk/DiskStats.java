@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.disk;
+
+import com.michalkolos.device.DeviceCounterTable;
+import com.michalkolos.device.DeviceIndex;
+import com.michalkolos.device.DeviceSnapshot;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Provides per-device disk throughput gathered from "/proc/diskstats" file.
+ * Cumulative counters of every block device are turned into rates between
+ * two readings: bytes and operations per second, average time an operation
+ * takes and utilization.
+ * <p>
+ * Devices are tracked by name, so disks can be added and removed while the
+ * collector runs. Like ProcStat, every call to dataAcquisition() publishes a
+ * new immutable snapshot.
+ */
+public class DiskStats implements Closeable {
+
+	/**
+	 * Absolute path to the "proc/diskstats" file.
+	 */
+	public static final String SYS_FILE_PATH = "/proc/diskstats";
+
+	/**
+	 * Rates provided for every device.
+	 */
+	public static final int READ_BYTES_RATE = 0;
+	public static final int WRITE_BYTES_RATE = 1;
+	public static final int READ_IOPS = 2;
+	public static final int WRITE_IOPS = 3;
+	/**
+	 * Average time of a read or write operation in milliseconds.
+	 */
+	public static final int AWAIT_MS = 4;
+	/**
+	 * Ratio of time the device was busy.
+	 */
+	public static final int UTILIZATION = 5;
+	public static final int RATE_COUNT = 6;
+
+	//  Counters parsed for every device.
+	private static final int READS = 0;
+	private static final int SECTORS_READ = 1;
+	private static final int READ_MS = 2;
+	private static final int WRITES = 3;
+	private static final int SECTORS_WRITTEN = 4;
+	private static final int WRITE_MS = 5;
+	private static final int IO_MS = 6;
+	private static final int FIELD_COUNT = 7;
+
+	/**
+	 * Counter each column following the device name is stored in, -1 for
+	 * columns that are skipped.
+	 */
+	private static final int[] COLUMN_FIELDS = {READS, -1, SECTORS_READ, READ_MS,
+			WRITES, -1, SECTORS_WRITTEN, WRITE_MS, -1, IO_MS};
+
+	/**
+	 * Sectors in "/proc/diskstats" are always 512 bytes, regardless of the
+	 * device's sector size.
+	 */
+	private static final int SECTOR_SIZE = 512;
+
+	private final LocalFile statsFile;
+	private final ByteCursor cursor = new ByteCursor();
+	private final DeviceIndex devices = new DeviceIndex();
+	private final DeviceCounterTable table = new DeviceCounterTable(FIELD_COUNT, RATE_COUNT);
+
+	private long previousNanos = 0L;
+
+	private volatile DeviceSnapshot snapshot =
+			new DeviceSnapshot(0L, new String[0], RATE_COUNT, new float[0]);
+
+
+
+	public DiskStats() {
+		this(SystemRoot.DEFAULT);
+	}
+
+	/**
+	 * @param root Root the "proc/diskstats" file is looked up in.
+	 */
+	public DiskStats(SystemRoot root) {
+		this(root.resolve(SYS_FILE_PATH).getPath());
+	}
+
+	/**
+	 * @param path Path to a file in the "proc/diskstats" format.
+	 */
+	public DiskStats(String path) {
+		this.statsFile = new LocalFile(path);
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to gather data from the
+	 * "proc/diskstats" file.
+	 * @throws IOException Exception thrown when the accessed file is
+	 * unavailable.
+	 */
+	public void dataAcquisition() throws IOException {
+		cursor.reset(statsFile.readBuffer());
+		long nanos = System.nanoTime();
+		float seconds = (nanos - previousNanos) / 1e9f;
+		previousNanos = nanos;
+
+		devices.beginPass();
+		while(cursor.hasRemaining()) {
+			//  Major and minor numbers precede the name.
+			long major = cursor.nextLong();
+			long minor = cursor.nextLong();
+			cursor.skipBlanks();
+			int nameStart = cursor.getPosition();
+			cursor.skipToken();
+			int nameEnd = cursor.getPosition();
+
+			if(major != ByteCursor.NO_VALUE && minor != ByteCursor.NO_VALUE && nameEnd > nameStart) {
+				int slot = devices.resolve(cursor, nameStart, nameEnd);
+				table.ensureCapacity(devices.getCapacity());
+				parseCounters(slot);
+				calculateRates(slot, seconds);
+			}
+
+			cursor.skipLine();
+		}
+		devices.endPass();
+
+		this.snapshot = table.toSnapshot(devices, System.currentTimeMillis());
+	}
+
+
+	private void parseCounters(int slot) {
+		for(int field : COLUMN_FIELDS) {
+			long value = cursor.nextLong();
+			if(field >= 0) {
+				table.current(field)[slot] = value == ByteCursor.NO_VALUE ? 0 : value;
+			}
+		}
+	}
+
+
+	private void calculateRates(int slot, float seconds) {
+		if(devices.isFresh(slot) || seconds <= 0) {
+			table.clearRates(slot);
+			table.advance(slot);
+			return;
+		}
+
+		long reads = table.delta(READS, slot);
+		long writes = table.delta(WRITES, slot);
+		long operations = reads + writes;
+
+		table.rates(READ_BYTES_RATE)[slot] = table.delta(SECTORS_READ, slot) * SECTOR_SIZE / seconds;
+		table.rates(WRITE_BYTES_RATE)[slot] = table.delta(SECTORS_WRITTEN, slot) * SECTOR_SIZE / seconds;
+		table.rates(READ_IOPS)[slot] = reads / seconds;
+		table.rates(WRITE_IOPS)[slot] = writes / seconds;
+		table.rates(AWAIT_MS)[slot] = operations == 0
+				? 0.0f
+				: (float)(table.delta(READ_MS, slot) + table.delta(WRITE_MS, slot)) / operations;
+		table.rates(UTILIZATION)[slot] = Math.min(1.0f, table.delta(IO_MS, slot) / (seconds * 1000));
+
+		table.advance(slot);
+	}
+
+
+	/**
+	 * Releases the "proc/diskstats" file handle kept open between readings.
+	 * @throws IOException Thrown when the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		statsFile.close();
+	}
+
+
+	/**
+	 * Returns the result of the most recent reading. Rates are indexed by the
+	 * rate constants of this class.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public DeviceSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+
+	@Override
+	public String toString() {
+		DeviceSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		for(int index = 0; index < current.getDeviceCount(); index++) {
+			sb.append(String.format("%-12s read %10.1f kB/s %8.1f IOPS  write %10.1f kB/s %8.1f IOPS  await %6.2f ms  util %5.1f%%",
+					current.getName(index),
+					current.getRate(READ_BYTES_RATE, index) / 1024,
+					current.getRate(READ_IOPS, index),
+					current.getRate(WRITE_BYTES_RATE, index) / 1024,
+					current.getRate(WRITE_IOPS, index),
+					current.getRate(AWAIT_MS, index),
+					current.getRate(UTILIZATION, index) * 100))
+					.append(System.lineSeparator());
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+import com.michalkolos.cgroup.CgroupTable;
+import com.michalkolos.cgroup.data.CgroupSnapshot;
+import com.michalkolos.cpu.CpuFrequency;
+import com.michalkolos.cpu.CpuTemp;
+import com.michalkolos.cpu.ProcStat;
+import com.michalkolos.cpu.data.CpuTimesTable;
+import com.michalkolos.cpu.data.InterruptSnapshot;
+import com.michalkolos.cpu.data.ProcStatSnapshot;
+import com.michalkolos.device.DeviceSnapshot;
+import com.michalkolos.disk.DiskStats;
+import com.michalkolos.hwmon.HwmonChannel;
+import com.michalkolos.hwmon.HwmonChannelType;
+import com.michalkolos.hwmon.HwmonSampler;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.memory.ProcMeminfo;
+import com.michalkolos.memory.data.MeminfoField;
+import com.michalkolos.memory.data.MeminfoSnapshot;
+import com.michalkolos.net.NetDev;
+import com.michalkolos.pressure.ProcPressure;
+import com.michalkolos.pressure.data.PressureResource;
+import com.michalkolos.pressure.data.PressureSnapshot;
+import com.michalkolos.process.ProcessTable;
+import com.michalkolos.process.data.ProcessSnapshot;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+
+/**
+ * MetricsSources of the collectors. Every source takes the collector's
+ * snapshot once and writes all of its families from it.
+ * <p>
+ * Metric families: "system_cpu_usage_ratio" (per core and mode, online cores
+ * only), "system_cpu_online", "system_context_switches",
+ * "system_processes_*", "system_boot_time_seconds", "system_interrupts" and
+ * "system_softirqs" (ProcStat), "system_memory_bytes" and
+ * "system_memory_pages" (ProcMeminfo), "system_pressure_stall_seconds" and
+ * "system_pressure_average_ratio" (ProcPressure), "system_disk_*" (DiskStats),
+ * "system_network_*" (NetDev), "system_cgroup_*" (CgroupTable),
+ * "system_cpu_frequency_hertz" (CpuFrequency), "system_cpu_temperature_celsius"
+ * (CpuTemp), "system_hwmon_*" (HwmonSampler) and "system_processes" and
+ * "system_process_*" (ProcessTable).
+ * <p>
+ * CpuFrequency, CpuTemp and Hwmon keep no snapshots, their sources read the
+ * current values while rendering, through the cached file handles of the
+ * SmallFileReader.
+ */
+public class CollectorMetrics {
+
+	/**
+	 * Usage ratios of ProcStat and their "mode" labels.
+	 */
+	private static final int[] CPU_USAGES = {CpuTimesTable.TOTAL_USAGE,
+			CpuTimesTable.USER_USAGE, CpuTimesTable.SYSTEM_USAGE, CpuTimesTable.IO_USAGE,
+			CpuTimesTable.HARD_IRQ_USAGE, CpuTimesTable.SOFT_IRQ_USAGE};
+	private static final String[] CPU_MODES = {"busy", "user", "system", "iowait",
+			"irq", "softirq"};
+
+	private static final MeminfoField[] MEMINFO_FIELDS = MeminfoField.values();
+	private static final PressureResource[] PRESSURE_RESOURCES = PressureResource.values();
+	private static final String[] PRESSURE_LINES = {"some", "full"};
+	private static final String[] PRESSURE_WINDOWS = {"10s", "60s", "300s"};
+
+	/**
+	 * Families of the DiskStats rates, indexed by DiskStats rate constants.
+	 */
+	private static final String[] DISK_FAMILIES = {"system_disk_read_bytes_per_second",
+			"system_disk_written_bytes_per_second", "system_disk_reads_per_second",
+			"system_disk_writes_per_second", "system_disk_await_milliseconds",
+			"system_disk_utilization_ratio"};
+	private static final String[] DISK_HELP = {"Bytes read per second.",
+			"Bytes written per second.", "Read operations completed per second.",
+			"Write operations completed per second.",
+			"Average time of a read or write operation.",
+			"Share of time the device was busy."};
+
+	/**
+	 * Families of the NetDev rates, indexed by NetDev rate constants.
+	 */
+	private static final String[] NETWORK_FAMILIES = {"system_network_received_bytes_per_second",
+			"system_network_received_packets_per_second",
+			"system_network_receive_errors_per_second",
+			"system_network_receive_drops_per_second",
+			"system_network_transmitted_bytes_per_second",
+			"system_network_transmitted_packets_per_second",
+			"system_network_transmit_errors_per_second",
+			"system_network_transmit_drops_per_second"};
+	private static final String[] NETWORK_HELP = {"Bytes received per second.",
+			"Packets received per second.", "Receive errors per second.",
+			"Received packets dropped per second.", "Bytes transmitted per second.",
+			"Packets transmitted per second.", "Transmit errors per second.",
+			"Transmitted packets dropped per second."};
+
+	/**
+	 * Families of the cgroup rates and values, indexed by CgroupSnapshot
+	 * constants.
+	 */
+	private static final String[] CGROUP_RATE_FAMILIES = {"system_cgroup_cpu_usage_cores",
+			"system_cgroup_cpu_throttled_ratio", "system_cgroup_cpu_throttled_seconds_per_second",
+			"system_cgroup_read_bytes_per_second", "system_cgroup_written_bytes_per_second",
+			"system_cgroup_reads_per_second", "system_cgroup_writes_per_second"};
+	private static final String[] CGROUP_RATE_HELP = {"CPU time used per second, in cores.",
+			"Share of CFS bandwidth periods in which the cgroup was throttled.",
+			"Time the cgroup spent throttled per second.", "Bytes read per second.",
+			"Bytes written per second.", "Read operations per second.",
+			"Write operations per second."};
+	private static final String[] CGROUP_MEMORY_TYPES = {"current", "anon", "file",
+			"shmem", "file_dirty"};
+
+	/**
+	 * Families of the Hwmon channels, indexed by HwmonChannelType ordinal.
+	 */
+	private static final HwmonChannelType[] HWMON_TYPES = HwmonChannelType.values();
+	private static final String[] HWMON_FAMILIES = {"system_hwmon_temperature_celsius",
+			"system_hwmon_fan_rpm", "system_hwmon_voltage_volts", "system_hwmon_power_watts",
+			"system_hwmon_current_amperes"};
+	private static final String[] HWMON_HELP = {"Temperature reported by a Hwmon sensor.",
+			"Fan speed reported by a Hwmon sensor.", "Voltage reported by a Hwmon sensor.",
+			"Power reported by a Hwmon sensor.", "Current reported by a Hwmon sensor."};
+
+	/**
+	 * Processes exported by default. Only the busiest ones are exported, a
+	 * series per pid would grow the scraper's database with every process
+	 * ever started.
+	 */
+	public static final int DEFAULT_TOP_PROCESSES = 10;
+
+	private static final int KHZ_TO_HZ = 1000;
+
+
+	private CollectorMetrics() {
+	}
+
+
+	/**
+	 * @param procStat Collector of "/proc/stat".
+	 * @return Source of CPU usage, scheduler and interrupt families.
+	 */
+	public static MetricsSource procStat(ProcStat procStat) {
+		return writer -> {
+			writeProcStat(writer, procStat.getSnapshot());
+			procStat.getInterruptSnapshot().ifPresent(interrupts ->
+					writeInterrupts(writer, interrupts));
+		};
+	}
+
+	/**
+	 * @param procMeminfo Collector of "/proc/meminfo".
+	 * @return Source of memory families.
+	 */
+	public static MetricsSource procMeminfo(ProcMeminfo procMeminfo) {
+		return writer -> writeMeminfo(writer, procMeminfo.getSnapshot());
+	}
+
+	/**
+	 * @param procPressure Collector of "/proc/pressure".
+	 * @return Source of pressure stall families.
+	 */
+	public static MetricsSource procPressure(ProcPressure procPressure) {
+		return writer -> writePressure(writer, procPressure.getSnapshot());
+	}
+
+	/**
+	 * @param diskStats Collector of "/proc/diskstats".
+	 * @return Source of per-device disk families.
+	 */
+	public static MetricsSource diskStats(DiskStats diskStats) {
+		return writer -> writeDevices(writer, diskStats.getSnapshot(), "device",
+				DISK_FAMILIES, DISK_HELP);
+	}
+
+	/**
+	 * @param netDev Collector of "/proc/net/dev".
+	 * @return Source of per-interface network families.
+	 */
+	public static MetricsSource netDev(NetDev netDev) {
+		return writer -> writeDevices(writer, netDev.getSnapshot(), "interface",
+				NETWORK_FAMILIES, NETWORK_HELP);
+	}
+
+	/**
+	 * @param cgroupTable Collector of the cgroup v2 hierarchy.
+	 * @return Source of per-cgroup families.
+	 */
+	public static MetricsSource cgroupTable(CgroupTable cgroupTable) {
+		return writer -> writeCgroups(writer, cgroupTable.getSnapshot());
+	}
+
+
+	/**
+	 * @param cpuFrequency Collector of core clock frequencies.
+	 * @return Source of the per-core frequency family.
+	 */
+	public static MetricsSource cpuFrequency(CpuFrequency cpuFrequency) {
+		int[] frequencies = new int[cpuFrequency.getLogicalCoreNo()];
+		return writer -> {
+			int count = cpuFrequency.sampleAll(frequencies);
+			writer.family("system_cpu_frequency_hertz", OpenMetricsWriter.GAUGE,
+					"Current clock frequency of the logical core.");
+			for(int core = 0; core < count; core++) {
+				//  0 stands for a core whose frequency cannot be read.
+				if(frequencies[core] > 0) {
+					writer.sample("system_cpu_frequency_hertz").label("cpu", core)
+							.value((long)frequencies[core] * KHZ_TO_HZ);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @param cpuTemp Collector of the CPU temperature.
+	 * @return Source of the CPU temperature family.
+	 */
+	public static MetricsSource cpuTemp(CpuTemp cpuTemp) {
+		return writer -> {
+			writer.family("system_cpu_temperature_celsius", OpenMetricsWriter.GAUGE,
+					"Temperature of the CPU package.");
+			cpuTemp.checkTemp().ifPresent(temperature ->
+					writer.sample("system_cpu_temperature_celsius").value(temperature));
+		};
+	}
+
+	/**
+	 * @param sampler Supplies the sampler of the Hwmon channels, which is
+	 *                replaced when the subsystems change.
+	 * @return Source of per-channel Hwmon families, labeled with the
+	 * subsystem name ("chip"), its directory ("device"), the channel id and,
+	 * if the driver provides one, the channel's label ("sensor").
+	 */
+	public static MetricsSource hwmon(Supplier<HwmonSampler> sampler) {
+		long[][] values = {new long[0]};
+		return writer -> {
+			HwmonSampler current = sampler.get();
+			if(values[0].length < current.size()) {
+				values[0] = new long[current.size()];
+			}
+			int count = current.sample(values[0]);
+			writeHwmon(writer, current.getChannels(), values[0], count);
+		};
+	}
+
+	/**
+	 * @param processTable Collector of per-process usage.
+	 * @param top Number of the busiest processes exported.
+	 * @return Source of the process count and per-process families.
+	 */
+	public static MetricsSource processTable(ProcessTable processTable, int top) {
+		return writer -> writeProcesses(writer, processTable.getSnapshot(), top);
+	}
+
+
+	private static void writeProcStat(OpenMetricsWriter writer, ProcStatSnapshot snapshot) {
+		int cores = snapshot.getCpuCoresCount();
+
+		writer.family("system_cpu_usage_ratio", OpenMetricsWriter.GAUGE,
+				"Share of time the CPU spent in a mode since the previous reading.");
+		for(int i = 0; i < CPU_USAGES.length; i++) {
+			writer.sample("system_cpu_usage_ratio").label("cpu", "total").label("mode", CPU_MODES[i])
+					.value(snapshot.getUsage(CPU_USAGES[i], CpuTimesTable.TOTAL_ROW));
+			for(int core = 0; core < cores; core++) {
+				int row = CpuTimesTable.coreRow(core);
+				if(snapshot.isOnline(row)) {
+					writer.sample("system_cpu_usage_ratio").label("cpu", core).label("mode", CPU_MODES[i])
+							.value(snapshot.getUsage(CPU_USAGES[i], row));
+				}
+			}
+		}
+
+		writer.family("system_cpu_online", OpenMetricsWriter.GAUGE,
+				"1 if the logical core is online, 0 if it is offline.");
+		for(int core = 0; core < cores; core++) {
+			writer.sample("system_cpu_online").label("cpu", core)
+					.value(snapshot.isOnline(CpuTimesTable.coreRow(core)) ? 1L : 0L);
+		}
+
+		writer.family("system_context_switches", OpenMetricsWriter.COUNTER,
+				"Context switches since boot.");
+		writer.sample("system_context_switches_total").value(snapshot.getContextSwitchesCount());
+
+		writer.family("system_processes_created", OpenMetricsWriter.COUNTER,
+				"Processes created since boot.");
+		writer.sample("system_processes_created_total").value(snapshot.getProcessesCreated());
+
+		writer.family("system_processes_running", OpenMetricsWriter.GAUGE,
+				"Processes currently running.");
+		writer.sample("system_processes_running").value(snapshot.getProcessesRunning());
+
+		writer.family("system_processes_blocked", OpenMetricsWriter.GAUGE,
+				"Processes currently blocked on I/O.");
+		writer.sample("system_processes_blocked").value(snapshot.getProcessesBlockedOnIo());
+
+		if(snapshot.getTimestamp() != 0L) {
+			writer.family("system_boot_time_seconds", OpenMetricsWriter.GAUGE,
+					"Time of boot in seconds since epoch.");
+			writer.sample("system_boot_time_seconds").value(snapshot.getBootTime().getEpochSecond());
+		}
+	}
+
+	private static void writeInterrupts(OpenMetricsWriter writer, InterruptSnapshot snapshot) {
+		writer.family("system_interrupts", OpenMetricsWriter.COUNTER,
+				"Interrupts serviced since boot.");
+		writer.sample("system_interrupts_total").value(snapshot.getInterruptCount());
+
+		writer.family("system_softirqs", OpenMetricsWriter.COUNTER,
+				"Softirqs serviced since boot, per type.");
+		for(int type = 0; type < snapshot.getSoftirqTypeCount(); type++) {
+			writer.sample("system_softirqs_total")
+					.label("type", InterruptSnapshot.SOFTIRQ_NAMES[type])
+					.value(snapshot.getSoftirqCount(type));
+		}
+	}
+
+	private static void writeMeminfo(OpenMetricsWriter writer, MeminfoSnapshot snapshot) {
+		writer.family("system_memory_bytes", OpenMetricsWriter.GAUGE,
+				"Sizes reported by /proc/meminfo, SwapUsed is SwapTotal - SwapFree.");
+		for(MeminfoField field : MEMINFO_FIELDS) {
+			if(field.isSize() && snapshot.isAvailable(field)) {
+				writer.sample("system_memory_bytes").label("field", fieldLabel(field))
+						.value(snapshot.get(field));
+			}
+		}
+
+		writer.family("system_memory_pages", OpenMetricsWriter.GAUGE,
+				"Page counts reported by /proc/meminfo.");
+		for(MeminfoField field : MEMINFO_FIELDS) {
+			if(!field.isSize() && snapshot.isAvailable(field)) {
+				writer.sample("system_memory_pages").label("field", fieldLabel(field))
+						.value(snapshot.get(field));
+			}
+		}
+	}
+
+	private static String fieldLabel(MeminfoField field) {
+		return field == MeminfoField.SWAP_USED ? "SwapUsed" : field.getKey();
+	}
+
+	private static void writePressure(OpenMetricsWriter writer, PressureSnapshot snapshot) {
+		writer.family("system_pressure_stall_seconds", OpenMetricsWriter.COUNTER,
+				"Time tasks were stalled waiting for a resource since boot.");
+		for(PressureResource resource : PRESSURE_RESOURCES) {
+			for(int line = 0; line < PressureSnapshot.LINE_COUNT; line++) {
+				long micros = snapshot.getTotalMicros(resource, line);
+				if(micros != PressureSnapshot.NO_VALUE) {
+					writer.sample("system_pressure_stall_seconds_total")
+							.label("resource", resource.getFileName())
+							.label("line", PRESSURE_LINES[line])
+							.value(micros, 6);
+				}
+			}
+		}
+
+		writer.family("system_pressure_average_ratio", OpenMetricsWriter.GAUGE,
+				"Share of time tasks were stalled, as averaged by the kernel.");
+		for(PressureResource resource : PRESSURE_RESOURCES) {
+			for(int line = 0; line < PressureSnapshot.LINE_COUNT; line++) {
+				for(int window = 0; window < PressureSnapshot.AVERAGE_COUNT; window++) {
+					float percent = snapshot.getAverage(resource, line, window);
+					if(percent != PressureSnapshot.NO_AVERAGE) {
+						writer.sample("system_pressure_average_ratio")
+								.label("resource", resource.getFileName())
+								.label("line", PRESSURE_LINES[line])
+								.label("window", PRESSURE_WINDOWS[window])
+								.value(percent / 100);
+					}
+				}
+			}
+		}
+	}
+
+	private static void writeDevices(OpenMetricsWriter writer, DeviceSnapshot snapshot,
+	                                 String label, String[] families, String[] help) {
+		for(int rate = 0; rate < families.length; rate++) {
+			writer.family(families[rate], OpenMetricsWriter.GAUGE, help[rate]);
+			for(int index = 0; index < snapshot.getDeviceCount(); index++) {
+				writer.sample(families[rate]).label(label, snapshot.getName(index))
+						.value(snapshot.getRate(rate, index));
+			}
+		}
+	}
+
+	private static void writeHwmon(OpenMetricsWriter writer, List<HwmonChannel> channels,
+	                               long[] values, int count) {
+		for(HwmonChannelType type : HWMON_TYPES) {
+			String family = HWMON_FAMILIES[type.ordinal()];
+			int fractionDigits = Integer.toString(type.getDivisor()).length() - 1;
+			writer.family(family, OpenMetricsWriter.GAUGE, HWMON_HELP[type.ordinal()]);
+			for(int i = 0; i < count; i++) {
+				HwmonChannel channel = channels.get(i);
+				if(channel.getType() != type || values[i] == ByteCursor.NO_SIGNED_VALUE) {
+					continue;
+				}
+
+				writer.sample(family).label("chip", channel.getSubsystemName())
+						.label("device", channel.getSubsystemDirName())
+						.label("channel", channel.getId());
+				channel.getLabel().ifPresent(label -> writer.label("sensor", label));
+				writer.value(values[i], fractionDigits);
+			}
+		}
+	}
+
+	private static void writeProcesses(OpenMetricsWriter writer, ProcessSnapshot snapshot, int top) {
+		writer.family("system_processes", OpenMetricsWriter.GAUGE,
+				"Processes in the process table.");
+		writer.sample("system_processes").value(snapshot.getProcessCount());
+
+		int[] busiest = snapshot.topByCpuUsage(top);
+		writer.family("system_process_cpu_usage_ratio", OpenMetricsWriter.GAUGE,
+				"Share of the CPU time of all cores used by one of the busiest processes.");
+		for(int index : busiest) {
+			writer.sample("system_process_cpu_usage_ratio").label("pid", snapshot.getPid(index))
+					.label("name", snapshot.getName(index))
+					.value(snapshot.getCpuUsage(index));
+		}
+
+		writer.family("system_process_resident_bytes", OpenMetricsWriter.GAUGE,
+				"Resident set size of one of the busiest processes.");
+		for(int index : busiest) {
+			writer.sample("system_process_resident_bytes").label("pid", snapshot.getPid(index))
+					.label("name", snapshot.getName(index))
+					.value(snapshot.getRssBytes(index));
+		}
+	}
+
+	private static void writeCgroups(OpenMetricsWriter writer, CgroupSnapshot snapshot) {
+		for(int rate = 0; rate < CgroupSnapshot.RATE_COUNT; rate++) {
+			writer.family(CGROUP_RATE_FAMILIES[rate], OpenMetricsWriter.GAUGE, CGROUP_RATE_HELP[rate]);
+			for(int index = 0; index < snapshot.getCgroupCount(); index++) {
+				writer.sample(CGROUP_RATE_FAMILIES[rate]).label("cgroup", snapshot.getPath(index))
+						.value(snapshot.getRate(rate, index));
+			}
+		}
+
+		writer.family("system_cgroup_memory_bytes", OpenMetricsWriter.GAUGE,
+				"Memory charged to the cgroup: memory.current and fields of memory.stat.");
+		for(int value = 0; value < CgroupSnapshot.VALUE_COUNT; value++) {
+			for(int index = 0; index < snapshot.getCgroupCount(); index++) {
+				long bytes = snapshot.getValue(value, index);
+				if(bytes != CgroupSnapshot.NO_VALUE) {
+					writer.sample("system_cgroup_memory_bytes")
+							.label("cgroup", snapshot.getPath(index))
+							.label("type", CGROUP_MEMORY_TYPES[value])
+							.value(bytes);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Renders the metrics of all registered sources into an OpenMetrics
+ * exposition once per sampling tick. The rendered body is published as an
+ * immutable byte array and served as-is to every scraper, so the cost of a
+ * scrape does not depend on the number of scrapers.
+ * <p>
+ * render() is meant to be registered with the SamplingScheduler right after
+ * the collectors it reads from.
+ */
+public class MetricsRenderer {
+
+	/**
+	 * Content type of the rendered body.
+	 */
+	public static final String CONTENT_TYPE =
+			"application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+
+	private final List<MetricsSource> sources = new ArrayList<>();
+
+	/**
+	 * Buffer reused by every rendering.
+	 */
+	private final OpenMetricsWriter writer = new OpenMetricsWriter(INITIAL_CAPACITY);
+
+	private volatile byte[] body;
+
+
+	public MetricsRenderer() {
+		writer.eof();
+		this.body = writer.toByteArray();
+	}
+
+
+	/**
+	 * Adds a source to be included in the following renderings.
+	 * @param source Source of metric families, e.g. one of CollectorMetrics.
+	 * @return This renderer.
+	 */
+	public synchronized MetricsRenderer addSource(MetricsSource source) {
+		sources.add(source);
+		return this;
+	}
+
+	/**
+	 * Renders current values of all the sources and publishes the result.
+	 */
+	public synchronized void render() {
+		writer.reset();
+		for(MetricsSource source : sources) {
+			source.writeMetrics(writer);
+		}
+		writer.eof();
+
+		this.body = writer.toByteArray();
+	}
+
+	/**
+	 * Returns the most recent rendering.
+	 * @return Body in the OpenMetrics text format. Must not be modified, it
+	 * is shared by all the callers.
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+}
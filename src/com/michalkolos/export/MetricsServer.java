@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Serves the body rendered by MetricsRenderer over HTTP at "/metrics", for
+ * Prometheus and other OpenMetrics scrapers. Requests only copy the already
+ * rendered bytes to the socket, nothing is formatted per request.
+ */
+public class MetricsServer implements Closeable {
+
+	public static final int DEFAULT_PORT = 9101;
+	public static final String PATH = "/metrics";
+
+	/**
+	 * Number of threads serving requests.
+	 */
+	public static final int DEFAULT_THREADS = 2;
+
+	private final MetricsRenderer renderer;
+	private final HttpServer server;
+	private final ExecutorService pool;
+
+
+	/**
+	 * @param renderer Renderer whose most recent body is served.
+	 * @param port Port to listen on, on all interfaces. 0 picks a free one.
+	 * @throws IOException When the port cannot be bound.
+	 */
+	public MetricsServer(MetricsRenderer renderer, int port) throws IOException {
+		this(renderer, new InetSocketAddress(port), DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param renderer Renderer whose most recent body is served.
+	 * @param address Address to listen on.
+	 * @param threads Number of threads serving requests.
+	 * @throws IOException When the address cannot be bound.
+	 */
+	public MetricsServer(MetricsRenderer renderer, InetSocketAddress address, int threads)
+			throws IOException {
+		this.renderer = renderer;
+		this.server = HttpServer.create(address, 0);
+
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "metrics-http-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.server.setExecutor(this.pool);
+		this.server.createContext(PATH, this::handle);
+	}
+
+
+	/**
+	 * Starts accepting requests.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try(exchange) {
+			String method = exchange.getRequestMethod();
+			boolean head = "HEAD".equals(method);
+			if(!head && !"GET".equals(method)) {
+				exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+
+			byte[] body = renderer.getBody();
+			exchange.getResponseHeaders().set("Content-Type", MetricsRenderer.CONTENT_TYPE);
+			if(head) {
+				exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+				exchange.sendResponseHeaders(200, -1);
+			} else {
+				exchange.sendResponseHeaders(200, body.length);
+				try(OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * @return Port the server listens on.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Stops the server, requests in progress are dropped.
+	 */
+	@Override
+	public void close() {
+		server.stop(0);
+		pool.shutdown();
+	}
+}
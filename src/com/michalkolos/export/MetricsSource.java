@@ -0,0 +1,21 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+
+/**
+ * Part of the exposition rendered by MetricsRenderer, usually all the metric
+ * families of one collector. See CollectorMetrics.
+ */
+@FunctionalInterface
+public interface MetricsSource {
+
+	/**
+	 * Writes the metric families of the source. Values should be taken from
+	 * a single snapshot of the collector, so they come from one reading.
+	 * @param writer Writer of the exposition being rendered.
+	 */
+	void writeMetrics(OpenMetricsWriter writer);
+}
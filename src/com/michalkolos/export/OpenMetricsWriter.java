@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Encodes metrics in the OpenMetrics text format straight into a growable
+ * byte buffer. Numbers are written digit by digit and strings char by char,
+ * so rendering all the metrics of a tick allocates nothing once the buffer
+ * has grown to its working size.
+ * <p>
+ * Every sample is written as a chain: sample(name), any number of label()
+ * calls and a closing value() call. Samples of a family have to follow the
+ * family() call that describes them.
+ */
+public class OpenMetricsWriter {
+
+	public static final String GAUGE = "gauge";
+	public static final String COUNTER = "counter";
+	public static final String SUMMARY = "summary";
+
+	/**
+	 * Number of fraction digits floating point values are rounded to.
+	 */
+	public static final int FLOAT_FRACTION_DIGITS = 6;
+
+	/**
+	 * Magnitude above which floats are written without a fraction, their
+	 * precision does not reach the fraction digits anyway.
+	 */
+	private static final float FIXED_POINT_LIMIT = 1e12f;
+
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L,
+			100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+	private byte[] bytes;
+	private int length = 0;
+
+	/**
+	 * True while the label set of the current sample is open.
+	 */
+	private boolean labelsOpen = false;
+
+	/**
+	 * Digits of a number in reverse order.
+	 */
+	private final byte[] digits = new byte[20];
+
+
+	/**
+	 * @param initialCapacity Initial size of the buffer in bytes.
+	 */
+	public OpenMetricsWriter(int initialCapacity) {
+		this.bytes = new byte[Math.max(initialCapacity, 64)];
+	}
+
+
+	/**
+	 * Writes metadata of a metric family.
+	 * @param name Name of the family, without the "_total" suffix of
+	 *             counters.
+	 * @param type GAUGE, COUNTER or SUMMARY.
+	 * @param help Description of the family.
+	 * @return This writer.
+	 */
+	public OpenMetricsWriter family(String name, String type, String help) {
+		writeAscii("# TYPE ");
+		writeAscii(name);
+		write((byte)' ');
+		writeAscii(type);
+		writeAscii("\n# HELP ");
+		writeAscii(name);
+		write((byte)' ');
+		writeEscaped(help);
+		write((byte)'\n');
+		return this;
+	}
+
+	/**
+	 * Starts a sample.
+	 * @param name Name of the sample, e.g. "system_context_switches_total".
+	 * @return This writer.
+	 */
+	public OpenMetricsWriter sample(String name) {
+		writeAscii(name);
+		return this;
+	}
+
+	/**
+	 * Adds a label to the current sample.
+	 * @param name Name of the label.
+	 * @param value Value of the label, escaped as needed.
+	 * @return This writer.
+	 */
+	public OpenMetricsWriter label(String name, String value) {
+		openLabel(name);
+		writeEscaped(value);
+		write((byte)'"');
+		return this;
+	}
+
+	/**
+	 * Adds a label with a numeric value to the current sample, e.g. a core
+	 * number.
+	 * @param name Name of the label.
+	 * @param value Value of the label.
+	 * @return This writer.
+	 */
+	public OpenMetricsWriter label(String name, long value) {
+		openLabel(name);
+		writeLong(value);
+		write((byte)'"');
+		return this;
+	}
+
+	/**
+	 * Ends the current sample with an integer value.
+	 * @param value Value of the sample.
+	 */
+	public void value(long value) {
+		closeLabels();
+		writeLong(value);
+		write((byte)'\n');
+	}
+
+	/**
+	 * Ends the current sample with a value rounded to FLOAT_FRACTION_DIGITS.
+	 * @param value Value of the sample.
+	 */
+	public void value(float value) {
+		closeLabels();
+		writeFloat(value);
+		write((byte)'\n');
+	}
+
+	/**
+	 * Ends the current sample with a fixed point value, e.g. microseconds
+	 * written as seconds.
+	 * @param unscaledValue Value multiplied by 10^fractionDigits.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 */
+	public void value(long unscaledValue, int fractionDigits) {
+		closeLabels();
+		writeFixedPoint(unscaledValue, fractionDigits);
+		write((byte)'\n');
+	}
+
+	/**
+	 * Writes the end of the exposition, required by OpenMetrics.
+	 */
+	public void eof() {
+		writeAscii("# EOF\n");
+	}
+
+
+	/**
+	 * Clears the buffer so it can be reused for the next rendering.
+	 */
+	public void reset() {
+		length = 0;
+		labelsOpen = false;
+	}
+
+	/**
+	 * @return Copy of the bytes written since the last reset().
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(bytes, length);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+
+	private void openLabel(String name) {
+		write(labelsOpen ? (byte)',' : (byte)'{');
+		labelsOpen = true;
+		writeAscii(name);
+		write((byte)'=');
+		write((byte)'"');
+	}
+
+	private void closeLabels() {
+		if(labelsOpen) {
+			write((byte)'}');
+			labelsOpen = false;
+		}
+		write((byte)' ');
+	}
+
+
+	private void writeFloat(float value) {
+		if(Float.isNaN(value)) {
+			writeAscii("NaN");
+		} else if(Float.isInfinite(value)) {
+			writeAscii(value > 0 ? "+Inf" : "-Inf");
+		} else if(Math.abs(value) < FIXED_POINT_LIMIT) {
+			writeFixedPoint(Math.round((double)value * POWERS_OF_TEN[FLOAT_FRACTION_DIGITS]),
+					FLOAT_FRACTION_DIGITS);
+		} else if(Math.abs(value) < Long.MAX_VALUE) {
+			writeLong(Math.round((double)value));
+		} else {
+			writeAscii(Float.toString(value));
+		}
+	}
+
+	/**
+	 * Writes a fixed point number without trailing zeros of the fraction.
+	 */
+	private void writeFixedPoint(long unscaledValue, int fractionDigits) {
+		long scale = POWERS_OF_TEN[fractionDigits];
+		long integer = unscaledValue / scale;
+		long fraction = Math.abs(unscaledValue % scale);
+
+		if(unscaledValue < 0 && integer == 0) {
+			write((byte)'-');
+		}
+		writeLong(integer);
+
+		if(fraction == 0) {
+			return;
+		}
+
+		int digitCount = fractionDigits;
+		while(fraction % 10 == 0) {
+			fraction /= 10;
+			digitCount--;
+		}
+
+		write((byte)'.');
+		for(int i = digitCount - 1; i >= 0; i--) {
+			write((byte)('0' + fraction / POWERS_OF_TEN[i] % 10));
+		}
+	}
+
+	private void writeLong(long value) {
+		if(value == Long.MIN_VALUE) {
+			writeAscii(Long.toString(value));
+			return;
+		}
+		if(value < 0) {
+			write((byte)'-');
+			value = -value;
+		}
+
+		int count = 0;
+		do {
+			digits[count++] = (byte)('0' + value % 10);
+			value /= 10;
+		} while(value != 0);
+
+		ensureCapacity(count);
+		while(count > 0) {
+			bytes[length++] = digits[--count];
+		}
+	}
+
+
+	/**
+	 * Writes a string known to be plain ASCII, e.g. a metric name.
+	 */
+	private void writeAscii(String text) {
+		ensureCapacity(text.length());
+		for(int i = 0; i < text.length(); i++) {
+			bytes[length++] = (byte)text.charAt(i);
+		}
+	}
+
+	/**
+	 * Writes a string in UTF-8 with backslashes, double quotes and line feeds
+	 * escaped, as required for label values and help texts.
+	 */
+	private void writeEscaped(String text) {
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if(c == '\\' || c == '"') {
+				write((byte)'\\');
+				write((byte)c);
+			} else if(c == '\n') {
+				write((byte)'\\');
+				write((byte)'n');
+			} else if(c < 0x80) {
+				write((byte)c);
+			} else {
+				//  Rare outside ASCII, e.g. in a cgroup path, so the rest
+				//  of the string is encoded by the JDK.
+				writeEscaped(text.substring(i).getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+		}
+	}
+
+	private void writeEscaped(byte[] utf8) {
+		for(byte b : utf8) {
+			if(b == '\\' || b == '"') {
+				write((byte)'\\');
+				write(b);
+			} else if(b == '\n') {
+				write((byte)'\\');
+				write((byte)'n');
+			} else {
+				write(b);
+			}
+		}
+	}
+
+	private void write(byte b) {
+		ensureCapacity(1);
+		bytes[length++] = b;
+	}
+
+	private void ensureCapacity(int count) {
+		if(length + count > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		}
+	}
+}
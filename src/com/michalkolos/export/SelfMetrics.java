@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.export;
+
+import com.michalkolos.hwmon.Hwmon;
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.pressure.ProcPressure;
+import com.michalkolos.sampling.LatencyHistogram;
+import com.michalkolos.sampling.SamplingScheduler;
+import com.michalkolos.sampling.ScheduledSampler;
+import com.michalkolos.storage.TimeSeriesStore;
+
+import java.util.List;
+
+
+/**
+ * MetricsSources of the monitor's own cost, so overhead regressions show up
+ * next to the metrics of the system.
+ * <p>
+ * Metric families: "system_monitor_task_duration_seconds" (summary of run
+ * durations per scheduler task), "system_monitor_task_duration_max_seconds",
+ * "system_monitor_task_allocated_bytes", "system_monitor_task_runs",
+ * "system_monitor_task_missed_ticks" and "system_monitor_task_errors"
+ * (SamplingScheduler), "system_monitor_file_reads" and
+ * "system_monitor_file_read_errors" (SmallFileReader),
+ * "system_monitor_hwmon_errors" (Hwmon), "system_monitor_pressure_errors"
+ * (ProcPressure) and "system_monitor_storage_errors" (TimeSeriesStore).
+ */
+public class SelfMetrics {
+
+	/**
+	 * Quantiles of the task durations and their labels.
+	 */
+	private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+	private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+	private static final int NANOS_DIGITS = 9;
+
+
+	private SelfMetrics() {
+	}
+
+
+	/**
+	 * @param scheduler Scheduler running the collectors.
+	 * @return Source of per-task duration, allocation and error families.
+	 */
+	public static MetricsSource scheduler(SamplingScheduler scheduler) {
+		return writer -> writeTasks(writer, scheduler.getSamplers());
+	}
+
+	/**
+	 * @param reader Reader of sysfs attributes, usually the shared one.
+	 * @return Source of file read families.
+	 */
+	public static MetricsSource fileReader(SmallFileReader reader) {
+		return writer -> {
+			writer.family("system_monitor_file_reads", OpenMetricsWriter.COUNTER,
+					"Reads of small files, by whether the file was already open.");
+			writer.sample("system_monitor_file_reads_total").label("result", "hit")
+					.value(reader.getHitCount());
+			writer.sample("system_monitor_file_reads_total").label("result", "miss")
+					.value(reader.getMissCount());
+
+			writer.family("system_monitor_file_read_errors", OpenMetricsWriter.COUNTER,
+					"Reads of small files that failed.");
+			writer.sample("system_monitor_file_read_errors_total").value(reader.getErrorCount());
+		};
+	}
+
+	/**
+	 * @param hwmon Collector of Hwmon subsystems.
+	 * @return Source of the Hwmon error family.
+	 */
+	public static MetricsSource hwmon(Hwmon hwmon) {
+		return writer -> {
+			writer.family("system_monitor_hwmon_errors", OpenMetricsWriter.COUNTER,
+					"Hwmon subsystem directories that could not be read.");
+			writer.sample("system_monitor_hwmon_errors_total").value(hwmon.getErrorCount());
+		};
+	}
+
+	/**
+	 * @param pressure Collector of pressure stall information.
+	 * @return Source of the pressure read error family.
+	 */
+	public static MetricsSource procPressure(ProcPressure pressure) {
+		return writer -> {
+			writer.family("system_monitor_pressure_errors", OpenMetricsWriter.COUNTER,
+					"Reads of \"/proc/pressure\" files that failed.");
+			writer.sample("system_monitor_pressure_errors_total").value(pressure.getErrorCount());
+		};
+	}
+
+	/**
+	 * @param store Store the samples are persisted in.
+	 * @return Source of the storage error family.
+	 */
+	public static MetricsSource timeSeriesStore(TimeSeriesStore store) {
+		return writer -> {
+			writer.family("system_monitor_storage_errors", OpenMetricsWriter.COUNTER,
+					"Samples dropped because they could not be written to the store.");
+			writer.sample("system_monitor_storage_errors_total").value(store.getErrorCount());
+		};
+	}
+
+
+	private static void writeTasks(OpenMetricsWriter writer, List<ScheduledSampler> samplers) {
+		writer.family("system_monitor_task_duration_seconds", OpenMetricsWriter.SUMMARY,
+				"Time the scheduler spent running a task.");
+		for(ScheduledSampler sampler : samplers) {
+			LatencyHistogram durations = sampler.getDurations();
+			for(int i = 0; i < PERCENTILES.length; i++) {
+				writer.sample("system_monitor_task_duration_seconds")
+						.label("task", sampler.getName()).label("quantile", QUANTILES[i])
+						.value(durations.getValueAtPercentile(PERCENTILES[i]), NANOS_DIGITS);
+			}
+			writer.sample("system_monitor_task_duration_seconds_sum").label("task", sampler.getName())
+					.value(durations.getSum(), NANOS_DIGITS);
+			writer.sample("system_monitor_task_duration_seconds_count").label("task", sampler.getName())
+					.value(durations.getTotalCount());
+		}
+
+		writer.family("system_monitor_task_duration_max_seconds", OpenMetricsWriter.GAUGE,
+				"Longest run of a task.");
+		for(ScheduledSampler sampler : samplers) {
+			writer.sample("system_monitor_task_duration_max_seconds").label("task", sampler.getName())
+					.value(sampler.getDurations().getMax(), NANOS_DIGITS);
+		}
+
+		writer.family("system_monitor_task_allocated_bytes", OpenMetricsWriter.COUNTER,
+				"Heap bytes allocated by the runs of a task.");
+		for(ScheduledSampler sampler : samplers) {
+			writer.sample("system_monitor_task_allocated_bytes_total").label("task", sampler.getName())
+					.value(sampler.getAllocatedBytes());
+		}
+
+		writer.family("system_monitor_task_runs", OpenMetricsWriter.COUNTER,
+				"Runs of a task.");
+		for(ScheduledSampler sampler : samplers) {
+			writer.sample("system_monitor_task_runs_total").label("task", sampler.getName())
+					.value(sampler.getExecutionCount());
+		}
+
+		writer.family("system_monitor_task_missed_ticks", OpenMetricsWriter.COUNTER,
+				"Ticks of a task skipped because it was running late.");
+		for(ScheduledSampler sampler : samplers) {
+			writer.sample("system_monitor_task_missed_ticks_total").label("task", sampler.getName())
+					.value(sampler.getMissedTickCount());
+		}
+
+		writer.family("system_monitor_task_errors", OpenMetricsWriter.COUNTER,
+				"Runs of a task that ended with an exception.");
+		for(ScheduledSampler sampler : samplers) {
+			writer.sample("system_monitor_task_errors_total").label("task", sampler.getName())
+					.value(sampler.getErrorCount());
+		}
+	}
+}
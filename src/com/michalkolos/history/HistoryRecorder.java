@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+import com.michalkolos.cpu.data.CpuTimesTable;
+import com.michalkolos.cpu.data.ProcStatSnapshot;
+import com.michalkolos.hwmon.HwmonChannel;
+import com.michalkolos.hwmon.HwmonSampler;
+import com.michalkolos.memory.data.MeminfoField;
+import com.michalkolos.memory.data.MeminfoSnapshot;
+import com.michalkolos.pressure.data.PressureResource;
+import com.michalkolos.pressure.data.PressureSnapshot;
+import com.michalkolos.sampling.ScheduledSampler;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Feeds readings of the collectors into a MetricSink, e.g. a HistoryStore or
+ * a TimeSeriesStore. Metric ids are registered once and cached by core number,
+ * so recording a tick involves no map lookups.
+ * <p>
+ * Metric names: "cpu.usage" and "cpu##.usage" (usage ratio),
+ * "cpu.context_switches.rate" (per second), "cpu##.frequency" (MHz),
+ * "cpu.temperature" (degrees Celsius), "memory.used" (usage ratio),
+ * "memory.available", "memory.cached", "memory.dirty" and "memory.swap_used"
+ * (MiB), "pressure.cpu.some", "pressure.memory.full" etc. (share of the
+ * sampling interval tasks were stalled), "hwmon.coretemp.hwmon3.temp1" etc.
+ * (Hwmon channels in their units), "monitor.proc-stat.duration" etc.
+ * (average run time of a scheduler task in milliseconds) and
+ * "monitor.proc-stat.allocated" etc. (average KiB allocated per run).
+ * <p>
+ * Metrics are registered with the intervals their collectors are meant to
+ * be scheduled at, see the *_INTERVAL_MILLIS constants, so sinks like
+ * HistoryStore keep the same period of samples of every metric.
+ */
+public class HistoryRecorder {
+
+	/**
+	 * Intervals the collectors are sampled at: CPU usage, context switches
+	 * and pressure, memory, core frequencies, CPU temperature, Hwmon
+	 * channels and scheduler tasks.
+	 */
+	public static final long CPU_INTERVAL_MILLIS = 100L;
+	public static final long MEMORY_INTERVAL_MILLIS = 100L;
+	public static final long FREQUENCY_INTERVAL_MILLIS = 1_000L;
+	public static final long TEMPERATURE_INTERVAL_MILLIS = 5_000L;
+	public static final long HWMON_INTERVAL_MILLIS = 1_000L;
+	public static final long TASKS_INTERVAL_MILLIS = 1_000L;
+
+	/**
+	 * Memory fields recorded in MiB and names of their metrics.
+	 */
+	private static final MeminfoField[] MEMORY_FIELDS = {MeminfoField.MEM_AVAILABLE,
+			MeminfoField.CACHED, MeminfoField.DIRTY, MeminfoField.SWAP_USED};
+	private static final String[] MEMORY_METRICS = {"memory.available",
+			"memory.cached", "memory.dirty", "memory.swap_used"};
+
+	private static final PressureResource[] PRESSURE_RESOURCES = PressureResource.values();
+
+	private final MetricSink sink;
+
+	/**
+	 * Usage metric ids indexed by CpuTimesTable row.
+	 */
+	private int[] usageIds = new int[0];
+	private int[] frequencyIds = new int[0];
+	private final int contextSwitchesId;
+	private final int temperatureId;
+
+	private final int memoryUsedId;
+	private final int[] memoryIds;
+	private long previousMemoryTimestamp = 0L;
+
+	/**
+	 * Pressure metric ids indexed by resource * LINE_COUNT + line.
+	 */
+	private final int[] pressureIds;
+	private long previousPressureTimestamp = 0L;
+
+	/**
+	 * Sampler the Hwmon ids and divisors were resolved for, indexed like its
+	 * channels.
+	 */
+	private HwmonSampler hwmonSampler;
+	private int[] hwmonIds = new int[0];
+	private float[] hwmonDivisors = new float[0];
+
+	/**
+	 * Metric ids and totals of the last recording of scheduler tasks, indexed
+	 * like the task list.
+	 */
+	private int[] taskDurationIds = new int[0];
+	private int[] taskAllocationIds = new int[0];
+	private long[] previousTaskRuns = new long[0];
+	private long[] previousTaskNanos = new long[0];
+	private long[] previousTaskBytes = new long[0];
+
+	private long previousTimestamp = 0L;
+	private long previousContextSwitches = 0L;
+
+
+	public HistoryRecorder(MetricSink sink) {
+		this.sink = sink;
+		this.contextSwitchesId = sink.register("cpu.context_switches.rate", CPU_INTERVAL_MILLIS);
+		this.temperatureId = sink.register("cpu.temperature", TEMPERATURE_INTERVAL_MILLIS);
+		this.memoryUsedId = sink.register("memory.used", MEMORY_INTERVAL_MILLIS);
+		this.memoryIds = new int[MEMORY_FIELDS.length];
+		for(int i = 0; i < MEMORY_FIELDS.length; i++) {
+			memoryIds[i] = sink.register(MEMORY_METRICS[i], MEMORY_INTERVAL_MILLIS);
+		}
+
+		this.pressureIds = new int[PRESSURE_RESOURCES.length * PressureSnapshot.LINE_COUNT];
+		for(PressureResource resource : PRESSURE_RESOURCES) {
+			int row = resource.ordinal() * PressureSnapshot.LINE_COUNT;
+			pressureIds[row + PressureSnapshot.SOME] =
+					sink.register("pressure." + resource.getFileName() + ".some", CPU_INTERVAL_MILLIS);
+			pressureIds[row + PressureSnapshot.FULL] =
+					sink.register("pressure." + resource.getFileName() + ".full", CPU_INTERVAL_MILLIS);
+		}
+	}
+
+
+	/**
+	 * Records usage of all online cores and the context switch rate.
+	 * Snapshots that were already recorded are ignored.
+	 * @param snapshot Most recent ProcStat reading.
+	 */
+	public synchronized void record(ProcStatSnapshot snapshot) {
+		long timestamp = snapshot.getTimestamp();
+		if(timestamp <= previousTimestamp) {
+			return;
+		}
+
+		int rowCount = snapshot.getCpuCoresCount() + 1;
+		if(usageIds.length < rowCount) {
+			int known = usageIds.length;
+			usageIds = Arrays.copyOf(usageIds, rowCount);
+			for(int row = known; row < rowCount; row++) {
+				usageIds[row] = sink.register(row == CpuTimesTable.TOTAL_ROW
+						? "cpu.usage"
+						: "cpu" + (row - 1) + ".usage", CPU_INTERVAL_MILLIS);
+			}
+		}
+
+		for(int row = 0; row < rowCount; row++) {
+			if(snapshot.isOnline(row)) {
+				sink.record(usageIds[row], timestamp,
+						snapshot.getUsage(CpuTimesTable.TOTAL_USAGE, row));
+			}
+		}
+
+		long contextSwitches = snapshot.getContextSwitchesCount();
+		if(previousTimestamp != 0L) {
+			sink.record(contextSwitchesId, timestamp,
+					(contextSwitches - previousContextSwitches) * 1000F
+							/ (timestamp - previousTimestamp));
+		}
+
+		previousTimestamp = timestamp;
+		previousContextSwitches = contextSwitches;
+	}
+
+
+	/**
+	 * Records clock frequencies of all cores.
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param frequencies Frequencies in kHz as filled by
+	 *                    CpuFrequency.sampleAll(int[]).
+	 * @param count Number of valid array elements.
+	 */
+	public synchronized void recordFrequencies(long timestamp, int[] frequencies, int count) {
+		if(frequencyIds.length < count) {
+			int known = frequencyIds.length;
+			frequencyIds = Arrays.copyOf(frequencyIds, count);
+			for(int core = known; core < count; core++) {
+				frequencyIds[core] = sink.register("cpu" + core + ".frequency", FREQUENCY_INTERVAL_MILLIS);
+			}
+		}
+
+		for(int core = 0; core < count; core++) {
+			sink.record(frequencyIds[core], timestamp, frequencies[core] / 1000F);
+		}
+	}
+
+
+	/**
+	 * Records CPU temperature.
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param celsius Temperature in degrees Celsius.
+	 */
+	public void recordTemperature(long timestamp, float celsius) {
+		sink.record(temperatureId, timestamp, celsius);
+	}
+
+
+	/**
+	 * Records readings of Hwmon channels converted to their units. Channels
+	 * that could not be read are skipped.
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param sampler Sampler that filled the values. Metrics are resolved
+	 *                again whenever another sampler is passed, e.g. after
+	 *                Hwmon.refresh() found new channels.
+	 * @param values Raw values as filled by HwmonSampler.sample(long[]).
+	 * @param count Number of valid array elements.
+	 */
+	public synchronized void recordHwmon(long timestamp, HwmonSampler sampler, long[] values, int count) {
+		if(sampler != hwmonSampler) {
+			List<HwmonChannel> channels = sampler.getChannels();
+			hwmonIds = new int[channels.size()];
+			hwmonDivisors = new float[channels.size()];
+			for(int i = 0; i < channels.size(); i++) {
+				HwmonChannel channel = channels.get(i);
+				hwmonIds[i] = sink.register("hwmon." + channel.getKey(), HWMON_INTERVAL_MILLIS);
+				hwmonDivisors[i] = channel.getType().getDivisor();
+			}
+			hwmonSampler = sampler;
+		}
+
+		for(int i = 0; i < Math.min(count, hwmonIds.length); i++) {
+			if(HwmonSampler.isValid(values[i])) {
+				sink.record(hwmonIds[i], timestamp, values[i] / hwmonDivisors[i]);
+			}
+		}
+	}
+
+
+	/**
+	 * Records memory usage. Snapshots that were already recorded are ignored,
+	 * so are fields that are not available.
+	 * @param snapshot Most recent ProcMeminfo reading.
+	 */
+	public synchronized void recordMemory(MeminfoSnapshot snapshot) {
+		long timestamp = snapshot.getTimestamp();
+		if(timestamp <= previousMemoryTimestamp) {
+			return;
+		}
+		previousMemoryTimestamp = timestamp;
+
+		if(snapshot.getUsedBytes() != MeminfoSnapshot.NO_VALUE) {
+			sink.record(memoryUsedId, timestamp, snapshot.getUsedRatio());
+		}
+
+		for(int i = 0; i < MEMORY_FIELDS.length; i++) {
+			long bytes = snapshot.get(MEMORY_FIELDS[i]);
+			if(bytes != MeminfoSnapshot.NO_VALUE) {
+				sink.record(memoryIds[i], timestamp, bytes / (1024F * 1024F));
+			}
+		}
+	}
+
+
+	/**
+	 * Records stall ratios of the last sampling interval. Snapshots that were
+	 * already recorded are ignored, so are the first reading and lines that
+	 * are not available.
+	 * @param snapshot Most recent ProcPressure reading.
+	 */
+	public synchronized void recordPressure(PressureSnapshot snapshot) {
+		long timestamp = snapshot.getTimestamp();
+		if(timestamp <= previousPressureTimestamp) {
+			return;
+		}
+		previousPressureTimestamp = timestamp;
+
+		for(PressureResource resource : PRESSURE_RESOURCES) {
+			for(int line = 0; line < PressureSnapshot.LINE_COUNT; line++) {
+				if(snapshot.getStallMicros(resource, line) != PressureSnapshot.NO_VALUE) {
+					sink.record(pressureIds[resource.ordinal() * PressureSnapshot.LINE_COUNT + line],
+							timestamp, snapshot.getStallRatio(resource, line));
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Records average run time and allocations of scheduler tasks since the
+	 * previous recording. Tasks that did not run in the meantime are skipped.
+	 * @param timestamp Time of the recording in milliseconds since epoch.
+	 * @param samplers Tasks of the scheduler, see
+	 *                 SamplingScheduler.getSamplers(), always in the same
+	 *                 order.
+	 */
+	public synchronized void recordTasks(long timestamp, List<ScheduledSampler> samplers) {
+		int count = samplers.size();
+		if(taskDurationIds.length < count) {
+			int known = taskDurationIds.length;
+			taskDurationIds = Arrays.copyOf(taskDurationIds, count);
+			taskAllocationIds = Arrays.copyOf(taskAllocationIds, count);
+			previousTaskRuns = Arrays.copyOf(previousTaskRuns, count);
+			previousTaskNanos = Arrays.copyOf(previousTaskNanos, count);
+			previousTaskBytes = Arrays.copyOf(previousTaskBytes, count);
+			for(int i = known; i < count; i++) {
+				String name = samplers.get(i).getName();
+				taskDurationIds[i] = sink.register("monitor." + name + ".duration", TASKS_INTERVAL_MILLIS);
+				taskAllocationIds[i] = sink.register("monitor." + name + ".allocated", TASKS_INTERVAL_MILLIS);
+			}
+		}
+
+		for(int i = 0; i < count; i++) {
+			ScheduledSampler sampler = samplers.get(i);
+			long runs = sampler.getDurations().getTotalCount();
+			long nanos = sampler.getDurations().getSum();
+			long bytes = sampler.getAllocatedBytes();
+
+			long newRuns = runs - previousTaskRuns[i];
+			if(newRuns > 0) {
+				sink.record(taskDurationIds[i], timestamp,
+						(nanos - previousTaskNanos[i]) / 1_000_000F / newRuns);
+				sink.record(taskAllocationIds[i], timestamp,
+						(bytes - previousTaskBytes[i]) / 1024F / newRuns);
+			}
+
+			previousTaskRuns[i] = runs;
+			previousTaskNanos[i] = nanos;
+			previousTaskBytes[i] = bytes;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * In-process registry of metric histories. All histories created by a store
+ * share the same rollup levels. Raw samples are kept either up to a fixed
+ * capacity, or for a fixed period, in which case the capacity of each
+ * history follows from the interval its metric was registered with.
+ */
+public class HistoryStore implements MetricSink {
+
+	/**
+	 * Four hours of samples taken every 100 ms.
+	 */
+	public static final int DEFAULT_RAW_CAPACITY = 144_000;
+
+	/**
+	 * Interval assumed for metrics registered without one by a store with a
+	 * retention period, the shortest interval collectors are sampled at.
+	 */
+	public static final long DEFAULT_INTERVAL_MILLIS = 100L;
+
+	/**
+	 * 10 second buckets for one day and 5 minute buckets for 30 days.
+	 */
+	public static final RollupLevel[] DEFAULT_LEVELS = {
+			new RollupLevel(10, TimeUnit.SECONDS, 8_640),
+			new RollupLevel(5, TimeUnit.MINUTES, 8_640)
+	};
+
+	private final int rawCapacity;
+
+	/**
+	 * Period of raw samples kept per metric, 0 if every history gets
+	 * rawCapacity samples.
+	 */
+	private final long rawRetentionMillis;
+	private final RollupLevel[] levels;
+	private final Map<String, MetricHistory> histories = new ConcurrentHashMap<>();
+
+	//  Histories indexed by ids returned by register().
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+	private volatile MetricHistory[] historiesById = new MetricHistory[0];
+
+
+	public HistoryStore() {
+		this(DEFAULT_RAW_CAPACITY, DEFAULT_LEVELS);
+	}
+
+	/**
+	 * @param rawCapacity Number of raw samples kept per metric.
+	 * @param levels Rollup levels kept per metric.
+	 */
+	public HistoryStore(int rawCapacity, RollupLevel... levels) {
+		this.rawCapacity = rawCapacity;
+		this.rawRetentionMillis = 0L;
+		this.levels = levels.clone();
+	}
+
+	/**
+	 * @param rawRetention Period of raw samples kept per metric. Metrics
+	 *                     registered without an interval are assumed to be
+	 *                     sampled every DEFAULT_INTERVAL_MILLIS.
+	 * @param unit Unit of rawRetention.
+	 * @param levels Rollup levels kept per metric.
+	 */
+	public HistoryStore(long rawRetention, TimeUnit unit, RollupLevel... levels) {
+		this.rawRetentionMillis = unit.toMillis(rawRetention);
+		this.rawCapacity = capacityFor(rawRetentionMillis, DEFAULT_INTERVAL_MILLIS);
+		this.levels = levels.clone();
+	}
+
+
+	/**
+	 * Returns history of a given metric, creating it on first use.
+	 * @param name Name of the metric.
+	 * @return History of the metric.
+	 */
+	public MetricHistory getOrCreate(String name) {
+		return getOrCreate(name, rawCapacity);
+	}
+
+	private MetricHistory getOrCreate(String name, int capacity) {
+		return histories.computeIfAbsent(name, key -> new MetricHistory(key, capacity, levels));
+	}
+
+	@Override
+	public int register(String name) {
+		return registerWithCapacity(name, rawCapacity);
+	}
+
+	/**
+	 * Registers a metric whose history keeps the retention period of the
+	 * store, or the fixed raw capacity if the store has no retention period.
+	 */
+	@Override
+	public int register(String name, long intervalMillis) {
+		if(rawRetentionMillis == 0L || intervalMillis <= 0L) {
+			return registerWithCapacity(name, rawCapacity);
+		}
+
+		return registerWithCapacity(name, capacityFor(rawRetentionMillis, intervalMillis));
+	}
+
+	private static int capacityFor(long retentionMillis, long intervalMillis) {
+		long capacity = (retentionMillis + intervalMillis - 1) / intervalMillis;
+		return (int)Math.min(capacity, Integer.MAX_VALUE);
+	}
+
+	private synchronized int registerWithCapacity(String name, int capacity) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+
+		int newId = historiesById.length;
+		MetricHistory[] extended = Arrays.copyOf(historiesById, newId + 1);
+		extended[newId] = getOrCreate(name, capacity);
+		historiesById = extended;
+		ids.put(name, newId);
+
+		return newId;
+	}
+
+	@Override
+	public void record(int metricId, long timestamp, float value) {
+		historiesById[metricId].record(timestamp, value);
+	}
+
+
+	/**
+	 * @param name Name of the metric.
+	 * @return Optional containing history of the metric or empty if nothing
+	 * was recorded for it.
+	 */
+	public Optional<MetricHistory> get(String name) {
+		return Optional.ofNullable(histories.get(name));
+	}
+
+	public Set<String> getMetricNames() {
+		return Collections.unmodifiableSet(histories.keySet());
+	}
+
+	/**
+	 * @return Number of bytes of off-heap memory used by all histories.
+	 */
+	public long getOffHeapBytes() {
+		return histories.values().stream()
+				.mapToLong(MetricHistory::getOffHeapBytes)
+				.sum();
+	}
+}
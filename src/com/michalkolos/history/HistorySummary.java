@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+
+/**
+ * Min, max and average of samples of a metric over a window of time.
+ */
+public class HistorySummary {
+
+	private final float min;
+	private final float max;
+	private final float avg;
+	private final int count;
+
+
+	public HistorySummary(float min, float max, float avg, int count) {
+		this.min = min;
+		this.max = max;
+		this.avg = avg;
+		this.count = count;
+	}
+
+
+	public float getMin() {
+		return min;
+	}
+
+	public float getMax() {
+		return max;
+	}
+
+	public float getAvg() {
+		return avg;
+	}
+
+	/**
+	 * @return Number of samples in the window.
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "min: " + min + ", max: " + max + ", avg: " + avg + " (" + count + " samples)";
+	}
+}
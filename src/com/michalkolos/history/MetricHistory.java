@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Fixed-size history of a single metric kept in off-heap memory. Raw samples
+ * are stored in a ring buffer that overwrites the oldest sample when full.
+ * Every sample is also folded into min/max/avg buckets of each configured
+ * RollupLevel, kept in rings of their own, so longer periods can be looked at
+ * in a coarser resolution.
+ * <p>
+ * Recording allocates nothing. Queries walk only the requested window,
+ * starting from the most recent sample. All methods are thread safe.
+ */
+public class MetricHistory {
+
+	/**
+	 * Raw record: long timestamp, float value.
+	 */
+	private static final int RAW_RECORD_SIZE = Long.BYTES + Float.BYTES;
+
+	/**
+	 * Rollup record: long bucket start, float min, float max, float avg,
+	 * int count.
+	 */
+	private static final int ROLLUP_RECORD_SIZE = Long.BYTES + 3 * Float.BYTES + Integer.BYTES;
+
+	private final String name;
+
+	private final ByteBuffer raw;
+	private final int rawCapacity;
+	private int rawHead = 0;
+	private int rawSize = 0;
+
+	private final List<RollupLevel> levels;
+	private final ByteBuffer[] rollups;
+	private final int[] rollupHeads;
+	private final int[] rollupSizes;
+
+	//  Bucket of every level that is still being filled.
+	private final long[] openStart;
+	private final float[] openMin;
+	private final float[] openMax;
+	private final double[] openSum;
+	private final int[] openCount;
+
+
+	/**
+	 * @param name Name of the metric.
+	 * @param rawCapacity Number of most recent raw samples kept.
+	 * @param levels Coarser resolutions kept in addition to raw samples.
+	 */
+	public MetricHistory(String name, int rawCapacity, RollupLevel... levels) {
+		this.name = name;
+		this.rawCapacity = Math.max(rawCapacity, 1);
+		this.raw = ByteBuffer.allocateDirect(this.rawCapacity * RAW_RECORD_SIZE);
+
+		this.levels = Collections.unmodifiableList(Arrays.asList(levels.clone()));
+		this.rollups = new ByteBuffer[levels.length];
+		this.rollupHeads = new int[levels.length];
+		this.rollupSizes = new int[levels.length];
+		for(int i = 0; i < levels.length; i++) {
+			rollups[i] = ByteBuffer.allocateDirect(levels[i].getCapacity() * ROLLUP_RECORD_SIZE);
+		}
+
+		this.openStart = new long[levels.length];
+		this.openMin = new float[levels.length];
+		this.openMax = new float[levels.length];
+		this.openSum = new double[levels.length];
+		this.openCount = new int[levels.length];
+	}
+
+
+	/**
+	 * Appends a sample. Samples are expected in chronological order.
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric. NaN and infinite values, e.g. usage
+	 *              of an interval without any CPU time, are kept as raw
+	 *              samples but left out of the rollups.
+	 */
+	public synchronized void record(long timestamp, float value) {
+		int offset = rawHead * RAW_RECORD_SIZE;
+		raw.putLong(offset, timestamp);
+		raw.putFloat(offset + Long.BYTES, value);
+		rawHead = (rawHead + 1) % rawCapacity;
+		rawSize = Math.min(rawSize + 1, rawCapacity);
+
+		if(!Float.isFinite(value)) {
+			return;
+		}
+
+		for(int level = 0; level < rollups.length; level++) {
+			long bucketMillis = levels.get(level).getBucketMillis();
+			long bucketStart = timestamp - Math.floorMod(timestamp, bucketMillis);
+
+			if(openCount[level] > 0 && openStart[level] != bucketStart) {
+				closeBucket(level);
+			}
+
+			if(openCount[level] == 0) {
+				openStart[level] = bucketStart;
+				openMin[level] = value;
+				openMax[level] = value;
+				openSum[level] = 0;
+			}
+
+			openMin[level] = Math.min(openMin[level], value);
+			openMax[level] = Math.max(openMax[level], value);
+			openSum[level] += value;
+			openCount[level]++;
+		}
+	}
+
+
+	private void closeBucket(int level) {
+		ByteBuffer ring = rollups[level];
+		int capacity = levels.get(level).getCapacity();
+		int offset = rollupHeads[level] * ROLLUP_RECORD_SIZE;
+
+		ring.putLong(offset, openStart[level]);
+		ring.putFloat(offset + Long.BYTES, openMin[level]);
+		ring.putFloat(offset + Long.BYTES + Float.BYTES, openMax[level]);
+		ring.putFloat(offset + Long.BYTES + 2 * Float.BYTES,
+				(float)(openSum[level] / openCount[level]));
+		ring.putInt(offset + Long.BYTES + 3 * Float.BYTES, openCount[level]);
+
+		rollupHeads[level] = (rollupHeads[level] + 1) % capacity;
+		rollupSizes[level] = Math.min(rollupSizes[level] + 1, capacity);
+		openCount[level] = 0;
+	}
+
+
+	/**
+	 * Passes raw samples not older than a given time to a consumer, oldest
+	 * first.
+	 * @param fromTimestamp Start of the window in milliseconds since epoch.
+	 * @param consumer Receiver of the samples.
+	 * @return Number of samples passed.
+	 */
+	public synchronized int forEachSince(long fromTimestamp, SampleConsumer consumer) {
+		int count = 0;
+		while(count < rawSize && rawTimestamp(rawSize - 1 - count) >= fromTimestamp) {
+			count++;
+		}
+
+		for(int age = count - 1; age >= 0; age--) {
+			int offset = rawIndex(rawSize - 1 - age) * RAW_RECORD_SIZE;
+			consumer.accept(raw.getLong(offset), raw.getFloat(offset + Long.BYTES));
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Passes buckets of a given rollup level that end after a given time to a
+	 * consumer, oldest first. The bucket that is still being filled is passed
+	 * last.
+	 * @param level Index of the level in getLevels().
+	 * @param fromTimestamp Start of the window in milliseconds since epoch.
+	 * @param consumer Receiver of the buckets.
+	 * @return Number of buckets passed.
+	 */
+	public synchronized int forEachRollupSince(int level, long fromTimestamp,
+	                                           RollupConsumer consumer) {
+		ByteBuffer ring = rollups[level];
+		long bucketMillis = levels.get(level).getBucketMillis();
+		int size = rollupSizes[level];
+
+		int count = 0;
+		while(count < size
+				&& ring.getLong(rollupOffset(level, size - 1 - count)) + bucketMillis > fromTimestamp) {
+			count++;
+		}
+
+		for(int age = count - 1; age >= 0; age--) {
+			int offset = rollupOffset(level, size - 1 - age);
+			consumer.accept(
+					ring.getLong(offset),
+					ring.getFloat(offset + Long.BYTES),
+					ring.getFloat(offset + Long.BYTES + Float.BYTES),
+					ring.getFloat(offset + Long.BYTES + 2 * Float.BYTES),
+					ring.getInt(offset + Long.BYTES + 3 * Float.BYTES));
+		}
+
+		if(openCount[level] > 0 && openStart[level] + bucketMillis > fromTimestamp) {
+			consumer.accept(openStart[level], openMin[level], openMax[level],
+					(float)(openSum[level] / openCount[level]), openCount[level]);
+			count++;
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * Aggregates raw samples not older than a given time. NaN and infinite
+	 * values are skipped.
+	 * @param fromTimestamp Start of the window in milliseconds since epoch.
+	 * @return Summary of the window. Its count is 0 if there are no samples.
+	 */
+	public synchronized HistorySummary summarizeSince(long fromTimestamp) {
+		float min = Float.POSITIVE_INFINITY;
+		float max = Float.NEGATIVE_INFINITY;
+		double sum = 0;
+		int count = 0;
+
+		for(int age = 0; age < rawSize; age++) {
+			int offset = rawIndex(rawSize - 1 - age) * RAW_RECORD_SIZE;
+			if(raw.getLong(offset) < fromTimestamp) {
+				break;
+			}
+
+			float value = raw.getFloat(offset + Long.BYTES);
+			if(Float.isFinite(value)) {
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				sum += value;
+				count++;
+			}
+		}
+
+		return count == 0
+				? new HistorySummary(0, 0, 0, 0)
+				: new HistorySummary(min, max, (float)(sum / count), count);
+	}
+
+
+	/**
+	 * @return Most recent value or NaN if nothing was recorded yet.
+	 */
+	public synchronized float getLatest() {
+		if(rawSize == 0) {
+			return Float.NaN;
+		}
+
+		return raw.getFloat(rawIndex(rawSize - 1) * RAW_RECORD_SIZE + Long.BYTES);
+	}
+
+
+	/**
+	 * Translates position in chronological order (0 is the oldest kept
+	 * sample) into index in the raw ring.
+	 */
+	private int rawIndex(int position) {
+		return (rawHead - rawSize + position + rawCapacity) % rawCapacity;
+	}
+
+	private long rawTimestamp(int position) {
+		return raw.getLong(rawIndex(position) * RAW_RECORD_SIZE);
+	}
+
+	private int rollupOffset(int level, int position) {
+		int capacity = levels.get(level).getCapacity();
+		int index = (rollupHeads[level] - rollupSizes[level] + position + capacity) % capacity;
+
+		return index * ROLLUP_RECORD_SIZE;
+	}
+
+
+	public String getName() {
+		return name;
+	}
+
+	public List<RollupLevel> getLevels() {
+		return levels;
+	}
+
+	public int getRawCapacity() {
+		return rawCapacity;
+	}
+
+	public synchronized int getRawSize() {
+		return rawSize;
+	}
+
+	/**
+	 * @return Number of bytes of off-heap memory used by the history.
+	 */
+	public long getOffHeapBytes() {
+		long bytes = raw.capacity();
+		for(ByteBuffer ring : rollups) {
+			bytes += ring.capacity();
+		}
+
+		return bytes;
+	}
+}
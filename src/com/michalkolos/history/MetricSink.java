@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+
+/**
+ * Destination of metric samples. Metrics are registered once by name and
+ * later addressed by the returned id, so recording involves no lookups.
+ */
+public interface MetricSink {
+
+	/**
+	 * Registers a metric. Registering the same name again returns the same id.
+	 * @param name Name of the metric.
+	 * @return Id of the metric used by record().
+	 */
+	int register(String name);
+
+	/**
+	 * Registers a metric that is recorded at a known interval, so the sink
+	 * can size its buffers to the number of samples it will get. Sinks that
+	 * do not need it ignore the interval.
+	 * @param name Name of the metric.
+	 * @param intervalMillis Expected time between samples in milliseconds.
+	 * @return Id of the metric used by record().
+	 */
+	default int register(String name, long intervalMillis) {
+		return register(name);
+	}
+
+	/**
+	 * Appends a sample. Samples of a metric are expected in chronological
+	 * order.
+	 * @param metricId Id returned by register().
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric.
+	 */
+	void record(int metricId, long timestamp, float value);
+}
@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+
+/**
+ * Receives aggregated buckets read from a MetricHistory, oldest first.
+ */
+@FunctionalInterface
+public interface RollupConsumer {
+
+	/**
+	 * @param bucketStart Start of the bucket in milliseconds since epoch.
+	 * @param min Smallest value recorded in the bucket.
+	 * @param max Largest value recorded in the bucket.
+	 * @param avg Average of the values recorded in the bucket.
+	 * @param count Number of values recorded in the bucket.
+	 */
+	void accept(long bucketStart, float min, float max, float avg, int count);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Describes one coarser resolution kept by a MetricHistory: raw samples are
+ * aggregated into min/max/avg over buckets of a fixed duration, and a fixed
+ * number of the most recent buckets is kept.
+ */
+public class RollupLevel {
+
+	private final long bucketMillis;
+	private final int capacity;
+
+
+	/**
+	 * @param bucketDuration Duration of a single bucket.
+	 * @param unit Unit of the bucket duration.
+	 * @param capacity Number of buckets kept.
+	 */
+	public RollupLevel(long bucketDuration, TimeUnit unit, int capacity) {
+		this.bucketMillis = Math.max(unit.toMillis(bucketDuration), 1);
+		this.capacity = Math.max(capacity, 1);
+	}
+
+
+	public long getBucketMillis() {
+		return bucketMillis;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
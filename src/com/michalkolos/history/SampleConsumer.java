@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.history;
+
+
+/**
+ * Receives raw samples read from a MetricHistory, oldest first.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+	/**
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Recorded value.
+	 */
+	void accept(long timestamp, float value);
+}
@@ -4,16 +4,24 @@
 
 package com.michalkolos.hwmon;
 
+import com.michalkolos.input.SmallFileReader;
+import com.michalkolos.input.SystemRoot;
 import com.michalkolos.utils.Utils;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 
 /**
- * Extracts hardware data from Hwmon system API.
+ * Extracts hardware data from Hwmon system API. Subsystems are scanned on
+ * creation and can be kept up to date with refresh().
  */
 public class Hwmon {
 
@@ -25,42 +33,165 @@ public class Hwmon {
 	public static final int FIELD_NAME_MAX_LEN = 40;
 	public static final String FIELD_NAME_TAB = ".";
 
-	private final Map<String, HwmonSubsystem> subsystems = new HashMap<>();
+	/**
+	 * Pattern of names of directories representing subsystems.
+	 */
+	private static final Pattern SUBSYSTEM_DIR_PATTERN = Pattern.compile("hwmon[0-9]+");
+
+	private final Map<String, HwmonSubsystem> subsystems = new ConcurrentHashMap<>();
+
+	/**
+	 * Subsystems keyed by name of their directory, e.g. "hwmon3".
+	 */
+	private final Map<String, HwmonSubsystem> subsystemsByDir = new HashMap<>();
+
+	/**
+	 * Devices that subsystem directories link to, keyed by directory name.
+	 * Used to notice a directory name being reused by another device.
+	 */
+	private final Map<String, String> dirTargets = new HashMap<>();
+
+	private final List<HwmonListener> listeners = new CopyOnWriteArrayList<>();
+
+	private final File hwmonDir;
+
+	/**
+	 * Number of subsystem directories that could not be read, written under
+	 * the lock of refresh().
+	 */
+	private volatile long errorCount = 0L;
 
 
 	public Hwmon() throws IOException {
-		scanSubsystems();
+		this(SystemRoot.DEFAULT);
 	}
 
-
 	/**
-	 * Scans Hwmon file tree for subsystems and their fields.
+	 * @param root Root the Hwmon directory is looked up in.
 	 * @throws IOException Thrown when Hwmon root directory is inaccessible.
 	 */
-	private void scanSubsystems() throws IOException {
-		File hwmonDir = new File(HWMON_PATH);
+	public Hwmon(SystemRoot root) throws IOException {
+		this.hwmonDir = root.resolve(HWMON_PATH);
+		refresh();
+	}
 
-		if (!hwmonDir.exists()) {
+
+	/**
+	 * Brings the subsystems up to date with the Hwmon file tree. Only the
+	 * listing of the Hwmon root directory is compared with the known state,
+	 * subsystems are scanned only when their directory appears or starts
+	 * pointing to another device. Listeners are notified about every change.
+	 * @return True if any subsystem was added or removed.
+	 * @throws IOException Thrown when Hwmon root directory is inaccessible.
+	 */
+	public synchronized boolean refresh() throws IOException {
+		String[] dirNames = hwmonDir.list();
+		if (dirNames == null) {
 			throw new IOException("Unable to access Hwmon directory.");
 		}
 
-		FileFilter filter = file -> file.isDirectory() &&
-				file.getName().matches("hwmon[0-9]+");
+		boolean changed = false;
+		Set<String> presentDirNames = new HashSet<>();
+
+		for (String dirName : dirNames) {
+			if (!SUBSYSTEM_DIR_PATTERN.matcher(dirName).matches()) {
+				continue;
+			}
+			presentDirNames.add(dirName);
+
+			File subsystemDir = new File(hwmonDir, dirName);
+			String target = linkTarget(subsystemDir);
+			if (subsystemsByDir.containsKey(dirName)) {
+				if (target.equals(dirTargets.get(dirName))) {
+					continue;
+				}
+				removeSubsystem(dirName);
+				changed = true;
+			}
 
-		List<File> subsystemDirs = Optional.ofNullable(hwmonDir.listFiles(filter))
-				.map(Arrays::asList)
-				.orElse(new ArrayList<>());
+			if (subsystemDir.isDirectory()) {
+				changed |= addSubsystem(dirName, subsystemDir, target);
+			}
+		}
 
-		for (File subsystemDir : subsystemDirs) {
-			try {
-				HwmonSubsystem extractedSubsystem = new HwmonSubsystem(subsystemDir);
-				subsystems.put(extractedSubsystem.getName(), extractedSubsystem);
-			} catch (IOException e) {
-				e.printStackTrace();
-//				TODO: LOG subsystem access error.
+		for (String knownDirName : new ArrayList<>(subsystemsByDir.keySet())) {
+			if (!presentDirNames.contains(knownDirName)) {
+				removeSubsystem(knownDirName);
+				changed = true;
 			}
 		}
 
+		return changed;
+	}
+
+
+	private boolean addSubsystem(String dirName, File subsystemDir, String target) {
+		try {
+			HwmonSubsystem extractedSubsystem = new HwmonSubsystem(subsystemDir);
+			subsystemsByDir.put(dirName, extractedSubsystem);
+			dirTargets.put(dirName, target);
+			subsystems.put(extractedSubsystem.getName(), extractedSubsystem);
+
+			listeners.forEach(listener -> listener.subsystemAdded(extractedSubsystem));
+			return true;
+		} catch (IOException e) {
+			errorCount++;
+			e.printStackTrace();
+//			TODO: LOG subsystem access error.
+			return false;
+		}
+	}
+
+
+	private void removeSubsystem(String dirName) {
+		HwmonSubsystem removed = subsystemsByDir.remove(dirName);
+		dirTargets.remove(dirName);
+		if (removed == null) {
+			return;
+		}
+
+		//  Another subsystem with the same name may still be present.
+		subsystems.remove(removed.getName(), removed);
+		subsystemsByDir.values().stream()
+				.filter(subsystem -> subsystem.getName().equals(removed.getName()))
+				.findFirst()
+				.ifPresent(subsystem -> subsystems.putIfAbsent(subsystem.getName(), subsystem));
+
+		removed.getFields().values().forEach(SmallFileReader.getShared()::evict);
+		listeners.forEach(listener -> listener.subsystemRemoved(removed));
+	}
+
+
+	/**
+	 * Returns device path a subsystem directory links to. Entries of
+	 * "/sys/class/hwmon" are symbolic links to device directories.
+	 * @param subsystemDir Subsystem directory.
+	 * @return Link target or empty String if the directory is not a link.
+	 */
+	private String linkTarget(File subsystemDir) {
+		try {
+			return Files.readSymbolicLink(subsystemDir.toPath()).toString();
+		} catch (IOException | UnsupportedOperationException e) {
+			return "";
+		}
+	}
+
+
+	/**
+	 * @return Number of times a subsystem directory could not be read. Failed
+	 * reads of channel values are counted by the SmallFileReader.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+
+	public void addListener(HwmonListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(HwmonListener listener) {
+		listeners.remove(listener);
 	}
 
 	/**
@@ -119,6 +250,36 @@ public class Hwmon {
 	}
 
 
+	/**
+	 * Returns typed sensor channels of all subsystems, including the ones
+	 * that share a name with another subsystem.
+	 * @return List of channels ordered by subsystem name, directory, type and
+	 * index.
+	 */
+	public synchronized List<HwmonChannel> getChannels() {
+		return subsystemsByDir.values().stream()
+				.sorted(Comparator.comparing(HwmonSubsystem::getName)
+						.thenComparingInt(subsystem -> subsystem.getDir().getName().length())
+						.thenComparing(subsystem -> subsystem.getDir().getName()))
+				.flatMap(subsystem -> subsystem.getChannels().stream())
+				.collect(Collectors.toList());
+	}
+
+
+	/**
+	 * Compiles chosen channels into a sampler that reads all of them in one
+	 * call into a primitive array.
+	 * @param filter Selects channels to be sampled, e.g.
+	 *               channel -> channel.getType() == HwmonChannelType.FAN.
+	 * @return Sampler of the matching channels.
+	 */
+	public HwmonSampler compileSampler(Predicate<HwmonChannel> filter) {
+		return new HwmonSampler(
+				getChannels().stream().filter(filter).collect(Collectors.toList()),
+				SmallFileReader.getShared());
+	}
+
+
 	public String subsystemToString(String name) {
 		StringBuilder sb = new StringBuilder();
 
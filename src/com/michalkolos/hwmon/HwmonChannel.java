@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.hwmon;
+
+import java.io.File;
+import java.util.Optional;
+
+
+/**
+ * Single sensor channel of a Hwmon subsystem, e.g. "temp1", together with the
+ * files of its attributes. Label is read once, when the channel is discovered.
+ */
+public class HwmonChannel {
+
+	private final String subsystemName;
+	private final String subsystemDirName;
+	private final HwmonChannelType type;
+	private final int index;
+	private final File inputFile;
+	private final String label;
+	private final File maxFile;
+	private final File critFile;
+
+
+	/**
+	 * @param subsystemName Name of the subsystem the channel belongs to.
+	 * @param subsystemDirName Name of the subsystem's directory, e.g.
+	 *                         "hwmon3", unique unlike the subsystem name.
+	 * @param type Kind of the sensor.
+	 * @param index Number of the channel as used in its files' names.
+	 * @param inputFile File holding the current reading.
+	 * @param label Contents of the "_label" file, may be null.
+	 * @param maxFile File holding the maximum value, may be null.
+	 * @param critFile File holding the critical value, may be null.
+	 */
+	public HwmonChannel(String subsystemName, String subsystemDirName, HwmonChannelType type,
+	                    int index, File inputFile, String label, File maxFile, File critFile) {
+		this.subsystemName = subsystemName;
+		this.subsystemDirName = subsystemDirName;
+		this.type = type;
+		this.index = index;
+		this.inputFile = inputFile;
+		this.label = label;
+		this.maxFile = maxFile;
+		this.critFile = critFile;
+	}
+
+
+	/**
+	 * @return Channel identifier used in its files' names, e.g. "temp1".
+	 */
+	public String getId() {
+		return type.getPrefix() + index;
+	}
+
+	public String getSubsystemName() {
+		return subsystemName;
+	}
+
+	/**
+	 * @return Name of the subsystem's directory, e.g. "hwmon3". Devices of
+	 * the same kind share the subsystem name, e.g. two "coretemp" ones, but
+	 * not the directory.
+	 */
+	public String getSubsystemDirName() {
+		return subsystemDirName;
+	}
+
+	/**
+	 * @return Key unique among the channels of all subsystems, e.g.
+	 * "coretemp.hwmon3.temp1".
+	 */
+	public String getKey() {
+		return subsystemName + "." + subsystemDirName + "." + getId();
+	}
+
+	public HwmonChannelType getType() {
+		return type;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public File getInputFile() {
+		return inputFile;
+	}
+
+	/**
+	 * @return Optional containing human readable name of the channel provided
+	 * by the driver, e.g. "Tctl", or empty if the driver provides none.
+	 */
+	public Optional<String> getLabel() {
+		return Optional.ofNullable(label);
+	}
+
+	public Optional<File> getMaxFile() {
+		return Optional.ofNullable(maxFile);
+	}
+
+	public Optional<File> getCritFile() {
+		return Optional.ofNullable(critFile);
+	}
+
+	@Override
+	public String toString() {
+		return getKey() + getLabel().map(l -> " (" + l + ")").orElse("");
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.hwmon;
+
+import java.util.Optional;
+
+
+/**
+ * Kinds of sensor channels exposed by the Hwmon API. Every channel consists of
+ * files named "[prefix][index]_[attribute]", e.g. "temp1_input".
+ */
+public enum HwmonChannelType {
+
+	TEMPERATURE("temp", "\u00B0C", 1000),
+	FAN("fan", "RPM", 1),
+	VOLTAGE("in", "V", 1000),
+	POWER("power", "W", 1_000_000),
+	CURRENT("curr", "A", 1000);
+
+	private final String prefix;
+	private final String unit;
+	private final int divisor;
+
+
+	HwmonChannelType(String prefix, String unit, int divisor) {
+		this.prefix = prefix;
+		this.unit = unit;
+		this.divisor = divisor;
+	}
+
+
+	/**
+	 * Finds channel type by the prefix of its files' names.
+	 * @param prefix Prefix, e.g. "temp".
+	 * @return Optional containing matching type or empty if there is none.
+	 */
+	public static Optional<HwmonChannelType> fromPrefix(String prefix) {
+		for(HwmonChannelType type : values()) {
+			if(type.prefix.equals(prefix)) {
+				return Optional.of(type);
+			}
+		}
+
+		return Optional.empty();
+	}
+
+
+	public String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * @return Unit of the value after it is divided by getDivisor().
+	 */
+	public String getUnit() {
+		return unit;
+	}
+
+	/**
+	 * @return Number the raw value read from a file has to be divided by to
+	 * get the value in getUnit(), e.g. temperatures are reported in
+	 * millidegrees Celsius.
+	 */
+	public int getDivisor() {
+		return divisor;
+	}
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.hwmon;
+
+
+/**
+ * Receives notifications about Hwmon subsystems appearing and disappearing,
+ * e.g. when a drive or a USB sensor is plugged in or removed.
+ */
+public interface HwmonListener {
+
+	/**
+	 * @param subsystem Subsystem that was found by Hwmon.refresh().
+	 */
+	default void subsystemAdded(HwmonSubsystem subsystem) {}
+
+	/**
+	 * @param subsystem Subsystem that is no longer present. Its files are not
+	 *                  accessible anymore.
+	 */
+	default void subsystemRemoved(HwmonSubsystem subsystem) {}
+}
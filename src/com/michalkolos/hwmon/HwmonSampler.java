@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.hwmon;
+
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.SmallFileReader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Reads a fixed set of Hwmon channels in one call. The set is resolved to
+ * input files once, when the sampler is compiled, so sampling involves no
+ * lookups, no String decoding and no boxing.
+ */
+public class HwmonSampler {
+
+	private final List<HwmonChannel> channels;
+	private final File[] inputFiles;
+	private final SmallFileReader reader;
+
+
+	/**
+	 * @param channels Channels to be read. Their order defines the order of
+	 *                 values filled by sample().
+	 * @param reader Reader used for the input files.
+	 */
+	public HwmonSampler(List<HwmonChannel> channels, SmallFileReader reader) {
+		this.channels = Collections.unmodifiableList(new ArrayList<>(channels));
+		this.inputFiles = this.channels.stream()
+				.map(HwmonChannel::getInputFile)
+				.toArray(File[]::new);
+		this.reader = reader;
+	}
+
+
+	/**
+	 * Reads current raw values of all the channels.
+	 * @param values Array to be filled, indexed the same way as getChannels().
+	 *               Values are in units reported by the driver, see
+	 *               HwmonChannelType.getDivisor(). Channels that cannot be read
+	 *               are set to ByteCursor.NO_SIGNED_VALUE.
+	 * @return Number of array elements that were filled.
+	 */
+	public int sample(long[] values) {
+		int count = Math.min(values.length, inputFiles.length);
+
+		for(int i = 0; i < count; i++) {
+			values[i] = reader.readSignedLong(inputFiles[i]);
+		}
+
+		return count;
+	}
+
+
+	/**
+	 * @return Channels read by the sampler in the order of sampled values.
+	 */
+	public List<HwmonChannel> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * @return Number of channels read by the sampler.
+	 */
+	public int size() {
+		return inputFiles.length;
+	}
+
+	/**
+	 * Checks whether a sampled value is valid.
+	 * @param value Value filled by sample().
+	 * @return True if the channel was read successfully.
+	 */
+	public static boolean isValid(long value) {
+		return value != ByteCursor.NO_SIGNED_VALUE;
+	}
+}
@@ -9,6 +9,8 @@ import com.michalkolos.utils.Utils;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 
 /**
@@ -21,9 +23,17 @@ public class HwmonSubsystem {
 	 */
 	public static final String NAME_FILE = "/name";
 
+	/**
+	 * Pattern of field filenames that belong to sensor channels, e.g.
+	 * "temp1_input" or "fan2_label".
+	 */
+	private static final Pattern CHANNEL_FIELD_PATTERN =
+			Pattern.compile("(temp|fan|in|power|curr)([0-9]+)_(input|average|label|max|crit)");
+
 	private final File dir;
 	private final String name;
 	private Map<String, File> fields;
+	private List<HwmonChannel> channels;
 
 
 	/**
@@ -33,6 +43,7 @@ public class HwmonSubsystem {
 		this.dir = dir;
 		this.name = extractName(dir);
 		this.fields = extractFields(dir);
+		this.channels = extractChannels(this.fields);
 	}
 
 
@@ -62,6 +73,54 @@ public class HwmonSubsystem {
 	}
 
 
+	/**
+	 * Classifies fields into typed sensor channels. A channel is recognized
+	 * when it has an "_input" file, or an "_average" one in case of power
+	 * sensors that report only averaged values. Labels are read right away.
+	 * @param fields Map of field names and their corresponding files.
+	 * @return List of channels ordered by type and index.
+	 */
+	private List<HwmonChannel> extractChannels(Map<String, File> fields) {
+		Map<String, Map<String, File>> attributesById = new TreeMap<>();
+
+		fields.forEach((fieldName, file) -> {
+			Matcher matcher = CHANNEL_FIELD_PATTERN.matcher(fieldName);
+			if(matcher.matches()) {
+				attributesById
+						.computeIfAbsent(matcher.group(1) + "_" + matcher.group(2), id -> new HashMap<>())
+						.put(matcher.group(3), file);
+			}
+		});
+
+		List<HwmonChannel> extracted = new ArrayList<>();
+		attributesById.forEach((id, attributes) -> {
+			String[] idParts = id.split("_");
+			File input = Optional.ofNullable(attributes.get("input"))
+					.orElse(attributes.get("average"));
+
+			if(input != null) {
+				HwmonChannelType.fromPrefix(idParts[0]).ifPresent(type -> extracted.add(
+						new HwmonChannel(
+								name,
+								dir.getName(),
+								type,
+								Integer.parseInt(idParts[1]),
+								input,
+								Optional.ofNullable(attributes.get("label"))
+										.flatMap(Utils::extractStringFromFileOptional)
+										.orElse(null),
+								attributes.get("max"),
+								attributes.get("crit"))));
+			}
+		});
+
+		extracted.sort(Comparator.comparing(HwmonChannel::getType)
+				.thenComparingInt(HwmonChannel::getIndex));
+
+		return extracted;
+	}
+
+
 	/**
 	 * Returns a system file that represents given field of the subsystem.
 	 * @param fieldName Filename of the field to be returned.
@@ -106,5 +165,14 @@ public class HwmonSubsystem {
 
 	public void setFields(Map<String, File> fields) {
 		this.fields = fields;
+		this.channels = extractChannels(fields);
+	}
+
+	/**
+	 * Get typed sensor channels found among the subsystem's fields.
+	 * @return List of channels ordered by type and index.
+	 */
+	public List<HwmonChannel> getChannels() {
+		return Collections.unmodifiableList(channels);
 	}
 }
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.input;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Forward-only cursor over raw bytes of a text file. Allows scanning line
+ * keys and decoding numeric columns straight into primitives without creating
+ * any intermediate Strings. One instance can be reused for any number of
+ * buffers.
+ */
+public class ByteCursor {
+
+	/**
+	 * Value returned by numeric methods when there is no number at the current
+	 * position. Files in /proc and /sys only ever report non-negative counters.
+	 */
+	public static final long NO_VALUE = -1L;
+
+	/**
+	 * Value returned by signed numeric methods when there is no number at the
+	 * current position.
+	 */
+	public static final long NO_SIGNED_VALUE = Long.MIN_VALUE;
+
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+
+
+	public ByteCursor() {
+		this.buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * @param buffer Buffer to be scanned from its position up to its limit.
+	 */
+	public ByteCursor(ByteBuffer buffer) {
+		reset(buffer);
+	}
+
+
+	/**
+	 * Points the cursor at a new buffer. Scanning starts at buffer's position
+	 * and ends at its limit. The buffer's own position is never modified.
+	 * @param buffer Buffer to be scanned.
+	 * @return This cursor.
+	 */
+	public ByteCursor reset(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+
+		return this;
+	}
+
+
+	public boolean hasRemaining() {
+		return position < limit;
+	}
+
+	public int getPosition() {
+		return position;
+	}
+
+	public void setPosition(int position) {
+		this.position = Math.min(Math.max(position, buffer.position()), limit);
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns byte at a given absolute position without moving the cursor.
+	 * @param index Absolute position in the underlying buffer.
+	 * @return Byte value or 0 if the index is out of scanned range.
+	 */
+	public byte peek(int index) {
+		return index < limit && index >= 0 ? buffer.get(index) : 0;
+	}
+
+
+	/**
+	 * Checks whether bytes at the current position match a given key.
+	 * @param key ASCII bytes to be compared.
+	 * @return True if the key is present at the current position.
+	 */
+	public boolean startsWith(byte[] key) {
+		return matchesAt(position, key);
+	}
+
+	/**
+	 * Checks whether bytes at a given absolute position match a given key.
+	 * @param index Absolute position in the underlying buffer.
+	 * @param key ASCII bytes to be compared.
+	 * @return True if the key is present at the given position.
+	 */
+	public boolean matchesAt(int index, byte[] key) {
+		if(index < 0 || index + key.length > limit) {
+			return false;
+		}
+
+		for(int i = 0; i < key.length; i++) {
+			if(buffer.get(index + i) != key[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves the cursor forward by a given number of bytes.
+	 * @param count Number of bytes to skip.
+	 */
+	public void skip(int count) {
+		position = Math.min(position + count, limit);
+	}
+
+	/**
+	 * Skips spaces and tabs, stops at the end of the line.
+	 */
+	public void skipBlanks() {
+		while(position < limit) {
+			byte b = buffer.get(position);
+			if(b != ' ' && b != '\t') {
+				break;
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Skips every byte up to the next blank or the end of the line.
+	 */
+	public void skipToken() {
+		while(position < limit) {
+			byte b = buffer.get(position);
+			if(b == ' ' || b == '\t' || b == '\n') {
+				break;
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Moves the cursor past the next occurrence of a given byte in the current
+	 * line, e.g. past '=' of a "key=value" column.
+	 * @param delimiter Byte to be skipped.
+	 * @return True if the byte was found, false if the cursor stopped at the
+	 * end of the line.
+	 */
+	public boolean skipPast(byte delimiter) {
+		while(position < limit) {
+			byte b = buffer.get(position);
+			if(b == '\n') {
+				return false;
+			}
+			position++;
+			if(b == delimiter) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Moves the cursor to the first byte of the next line.
+	 */
+	public void skipLine() {
+		while(position < limit && buffer.get(position) != '\n') {
+			position++;
+		}
+		if(position < limit) {
+			position++;
+		}
+	}
+
+	/**
+	 * Finds the end of the current line without moving the cursor. Together
+	 * with getPosition() it gives a view of the line's bytes.
+	 * @return Absolute position of the line's '\n' character or the limit if
+	 * this is the last line.
+	 */
+	public int lineEnd() {
+		int index = position;
+		while(index < limit && buffer.get(index) != '\n') {
+			index++;
+		}
+
+		return index;
+	}
+
+	/**
+	 * Checks whether the cursor is at the end of a line or the end of data.
+	 * @return True if there are no more columns in the current line.
+	 */
+	public boolean isEndOfLine() {
+		return position >= limit || buffer.get(position) == '\n';
+	}
+
+
+	/**
+	 * Skips leading blanks and decodes an unsigned decimal number.
+	 * @return Parsed value or NO_VALUE if there are no digits at the current
+	 * position.
+	 */
+	public long nextLong() {
+		skipBlanks();
+
+		long value = 0;
+		int start = position;
+		while(position < limit) {
+			int digit = buffer.get(position) - '0';
+			if(digit < 0 || digit > 9) {
+				break;
+			}
+			value = value * 10 + digit;
+			position++;
+		}
+
+		return position == start ? NO_VALUE : value;
+	}
+
+	/**
+	 * Skips leading blanks and decodes a decimal number with an optional minus
+	 * sign, e.g. a temperature reported by hwmon.
+	 * @return Parsed value or NO_SIGNED_VALUE if there are no digits at the
+	 * current position.
+	 */
+	public long nextSignedLong() {
+		skipBlanks();
+
+		boolean negative = position < limit && buffer.get(position) == '-';
+		if(negative) {
+			position++;
+		}
+
+		long value = nextLong();
+		if(value == NO_VALUE) {
+			return NO_SIGNED_VALUE;
+		}
+
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Skips leading blanks and decodes an unsigned decimal fraction, e.g.
+	 * "30.34", as a fixed point number. Digits beyond the requested precision
+	 * are skipped, missing ones are treated as zeros.
+	 * @param fractionDigits Number of fraction digits kept in the result.
+	 * @return Parsed value multiplied by 10^fractionDigits or NO_VALUE if
+	 * there are no digits at the current position.
+	 */
+	public long nextFixedPoint(int fractionDigits) {
+		long value = nextLong();
+		if(value == NO_VALUE) {
+			return NO_VALUE;
+		}
+
+		boolean fraction = position < limit && buffer.get(position) == '.';
+		if(fraction) {
+			position++;
+		}
+
+		for(int i = 0; i < fractionDigits; i++) {
+			int digit = fraction && position < limit ? buffer.get(position) - '0' : -1;
+			if(digit < 0 || digit > 9) {
+				fraction = false;
+				digit = 0;
+			} else {
+				position++;
+			}
+			value = value * 10 + digit;
+		}
+
+		while(fraction && position < limit) {
+			int digit = buffer.get(position) - '0';
+			if(digit < 0 || digit > 9) {
+				break;
+			}
+			position++;
+		}
+
+		return value;
+	}
+}
@@ -1,6 +1,9 @@
 package com.michalkolos.input;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
@@ -9,10 +12,38 @@ import java.util.List;
 /**
  * Represents file asset that can be read in its entirety as a string or as a
  * List of strings, where each string represents one line of the file.
+ * <p>
+ * Files that are read periodically (e.g. "/proc/stat") can be read with
+ * readBuffer() instead. It keeps the file channel open between calls and
+ * re-reads the file from offset 0 into a reusable direct buffer, so no data is
+ * copied or decoded. Such LocalFile should be closed when no longer needed.
  */
-public class LocalFile {
+public class LocalFile implements Closeable {
+
+	/**
+	 * Initial capacity of the reusable buffer. The buffer grows when the file
+	 * does not fit in it.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 4096;
+
 	private File file;
 
+	/**
+	 * Channel kept open between readBuffer() calls.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Buffer reused by every readBuffer() call.
+	 */
+	private ByteBuffer buffer;
+
+	/**
+	 * One byte buffer used to check whether the file continues past the end
+	 * of the reusable buffer.
+	 */
+	private final ByteBuffer probe = ByteBuffer.allocate(1);
+
 
 	/**
 	 * @param path Absolute path to the file.
@@ -28,6 +59,15 @@ public class LocalFile {
 		this.file = file;
 	}
 
+	/**
+	 * @param file File to be read.
+	 * @param bufferSize Initial capacity of the buffer used by readBuffer().
+	 */
+	public LocalFile(File file, int bufferSize) {
+		this.file = file;
+		this.buffer = ByteBuffer.allocateDirect(Math.max(bufferSize, 1));
+	}
+
 
 	/**
 	 * Reads whole content of the file as a String.
@@ -44,6 +84,19 @@ public class LocalFile {
 	}
 
 
+	/**
+	 * Reads whole content of the file as raw bytes, without decoding them.
+	 * @return Buffer wrapping the file contents, ready to be read.
+	 * @throws IOException  Thrown when the file cannot be accessed.
+	 */
+	public ByteBuffer readBytes() throws IOException{
+
+		try(InputStream inputStream = new FileInputStream(this.file)) {
+			return ByteBuffer.wrap(inputStream.readAllBytes());
+		}
+	}
+
+
 	/**
 	 * Reads whole content of the file as a List of Strings
 	 * @return List of Strings representing individual lines of the file.
@@ -52,4 +105,65 @@ public class LocalFile {
 	public List<String> readLines() throws IOException{
 		return Arrays.asList(readString().split("\n"));
 	}
+
+
+	/**
+	 * Re-reads whole content of the file from offset 0 into a reusable direct
+	 * buffer. The channel is opened on first call and stays open, the buffer
+	 * is enlarged whenever the file does not fit in it. Contents are always
+	 * taken from a single read of the whole file, which matters for kernel
+	 * generated files, that are rendered anew on every read from offset 0.
+	 * @return Buffer with position 0 and limit set to the length of the file.
+	 * It is owned by this object and is valid only until the next call. Use
+	 * ByteCursor to scan its lines without copying them.
+	 * @throws IOException  Thrown when the file cannot be accessed.
+	 */
+	public ByteBuffer readBuffer() throws IOException {
+		if(buffer == null) {
+			buffer = ByteBuffer.allocateDirect(DEFAULT_BUFFER_SIZE);
+		}
+
+		try {
+			if(channel == null) {
+				channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			}
+
+			while(true) {
+				buffer.clear();
+				int read = 1;
+				while(buffer.hasRemaining() && read > 0) {
+					read = channel.read(buffer, buffer.position());
+				}
+
+				probe.clear();
+				if(read <= 0 || channel.read(probe, buffer.position()) <= 0) {
+					break;
+				}
+
+				//  File is larger than the buffer. Read it again from scratch
+				//  so the contents come from one consistent rendering.
+				buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+
+		return buffer.flip();
+	}
+
+
+	/**
+	 * Closes the channel used by readBuffer(). It will be reopened on the next
+	 * readBuffer() call.
+	 * @throws IOException  Thrown when the channel cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(channel != null) {
+			FileChannel toClose = channel;
+			channel = null;
+			toClose.close();
+		}
+	}
 }
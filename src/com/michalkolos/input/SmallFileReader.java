@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Reads small files, such as sysfs attributes, that are polled over and over.
+ * Channels of recently read files are kept open in a cache bounded by the
+ * least recently used policy, and every read is a positional re-read from
+ * offset 0, so a cached file costs a single pread. Channels pushed out of the
+ * cache are closed, which keeps the number of open descriptors bounded.
+ * <p>
+ * The reader is thread safe. Channels are looked up under a lock, reads are
+ * done outside of it into per thread buffers.
+ */
+public class SmallFileReader {
+
+	/**
+	 * Number of channels kept open by the shared reader.
+	 */
+	public static final int DEFAULT_CAPACITY = 512;
+
+	/**
+	 * Size of the per thread read buffer. Sysfs attributes never exceed one
+	 * memory page.
+	 */
+	public static final int READ_BUFFER_SIZE = 4096;
+
+	private static final SmallFileReader SHARED = new SmallFileReader(DEFAULT_CAPACITY);
+
+	private final int capacity;
+
+	/**
+	 * Open channels keyed by file path, kept in access order.
+	 */
+	private final LinkedHashMap<String, FileChannel> channels;
+
+	private final ThreadLocal<ByteBuffer> buffers =
+			ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+	private final ThreadLocal<ByteCursor> cursors = ThreadLocal.withInitial(ByteCursor::new);
+
+	private final LongAdder hitCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+
+
+	/**
+	 * @param capacity Maximum number of channels kept open at once.
+	 */
+	public SmallFileReader(int capacity) {
+		this.capacity = Math.max(capacity, 1);
+		this.channels = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, FileChannel> eldest) {
+				if(size() > SmallFileReader.this.capacity) {
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+
+	/**
+	 * Returns the reader shared by all collectors.
+	 * @return Shared instance.
+	 */
+	public static SmallFileReader getShared() {
+		return SHARED;
+	}
+
+
+	/**
+	 * Reads whole content of a file into a buffer owned by the calling thread.
+	 * @param file File to be read.
+	 * @return Buffer with position 0 and limit set to the length of the data.
+	 * It is valid only until the next read done by the same thread.
+	 * @throws IOException Thrown when the file cannot be accessed.
+	 */
+	public ByteBuffer read(File file) throws IOException {
+		return read(file, buffers.get());
+	}
+
+
+	/**
+	 * Reads content of a file into a given buffer. Reading stops when the file
+	 * ends or the buffer is full.
+	 * @param file File to be read.
+	 * @param buffer Buffer to be filled. It is cleared first.
+	 * @return The buffer with position 0 and limit set to the length of the
+	 * data.
+	 * @throws IOException Thrown when the file cannot be accessed.
+	 */
+	public ByteBuffer read(File file, ByteBuffer buffer) throws IOException {
+		String key = file.getPath();
+
+		try {
+			try {
+				readFully(acquire(key, file), buffer);
+			} catch (ClosedChannelException e) {
+				//  Channel was pushed out of the cache by another thread in
+				//  the meantime. Retry once with a fresh one.
+				readFully(acquire(key, file), buffer);
+			}
+		} catch (IOException e) {
+			errorCount.increment();
+			evict(file);
+			throw e;
+		}
+
+		return buffer.flip();
+	}
+
+
+	/**
+	 * Reads a file that holds a single unsigned decimal number.
+	 * @param file File to be read.
+	 * @return Parsed value or ByteCursor.NO_VALUE if the file cannot be read
+	 * or does not start with a number.
+	 */
+	public long readLong(File file) {
+		try {
+			return cursors.get().reset(read(file)).nextLong();
+		} catch (IOException e) {
+//			TODO: Logging
+			return ByteCursor.NO_VALUE;
+		}
+	}
+
+
+	/**
+	 * Reads a file that holds a single decimal number that may be negative.
+	 * @param file File to be read.
+	 * @return Parsed value or ByteCursor.NO_SIGNED_VALUE if the file cannot be
+	 * read or does not start with a number.
+	 */
+	public long readSignedLong(File file) {
+		try {
+			return cursors.get().reset(read(file)).nextSignedLong();
+		} catch (IOException e) {
+//			TODO: Logging
+			return ByteCursor.NO_SIGNED_VALUE;
+		}
+	}
+
+
+	/**
+	 * Reads whole content of a file as a String without the trailing end of
+	 * line character.
+	 * @param file File to be read.
+	 * @return Optional containing the file contents or empty if the file
+	 * cannot be read.
+	 */
+	public Optional<String> readString(File file) {
+		try {
+			ByteBuffer buffer = read(file);
+			int length = buffer.limit();
+			if(length > 0 && buffer.get(length - 1) == '\n') {
+				length--;
+			}
+
+			byte[] bytes = new byte[length];
+			buffer.get(bytes);
+
+			return Optional.of(new String(bytes, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+//			TODO: Logging
+			return Optional.empty();
+		}
+	}
+
+
+	/**
+	 * Closes cached channel of a given file, e.g. when the file is known to be
+	 * gone.
+	 * @param file File whose channel should be dropped.
+	 */
+	public void evict(File file) {
+		FileChannel channel;
+		synchronized(channels) {
+			channel = channels.remove(file.getPath());
+		}
+
+		closeQuietly(channel);
+	}
+
+
+	/**
+	 * Closes all cached channels.
+	 */
+	public void clear() {
+		synchronized(channels) {
+			channels.values().forEach(SmallFileReader::closeQuietly);
+			channels.clear();
+		}
+	}
+
+
+	private FileChannel acquire(String key, File file) throws IOException {
+		synchronized(channels) {
+			FileChannel channel = channels.get(key);
+			if(channel != null && channel.isOpen()) {
+				hitCount.increment();
+				return channel;
+			}
+
+			missCount.increment();
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			channels.put(key, channel);
+
+			return channel;
+		}
+	}
+
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.clear();
+		int read = 1;
+		while(buffer.hasRemaining() && read > 0) {
+			read = channel.read(buffer, buffer.position());
+		}
+	}
+
+
+	private static void closeQuietly(FileChannel channel) {
+		if(channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+
+	/**
+	 * @return Number of reads served by an already open channel.
+	 */
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	/**
+	 * @return Number of reads that had to open the file.
+	 */
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	/**
+	 * @return Number of reads that failed, including the ones reported only
+	 * as missing values by readLong(), readSignedLong() and readString().
+	 */
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	/**
+	 * @return Number of channels currently kept open.
+	 */
+	public int getOpenCount() {
+		synchronized(channels) {
+			return channels.size();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.input;
+
+import java.io.File;
+
+
+/**
+ * Directory the "/proc" and "/sys" trees are looked up in. Collectors resolve
+ * their absolute paths against it, so they can be pointed at a recorded or
+ * generated tree instead of the running kernel.
+ */
+public class SystemRoot {
+
+	/**
+	 * Root of the running system's file tree.
+	 */
+	public static final SystemRoot DEFAULT = new SystemRoot(new File("/"));
+
+	private final File root;
+
+
+	/**
+	 * @param root Directory containing "proc" and "sys" directories.
+	 */
+	public SystemRoot(File root) {
+		this.root = root;
+	}
+
+
+	/**
+	 * Translates an absolute path of the running system into a path under the
+	 * root.
+	 * @param absolutePath Path such as "/proc/stat".
+	 * @return File under the root, or the path itself for the default root.
+	 */
+	public File resolve(String absolutePath) {
+		if(isDefault()) {
+			return new File(absolutePath);
+		}
+
+		return new File(root, absolutePath);
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * @return True if the root is the running system's root directory.
+	 */
+	public boolean isDefault() {
+		return root.getPath().equals(File.separator);
+	}
+
+	@Override
+	public String toString() {
+		return root.getPath();
+	}
+}
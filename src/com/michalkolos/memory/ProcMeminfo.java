@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.memory;
+
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.memory.data.MeminfoField;
+import com.michalkolos.memory.data.MeminfoSnapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+
+/**
+ * Provides memory usage data gathered from "/proc/meminfo" file. Only the
+ * requested fields are parsed, directly from the file's bytes into a
+ * primitive array, so memory can be sampled as often as CPU usage.
+ * <p>
+ * Like ProcStat, every call to dataAcquisition() publishes a new immutable
+ * MeminfoSnapshot.
+ */
+public class ProcMeminfo implements Closeable {
+
+	/**
+	 * Absolute path to the "proc/meminfo" file.
+	 */
+	public static final String SYS_FILE_PATH = "/proc/meminfo";
+
+	/**
+	 * Fields collected by default.
+	 */
+	public static final Set<MeminfoField> DEFAULT_FIELDS = EnumSet.of(
+			MeminfoField.MEM_TOTAL, MeminfoField.MEM_FREE, MeminfoField.MEM_AVAILABLE,
+			MeminfoField.BUFFERS, MeminfoField.CACHED, MeminfoField.DIRTY,
+			MeminfoField.WRITEBACK, MeminfoField.SHMEM, MeminfoField.SLAB,
+			MeminfoField.SWAP_TOTAL, MeminfoField.SWAP_FREE, MeminfoField.SWAP_USED,
+			MeminfoField.HUGE_PAGES_TOTAL, MeminfoField.HUGE_PAGES_FREE,
+			MeminfoField.HUGE_PAGE_SIZE);
+
+	private static final int KILOBYTE = 1024;
+
+	private static final MeminfoField[] ALL_FIELDS = MeminfoField.values();
+
+	private final LocalFile meminfoFile;
+	private final ByteCursor cursor = new ByteCursor();
+
+	/**
+	 * Keys of the parsed lines and fields they are stored in. Once the
+	 * order of lines in the file is known, keys are kept in that order.
+	 */
+	private final byte[][] keys;
+	private final MeminfoField[] keyFields;
+	private final boolean[] keyFound;
+
+	private final Set<MeminfoField> fields;
+	private final boolean[] requested = new boolean[ALL_FIELDS.length];
+	private final boolean swapUsed;
+
+	/**
+	 * Values of the current reading indexed by MeminfoField ordinal.
+	 */
+	private final long[] values = new long[ALL_FIELDS.length];
+
+	private volatile MeminfoSnapshot snapshot;
+
+
+
+	public ProcMeminfo() {
+		this(SystemRoot.DEFAULT, DEFAULT_FIELDS);
+	}
+
+	/**
+	 * @param root Root the "proc/meminfo" file is looked up in.
+	 * @param fields Fields to be collected.
+	 */
+	public ProcMeminfo(SystemRoot root, Set<MeminfoField> fields) {
+		this(root.resolve(SYS_FILE_PATH).getPath(), fields);
+	}
+
+	/**
+	 * @param path Path to a file in the "proc/meminfo" format.
+	 * @param fields Fields to be collected.
+	 */
+	public ProcMeminfo(String path, Set<MeminfoField> fields) {
+		this.meminfoFile = new LocalFile(path);
+		this.fields = fields.isEmpty()
+				? EnumSet.noneOf(MeminfoField.class)
+				: EnumSet.copyOf(fields);
+		this.fields.forEach(field -> requested[field.ordinal()] = true);
+		this.swapUsed = this.fields.contains(MeminfoField.SWAP_USED);
+
+		//  Derived values need their sources parsed.
+		Set<MeminfoField> parsed = EnumSet.noneOf(MeminfoField.class);
+		parsed.addAll(this.fields);
+		if(swapUsed) {
+			parsed.add(MeminfoField.SWAP_TOTAL);
+			parsed.add(MeminfoField.SWAP_FREE);
+		}
+		parsed.removeIf(MeminfoField::isDerived);
+
+		this.keyFields = parsed.toArray(new MeminfoField[0]);
+		this.keys = new byte[keyFields.length][];
+		for(int i = 0; i < keyFields.length; i++) {
+			keys[i] = keyFields[i].getKeyBytes();
+		}
+		this.keyFound = new boolean[keyFields.length];
+
+		long[] initial = new long[values.length];
+		Arrays.fill(initial, MeminfoSnapshot.NO_VALUE);
+		this.snapshot = new MeminfoSnapshot(0L, initial);
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to gather data from the
+	 * "proc/meminfo" file.
+	 * @throws IOException Exception thrown when the accessed file is
+	 * unavailable.
+	 */
+	public void dataAcquisition() throws IOException {
+		cursor.reset(meminfoFile.readBuffer());
+
+		Arrays.fill(values, MeminfoSnapshot.NO_VALUE);
+		Arrays.fill(keyFound, false);
+
+		//  Lines come in the same order on every reading, so the next key is
+		//  usually the one following the previously matched one.
+		int found = 0;
+		int hint = 0;
+		while(found < keys.length && cursor.hasRemaining()) {
+			int key = matchKey(hint);
+			if(key >= 0) {
+				cursor.skip(keys[key].length);
+				long value = cursor.nextLong();
+				if(value != ByteCursor.NO_VALUE) {
+					values[keyFields[key].ordinal()] = keyFields[key].isSize()
+							? value * KILOBYTE
+							: value;
+				}
+
+				keyFound[key] = true;
+				found++;
+				if(key != hint) {
+					moveKey(key, hint);
+				}
+				hint++;
+			}
+
+			cursor.skipLine();
+		}
+
+		if(swapUsed) {
+			long total = values[MeminfoField.SWAP_TOTAL.ordinal()];
+			long free = values[MeminfoField.SWAP_FREE.ordinal()];
+			if(total != MeminfoSnapshot.NO_VALUE && free != MeminfoSnapshot.NO_VALUE) {
+				values[MeminfoField.SWAP_USED.ordinal()] = total - free;
+			}
+		}
+
+		//  Values that could not be parsed are carried over from the previous
+		//  reading, fields that were not requested stay unavailable.
+		MeminfoSnapshot previous = this.snapshot;
+		long[] published = new long[values.length];
+		for(int index = 0; index < published.length; index++) {
+			if(!requested[index]) {
+				published[index] = MeminfoSnapshot.NO_VALUE;
+			} else if(values[index] != MeminfoSnapshot.NO_VALUE) {
+				published[index] = values[index];
+			} else {
+				published[index] = previous.get(ALL_FIELDS[index]);
+			}
+		}
+
+		this.snapshot = new MeminfoSnapshot(System.currentTimeMillis(), published);
+	}
+
+
+	/**
+	 * Finds the key present at the cursor's position among keys that were not
+	 * found in the current reading yet.
+	 * @param hint Index of the key checked first.
+	 * @return Index of the key or -1 if the line is not requested.
+	 */
+	private int matchKey(int hint) {
+		if(hint < keys.length && !keyFound[hint] && cursor.startsWith(keys[hint])) {
+			return hint;
+		}
+
+		for(int i = 0; i < keys.length; i++) {
+			if(!keyFound[i] && cursor.startsWith(keys[i])) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Swaps two keys, so the order of keys follows the order of lines.
+	 */
+	private void moveKey(int from, int to) {
+		byte[] key = keys[from];
+		keys[from] = keys[to];
+		keys[to] = key;
+
+		MeminfoField field = keyFields[from];
+		keyFields[from] = keyFields[to];
+		keyFields[to] = field;
+
+		boolean keyWasFound = keyFound[from];
+		keyFound[from] = keyFound[to];
+		keyFound[to] = keyWasFound;
+	}
+
+
+	/**
+	 * Releases the "proc/meminfo" file handle kept open between readings.
+	 * @throws IOException Thrown when the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		meminfoFile.close();
+	}
+
+
+	/**
+	 * Returns the result of the most recent reading.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public MeminfoSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return Fields collected by this instance.
+	 */
+	public Set<MeminfoField> getFields() {
+		return EnumSet.copyOf(fields);
+	}
+
+	/**
+	 * @param field Requested field.
+	 * @return Value of the most recent reading, see MeminfoSnapshot.get().
+	 */
+	public long get(MeminfoField field) {
+		return snapshot.get(field);
+	}
+
+
+	@Override
+	public String toString() {
+		MeminfoSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		for(MeminfoField field : fields) {
+			long value = current.get(field);
+			sb.append(field.isDerived() ? field.name() : field.getKey())
+					.append(": ")
+					.append(value == MeminfoSnapshot.NO_VALUE
+							? "N/A"
+							: field.isSize() ? (value / KILOBYTE) + " kB" : Long.toString(value))
+					.append(System.lineSeparator());
+		}
+
+		return sb.toString();
+	}
+}
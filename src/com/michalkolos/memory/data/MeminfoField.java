@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.memory.data;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Values of the "/proc/meminfo" file that can be collected. Sizes reported by
+ * the kernel in kB are converted to bytes, HugePages_* fields are page counts.
+ */
+public enum MeminfoField {
+
+	MEM_TOTAL("MemTotal", true),
+	MEM_FREE("MemFree", true),
+	MEM_AVAILABLE("MemAvailable", true),
+	BUFFERS("Buffers", true),
+	CACHED("Cached", true),
+	SWAP_CACHED("SwapCached", true),
+	ACTIVE("Active", true),
+	INACTIVE("Inactive", true),
+	SWAP_TOTAL("SwapTotal", true),
+	SWAP_FREE("SwapFree", true),
+	DIRTY("Dirty", true),
+	WRITEBACK("Writeback", true),
+	ANON_PAGES("AnonPages", true),
+	MAPPED("Mapped", true),
+	SHMEM("Shmem", true),
+	SLAB("Slab", true),
+	S_RECLAIMABLE("SReclaimable", true),
+	S_UNRECLAIM("SUnreclaim", true),
+	KERNEL_STACK("KernelStack", true),
+	PAGE_TABLES("PageTables", true),
+	COMMIT_LIMIT("CommitLimit", true),
+	COMMITTED_AS("Committed_AS", true),
+	ANON_HUGE_PAGES("AnonHugePages", true),
+	HUGE_PAGES_TOTAL("HugePages_Total", false),
+	HUGE_PAGES_FREE("HugePages_Free", false),
+	HUGE_PAGES_RSVD("HugePages_Rsvd", false),
+	HUGE_PAGES_SURP("HugePages_Surp", false),
+	HUGE_PAGE_SIZE("Hugepagesize", true),
+
+	/**
+	 * Not present in the file, calculated as SwapTotal - SwapFree.
+	 */
+	SWAP_USED(null, true);
+
+
+	private final String key;
+	private final byte[] keyBytes;
+	private final boolean size;
+
+
+	/**
+	 * @param key Name of the line in the file, null for derived values.
+	 * @param size True if the value is a size reported in kB.
+	 */
+	MeminfoField(String key, boolean size) {
+		this.key = key;
+		//  Colon is a part of the key, so "Active" does not match
+		//  "Active(anon)".
+		this.keyBytes = key == null ? null : (key + ":").getBytes(StandardCharsets.US_ASCII);
+		this.size = size;
+	}
+
+
+	/**
+	 * @return Name of the line in the file, e.g. "MemTotal", or null if the
+	 * value is derived from other fields.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * @return Name of the line together with the trailing colon, or null if
+	 * the value is derived from other fields.
+	 */
+	public byte[] getKeyBytes() {
+		return keyBytes == null ? null : keyBytes.clone();
+	}
+
+	public boolean isDerived() {
+		return key == null;
+	}
+
+	/**
+	 * @return True if the value is a size in bytes, false if it is a count.
+	 */
+	public boolean isSize() {
+		return size;
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.memory.data;
+
+
+/**
+ * Immutable result of a single reading of "/proc/meminfo" file. Values are
+ * indexed by MeminfoField, so a snapshot can be shared between threads and
+ * read without any lookups.
+ */
+public class MeminfoSnapshot {
+
+	/**
+	 * Value of fields that were not requested or not reported by the kernel.
+	 */
+	public static final long NO_VALUE = -1L;
+
+	private final long timestamp;
+	private final long[] values;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param values Values indexed by MeminfoField ordinal. The array is taken
+	 *               over by the snapshot and must not be modified afterwards.
+	 */
+	public MeminfoSnapshot(long timestamp, long[] values) {
+		this.timestamp = timestamp;
+		this.values = values;
+	}
+
+
+	/**
+	 * @param field Requested field.
+	 * @return Size in bytes or count, see MeminfoField.isSize(), or NO_VALUE
+	 * if the field is not available.
+	 */
+	public long get(MeminfoField field) {
+		return values[field.ordinal()];
+	}
+
+	public boolean isAvailable(MeminfoField field) {
+		return values[field.ordinal()] != NO_VALUE;
+	}
+
+	/**
+	 * @return Memory in use by the system in bytes, MemTotal - MemAvailable,
+	 * or NO_VALUE if either of them is not available.
+	 */
+	public long getUsedBytes() {
+		long total = get(MeminfoField.MEM_TOTAL);
+		long available = get(MeminfoField.MEM_AVAILABLE);
+
+		return total == NO_VALUE || available == NO_VALUE ? NO_VALUE : total - available;
+	}
+
+	/**
+	 * @return Ratio of memory in use to total memory, or 0 if it cannot be
+	 * calculated.
+	 */
+	public float getUsedRatio() {
+		long total = get(MeminfoField.MEM_TOTAL);
+		long used = getUsedBytes();
+
+		return used == NO_VALUE || total <= 0 ? 0.0f : (float)used / total;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.net;
+
+import com.michalkolos.device.DeviceCounterTable;
+import com.michalkolos.device.DeviceIndex;
+import com.michalkolos.device.DeviceSnapshot;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Provides per-interface network throughput gathered from "/proc/net/dev"
+ * file. Cumulative counters of every interface are turned into rates between
+ * two readings: bytes, packets, errors and drops per second in both
+ * directions.
+ * <p>
+ * Interfaces are tracked by name, so they can come and go while the collector
+ * runs. Like ProcStat, every call to dataAcquisition() publishes a new
+ * immutable snapshot.
+ */
+public class NetDev implements Closeable {
+
+	/**
+	 * Absolute path to the "proc/net/dev" file.
+	 */
+	public static final String SYS_FILE_PATH = "/proc/net/dev";
+
+	/**
+	 * Rates provided for every interface, all per second.
+	 */
+	public static final int RX_BYTES_RATE = 0;
+	public static final int RX_PACKETS_RATE = 1;
+	public static final int RX_ERRORS_RATE = 2;
+	public static final int RX_DROPS_RATE = 3;
+	public static final int TX_BYTES_RATE = 4;
+	public static final int TX_PACKETS_RATE = 5;
+	public static final int TX_ERRORS_RATE = 6;
+	public static final int TX_DROPS_RATE = 7;
+	public static final int RATE_COUNT = 8;
+
+	/**
+	 * Counter each column following the interface name is stored in, -1 for
+	 * columns that are skipped. Parsed counters are indexed the same way as
+	 * the rates calculated from them.
+	 */
+	private static final int[] COLUMN_FIELDS = {
+			RX_BYTES_RATE, RX_PACKETS_RATE, RX_ERRORS_RATE, RX_DROPS_RATE, -1, -1, -1, -1,
+			TX_BYTES_RATE, TX_PACKETS_RATE, TX_ERRORS_RATE, TX_DROPS_RATE};
+
+	/**
+	 * Number of header lines preceding the interfaces.
+	 */
+	private static final int HEADER_LINES = 2;
+
+	private final LocalFile devFile;
+	private final ByteCursor cursor = new ByteCursor();
+	private final DeviceIndex interfaces = new DeviceIndex();
+	private final DeviceCounterTable table = new DeviceCounterTable(RATE_COUNT, RATE_COUNT);
+
+	private long previousNanos = 0L;
+
+	private volatile DeviceSnapshot snapshot =
+			new DeviceSnapshot(0L, new String[0], RATE_COUNT, new float[0]);
+
+
+
+	public NetDev() {
+		this(SystemRoot.DEFAULT);
+	}
+
+	/**
+	 * @param root Root the "proc/net/dev" file is looked up in.
+	 */
+	public NetDev(SystemRoot root) {
+		this(root.resolve(SYS_FILE_PATH).getPath());
+	}
+
+	/**
+	 * @param path Path to a file in the "proc/net/dev" format.
+	 */
+	public NetDev(String path) {
+		this.devFile = new LocalFile(path);
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to gather data from the
+	 * "proc/net/dev" file.
+	 * @throws IOException Exception thrown when the accessed file is
+	 * unavailable.
+	 */
+	public void dataAcquisition() throws IOException {
+		cursor.reset(devFile.readBuffer());
+		long nanos = System.nanoTime();
+		float seconds = (nanos - previousNanos) / 1e9f;
+		previousNanos = nanos;
+
+		for(int line = 0; line < HEADER_LINES; line++) {
+			cursor.skipLine();
+		}
+
+		interfaces.beginPass();
+		while(cursor.hasRemaining()) {
+			//  Name is right-aligned and followed by a colon, which may touch
+			//  the first counter.
+			cursor.skipBlanks();
+			int nameStart = cursor.getPosition();
+			int lineEnd = cursor.lineEnd();
+			int nameEnd = nameStart;
+			while(nameEnd < lineEnd && cursor.peek(nameEnd) != ':') {
+				nameEnd++;
+			}
+
+			if(nameEnd < lineEnd && nameEnd > nameStart) {
+				cursor.setPosition(nameEnd + 1);
+				int slot = interfaces.resolve(cursor, nameStart, nameEnd);
+				table.ensureCapacity(interfaces.getCapacity());
+				parseCounters(slot);
+				calculateRates(slot, seconds);
+			}
+
+			cursor.skipLine();
+		}
+		interfaces.endPass();
+
+		this.snapshot = table.toSnapshot(interfaces, System.currentTimeMillis());
+	}
+
+
+	private void parseCounters(int slot) {
+		for(int field : COLUMN_FIELDS) {
+			long value = cursor.nextLong();
+			if(field >= 0) {
+				table.current(field)[slot] = value == ByteCursor.NO_VALUE ? 0 : value;
+			}
+		}
+	}
+
+
+	private void calculateRates(int slot, float seconds) {
+		if(interfaces.isFresh(slot) || seconds <= 0) {
+			table.clearRates(slot);
+		} else {
+			for(int field = 0; field < RATE_COUNT; field++) {
+				table.rates(field)[slot] = table.delta(field, slot) / seconds;
+			}
+		}
+
+		table.advance(slot);
+	}
+
+
+	/**
+	 * Releases the "proc/net/dev" file handle kept open between readings.
+	 * @throws IOException Thrown when the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		devFile.close();
+	}
+
+
+	/**
+	 * Returns the result of the most recent reading. Rates are indexed by the
+	 * rate constants of this class.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public DeviceSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+
+	@Override
+	public String toString() {
+		DeviceSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		for(int index = 0; index < current.getDeviceCount(); index++) {
+			sb.append(String.format("%-12s rx %10.1f kB/s %8.1f pkt/s %6.1f drop/s  tx %10.1f kB/s %8.1f pkt/s %6.1f drop/s",
+					current.getName(index),
+					current.getRate(RX_BYTES_RATE, index) / 1024,
+					current.getRate(RX_PACKETS_RATE, index),
+					current.getRate(RX_DROPS_RATE, index),
+					current.getRate(TX_BYTES_RATE, index) / 1024,
+					current.getRate(TX_PACKETS_RATE, index),
+					current.getRate(TX_DROPS_RATE, index)))
+					.append(System.lineSeparator());
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.pressure;
+
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.pressure.data.PressureResource;
+import com.michalkolos.pressure.data.PressureSnapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Provides pressure stall information (PSI) gathered from "/proc/pressure"
+ * files. Unlike the number of running and blocked processes reported by
+ * ProcStat, PSI tells how much time tasks actually lost waiting for CPU,
+ * memory and I/O, which makes it a reliable saturation signal.
+ * <p>
+ * Resources without a readable pressure file (kernels older than 4.20,
+ * built without PSI or booted with "psi=0") are reported as unavailable.
+ * Failed reads of files that exist are counted in getErrorCount().
+ * Like ProcStat, every call to dataAcquisition() publishes a new immutable
+ * PressureSnapshot.
+ */
+public class ProcPressure implements Closeable {
+
+	/**
+	 * Absolute path to the "proc/pressure" directory.
+	 */
+	public static final String SYS_PATH = "/proc/pressure";
+
+	private static final PressureResource[] RESOURCES = PressureResource.values();
+
+	private static final byte[] SOME_KEY = "some ".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FULL_KEY = "full ".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Averages are reported with two decimal places.
+	 */
+	private static final int AVERAGE_DIGITS = 2;
+	private static final float AVERAGE_SCALE = 100.0f;
+
+	/**
+	 * Pressure files indexed by PressureResource ordinal, null for resources
+	 * that are not supported.
+	 */
+	private final LocalFile[] files = new LocalFile[RESOURCES.length];
+	private final ByteCursor cursor = new ByteCursor();
+
+	private final float[] averages =
+			new float[RESOURCES.length * PressureSnapshot.LINE_COUNT * PressureSnapshot.AVERAGE_COUNT];
+	private final long[] totals = new long[RESOURCES.length * PressureSnapshot.LINE_COUNT];
+	private final long[] previousTotals = new long[totals.length];
+
+	private long previousNanos = 0L;
+	private volatile long errorCount = 0L;
+
+	private volatile PressureSnapshot snapshot = PressureSnapshot.empty();
+
+
+
+	public ProcPressure() {
+		this(SystemRoot.DEFAULT);
+	}
+
+	/**
+	 * @param root Root the "proc/pressure" directory is looked up in.
+	 */
+	public ProcPressure(SystemRoot root) {
+		this(root.resolve(SYS_PATH).getPath());
+	}
+
+	/**
+	 * @param path Path to a directory with files in the "proc/pressure"
+	 *             format.
+	 */
+	public ProcPressure(String path) {
+		for(PressureResource resource : RESOURCES) {
+			File file = new File(path, resource.getFileName());
+			if(file.canRead()) {
+				files[resource.ordinal()] = new LocalFile(file);
+			}
+		}
+
+		Arrays.fill(previousTotals, PressureSnapshot.NO_VALUE);
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to gather data from the
+	 * "proc/pressure" files. Resources whose file cannot be read are
+	 * reported as unavailable.
+	 */
+	public void dataAcquisition() {
+		Arrays.fill(averages, PressureSnapshot.NO_AVERAGE);
+		Arrays.fill(totals, PressureSnapshot.NO_VALUE);
+
+		for(PressureResource resource : RESOURCES) {
+			LocalFile file = files[resource.ordinal()];
+			if(file != null) {
+				parseResource(resource, file);
+			}
+		}
+
+		long nanos = System.nanoTime();
+		long intervalMicros = previousNanos == 0L ? 0L : (nanos - previousNanos) / 1000;
+		previousNanos = nanos;
+
+		long[] stalls = new long[totals.length];
+		for(int index = 0; index < totals.length; index++) {
+			long total = totals[index];
+			long previous = previousTotals[index];
+			stalls[index] = total == PressureSnapshot.NO_VALUE
+					|| previous == PressureSnapshot.NO_VALUE
+					|| total < previous
+					? PressureSnapshot.NO_VALUE
+					: total - previous;
+			previousTotals[index] = total;
+		}
+
+		this.snapshot = new PressureSnapshot(System.currentTimeMillis(), intervalMicros,
+				averages.clone(), totals.clone(), stalls);
+	}
+
+
+	/**
+	 * Parses lines in the format of
+	 * "some avg10=0.12 avg60=0.05 avg300=0.01 total=123456". A file that
+	 * cannot be read, e.g. with PSI disabled by "psi=0", leaves the resource
+	 * unavailable for this reading.
+	 */
+	private void parseResource(PressureResource resource, LocalFile file) {
+		try {
+			cursor.reset(file.readBuffer());
+		} catch (IOException e) {
+			errorCount++;
+			return;
+		}
+
+		while(cursor.hasRemaining()) {
+			int line = cursor.startsWith(SOME_KEY)
+					? PressureSnapshot.SOME
+					: cursor.startsWith(FULL_KEY) ? PressureSnapshot.FULL : -1;
+
+			if(line >= 0) {
+				int index = resource.ordinal() * PressureSnapshot.LINE_COUNT + line;
+				for(int window = 0; window < PressureSnapshot.AVERAGE_COUNT; window++) {
+					long average = cursor.skipPast((byte)'=')
+							? cursor.nextFixedPoint(AVERAGE_DIGITS)
+							: ByteCursor.NO_VALUE;
+					averages[index * PressureSnapshot.AVERAGE_COUNT + window] =
+							average == ByteCursor.NO_VALUE
+									? PressureSnapshot.NO_AVERAGE
+									: average / AVERAGE_SCALE;
+				}
+
+				totals[index] = cursor.skipPast((byte)'=')
+						? cursor.nextLong()
+						: PressureSnapshot.NO_VALUE;
+			}
+
+			cursor.skipLine();
+		}
+	}
+
+
+	/**
+	 * @param resource Requested resource.
+	 * @return True if the kernel provides a pressure file for the resource.
+	 */
+	public boolean isSupported(PressureResource resource) {
+		return files[resource.ordinal()] != null;
+	}
+
+
+	/**
+	 * Releases the "proc/pressure" file handles kept open between readings.
+	 * @throws IOException Thrown when a file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		for(LocalFile file : files) {
+			if(file != null) {
+				file.close();
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the result of the most recent reading.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public PressureSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return Number of pressure file reads that failed since the start.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+
+	@Override
+	public String toString() {
+		PressureSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		for(PressureResource resource : RESOURCES) {
+			for(int line = 0; line < PressureSnapshot.LINE_COUNT; line++) {
+				if(!current.isAvailable(resource, line)) {
+					continue;
+				}
+
+				sb.append(String.format("%-7s %s  avg10 %6.2f%%  avg60 %6.2f%%  avg300 %6.2f%%  interval %6.2f%%",
+						resource.getFileName(),
+						line == PressureSnapshot.SOME ? "some" : "full",
+						current.getAverage(resource, line, PressureSnapshot.AVG10),
+						current.getAverage(resource, line, PressureSnapshot.AVG60),
+						current.getAverage(resource, line, PressureSnapshot.AVG300),
+						current.getStallRatio(resource, line) * 100))
+						.append(System.lineSeparator());
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.pressure.data;
+
+
+/**
+ * Resources the kernel reports pressure stall information for, one file per
+ * resource in "/proc/pressure".
+ */
+public enum PressureResource {
+	CPU("cpu"),
+	MEMORY("memory"),
+	IO("io");
+
+	private final String fileName;
+
+
+	PressureResource(String fileName) {
+		this.fileName = fileName;
+	}
+
+
+	/**
+	 * @return Name of the resource's file in "/proc/pressure".
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+}
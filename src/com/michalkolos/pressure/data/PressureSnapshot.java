@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.pressure.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Immutable result of a single reading of "/proc/pressure" files. Every
+ * resource has two lines: "some" (at least one task stalled on the resource)
+ * and "full" (all non-idle tasks stalled at the same time). Each line carries
+ * the kernel's running averages and the total stall time, from which the
+ * stall time of the last sampling interval is calculated.
+ */
+public class PressureSnapshot {
+
+	/**
+	 * Lines of a pressure file.
+	 */
+	public static final int SOME = 0;
+	public static final int FULL = 1;
+	public static final int LINE_COUNT = 2;
+
+	/**
+	 * Running averages reported by the kernel, over 10 s, 60 s and 300 s.
+	 */
+	public static final int AVG10 = 0;
+	public static final int AVG60 = 1;
+	public static final int AVG300 = 2;
+	public static final int AVERAGE_COUNT = 3;
+
+	/**
+	 * Value of counters that are not reported, e.g. "full" line of "cpu" on
+	 * kernels older than 5.13 or resources without a pressure file.
+	 */
+	public static final long NO_VALUE = -1L;
+
+	/**
+	 * Value of averages that are not reported.
+	 */
+	public static final float NO_AVERAGE = -1.0f;
+
+	private static final int RESOURCE_COUNT = PressureResource.values().length;
+
+	private final long timestamp;
+	private final long intervalMicros;
+	private final float[] averages;
+	private final long[] totals;
+	private final long[] stalls;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param intervalMicros Time elapsed since the previous reading in
+	 *                       microseconds, 0 for the first reading.
+	 * @param averages Averages in percent indexed by
+	 *                 (resource * LINE_COUNT + line) * AVERAGE_COUNT + window.
+	 * @param totals Total stall times in microseconds indexed by
+	 *               resource * LINE_COUNT + line.
+	 * @param stalls Stall times of the last interval in microseconds, indexed
+	 *               like totals. The arrays are taken over by the snapshot and
+	 *               must not be modified afterwards.
+	 */
+	public PressureSnapshot(long timestamp, long intervalMicros, float[] averages,
+	                        long[] totals, long[] stalls) {
+		this.timestamp = timestamp;
+		this.intervalMicros = intervalMicros;
+		this.averages = averages;
+		this.totals = totals;
+		this.stalls = stalls;
+	}
+
+
+	/**
+	 * Creates a snapshot without any values, published before the first
+	 * reading.
+	 */
+	public static PressureSnapshot empty() {
+		float[] averages = new float[RESOURCE_COUNT * LINE_COUNT * AVERAGE_COUNT];
+		long[] totals = new long[RESOURCE_COUNT * LINE_COUNT];
+		long[] stalls = new long[RESOURCE_COUNT * LINE_COUNT];
+		Arrays.fill(averages, NO_AVERAGE);
+		Arrays.fill(totals, NO_VALUE);
+		Arrays.fill(stalls, NO_VALUE);
+
+		return new PressureSnapshot(0L, 0L, averages, totals, stalls);
+	}
+
+
+	/**
+	 * @param resource Requested resource.
+	 * @param line SOME or FULL.
+	 * @param window AVG10, AVG60 or AVG300.
+	 * @return Share of time tasks were stalled, in percent, as averaged by the
+	 * kernel, or NO_AVERAGE if it is not reported.
+	 */
+	public float getAverage(PressureResource resource, int line, int window) {
+		return averages[index(resource, line) * AVERAGE_COUNT + window];
+	}
+
+	/**
+	 * @param resource Requested resource.
+	 * @param line SOME or FULL.
+	 * @return Total stall time since boot in microseconds or NO_VALUE.
+	 */
+	public long getTotalMicros(PressureResource resource, int line) {
+		return totals[index(resource, line)];
+	}
+
+	/**
+	 * @param resource Requested resource.
+	 * @param line SOME or FULL.
+	 * @return Stall time between the previous and this reading in
+	 * microseconds or NO_VALUE if there was no previous reading.
+	 */
+	public long getStallMicros(PressureResource resource, int line) {
+		return stalls[index(resource, line)];
+	}
+
+	/**
+	 * @param resource Requested resource.
+	 * @param line SOME or FULL.
+	 * @return Share of the last sampling interval tasks were stalled, 0 to 1,
+	 * or 0 if it cannot be calculated.
+	 */
+	public float getStallRatio(PressureResource resource, int line) {
+		long stall = getStallMicros(resource, line);
+		if(stall == NO_VALUE || intervalMicros <= 0) {
+			return 0.0f;
+		}
+
+		return Math.min(1.0f, (float)stall / intervalMicros);
+	}
+
+	public boolean isAvailable(PressureResource resource, int line) {
+		return totals[index(resource, line)] != NO_VALUE;
+	}
+
+	public long getIntervalMicros() {
+		return intervalMicros;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+
+	private static int index(PressureResource resource, int line) {
+		return resource.ordinal() * LINE_COUNT + line;
+	}
+}
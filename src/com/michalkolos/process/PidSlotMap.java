@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.process;
+
+import java.util.Arrays;
+
+
+/**
+ * Open addressing hash map from pid to slot of the process table. Keys and
+ * values are kept in primitive arrays, so lookups allocate nothing. Removal
+ * shifts the following entries back instead of leaving tombstones, so the
+ * table does not degrade while processes come and go.
+ */
+class PidSlotMap {
+
+	static final int NO_SLOT = -1;
+
+	private static final int EMPTY = -1;
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int shift;
+	private int size = 0;
+
+
+	/**
+	 * @param expectedSize Number of entries the map can hold without growing.
+	 */
+	PidSlotMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, (int)(expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		shift = Integer.numberOfLeadingZeros(capacity) + 1;
+	}
+
+	private int indexOf(int pid) {
+		//  Pids are sequential, spread them over the table (Fibonacci
+		//  hashing, top bits of the product are used).
+		return (pid * 0x9E3779B9) >>> shift;
+	}
+
+
+	/**
+	 * @param pid Process id.
+	 * @return Slot of the process or NO_SLOT if it is not in the map.
+	 */
+	int get(int pid) {
+		int index = indexOf(pid);
+		while(keys[index] != EMPTY) {
+			if(keys[index] == pid) {
+				return values[index];
+			}
+			index = (index + 1) & mask;
+		}
+
+		return NO_SLOT;
+	}
+
+	/**
+	 * @param pid Process id, not negative.
+	 * @param slot Slot of the process.
+	 */
+	void put(int pid, int slot) {
+		if(size + 1 > keys.length * LOAD_FACTOR) {
+			grow();
+		}
+
+		int index = indexOf(pid);
+		while(keys[index] != EMPTY) {
+			if(keys[index] == pid) {
+				values[index] = slot;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+
+		keys[index] = pid;
+		values[index] = slot;
+		size++;
+	}
+
+	/**
+	 * @param pid Process id.
+	 * @return Slot the process had or NO_SLOT if it was not in the map.
+	 */
+	int remove(int pid) {
+		int index = indexOf(pid);
+		while(keys[index] != pid) {
+			if(keys[index] == EMPTY) {
+				return NO_SLOT;
+			}
+			index = (index + 1) & mask;
+		}
+
+		int slot = values[index];
+		size--;
+
+		//  Move back entries that would become unreachable.
+		int gap = index;
+		int next = (gap + 1) & mask;
+		while(keys[next] != EMPTY) {
+			int home = indexOf(keys[next]);
+			if(((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = EMPTY;
+
+		return slot;
+	}
+
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(keys.length * 2);
+		size = 0;
+
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != EMPTY) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+	int size() {
+		return size;
+	}
+}
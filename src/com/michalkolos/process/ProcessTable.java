@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.process;
+
+import com.michalkolos.cpu.ProcStat;
+import com.michalkolos.input.ByteCursor;
+import com.michalkolos.input.LocalFile;
+import com.michalkolos.input.SystemRoot;
+import com.michalkolos.process.data.ProcessSnapshot;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Collects CPU usage and resident memory of every process from
+ * "/proc/[pid]/stat" files.
+ * <p>
+ * Processes are kept in slots of a columnar table, found by pid through a
+ * primitive PidSlotMap. Every pass diffs the pid set against the previous
+ * one: only new processes get their name and path resolved, processes that
+ * are gone free their slots. Stat files are read by a fixed pool of worker
+ * threads, each taking chunks of slots until none are left, so a pass over
+ * tens of thousands of processes is spread across several cores.
+ * <p>
+ * Like ProcStat, every call to dataAcquisition() publishes a new immutable
+ * ProcessSnapshot.
+ */
+public class ProcessTable implements Closeable {
+
+	public static final String PROC_PATH = "/proc";
+
+	/**
+	 * Size of memory pages, used to convert resident set size from pages.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 4096;
+
+	/**
+	 * Upper limit of the default number of reading threads. A few threads
+	 * already keep a pass short, a thread per core would mostly sit idle on
+	 * large hosts.
+	 */
+	public static final int DEFAULT_PARALLELISM = 4;
+
+	/**
+	 * Number of slots a worker takes at once.
+	 */
+	private static final int CHUNK_SIZE = 64;
+
+	private static final int STAT_BUFFER_SIZE = 1024;
+	private static final int INITIAL_CAPACITY = 1024;
+
+	//  Fields following the name in "/proc/[pid]/stat", counted from the
+	//  state field.
+	private static final int UTIME_FIELD = 11;
+	private static final int STIME_FIELD = 12;
+	private static final int STARTTIME_FIELD = 19;
+	private static final int RSS_FIELD = 21;
+
+	private static final byte[] CPU_KEY = "cpu ".getBytes(StandardCharsets.US_ASCII);
+
+	//  Columns of "cpu" line of "/proc/stat" counted as CPU time: user, nice,
+	//  system, idle, iowait, irq, softirq and steal. Guest time is already
+	//  included in user time.
+	private static final int CPU_TIME_FIELDS = 8;
+
+	private final File procDir;
+	private final LocalFile statFile;
+	private final ByteCursor statCursor = new ByteCursor();
+	private final int pageSize;
+
+	private final PidSlotMap slotsByPid = new PidSlotMap(INITIAL_CAPACITY);
+
+	//  Process table, indexed by slot.
+	private int[] pids = new int[INITIAL_CAPACITY];
+	private Path[] statPaths = new Path[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private long[] startTimes = new long[INITIAL_CAPACITY];
+	private long[] previousCpuTimes = new long[INITIAL_CAPACITY];
+	private long[] currentCpuTimes = new long[INITIAL_CAPACITY];
+	private long[] rssPages = new long[INITIAL_CAPACITY];
+	private boolean[] fresh = new boolean[INITIAL_CAPACITY];
+	private boolean[] readOk = new boolean[INITIAL_CAPACITY];
+	private int[] seenInPass = new int[INITIAL_CAPACITY];
+	private int slotCount = 0;
+	private int[] freeSlots = new int[INITIAL_CAPACITY];
+	private int freeSlotCount = 0;
+
+	/**
+	 * Slots to be read in the current pass.
+	 */
+	private int[] work = new int[INITIAL_CAPACITY];
+	private int workSize = 0;
+	private final AtomicInteger nextChunk = new AtomicInteger();
+
+	private final ExecutorService pool;
+	private final List<Callable<Void>> workers = new ArrayList<>();
+
+	private int pass = 0;
+	private long previousTotalTime = 0L;
+
+	private volatile ProcessSnapshot snapshot =
+			new ProcessSnapshot(0L, 0, new int[0], new String[0], new float[0], new long[0]);
+
+
+
+	public ProcessTable() {
+		this(SystemRoot.DEFAULT, Math.min(Runtime.getRuntime().availableProcessors(), DEFAULT_PARALLELISM),
+				DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * @param root Root the "/proc" directory is looked up in.
+	 * @param parallelism Number of threads reading stat files. With 1 all
+	 *                    files are read by the calling thread.
+	 * @param pageSize Size of memory pages in bytes.
+	 */
+	public ProcessTable(SystemRoot root, int parallelism, int pageSize) {
+		this.procDir = root.resolve(PROC_PATH);
+		this.statFile = new LocalFile(root.resolve(ProcStat.SYS_FILE_PATH));
+		this.pageSize = pageSize;
+
+		int threads = Math.max(1, parallelism);
+		for(int i = 0; i < threads; i++) {
+			workers.add(new Worker());
+		}
+
+		if(threads > 1) {
+			AtomicInteger threadNumber = new AtomicInteger();
+			this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+				Thread thread = new Thread(runnable, "process-reader-" + threadNumber.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.pool = null;
+		}
+	}
+
+
+	/**
+	 * Reads stat files of a range of slots. Every worker has its own buffer
+	 * and cursor, workers write to disjoint slots only.
+	 */
+	private class Worker implements Callable<Void> {
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(STAT_BUFFER_SIZE);
+		private final ByteCursor cursor = new ByteCursor();
+
+		@Override
+		public Void call() {
+			int chunkStart;
+			while((chunkStart = nextChunk.getAndAdd(CHUNK_SIZE)) < workSize) {
+				int chunkEnd = Math.min(chunkStart + CHUNK_SIZE, workSize);
+				for(int i = chunkStart; i < chunkEnd; i++) {
+					int slot = work[i];
+					readOk[slot] = readStat(slot, buffer, cursor);
+				}
+			}
+
+			return null;
+		}
+	}
+
+
+	/**
+	 * Method that needs to be called periodically to refresh the process
+	 * table. Takes the pid listing of "/proc", reads stat files of all the
+	 * processes and publishes a new snapshot.
+	 * @throws IOException Thrown when "/proc" or "/proc/stat" is inaccessible.
+	 */
+	public void dataAcquisition() throws IOException {
+		long totalTime = readTotalCpuTime();
+
+		String[] entries = procDir.list();
+		if(entries == null) {
+			throw new IOException("Cannot access " + procDir.getPath() + " directory.");
+		}
+
+		pass++;
+		workSize = 0;
+		for(String entry : entries) {
+			int pid = parsePid(entry);
+			if(pid < 0) {
+				continue;
+			}
+
+			int slot = slotsByPid.get(pid);
+			if(slot == PidSlotMap.NO_SLOT) {
+				slot = allocateSlot(pid);
+			}
+			seenInPass[slot] = pass;
+
+			if(workSize == work.length) {
+				work = Arrays.copyOf(work, work.length * 2);
+			}
+			work[workSize++] = slot;
+		}
+
+		readAll();
+
+		long totalDifference = totalTime - previousTotalTime;
+		previousTotalTime = totalTime;
+
+		int count = 0;
+		int[] snapshotPids = new int[workSize];
+		String[] snapshotNames = new String[workSize];
+		float[] snapshotUsage = new float[workSize];
+		long[] snapshotRss = new long[workSize];
+
+		for(int i = 0; i < workSize; i++) {
+			int slot = work[i];
+			if(!readOk[slot]) {
+				//  Process exited between the listing and the reading.
+				freeSlot(slot);
+				continue;
+			}
+
+			snapshotPids[count] = pids[slot];
+			snapshotNames[count] = names[slot];
+			snapshotUsage[count] = fresh[slot] || totalDifference <= 0
+					? 0.0f
+					: (float)(currentCpuTimes[slot] - previousCpuTimes[slot]) / totalDifference;
+			snapshotRss[count] = rssPages[slot] * pageSize;
+			count++;
+
+			previousCpuTimes[slot] = currentCpuTimes[slot];
+			fresh[slot] = false;
+		}
+
+		for(int slot = 0; slot < slotCount; slot++) {
+			if(pids[slot] >= 0 && seenInPass[slot] != pass) {
+				freeSlot(slot);
+			}
+		}
+
+		this.snapshot = new ProcessSnapshot(System.currentTimeMillis(), count,
+				snapshotPids, snapshotNames, snapshotUsage, snapshotRss);
+	}
+
+
+	private void readAll() throws IOException {
+		nextChunk.set(0);
+
+		if(pool == null) {
+			try {
+				workers.get(0).call();
+			} catch (Exception e) {
+				throw new IOException(e);
+			}
+			return;
+		}
+
+		try {
+			for(Future<Void> future : pool.invokeAll(workers)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading process table.", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+
+	/**
+	 * Reads "/proc/[pid]/stat" of a process into its slot.
+	 * @return False if the file cannot be read or parsed.
+	 */
+	private boolean readStat(int slot, ByteBuffer buffer, ByteCursor cursor) {
+		buffer.clear();
+		try(FileChannel channel = FileChannel.open(statPaths[slot], StandardOpenOption.READ)) {
+			while(buffer.hasRemaining() && channel.read(buffer) > 0) {
+				//  Stat files are read whole, they are far smaller than the buffer.
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		buffer.flip();
+		cursor.reset(buffer);
+
+		//  Name may contain spaces and parentheses, fields start after the
+		//  last ')'.
+		int lineEnd = cursor.lineEnd();
+		int nameEnd = lineEnd - 1;
+		while(nameEnd > 0 && cursor.peek(nameEnd) != ')') {
+			nameEnd--;
+		}
+		if(nameEnd <= 0) {
+			return false;
+		}
+
+		cursor.setPosition(nameEnd + 1);
+		long utime = 0;
+		long stime = 0;
+		long startTime = 0;
+		for(int field = 0; field <= RSS_FIELD; field++) {
+			cursor.skipBlanks();
+			if(field == UTIME_FIELD) {
+				utime = cursor.nextLong();
+			} else if(field == STIME_FIELD) {
+				stime = cursor.nextLong();
+			} else if(field == STARTTIME_FIELD) {
+				startTime = cursor.nextLong();
+			} else if(field == RSS_FIELD) {
+				rssPages[slot] = Math.max(0, cursor.nextSignedLong());
+			} else {
+				cursor.skipToken();
+			}
+		}
+		if(utime == ByteCursor.NO_VALUE || stime == ByteCursor.NO_VALUE) {
+			return false;
+		}
+
+		//  Pid reused by another process since the previous pass.
+		if(!fresh[slot] && startTime != startTimes[slot]) {
+			fresh[slot] = true;
+		}
+		startTimes[slot] = startTime;
+		currentCpuTimes[slot] = utime + stime;
+
+		//  Checked on every pass, exec() renames the process.
+		int nameStart = 0;
+		while(nameStart < nameEnd && cursor.peek(nameStart) != '(') {
+			nameStart++;
+		}
+		nameStart = Math.min(nameStart + 1, nameEnd);
+		if(fresh[slot] || !nameEquals(cursor, nameStart, nameEnd, names[slot])) {
+			byte[] name = new byte[nameEnd - nameStart];
+			buffer.get(nameStart, name);
+			names[slot] = new String(name, StandardCharsets.UTF_8);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares a name in the buffer with the known one without decoding it.
+	 * @return False if they differ or the name is not plain ASCII.
+	 */
+	private static boolean nameEquals(ByteCursor cursor, int start, int end, String name) {
+		if(name == null || name.length() != end - start) {
+			return false;
+		}
+		for(int i = start; i < end; i++) {
+			byte b = cursor.peek(i);
+			if(b < 0 || b != name.charAt(i - start)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Reads time spent by all cores combined from the "cpu" line of
+	 * "/proc/stat", the same sum ProcStat uses for its "Total" row.
+	 */
+	private long readTotalCpuTime() throws IOException {
+		statCursor.reset(statFile.readBuffer());
+		if(!statCursor.startsWith(CPU_KEY)) {
+			throw new IOException("Unexpected format of " + ProcStat.SYS_FILE_PATH);
+		}
+		statCursor.skip(CPU_KEY.length);
+
+		long total = 0;
+		for(int field = 0; field < CPU_TIME_FIELDS; field++) {
+			long value = statCursor.nextLong();
+			if(value == ByteCursor.NO_VALUE) {
+				break;
+			}
+			total += value;
+		}
+
+		return total;
+	}
+
+
+	private static int parsePid(String name) {
+		int length = name.length();
+		if(length == 0 || length > 9) {
+			return -1;
+		}
+
+		int pid = 0;
+		for(int i = 0; i < length; i++) {
+			int digit = name.charAt(i) - '0';
+			if(digit < 0 || digit > 9) {
+				return -1;
+			}
+			pid = pid * 10 + digit;
+		}
+
+		return pid;
+	}
+
+
+	private int allocateSlot(int pid) {
+		int slot;
+		if(freeSlotCount > 0) {
+			slot = freeSlots[--freeSlotCount];
+		} else {
+			if(slotCount == pids.length) {
+				grow(pids.length * 2);
+			}
+			slot = slotCount++;
+		}
+
+		pids[slot] = pid;
+		statPaths[slot] = new File(procDir, pid + "/stat").toPath();
+		names[slot] = "";
+		startTimes[slot] = 0;
+		previousCpuTimes[slot] = 0;
+		currentCpuTimes[slot] = 0;
+		rssPages[slot] = 0;
+		fresh[slot] = true;
+		slotsByPid.put(pid, slot);
+
+		return slot;
+	}
+
+	private void freeSlot(int slot) {
+		slotsByPid.remove(pids[slot]);
+		pids[slot] = -1;
+		statPaths[slot] = null;
+		names[slot] = null;
+
+		if(freeSlotCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+		freeSlots[freeSlotCount++] = slot;
+	}
+
+	private void grow(int capacity) {
+		pids = Arrays.copyOf(pids, capacity);
+		statPaths = Arrays.copyOf(statPaths, capacity);
+		names = Arrays.copyOf(names, capacity);
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		previousCpuTimes = Arrays.copyOf(previousCpuTimes, capacity);
+		currentCpuTimes = Arrays.copyOf(currentCpuTimes, capacity);
+		rssPages = Arrays.copyOf(rssPages, capacity);
+		fresh = Arrays.copyOf(fresh, capacity);
+		readOk = Arrays.copyOf(readOk, capacity);
+		seenInPass = Arrays.copyOf(seenInPass, capacity);
+	}
+
+
+	/**
+	 * Stops the worker threads and releases "/proc/stat" file handle.
+	 * @throws IOException Thrown when the file cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(pool != null) {
+			pool.shutdownNow();
+		}
+		statFile.close();
+	}
+
+
+	/**
+	 * Returns the result of the most recent pass.
+	 * @return Immutable snapshot, safe to use from any thread.
+	 */
+	public ProcessSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return Number of threads reading stat files.
+	 */
+	public int getParallelism() {
+		return workers.size();
+	}
+
+
+	@Override
+	public String toString() {
+		return toString(10);
+	}
+
+	/**
+	 * @param count Number of processes listed.
+	 * @return Processes using the most CPU time, the busiest first.
+	 */
+	public String toString(int count) {
+		ProcessSnapshot current = this.snapshot;
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("Processes: ").append(current.getProcessCount())
+				.append(System.lineSeparator());
+
+		for(int index : current.topByCpuUsage(count)) {
+			sb.append(String.format("%8d %-16s %6.2f%% %10d kB",
+					current.getPid(index), current.getName(index),
+					current.getCpuUsage(index) * 100,
+					current.getRssBytes(index) / 1024))
+					.append(System.lineSeparator());
+		}
+
+		return sb.toString();
+	}
+}
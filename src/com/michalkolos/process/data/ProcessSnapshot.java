@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.process.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Immutable result of a single pass over the process table. Processes are
+ * stored column by column, a process is identified by its index in the
+ * snapshot, 0 to getProcessCount() - 1.
+ */
+public class ProcessSnapshot {
+
+	private final long timestamp;
+	private final int processCount;
+	private final int[] pids;
+	private final String[] names;
+	private final float[] cpuUsage;
+	private final long[] rssBytes;
+
+
+	/**
+	 * @param timestamp Time of the reading in milliseconds since epoch.
+	 * @param processCount Number of processes.
+	 * @param pids Process ids.
+	 * @param names Names of the executables as reported by the kernel.
+	 * @param cpuUsage Share of the whole machine's CPU time used by each
+	 *                 process since the previous pass.
+	 * @param rssBytes Resident set sizes.
+	 * All arrays are taken over by the snapshot and must not be modified
+	 * afterwards.
+	 */
+	public ProcessSnapshot(long timestamp, int processCount, int[] pids, String[] names,
+	                       float[] cpuUsage, long[] rssBytes) {
+		this.timestamp = timestamp;
+		this.processCount = processCount;
+		this.pids = pids;
+		this.names = names;
+		this.cpuUsage = cpuUsage;
+		this.rssBytes = rssBytes;
+	}
+
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public int getProcessCount() {
+		return processCount;
+	}
+
+	public int getPid(int index) {
+		return pids[index];
+	}
+
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * @param index Index of the process.
+	 * @return Ratio of the CPU time used by the process to the CPU time of
+	 * all cores combined, computed like the "Total" row of ProcStat. 0 for
+	 * processes that appeared in the latest pass.
+	 */
+	public float getCpuUsage(int index) {
+		return cpuUsage[index];
+	}
+
+	public long getRssBytes(int index) {
+		return rssBytes[index];
+	}
+
+
+	/**
+	 * Finds processes using the most CPU time.
+	 * @param count Maximum number of processes returned.
+	 * @return Indices of the processes, the busiest first.
+	 */
+	public int[] topByCpuUsage(int count) {
+		int[] top = new int[Math.min(count, processCount)];
+		int size = 0;
+
+		//  Insertion into a short sorted array, count is expected to be small.
+		for(int index = 0; index < processCount; index++) {
+			float usage = cpuUsage[index];
+			if(size == top.length && (size == 0 || usage <= cpuUsage[top[size - 1]])) {
+				continue;
+			}
+
+			int position = Math.min(size, top.length - 1);
+			while(position > 0 && cpuUsage[top[position - 1]] < usage) {
+				top[position] = top[position - 1];
+				position--;
+			}
+			top[position] = index;
+			size = Math.min(size + 1, top.length);
+		}
+
+		return Arrays.copyOf(top, size);
+	}
+}
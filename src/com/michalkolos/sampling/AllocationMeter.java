@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.sampling;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+
+/**
+ * Reads the number of heap bytes allocated by the current thread from the
+ * HotSpot ThreadMXBean. The counter is kept by the JVM per thread, so reading
+ * it before and after a task gives the task's allocations without any
+ * sampling.
+ */
+public final class AllocationMeter {
+
+	/**
+	 * Value returned when the JVM does not count allocations.
+	 */
+	public static final long UNSUPPORTED = -1L;
+
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+	private AllocationMeter() {
+	}
+
+
+	/**
+	 * @return Bytes allocated by the current thread since it started, or
+	 * UNSUPPORTED.
+	 */
+	public static long currentThreadAllocatedBytes() {
+		return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : UNSUPPORTED;
+	}
+
+	/**
+	 * @return True if allocations are counted.
+	 */
+	public static boolean isSupported() {
+		return THREAD_BEAN != null;
+	}
+
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+
+		com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean)bean;
+		try {
+			if(!hotSpotBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			hotSpotBean.setThreadAllocatedMemoryEnabled(true);
+			return hotSpotBean;
+		} catch (UnsupportedOperationException | SecurityException e) {
+			return null;
+		}
+	}
+}
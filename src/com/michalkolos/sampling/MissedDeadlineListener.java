@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.sampling;
+
+
+/**
+ * Receives reports about ticks skipped by the SamplingScheduler because a task
+ * could not keep up with its interval.
+ */
+@FunctionalInterface
+public interface MissedDeadlineListener {
+
+	/**
+	 * @param sampler Task that missed its deadlines.
+	 * @param missedTicks Number of ticks skipped this time.
+	 * @param latenessNanos How far behind the schedule the task was when it
+	 *                      finished, in nanoseconds.
+	 */
+	void deadlinesMissed(ScheduledSampler sampler, long missedTicks, long latenessNanos);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.sampling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * Runs collectors' readings at their own fixed rates on a single thread.
+ * <p>
+ * Ticks are aligned to the monotonic clock: n-th tick of a task is due exactly
+ * n intervals after the scheduler was started, no matter how long previous
+ * readings took, so the schedule does not drift. When a task falls behind,
+ * the ticks that already passed are skipped instead of being run back to back,
+ * and the skip is reported to the MissedDeadlineListener.
+ */
+public class SamplingScheduler {
+
+	private final List<ScheduledSampler> samplers = new ArrayList<>();
+	private volatile MissedDeadlineListener missedDeadlineListener;
+	private volatile boolean running = false;
+	private Thread thread;
+
+
+	/**
+	 * Registers a task to be run at a fixed rate. Tasks are registered before
+	 * the scheduler is started. Tasks due at the same time are run in
+	 * registration order.
+	 * @param name Name of the task used in reports.
+	 * @param interval Time between consecutive ticks.
+	 * @param unit Unit of the interval.
+	 * @param task Reading to be performed on every tick.
+	 * @return Object giving access to the task's execution statistics.
+	 */
+	public synchronized ScheduledSampler register(String name, long interval,
+	                                              TimeUnit unit, SamplingTask task) {
+		if(thread != null) {
+			throw new IllegalStateException("Scheduler is already started.");
+		}
+		if(interval <= 0) {
+			throw new IllegalArgumentException("Interval must be positive.");
+		}
+
+		ScheduledSampler sampler = new ScheduledSampler(name, unit.toNanos(interval), task);
+		samplers.add(sampler);
+
+		return sampler;
+	}
+
+
+	/**
+	 * Starts running registered tasks on a dedicated daemon thread. First tick
+	 * of every task happens immediately.
+	 */
+	public synchronized void start() {
+		if(thread != null) {
+			throw new IllegalStateException("Scheduler is already started.");
+		}
+
+		running = true;
+		thread = new Thread(this::runLoop, "sampling-scheduler");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Stops the scheduler and waits for the currently running task to finish.
+	 * @throws InterruptedException Thrown when interrupted while waiting.
+	 */
+	public void stop() throws InterruptedException {
+		Thread toJoin;
+		synchronized(this) {
+			running = false;
+			toJoin = thread;
+		}
+
+		if(toJoin != null) {
+			LockSupport.unpark(toJoin);
+			toJoin.join();
+		}
+	}
+
+
+	private void runLoop() {
+		long origin = System.nanoTime();
+		samplers.forEach(sampler -> sampler.setNextDeadline(origin));
+
+		while(running) {
+			long now = System.nanoTime();
+			long earliest = Long.MAX_VALUE;
+			boolean anyDue = false;
+
+			for(ScheduledSampler sampler : samplers) {
+				if(now - sampler.getNextDeadline() >= 0) {
+					sampler.execute(missedDeadlineListener);
+					anyDue = true;
+				}
+			}
+
+			if(anyDue) {
+				//  Running tasks took time, some other might be due already.
+				continue;
+			}
+
+			for(ScheduledSampler sampler : samplers) {
+				earliest = Math.min(earliest, sampler.getNextDeadline() - now);
+			}
+
+			if(samplers.isEmpty()) {
+				LockSupport.park(this);
+			} else {
+				LockSupport.parkNanos(this, earliest);
+			}
+		}
+	}
+
+
+	public void setMissedDeadlineListener(MissedDeadlineListener missedDeadlineListener) {
+		this.missedDeadlineListener = missedDeadlineListener;
+	}
+
+	/**
+	 * @return All registered tasks with their execution statistics.
+	 */
+	public synchronized List<ScheduledSampler> getSamplers() {
+		return Collections.unmodifiableList(new ArrayList<>(samplers));
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+}
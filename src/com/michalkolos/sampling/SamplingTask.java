@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.sampling;
+
+import java.io.IOException;
+
+
+/**
+ * Single periodic reading performed by a collector, e.g.
+ * ProcStat::dataAcquisition.
+ */
+@FunctionalInterface
+public interface SamplingTask {
+
+	/**
+	 * Performs one reading.
+	 * @throws IOException Thrown when the collector's data source is
+	 * inaccessible. The scheduler reports it and keeps the task scheduled.
+	 */
+	void sample() throws IOException;
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.sampling;
+
+
+/**
+ * Task registered in the SamplingScheduler together with its schedule and
+ * execution statistics. Statistics are updated by the scheduler thread and can
+ * be read from any thread.
+ * <p>
+ * Every run is timed into a LatencyHistogram, and the heap bytes it allocated
+ * are read from the scheduler thread's allocation counter, so the monitor's
+ * own cost can be reported per task.
+ */
+public class ScheduledSampler {
+
+	private final String name;
+	private final long intervalNanos;
+	private final SamplingTask task;
+
+	/**
+	 * Monotonic time (System.nanoTime()) of the next tick. Always an exact
+	 * multiple of the interval away from the scheduler's origin.
+	 */
+	private long nextDeadline;
+
+	private volatile long executionCount = 0;
+	private volatile long missedTickCount = 0;
+	private volatile long errorCount = 0;
+
+	private final LatencyHistogram durations = new LatencyHistogram();
+	private volatile long lastDurationNanos = 0L;
+	private volatile long allocatedBytes = 0L;
+	private volatile long lastAllocatedBytes = 0L;
+
+
+	ScheduledSampler(String name, long intervalNanos, SamplingTask task) {
+		this.name = name;
+		this.intervalNanos = intervalNanos;
+		this.task = task;
+	}
+
+
+	/**
+	 * Runs the task once and moves the deadline to the next tick that is still
+	 * in the future. Ticks that already passed are skipped, not caught up on.
+	 * @param listener Listener notified about skipped ticks, may be null.
+	 */
+	void execute(MissedDeadlineListener listener) {
+		long allocatedBefore = AllocationMeter.currentThreadAllocatedBytes();
+		long started = System.nanoTime();
+		try {
+			task.sample();
+		} catch (Exception e) {
+			errorCount++;
+			e.printStackTrace();
+//			TODO: Logging
+		}
+		long finished = System.nanoTime();
+		long allocated = AllocationMeter.currentThreadAllocatedBytes() - allocatedBefore;
+
+		lastDurationNanos = finished - started;
+		durations.record(finished - started);
+		if(allocatedBefore != AllocationMeter.UNSUPPORTED) {
+			lastAllocatedBytes = allocated;
+			allocatedBytes += allocated;
+		}
+		executionCount++;
+		nextDeadline += intervalNanos;
+
+		if(finished - nextDeadline >= 0) {
+			long lateness = finished - nextDeadline;
+			long missed = lateness / intervalNanos + 1;
+
+			nextDeadline += missed * intervalNanos;
+			missedTickCount += missed;
+
+			if(listener != null) {
+				listener.deadlinesMissed(this, missed, lateness);
+			}
+		}
+	}
+
+
+	long getNextDeadline() {
+		return nextDeadline;
+	}
+
+	void setNextDeadline(long nextDeadline) {
+		this.nextDeadline = nextDeadline;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getIntervalNanos() {
+		return intervalNanos;
+	}
+
+	/**
+	 * @return Number of times the task was run.
+	 */
+	public long getExecutionCount() {
+		return executionCount;
+	}
+
+	/**
+	 * @return Number of ticks skipped because the task was running late.
+	 */
+	public long getMissedTickCount() {
+		return missedTickCount;
+	}
+
+	/**
+	 * @return Number of runs that ended with an exception.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * @return Histogram of run durations in nanoseconds, including runs that
+	 * ended with an exception.
+	 */
+	public LatencyHistogram getDurations() {
+		return durations;
+	}
+
+	/**
+	 * @return Duration of the last run in nanoseconds.
+	 */
+	public long getLastDurationNanos() {
+		return lastDurationNanos;
+	}
+
+	/**
+	 * @return Heap bytes allocated by all runs, 0 if the JVM does not count
+	 * allocations, see AllocationMeter.
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return Heap bytes allocated by the last run.
+	 */
+	public long getLastAllocatedBytes() {
+		return lastAllocatedBytes;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.storage;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads a bit stream written by BitOutput from a region of a buffer.
+ */
+class BitInput {
+
+	private final ByteBuffer buffer;
+	private final int offset;
+	private long bitPosition = 0;
+
+
+	/**
+	 * @param buffer Buffer holding the stream. Read with absolute methods only.
+	 * @param offset Position of the first byte of the stream.
+	 */
+	BitInput(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+	}
+
+
+	boolean readBit() {
+		int value = buffer.get(offset + (int)(bitPosition >>> 3));
+		boolean bit = (value & (0x80 >>> (bitPosition & 7))) != 0;
+		bitPosition++;
+
+		return bit;
+	}
+
+	/**
+	 * @param count Number of bits to be read, up to 64.
+	 * @return Bits read as the lowest bits of a value.
+	 */
+	long readBits(int count) {
+		long value = 0;
+		for(int i = 0; i < count; i++) {
+			value = (value << 1) | (readBit() ? 1L : 0L);
+		}
+
+		return value;
+	}
+}
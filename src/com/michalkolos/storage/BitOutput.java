@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.storage;
+
+import java.util.Arrays;
+
+
+/**
+ * Growable bit stream used to build compressed chunks in memory. Bits are
+ * written most significant first.
+ */
+class BitOutput {
+
+	private byte[] bytes;
+	private int bitLength = 0;
+
+
+	BitOutput(int initialCapacity) {
+		this.bytes = new byte[Math.max(initialCapacity, 8)];
+	}
+
+
+	void writeBit(boolean bit) {
+		int byteIndex = bitLength >>> 3;
+		if(byteIndex == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		if(bit) {
+			bytes[byteIndex] |= (byte)(0x80 >>> (bitLength & 7));
+		}
+		bitLength++;
+	}
+
+	/**
+	 * Writes lowest bits of a value.
+	 * @param value Value to be written.
+	 * @param count Number of lowest bits to be written, up to 64.
+	 */
+	void writeBits(long value, int count) {
+		for(int i = count - 1; i >= 0; i--) {
+			writeBit(((value >>> i) & 1L) != 0);
+		}
+	}
+
+
+	/**
+	 * Clears the stream so the buffer can be reused.
+	 */
+	void reset() {
+		Arrays.fill(bytes, 0, getByteLength(), (byte)0);
+		bitLength = 0;
+	}
+
+	byte[] getBytes() {
+		return bytes;
+	}
+
+	int getByteLength() {
+		return (bitLength + 7) >>> 3;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.storage;
+
+import com.michalkolos.history.SampleConsumer;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Compresses samples of a single series into a chunk. Timestamps are stored
+ * as delta-of-delta, values as XOR with the previous value, the way it is done
+ * in Facebook's Gorilla. Regular sampling makes most timestamps take one bit,
+ * slowly changing values take a few bits.
+ * <p>
+ * Chunk layout: first timestamp (64 bits), first value (32 bits), then for
+ * every next sample an encoded timestamp delta-of-delta followed by an encoded
+ * value XOR.
+ */
+class ChunkEncoder {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final BitOutput output = new BitOutput(INITIAL_CAPACITY);
+
+	private int count = 0;
+	private long firstTimestamp;
+	private long previousTimestamp;
+	private long previousDelta;
+	private int previousValueBits;
+	private int previousLeading = -1;
+	private int previousTrailing;
+
+
+	/**
+	 * Appends a sample.
+	 * @param timestamp Time of the sample in milliseconds since epoch. Must not
+	 *                  be smaller than the previous one.
+	 * @param value Value of the sample.
+	 */
+	void append(long timestamp, float value) {
+		int valueBits = Float.floatToRawIntBits(value);
+
+		if(count == 0) {
+			output.writeBits(timestamp, 64);
+			output.writeBits(valueBits, 32);
+			firstTimestamp = timestamp;
+			previousDelta = 0;
+		} else {
+			long delta = timestamp - previousTimestamp;
+			writeDeltaOfDelta(delta - previousDelta);
+			writeValueXor(valueBits ^ previousValueBits);
+			previousDelta = delta;
+		}
+
+		previousTimestamp = timestamp;
+		previousValueBits = valueBits;
+		count++;
+	}
+
+
+	private void writeDeltaOfDelta(long deltaOfDelta) {
+		if(deltaOfDelta == 0) {
+			output.writeBit(false);
+		} else if(deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+			output.writeBits(0b10, 2);
+			output.writeBits(deltaOfDelta, 7);
+		} else if(deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+			output.writeBits(0b110, 3);
+			output.writeBits(deltaOfDelta, 9);
+		} else if(deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+			output.writeBits(0b1110, 4);
+			output.writeBits(deltaOfDelta, 12);
+		} else if(deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+			output.writeBits(0b11110, 5);
+			output.writeBits(deltaOfDelta, 32);
+		} else {
+			output.writeBits(0b11111, 5);
+			output.writeBits(deltaOfDelta, 64);
+		}
+	}
+
+
+	private void writeValueXor(int xor) {
+		if(xor == 0) {
+			output.writeBit(false);
+			return;
+		}
+		output.writeBit(true);
+
+		int leading = Integer.numberOfLeadingZeros(xor);
+		int trailing = Integer.numberOfTrailingZeros(xor);
+
+		if(previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+			//  Meaningful bits fit in the previous window.
+			output.writeBit(false);
+			output.writeBits(xor >>> previousTrailing, 32 - previousLeading - previousTrailing);
+		} else {
+			int meaningful = 32 - leading - trailing;
+			output.writeBit(true);
+			output.writeBits(leading, 5);
+			output.writeBits(meaningful - 1, 5);
+			output.writeBits(xor >>> trailing, meaningful);
+			previousLeading = leading;
+			previousTrailing = trailing;
+		}
+	}
+
+
+	/**
+	 * Clears the encoder so it can start a new chunk.
+	 */
+	void reset() {
+		output.reset();
+		count = 0;
+		previousLeading = -1;
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	long getLastTimestamp() {
+		return previousTimestamp;
+	}
+
+	byte[] getBytes() {
+		return output.getBytes();
+	}
+
+	int getByteLength() {
+		return output.getByteLength();
+	}
+
+
+	/**
+	 * Decodes a chunk and passes samples within a time range to a consumer.
+	 * @param buffer Buffer holding the chunk.
+	 * @param offset Position of the chunk's first byte.
+	 * @param count Number of samples in the chunk.
+	 * @param from Start of the range in milliseconds since epoch, inclusive.
+	 * @param to End of the range in milliseconds since epoch, inclusive.
+	 * @param consumer Receiver of the samples.
+	 * @return Number of samples passed.
+	 */
+	static int decode(ByteBuffer buffer, int offset, int count, long from, long to,
+	                  SampleConsumer consumer) {
+		if(count == 0) {
+			return 0;
+		}
+
+		BitInput input = new BitInput(buffer, offset);
+		int passed = 0;
+
+		long timestamp = input.readBits(64);
+		int valueBits = (int)input.readBits(32);
+		long delta = 0;
+		int leading = 0;
+		int trailing = 0;
+
+		for(int i = 0; ; i++) {
+			if(timestamp > to) {
+				break;
+			}
+			if(timestamp >= from) {
+				consumer.accept(timestamp, Float.intBitsToFloat(valueBits));
+				passed++;
+			}
+			if(i == count - 1) {
+				break;
+			}
+
+			delta += readDeltaOfDelta(input);
+			timestamp += delta;
+
+			if(input.readBit()) {
+				if(input.readBit()) {
+					leading = (int)input.readBits(5);
+					int meaningful = (int)input.readBits(5) + 1;
+					trailing = 32 - leading - meaningful;
+				}
+				int meaningful = 32 - leading - trailing;
+				valueBits ^= (int)input.readBits(meaningful) << trailing;
+			}
+		}
+
+		return passed;
+	}
+
+
+	private static long readDeltaOfDelta(BitInput input) {
+		if(!input.readBit()) {
+			return 0;
+		}
+		if(!input.readBit()) {
+			return signExtend(input.readBits(7), 7);
+		}
+		if(!input.readBit()) {
+			return signExtend(input.readBits(9), 9);
+		}
+		if(!input.readBit()) {
+			return signExtend(input.readBits(12), 12);
+		}
+		if(!input.readBit()) {
+			return (int)input.readBits(32);
+		}
+
+		return input.readBits(64);
+	}
+
+
+	/**
+	 * Restores a value written into a given number of bits. Values up to
+	 * 2^(bits - 1) inclusive are positive, the same asymmetric ranges are used
+	 * by the encoder.
+	 */
+	private static long signExtend(long value, int bits) {
+		return value > (1L << (bits - 1)) ? value - (1L << bits) : value;
+	}
+}
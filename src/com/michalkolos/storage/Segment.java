@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.storage;
+
+import com.michalkolos.history.SampleConsumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * Append-only segment file of a TimeSeriesStore, accessed through a memory
+ * mapping. The file is created at its full size, its unused tail is all zeros.
+ * <p>
+ * Layout: header (magic, version, start time) followed by records, each
+ * starting with a type byte:
+ * <ul>
+ *     <li>SERIES: int series id, short name length, name in UTF-8. Written
+ *     before the first chunk of a series in the segment, so every segment
+ *     can be read on its own.</li>
+ *     <li>CHUNK: int series id, long first timestamp, long last timestamp,
+ *     int sample count, int byte length, chunk produced by ChunkEncoder.</li>
+ * </ul>
+ * Type byte of a record is written after its body, so a record that was
+ * interrupted by a crash reads as the end of the segment. A record whose
+ * length points outside of the file is treated the same way.
+ */
+class Segment {
+
+	static final String FILE_PREFIX = "segment-";
+	static final String FILE_SUFFIX = ".tsd";
+
+	private static final int MAGIC = 0x54534442;        //  "TSDB"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+	private static final byte END = 0;
+	private static final byte SERIES = 1;
+	private static final byte CHUNK = 2;
+
+	private static final int SERIES_HEADER_SIZE = 1 + Integer.BYTES + Short.BYTES;
+	private static final int CHUNK_HEADER_SIZE = 1 + 3 * Integer.BYTES + 2 * Long.BYTES;
+
+
+	/**
+	 * Location of a chunk within the segment.
+	 */
+	private static class ChunkRef {
+		final long firstTimestamp;
+		final long lastTimestamp;
+		final int count;
+		final int offset;
+
+		ChunkRef(long firstTimestamp, long lastTimestamp, int count, int offset) {
+			this.firstTimestamp = firstTimestamp;
+			this.lastTimestamp = lastTimestamp;
+			this.count = count;
+			this.offset = offset;
+		}
+	}
+
+
+	private final File file;
+	private final long startMillis;
+	private final MappedByteBuffer buffer;
+	private boolean writable;
+	private int position;
+
+	private long minTimestamp = Long.MAX_VALUE;
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	//  Chunks by series id of the store, in order of appending.
+	private final Map<Integer, List<ChunkRef>> chunks = new HashMap<>();
+	private final Set<Integer> definedSeries = new HashSet<>();
+
+
+	private Segment(File file, long startMillis, MappedByteBuffer buffer, boolean writable) {
+		this.file = file;
+		this.startMillis = startMillis;
+		this.buffer = buffer;
+		this.writable = writable;
+		this.position = HEADER_SIZE;
+	}
+
+
+	/**
+	 * Creates a new, writable segment.
+	 * @param directory Directory of the store.
+	 * @param startMillis Creation time, used in the file's name.
+	 * @param capacity Size of the file in bytes.
+	 * @return Created segment.
+	 * @throws IOException When the file cannot be created or mapped.
+	 */
+	static Segment create(File directory, long startMillis, int capacity) throws IOException {
+		File file = new File(directory, FILE_PREFIX + startMillis + FILE_SUFFIX);
+
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		}
+
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(Integer.BYTES, VERSION);
+		buffer.putLong(2 * Integer.BYTES, startMillis);
+
+		return new Segment(file, startMillis, buffer, true);
+	}
+
+
+	/**
+	 * Opens an existing segment for reading and indexes its chunks.
+	 * @param file Segment file.
+	 * @param seriesIds Translates series names into series ids of the store.
+	 * @return Opened segment.
+	 * @throws IOException When the file cannot be mapped or is not a segment.
+	 */
+	static Segment open(File file, ToIntFunction<String> seriesIds) throws IOException {
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		if(buffer.capacity() < HEADER_SIZE
+				|| buffer.getInt(0) != MAGIC
+				|| buffer.getInt(Integer.BYTES) != VERSION) {
+			throw new IOException("Not a segment file: " + file.getAbsolutePath());
+		}
+
+		Segment segment = new Segment(file, buffer.getLong(2 * Integer.BYTES), buffer, false);
+		segment.index(seriesIds);
+
+		return segment;
+	}
+
+
+	private void index(ToIntFunction<String> seriesIds) {
+		Map<Integer, Integer> localIds = new HashMap<>();
+
+		while(position < buffer.capacity()) {
+			byte type = buffer.get(position);
+
+			if(type == SERIES && position + SERIES_HEADER_SIZE <= buffer.capacity()) {
+				int localId = buffer.getInt(position + 1);
+				int nameLength = buffer.getShort(position + 1 + Integer.BYTES);
+				if(!fitsInFile(SERIES_HEADER_SIZE, nameLength)) {
+					break;
+				}
+
+				byte[] name = new byte[nameLength];
+				buffer.get(position + SERIES_HEADER_SIZE, name);
+
+				int id = seriesIds.applyAsInt(new String(name, StandardCharsets.UTF_8));
+				localIds.put(localId, id);
+				definedSeries.add(id);
+				position += SERIES_HEADER_SIZE + nameLength;
+
+			} else if(type == CHUNK && position + CHUNK_HEADER_SIZE <= buffer.capacity()) {
+				Integer id = localIds.get(buffer.getInt(position + 1));
+				int length = buffer.getInt(position + 1 + 2 * Integer.BYTES + 2 * Long.BYTES);
+				if(!fitsInFile(CHUNK_HEADER_SIZE, length)) {
+					break;
+				}
+
+				if(id != null) {
+					addChunkRef(id, new ChunkRef(
+							buffer.getLong(position + 1 + Integer.BYTES),
+							buffer.getLong(position + 1 + Integer.BYTES + Long.BYTES),
+							buffer.getInt(position + 1 + Integer.BYTES + 2 * Long.BYTES),
+							position + CHUNK_HEADER_SIZE));
+				}
+				position += CHUNK_HEADER_SIZE + length;
+
+			} else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Checks a record read from the file, whose body length might be corrupted.
+	 * @param headerSize Size of the record's header.
+	 * @param bodyLength Length of the record's body.
+	 * @return True if the body length is not negative and the whole record
+	 * lies within the file.
+	 */
+	private boolean fitsInFile(int headerSize, int bodyLength) {
+		return bodyLength >= 0 && bodyLength <= buffer.capacity() - position - headerSize;
+	}
+
+
+	/**
+	 * Checks whether a chunk of a series fits in the remaining space.
+	 * @param id Series id.
+	 * @param name Series name, needed if the series is not defined yet.
+	 * @param chunkLength Length of the chunk in bytes.
+	 * @return True if the chunk can be appended.
+	 */
+	boolean fits(int id, String name, int chunkLength) {
+		int required = CHUNK_HEADER_SIZE + chunkLength;
+		if(!definedSeries.contains(id)) {
+			required += SERIES_HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length;
+		}
+
+		return writable && position + required < buffer.capacity();
+	}
+
+
+	/**
+	 * Appends a chunk. Caller checks that it fits.
+	 * @param id Series id.
+	 * @param name Series name.
+	 * @param encoder Encoder holding the chunk.
+	 */
+	void append(int id, String name, ChunkEncoder encoder) {
+		if(!definedSeries.contains(id)) {
+			byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+			buffer.putInt(position + 1, id);
+			buffer.putShort(position + 1 + Integer.BYTES, (short)nameBytes.length);
+			buffer.put(position + SERIES_HEADER_SIZE, nameBytes);
+			buffer.put(position, SERIES);
+			position += SERIES_HEADER_SIZE + nameBytes.length;
+			definedSeries.add(id);
+		}
+
+		int length = encoder.getByteLength();
+		buffer.putInt(position + 1, id);
+		buffer.putLong(position + 1 + Integer.BYTES, encoder.getFirstTimestamp());
+		buffer.putLong(position + 1 + Integer.BYTES + Long.BYTES, encoder.getLastTimestamp());
+		buffer.putInt(position + 1 + Integer.BYTES + 2 * Long.BYTES, encoder.getCount());
+		buffer.putInt(position + 1 + 2 * Integer.BYTES + 2 * Long.BYTES, length);
+		buffer.put(position + CHUNK_HEADER_SIZE, encoder.getBytes(), 0, length);
+		buffer.put(position, CHUNK);
+
+		addChunkRef(id, new ChunkRef(encoder.getFirstTimestamp(), encoder.getLastTimestamp(),
+				encoder.getCount(), position + CHUNK_HEADER_SIZE));
+		position += CHUNK_HEADER_SIZE + length;
+	}
+
+
+	private void addChunkRef(int id, ChunkRef ref) {
+		chunks.computeIfAbsent(id, key -> new ArrayList<>()).add(ref);
+		minTimestamp = Math.min(minTimestamp, ref.firstTimestamp);
+		maxTimestamp = Math.max(maxTimestamp, ref.lastTimestamp);
+	}
+
+
+	/**
+	 * Passes samples of a series within a time range to a consumer.
+	 * @param id Series id.
+	 * @param from Start of the range in milliseconds since epoch, inclusive.
+	 * @param to End of the range in milliseconds since epoch, inclusive.
+	 * @param consumer Receiver of the samples.
+	 * @return Number of samples passed.
+	 */
+	int query(int id, long from, long to, SampleConsumer consumer) {
+		List<ChunkRef> refs = chunks.get(id);
+		if(refs == null) {
+			return 0;
+		}
+
+		int passed = 0;
+		for(ChunkRef ref : refs) {
+			if(ref.lastTimestamp >= from && ref.firstTimestamp <= to) {
+				passed += ChunkEncoder.decode(buffer, ref.offset, ref.count, from, to, consumer);
+			}
+		}
+
+		return passed;
+	}
+
+
+	/**
+	 * Writes outstanding changes to the disk and makes the segment read-only.
+	 */
+	void seal() {
+		if(writable) {
+			buffer.force();
+			writable = false;
+		}
+	}
+
+	/**
+	 * Writes outstanding changes to the disk.
+	 */
+	void force() {
+		if(writable) {
+			buffer.force();
+		}
+	}
+
+
+	File getFile() {
+		return file;
+	}
+
+	long getStartMillis() {
+		return startMillis;
+	}
+
+	boolean isWritable() {
+		return writable;
+	}
+
+	boolean isEmpty() {
+		return chunks.isEmpty();
+	}
+
+	long getMinTimestamp() {
+		return minTimestamp;
+	}
+
+	long getMaxTimestamp() {
+		return maxTimestamp;
+	}
+
+	/**
+	 * @return Number of bytes used by the header and records.
+	 */
+	int getUsedBytes() {
+		return position;
+	}
+}
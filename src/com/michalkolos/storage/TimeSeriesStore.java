@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.storage;
+
+import com.michalkolos.history.HistorySummary;
+import com.michalkolos.history.MetricSink;
+import com.michalkolos.history.SampleConsumer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Embedded on-disk store of metric samples. Samples of every series are
+ * compressed in memory by a ChunkEncoder and the chunk is appended to the
+ * current segment file when it is full or when flush() is called.
+ * <p>
+ * Segments are rotated when they run out of space or get older than the
+ * rotation period. Whole segments are deleted once all their samples are
+ * older than the retention period. Segments found in the directory on startup
+ * are opened read-only, new samples always go to a new segment.
+ * <p>
+ * Samples that are not flushed yet are lost if the process dies, so flush()
+ * should be called periodically. All methods are thread safe.
+ */
+public class TimeSeriesStore implements MetricSink, Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	public static final long DEFAULT_ROTATION_MILLIS = TimeUnit.HOURS.toMillis(1);
+	public static final long DEFAULT_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+	/**
+	 * One minute of samples taken every 100 ms.
+	 */
+	public static final int DEFAULT_CHUNK_SAMPLES = 600;
+
+	private final File directory;
+	private final int segmentSize;
+	private final long rotationMillis;
+	private final long retentionMillis;
+	private final int chunkSamples;
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+	private ChunkEncoder[] encoders = new ChunkEncoder[0];
+
+	//  Oldest first, the last one is writable once anything was appended.
+	private final List<Segment> segments = new ArrayList<>();
+	private boolean closed = false;
+
+	//  Samples dropped by record() and whether the last one was dropped.
+	private volatile long errorCount = 0L;
+	private boolean failing = false;
+
+
+	/**
+	 * Opens a store with default segment size, rotation and retention.
+	 * @param directory Directory holding segment files, created if missing.
+	 * @throws IOException When the directory cannot be created or existing
+	 * segments cannot be read.
+	 */
+	public TimeSeriesStore(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_ROTATION_MILLIS,
+				DEFAULT_RETENTION_MILLIS, DEFAULT_CHUNK_SAMPLES);
+	}
+
+	/**
+	 * @param directory Directory holding segment files, created if missing.
+	 * @param segmentSize Size of a segment file in bytes.
+	 * @param rotationMillis Age after which a new segment is started.
+	 * @param retentionMillis Age after which samples are deleted.
+	 * @param chunkSamples Number of samples of a series compressed together.
+	 * @throws IOException When the directory cannot be created or existing
+	 * segments cannot be read.
+	 */
+	public TimeSeriesStore(File directory, int segmentSize, long rotationMillis,
+	                       long retentionMillis, int chunkSamples) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.rotationMillis = rotationMillis;
+		this.retentionMillis = retentionMillis;
+		this.chunkSamples = Math.max(chunkSamples, 1);
+
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create directory: " + directory.getAbsolutePath());
+		}
+
+		File[] files = directory.listFiles((dir, name) ->
+				name.startsWith(Segment.FILE_PREFIX) && name.endsWith(Segment.FILE_SUFFIX));
+		if(files != null) {
+			for(File file : files) {
+				segments.add(Segment.open(file, this::register));
+			}
+		}
+		segments.sort(Comparator.comparingLong(Segment::getStartMillis));
+	}
+
+
+	@Override
+	public synchronized int register(String name) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+
+		int newId = names.size();
+		ids.put(name, newId);
+		names.add(name);
+		encoders = Arrays.copyOf(encoders, newId + 1);
+		encoders[newId] = new ChunkEncoder();
+
+		return newId;
+	}
+
+
+	/**
+	 * Appends a sample. A sample that cannot be written is dropped and
+	 * counted in getErrorCount(), use append() to handle errors. Only the
+	 * first failure and the following recovery are reported, not every
+	 * dropped sample.
+	 */
+	@Override
+	public synchronized void record(int metricId, long timestamp, float value) {
+		try {
+			append(metricId, timestamp, value);
+			if(failing) {
+				failing = false;
+				System.err.println("Time series store recovered after " + errorCount
+						+ " dropped samples in total.");
+				//	TODO: Logging
+			}
+		} catch (IOException e) {
+			errorCount++;
+			if(!failing) {
+				failing = true;
+				System.err.println("Time series store is dropping samples: " + e.getMessage());
+				//	TODO: Logging
+			}
+		}
+	}
+
+
+	/**
+	 * Appends a sample. Samples older than the last one of the series are
+	 * ignored.
+	 * @param metricId Id returned by register().
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric.
+	 * @throws IOException When a full chunk cannot be written to a segment.
+	 */
+	public synchronized void append(int metricId, long timestamp, float value) throws IOException {
+		ensureOpen();
+		ChunkEncoder encoder = encoders[metricId];
+		if(encoder.getCount() > 0 && timestamp < encoder.getLastTimestamp()) {
+			return;
+		}
+
+		encoder.append(timestamp, value);
+		if(encoder.getCount() >= chunkSamples) {
+			writeChunk(metricId);
+		}
+	}
+
+	/**
+	 * Appends a sample, registering the series on first use.
+	 * @param name Name of the series.
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric.
+	 * @throws IOException When a full chunk cannot be written to a segment.
+	 */
+	public synchronized void append(String name, long timestamp, float value) throws IOException {
+		append(register(name), timestamp, value);
+	}
+
+
+	private void writeChunk(int id) throws IOException {
+		ChunkEncoder encoder = encoders[id];
+		String name = names.get(id);
+		long now = System.currentTimeMillis();
+
+		Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if(segment == null
+				|| !segment.fits(id, name, encoder.getByteLength())
+				|| now - segment.getStartMillis() >= rotationMillis) {
+			segment = rotate(now);
+			if(!segment.fits(id, name, encoder.getByteLength())) {
+				throw new IOException("Chunk of " + encoder.getByteLength()
+						+ " bytes does not fit in an empty segment.");
+			}
+		}
+
+		segment.append(id, name, encoder);
+		encoder.reset();
+	}
+
+
+	private Segment rotate(long now) throws IOException {
+		if(!segments.isEmpty()) {
+			segments.get(segments.size() - 1).seal();
+		}
+
+		//  Start times are used in file names, so they have to be unique.
+		long start = segments.isEmpty()
+				? now
+				: Math.max(now, segments.get(segments.size() - 1).getStartMillis() + 1);
+		Segment segment = Segment.create(directory, start, segmentSize);
+		segments.add(segment);
+		enforceRetention(now);
+
+		return segment;
+	}
+
+
+	/**
+	 * Writes chunks of all series, including incomplete ones, and forces
+	 * the current segment to the disk.
+	 * @throws IOException When a chunk cannot be written.
+	 */
+	public synchronized void flush() throws IOException {
+		ensureOpen();
+		for(int id = 0; id < encoders.length; id++) {
+			if(encoders[id].getCount() > 0) {
+				writeChunk(id);
+			}
+		}
+
+		if(!segments.isEmpty()) {
+			segments.get(segments.size() - 1).force();
+		}
+	}
+
+
+	/**
+	 * Deletes sealed segments with no samples newer than the retention period.
+	 * @param now Current time in milliseconds since epoch.
+	 * @return Number of deleted segments.
+	 */
+	public synchronized int enforceRetention(long now) {
+		int deleted = 0;
+		Iterator<Segment> iterator = segments.iterator();
+
+		while(iterator.hasNext()) {
+			Segment segment = iterator.next();
+			boolean expired = segment.isEmpty()
+					? now - segment.getStartMillis() >= retentionMillis
+					: now - segment.getMaxTimestamp() >= retentionMillis;
+
+			if(!segment.isWritable() && expired) {
+				iterator.remove();
+				if(!segment.getFile().delete()) {
+					System.err.println("Unable to delete " + segment.getFile().getAbsolutePath());
+					//	TODO: Logging
+				}
+				deleted++;
+			}
+		}
+
+		return deleted;
+	}
+
+
+	/**
+	 * Passes samples of a series within a time range to a consumer, oldest
+	 * first. Samples that are not flushed yet are included.
+	 * @param name Name of the series.
+	 * @param from Start of the range in milliseconds since epoch, inclusive.
+	 * @param to End of the range in milliseconds since epoch, inclusive.
+	 * @param consumer Receiver of the samples.
+	 * @return Number of samples passed.
+	 */
+	public synchronized int query(String name, long from, long to, SampleConsumer consumer) {
+		Integer id = ids.get(name);
+		if(id == null) {
+			return 0;
+		}
+
+		int passed = 0;
+		for(Segment segment : segments) {
+			if(!segment.isEmpty()
+					&& segment.getMaxTimestamp() >= from
+					&& segment.getMinTimestamp() <= to) {
+				passed += segment.query(id, from, to, consumer);
+			}
+		}
+
+		ChunkEncoder encoder = encoders[id];
+		if(encoder.getCount() > 0 && encoder.getLastTimestamp() >= from) {
+			passed += ChunkEncoder.decode(ByteBuffer.wrap(encoder.getBytes()), 0,
+					encoder.getCount(), from, to, consumer);
+		}
+
+		return passed;
+	}
+
+
+	/**
+	 * Aggregates samples of a series within a time range.
+	 * @param name Name of the series.
+	 * @param from Start of the range in milliseconds since epoch, inclusive.
+	 * @param to End of the range in milliseconds since epoch, inclusive.
+	 * @return Summary of the range. Its count is 0 if there are no samples.
+	 */
+	public synchronized HistorySummary summarize(String name, long from, long to) {
+		float[] minMax = {Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+		double[] sum = {0};
+
+		int count = query(name, from, to, (timestamp, value) -> {
+			minMax[0] = Math.min(minMax[0], value);
+			minMax[1] = Math.max(minMax[1], value);
+			sum[0] += value;
+		});
+
+		return count == 0
+				? new HistorySummary(0, 0, 0, 0)
+				: new HistorySummary(minMax[0], minMax[1], (float)(sum[0] / count), count);
+	}
+
+
+	/**
+	 * @return Names of all series known to the store, recorded in this run or
+	 * found in existing segments.
+	 */
+	public synchronized Set<String> getSeriesNames() {
+		return Collections.unmodifiableSet(new TreeSet<>(ids.keySet()));
+	}
+
+	/**
+	 * @param name Name of the series.
+	 * @return Optional containing id of the series or empty if it is unknown.
+	 */
+	public synchronized Optional<Integer> getSeriesId(String name) {
+		return Optional.ofNullable(ids.get(name));
+	}
+
+	public synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	/**
+	 * @return Number of bytes used by records in all segments.
+	 */
+	public synchronized long getUsedBytes() {
+		return segments.stream()
+				.mapToLong(Segment::getUsedBytes)
+				.sum();
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return Number of samples dropped by record() because they could not be
+	 * written.
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+
+	private void ensureOpen() throws IOException {
+		if(closed) {
+			throw new IOException("Store is closed.");
+		}
+	}
+
+
+	/**
+	 * Flushes all samples and seals the current segment.
+	 * @throws IOException When the samples cannot be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(closed) {
+			return;
+		}
+
+		flush();
+		if(!segments.isEmpty()) {
+			segments.get(segments.size() - 1).seal();
+		}
+		closed = true;
+	}
+}
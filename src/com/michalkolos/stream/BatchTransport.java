@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Carries encoded batches of the metric stream to a StreamReceiver.
+ */
+interface BatchTransport extends Closeable {
+
+	/**
+	 * Makes sure the transport is ready to send.
+	 * @return True if a new connection was established, so the receiver
+	 * starts with no state and the next batch has to be a keyframe.
+	 * @throws IOException When the receiver cannot be reached.
+	 */
+	boolean connect() throws IOException;
+
+	/**
+	 * Sends a single batch.
+	 * @param batch Buffer holding the batch.
+	 * @param length Length of the batch in bytes.
+	 * @throws IOException When the batch cannot be sent. The connection, if
+	 * any, is dropped and established again by the next connect().
+	 */
+	void send(byte[] batch, int length) throws IOException;
+}
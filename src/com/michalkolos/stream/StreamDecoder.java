@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import com.michalkolos.history.MetricSink;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Decodes batches of the binary metric stream, see StreamProtocol, and
+ * replays their samples into a MetricSink, e.g. a HistoryStore. Metrics are
+ * registered in the sink under the names sent by the encoder.
+ * <p>
+ * A batch whose sequence number does not follow the previous one means
+ * batches were lost, so deltas cannot be applied anymore. Ticks are then
+ * skipped until the next keyframe. One decoder handles one stream, e.g. one
+ * TCP connection.
+ */
+public class StreamDecoder {
+
+	private final MetricSink sink;
+
+	/**
+	 * Sink ids and float bits of the last values indexed by stream ids.
+	 */
+	private int[] sinkIds = new int[16];
+	private int[] previousBits = new int[16];
+	private int definedCount = 0;
+	private long previousTimestamp = 0L;
+
+	private long expectedSequence = -1L;
+
+	/**
+	 * True if a keyframe was decoded since the last gap in the stream.
+	 */
+	private boolean synced = false;
+
+	private long batchCount = 0L;
+	private long lostBatchCount = 0L;
+	private long sampleCount = 0L;
+	private long skippedSampleCount = 0L;
+	private long byteCount = 0L;
+
+
+	/**
+	 * @param sink Destination of the decoded samples.
+	 */
+	public StreamDecoder(MetricSink sink) {
+		this.sink = sink;
+	}
+
+
+	/**
+	 * Decodes a single batch.
+	 * @param batch Buffer holding exactly one batch, from its position to its
+	 *              limit.
+	 * @throws IOException When the batch is malformed. The stream is treated
+	 * as having a gap, so it recovers at the next keyframe.
+	 */
+	public void decode(ByteBuffer batch) throws IOException {
+		byteCount += batch.remaining();
+		try {
+			decodeFrames(batch);
+			batchCount++;
+		} catch (IOException | RuntimeException e) {
+			synced = false;
+			throw e instanceof IOException
+					? (IOException)e
+					: new IOException("Malformed stream batch.", e);
+		}
+	}
+
+	private void decodeFrames(ByteBuffer batch) throws IOException {
+		if(batch.remaining() < 2 || batch.get() != StreamProtocol.MAGIC) {
+			throw new IOException("Not a stream batch.");
+		}
+		byte version = batch.get();
+		if(version != StreamProtocol.VERSION) {
+			throw new IOException("Unsupported stream version " + version + ".");
+		}
+
+		long sequence = StreamProtocol.readVarint(batch);
+		if(expectedSequence >= 0 && sequence != expectedSequence) {
+			lostBatchCount += Math.max(1L, sequence - expectedSequence);
+			synced = false;
+		}
+		expectedSequence = sequence + 1;
+
+		while(batch.hasRemaining()) {
+			byte type = batch.get();
+			if(type == StreamProtocol.RESET) {
+				Arrays.fill(previousBits, 0);
+				previousTimestamp = 0L;
+				definedCount = 0;
+				synced = true;
+			} else if(type == StreamProtocol.DEFINE) {
+				decodeDefine(batch);
+			} else if(type == StreamProtocol.TICK) {
+				decodeTick(batch);
+			} else {
+				throw new IOException("Unknown frame type " + type + ".");
+			}
+		}
+	}
+
+	private void decodeDefine(ByteBuffer batch) throws IOException {
+		long id = StreamProtocol.readVarint(batch);
+		long length = StreamProtocol.readVarint(batch);
+		if(length > StreamProtocol.MAX_NAME_LENGTH || length > batch.remaining()) {
+			throw new IOException("Malformed metric definition.");
+		}
+
+		//  Definitions sent after a gap are repeated by the next keyframe.
+		if(!synced) {
+			batch.position(batch.position() + (int)length);
+			return;
+		}
+		if(id != definedCount) {
+			throw new IOException("Metric " + id + " defined out of order.");
+		}
+
+		byte[] name = new byte[(int)length];
+		batch.get(name);
+
+		if(definedCount == sinkIds.length) {
+			sinkIds = Arrays.copyOf(sinkIds, definedCount * 2);
+			previousBits = Arrays.copyOf(previousBits, definedCount * 2);
+		}
+		sinkIds[definedCount] = sink.register(new String(name, StandardCharsets.UTF_8));
+		previousBits[definedCount] = 0;
+		definedCount++;
+	}
+
+	private void decodeTick(ByteBuffer batch) throws IOException {
+		long timestamp = previousTimestamp + StreamProtocol.readSignedVarint(batch);
+		long count = StreamProtocol.readVarint(batch);
+		if(count > batch.remaining()) {
+			throw new IOException("Malformed tick.");
+		}
+
+		long id = -1L;
+		for(long i = 0; i < count; i++) {
+			id += StreamProtocol.readSignedVarint(batch);
+			long delta = StreamProtocol.readSignedVarint(batch);
+			if(!synced) {
+				continue;
+			}
+			if(id < 0 || id >= definedCount) {
+				throw new IOException("Sample of undefined metric " + id + ".");
+			}
+
+			int index = (int)id;
+			int bits = (int)(previousBits[index] + delta);
+			previousBits[index] = bits;
+			sink.record(sinkIds[index], timestamp, Float.intBitsToFloat(bits));
+		}
+
+		if(synced) {
+			sampleCount += count;
+		} else {
+			skippedSampleCount += count;
+		}
+		previousTimestamp = timestamp;
+	}
+
+
+	/**
+	 * @return Number of batches decoded successfully.
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * @return Number of batches missing from the sequence.
+	 */
+	public long getLostBatchCount() {
+		return lostBatchCount;
+	}
+
+	/**
+	 * @return Number of samples replayed into the sink.
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return Number of samples skipped while waiting for a keyframe.
+	 */
+	public long getSkippedSampleCount() {
+		return skippedSampleCount;
+	}
+
+	/**
+	 * @return Number of batch bytes passed to decode().
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @return Average number of batch bytes per replayed sample, 0 before
+	 * the first sample.
+	 */
+	public double getBytesPerSample() {
+		return sampleCount > 0 ? (double)byteCount / sampleCount : 0.0;
+	}
+}
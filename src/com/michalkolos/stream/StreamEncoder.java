@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Encodes samples into batches of the binary metric stream, see
+ * StreamProtocol. Samples sharing a timestamp form a tick, a tick ends when a
+ * sample with another timestamp is added or the batch is finished.
+ * <p>
+ * The dictionary of metric names is sent in the first batch, names
+ * registered later are defined right before the tick that uses them. A
+ * keyframe, which repeats the dictionary and encodes values from zero,
+ * starts the first batch, every keyframeInterval-th batch and the batch
+ * following requestKeyframe(), e.g. after the connection was lost.
+ * <p>
+ * Not thread safe, StreamExporter serializes the calls.
+ */
+public class StreamEncoder {
+
+	private final int keyframeInterval;
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<byte[]> names = new ArrayList<>();
+
+	/**
+	 * Number of names the receiver knows since the last keyframe.
+	 */
+	private int definedCount = 0;
+
+	/**
+	 * Float bits of the last encoded value of every metric.
+	 */
+	private int[] previousBits = new int[16];
+	private long previousTimestamp = 0L;
+
+	//  Samples of the tick being collected.
+	private int[] tickIds = new int[64];
+	private int[] tickBits = new int[64];
+	private int tickSize = 0;
+	private long tickTimestamp = 0L;
+
+	private byte[] bytes = new byte[1024];
+	private int length = 0;
+
+	private long sequence = 0L;
+	private boolean keyframeRequested = true;
+	private boolean keyframe = false;
+	private int samplesInBatch = 0;
+
+
+	/**
+	 * @param keyframeInterval Number of batches between keyframes, 0 to send
+	 *                         keyframes only when requested. Streams over a
+	 *                         lossy transport need a positive interval to
+	 *                         recover from lost batches.
+	 */
+	public StreamEncoder(int keyframeInterval) {
+		this.keyframeInterval = keyframeInterval;
+	}
+
+
+	/**
+	 * Registers a metric. Registering the same name again returns the same id.
+	 * @param name Name of the metric.
+	 * @return Id of the metric used by add().
+	 */
+	public int register(String name) {
+		Integer id = ids.get(name);
+		if(id != null) {
+			return id;
+		}
+
+		int newId = names.size();
+		ids.put(name, newId);
+		names.add(name.getBytes(StandardCharsets.UTF_8));
+		if(newId == previousBits.length) {
+			previousBits = Arrays.copyOf(previousBits, newId * 2);
+		}
+
+		return newId;
+	}
+
+	/**
+	 * Adds a sample to the current tick, or ends the tick and starts a new
+	 * one if the timestamp differs.
+	 * @param metricId Id returned by register().
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric.
+	 * @return True if a tick was ended and encoded into the batch.
+	 */
+	public boolean add(int metricId, long timestamp, float value) {
+		boolean ended = false;
+		if(tickSize > 0 && timestamp != tickTimestamp) {
+			endTick();
+			ended = true;
+		}
+
+		if(tickSize == tickIds.length) {
+			tickIds = Arrays.copyOf(tickIds, tickSize * 2);
+			tickBits = Arrays.copyOf(tickBits, tickSize * 2);
+		}
+		tickIds[tickSize] = metricId;
+		tickBits[tickSize] = Float.floatToRawIntBits(value);
+		tickSize++;
+		tickTimestamp = timestamp;
+
+		return ended;
+	}
+
+	/**
+	 * Encodes the collected samples as a TICK frame of the current batch.
+	 */
+	public void endTick() {
+		if(tickSize == 0) {
+			return;
+		}
+
+		if(length == 0) {
+			startBatch();
+		}
+
+		//  Names registered since the last tick.
+		while(definedCount < names.size()) {
+			writeDefine(definedCount++);
+		}
+
+		writeByte(StreamProtocol.TICK);
+		writeSignedVarint(tickTimestamp - previousTimestamp);
+		writeVarint(tickSize);
+		int previousId = -1;
+		for(int i = 0; i < tickSize; i++) {
+			int id = tickIds[i];
+			writeSignedVarint(id - previousId);
+			writeSignedVarint((long)tickBits[i] - previousBits[id]);
+			previousBits[id] = tickBits[i];
+			previousId = id;
+		}
+
+		previousTimestamp = tickTimestamp;
+		samplesInBatch += tickSize;
+		tickSize = 0;
+	}
+
+	private void startBatch() {
+		writeByte(StreamProtocol.MAGIC);
+		writeByte(StreamProtocol.VERSION);
+		writeVarint(sequence);
+
+		keyframe = keyframeRequested || (keyframeInterval > 0 && sequence % keyframeInterval == 0);
+		if(keyframe) {
+			writeByte(StreamProtocol.RESET);
+			Arrays.fill(previousBits, 0);
+			previousTimestamp = 0L;
+			definedCount = 0;
+			keyframeRequested = false;
+		}
+	}
+
+	private void writeDefine(int id) {
+		byte[] name = names.get(id);
+		writeByte(StreamProtocol.DEFINE);
+		writeVarint(id);
+		writeVarint(name.length);
+		ensureCapacity(name.length);
+		System.arraycopy(name, 0, bytes, length, name.length);
+		length += name.length;
+	}
+
+
+	/**
+	 * Ends the current tick, so the batch holds everything added so far.
+	 * @return Length of the batch in bytes, 0 if there is nothing to send.
+	 */
+	public int finishBatch() {
+		endTick();
+		return length;
+	}
+
+	/**
+	 * Clears the finished batch after it was sent or dropped, the next batch
+	 * gets the following sequence number.
+	 */
+	public void clearBatch() {
+		if(length > 0) {
+			length = 0;
+			samplesInBatch = 0;
+			sequence++;
+		}
+	}
+
+	/**
+	 * Makes the next batch a keyframe, e.g. when the receiver might have
+	 * missed the current one.
+	 */
+	public void requestKeyframe() {
+		keyframeRequested = true;
+	}
+
+
+	/**
+	 * @return Buffer holding the batch, valid up to getBatchLength().
+	 */
+	public byte[] getBatch() {
+		return bytes;
+	}
+
+	/**
+	 * @return Length of the encoded part of the batch, without the tick
+	 * being collected.
+	 */
+	public int getBatchLength() {
+		return length;
+	}
+
+	/**
+	 * @return True if the batch starts with a keyframe, so it can be decoded
+	 * by a receiver that has no state.
+	 */
+	public boolean isKeyframe() {
+		return length > 0 && keyframe;
+	}
+
+	/**
+	 * @return Number of samples encoded in the batch.
+	 */
+	public int getSamplesInBatch() {
+		return samplesInBatch;
+	}
+
+
+	private void writeByte(byte b) {
+		ensureCapacity(1);
+		bytes[length++] = b;
+	}
+
+	private void writeVarint(long value) {
+		ensureCapacity(10);
+		while((value & ~0x7FL) != 0) {
+			bytes[length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[length++] = (byte)value;
+	}
+
+	private void writeSignedVarint(long value) {
+		writeVarint(StreamProtocol.zigzag(value));
+	}
+
+	private void ensureCapacity(int count) {
+		if(length + count > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+		}
+	}
+}
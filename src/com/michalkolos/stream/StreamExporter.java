@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import com.michalkolos.history.MetricSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * MetricSink that ships samples off the machine as a compact binary stream,
+ * see StreamProtocol. Fed by a HistoryRecorder like the local stores, so
+ * every collector the recorder handles is exported.
+ * <p>
+ * Samples are encoded as they are recorded and batched. A batch is finished
+ * as soon as it reaches the flush size, and by flush(), which is meant to be
+ * registered with the SamplingScheduler at the flush interval. Finished
+ * batches are queued and sent by a daemon thread, so recording never waits
+ * for the network. Batches that cannot be queued or sent are dropped and a
+ * following batch is a keyframe, so the receiver recovers without any
+ * retransmission.
+ */
+public class StreamExporter implements MetricSink, Closeable {
+
+	/**
+	 * Default flush size, a batch of that size fits a single Ethernet frame.
+	 */
+	public static final int DEFAULT_FLUSH_BYTES = 1400;
+
+	/**
+	 * Default number of batches between keyframes.
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+	/**
+	 * Number of finished batches waiting for the sender, more are dropped.
+	 */
+	static final int QUEUE_CAPACITY = 64;
+
+	/**
+	 * Time batches are dropped for after a failed send, instead of retrying
+	 * the connection for each of them.
+	 */
+	static final long RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	/**
+	 * Time close() waits for the queued batches to be sent.
+	 */
+	static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	/**
+	 * Queued by close() after the last batch, stops the sender.
+	 */
+	private static final Batch END = new Batch(new byte[0], 0, false);
+
+	private final BatchTransport transport;
+	private final StreamEncoder encoder;
+	private final int flushBytes;
+
+	private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final Thread sender;
+
+	/**
+	 * Set by the sender when the receiver needs a keyframe, consumed by the
+	 * recording thread when it finishes a batch.
+	 */
+	private final AtomicBoolean keyframeNeeded = new AtomicBoolean(false);
+
+	private final LongAdder sentBatchCount = new LongAdder();
+	private final LongAdder droppedBatchCount = new LongAdder();
+	private final LongAdder failedSendCount = new LongAdder();
+	private final LongAdder sentByteCount = new LongAdder();
+	private final LongAdder sentSampleCount = new LongAdder();
+
+
+	/**
+	 * @param transport Transport the batches are sent with.
+	 * @param flushBytes Size a batch is finished at without waiting for
+	 *                   flush().
+	 * @param keyframeInterval Number of batches between keyframes, 0 to send
+	 *                         them only at the start and after failures.
+	 */
+	StreamExporter(BatchTransport transport, int flushBytes, int keyframeInterval) {
+		this.transport = transport;
+		this.encoder = new StreamEncoder(keyframeInterval);
+		this.flushBytes = flushBytes;
+		this.sender = new Thread(this::sendLoop, "stream-sender");
+		this.sender.setDaemon(true);
+	}
+
+	/**
+	 * Creates an exporter sending batches over TCP. The connection is
+	 * established by the sender with the first batch and again after every
+	 * failure.
+	 * @param address Address of the StreamReceiver.
+	 * @param flushBytes Size a batch is finished at without waiting for
+	 *                   flush().
+	 * @param keyframeInterval Number of batches between keyframes, 0 to send
+	 *                         them only on new connections.
+	 * @return Started exporter.
+	 */
+	public static StreamExporter tcp(InetSocketAddress address, int flushBytes, int keyframeInterval) {
+		StreamExporter exporter = new StreamExporter(new TcpTransport(address), flushBytes, keyframeInterval);
+		exporter.sender.start();
+		return exporter;
+	}
+
+	/**
+	 * Creates an exporter sending every batch as a UDP datagram. Lost
+	 * datagrams are recovered from at the next keyframe, so the interval
+	 * bounds the number of batches lost after a gap.
+	 * @param address Address of the StreamReceiver.
+	 * @param flushBytes Size a batch is finished at without waiting for
+	 *                   flush().
+	 * @param keyframeInterval Number of batches between keyframes, positive.
+	 * @return Started exporter.
+	 * @throws IOException When the socket cannot be opened.
+	 */
+	public static StreamExporter udp(InetSocketAddress address, int flushBytes, int keyframeInterval)
+			throws IOException {
+		if(keyframeInterval <= 0) {
+			throw new IllegalArgumentException("UDP streams need a positive keyframe interval.");
+		}
+		StreamExporter exporter = new StreamExporter(new UdpTransport(address), flushBytes, keyframeInterval);
+		exporter.sender.start();
+		return exporter;
+	}
+
+
+	@Override
+	public synchronized int register(String name) {
+		return encoder.register(name);
+	}
+
+	/**
+	 * Appends a sample to the current batch and queues the batch if it
+	 * reached the flush size. Does no I/O.
+	 * @param metricId Id returned by register().
+	 * @param timestamp Time of the sample in milliseconds since epoch.
+	 * @param value Value of the metric.
+	 */
+	@Override
+	public synchronized void record(int metricId, long timestamp, float value) {
+		if(encoder.add(metricId, timestamp, value) && encoder.getBatchLength() >= flushBytes) {
+			flush();
+		}
+	}
+
+
+	/**
+	 * Queues everything recorded so far for sending. If the queue is full,
+	 * the batch is dropped.
+	 */
+	public synchronized void flush() {
+		int length = encoder.finishBatch();
+		if(length == 0) {
+			return;
+		}
+
+		try {
+			Batch batch = new Batch(Arrays.copyOf(encoder.getBatch(), length),
+					encoder.getSamplesInBatch(), encoder.isKeyframe());
+			if(!queue.offer(batch)) {
+				droppedBatchCount.increment();
+				keyframeNeeded.set(true);
+			}
+		} finally {
+			encoder.clearBatch();
+			if(keyframeNeeded.getAndSet(false)) {
+				encoder.requestKeyframe();
+			}
+		}
+	}
+
+
+	/**
+	 * Sends queued batches until close(). A new connection or a failure
+	 * leaves the receiver unable to decode deltas, so batches are dropped
+	 * until a keyframe comes.
+	 */
+	private void sendLoop() {
+		boolean synced = true;
+		long retryTime = System.nanoTime();
+
+		while(true) {
+			Batch batch;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if(batch == END) {
+				return;
+			}
+
+			if(System.nanoTime() - retryTime < 0) {
+				drop();
+				continue;
+			}
+
+			try {
+				if(transport.connect()) {
+					synced = false;
+				}
+				if(!synced && !batch.keyframe) {
+					drop();
+					continue;
+				}
+
+				transport.send(batch.bytes, batch.bytes.length);
+				synced = true;
+				sentBatchCount.increment();
+				sentByteCount.add(batch.bytes.length);
+				sentSampleCount.add(batch.samples);
+			} catch (IOException e) {
+				failedSendCount.increment();
+				synced = false;
+				retryTime = System.nanoTime() + RETRY_DELAY_NANOS;
+				drop();
+				closeTransport();
+			}
+		}
+	}
+
+	private void drop() {
+		droppedBatchCount.increment();
+		keyframeNeeded.set(true);
+	}
+
+	private void closeTransport() {
+		try {
+			transport.close();
+		} catch (IOException e) {
+			failedSendCount.increment();
+		}
+	}
+
+
+	/**
+	 * Queues the remaining samples, waits up to CLOSE_TIMEOUT_MILLIS for the
+	 * queue to be sent and releases the transport.
+	 * @throws IOException When the socket cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+		try {
+			if(queue.offer(END, CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				sender.join(CLOSE_TIMEOUT_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			sender.interrupt();
+			transport.close();
+		}
+	}
+
+
+	public long getSentBatchCount() {
+		return sentBatchCount.sum();
+	}
+
+	/**
+	 * @return Number of batches dropped because the queue was full, a send
+	 * failed or the receiver waited for a keyframe.
+	 */
+	public long getDroppedBatchCount() {
+		return droppedBatchCount.sum();
+	}
+
+	/**
+	 * @return Number of failed connection attempts and sends.
+	 */
+	public long getFailedSendCount() {
+		return failedSendCount.sum();
+	}
+
+	public long getSentByteCount() {
+		return sentByteCount.sum();
+	}
+
+	public long getSentSampleCount() {
+		return sentSampleCount.sum();
+	}
+
+	/**
+	 * @return Average number of bytes sent per sample, 0 before the first
+	 * batch was sent.
+	 */
+	public double getBytesPerSample() {
+		long samples = sentSampleCount.sum();
+		return samples > 0 ? (double)sentByteCount.sum() / samples : 0.0;
+	}
+
+
+	/**
+	 * Finished batch with its own copy of the bytes.
+	 */
+	private static final class Batch {
+		final byte[] bytes;
+		final int samples;
+		final boolean keyframe;
+
+		Batch(byte[] bytes, int samples, boolean keyframe) {
+			this.bytes = bytes;
+			this.samples = samples;
+			this.keyframe = keyframe;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Constants and primitive codecs of the binary metric stream shared by
+ * StreamEncoder and StreamDecoder.
+ * <p>
+ * The stream is a sequence of batches, one UDP datagram or one TCP message
+ * each. Over TCP every batch is preceded by its length as a 4 byte big endian
+ * int. A batch starts with MAGIC, VERSION and its sequence number as a
+ * varint, followed by frames, each starting with its type byte:
+ * <ul>
+ *     <li>RESET - the receiver forgets all previous values, the timestamp
+ *     and the dictionary. Starts every keyframe.</li>
+ *     <li>DEFINE - varint metric id, varint name length and the name in
+ *     UTF-8. Sent once per metric after every RESET.</li>
+ *     <li>TICK - zigzag varint of the timestamp minus the timestamp of the
+ *     previous tick in milliseconds, varint sample count, then for every
+ *     sample a zigzag varint of its metric id minus the previous sample's id
+ *     (-1 for the first one) and a zigzag varint of the value's float bits
+ *     minus the bits of the metric's previous value (0 after RESET).</li>
+ * </ul>
+ * Unchanged values take a single byte, and so does the id of a sample
+ * following the one of the previous metric.
+ */
+public final class StreamProtocol {
+
+	public static final byte MAGIC = 0x53;
+	public static final byte VERSION = 1;
+
+	public static final byte RESET = 1;
+	public static final byte DEFINE = 2;
+	public static final byte TICK = 3;
+
+	/**
+	 * Largest batch that fits a UDP datagram.
+	 */
+	public static final int MAX_DATAGRAM_SIZE = 65_507;
+
+	/**
+	 * Largest batch accepted over TCP.
+	 */
+	public static final int MAX_BATCH_SIZE = 16 * 1024 * 1024;
+
+	/**
+	 * Longest metric name accepted in a DEFINE frame, in bytes.
+	 */
+	public static final int MAX_NAME_LENGTH = 4096;
+
+
+	private StreamProtocol() {
+	}
+
+
+	public static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	public static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Decodes an unsigned LEB128 varint.
+	 * @param buffer Buffer positioned at the varint, left right after it.
+	 * @return Decoded value.
+	 * @throws IOException When the varint is truncated or longer than 64
+	 * bits.
+	 */
+	public static long readVarint(ByteBuffer buffer) throws IOException {
+		long value = 0L;
+		try {
+			for(int shift = 0; shift < 64; shift += 7) {
+				byte b = buffer.get();
+				value |= (long)(b & 0x7F) << shift;
+				if(b >= 0) {
+					return value;
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated varint.", e);
+		}
+
+		throw new IOException("Varint longer than 64 bits.");
+	}
+
+	/**
+	 * @param buffer Buffer positioned at the varint, left right after it.
+	 * @return Decoded value of a zigzag varint.
+	 * @throws IOException When the varint is malformed.
+	 */
+	public static long readSignedVarint(ByteBuffer buffer) throws IOException {
+		return unzigzag(readVarint(buffer));
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import com.michalkolos.history.MetricSink;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * Receives the binary metric stream sent by a StreamExporter and replays the
+ * samples into a MetricSink, e.g. a HistoryStore or a TimeSeriesStore.
+ * Batches are read and decoded on a single daemon thread. A TCP receiver
+ * serves one connection at a time, every connection gets a new
+ * StreamDecoder.
+ */
+public class StreamReceiver implements Closeable {
+
+	private final MetricSink sink;
+	private final ServerSocketChannel serverChannel;
+	private final DatagramChannel datagramChannel;
+	private final Thread thread;
+
+	//  Totals of all connections, written by the receiving thread only.
+	private volatile long batchCount = 0L;
+	private volatile long lostBatchCount = 0L;
+	private volatile long byteCount = 0L;
+	private volatile long sampleCount = 0L;
+
+	private volatile boolean closed = false;
+
+
+	private StreamReceiver(MetricSink sink, ServerSocketChannel serverChannel,
+	                       DatagramChannel datagramChannel) {
+		this.sink = sink;
+		this.serverChannel = serverChannel;
+		this.datagramChannel = datagramChannel;
+		this.thread = new Thread(serverChannel != null ? this::acceptLoop : this::datagramLoop,
+				"stream-receiver");
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Creates a receiver of a TCP stream and starts it.
+	 * @param address Address to listen on, port 0 picks a free one.
+	 * @param sink Destination of the decoded samples.
+	 * @return Started receiver.
+	 * @throws IOException When the address cannot be bound.
+	 */
+	public static StreamReceiver tcp(InetSocketAddress address, MetricSink sink) throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		channel.bind(address);
+		StreamReceiver receiver = new StreamReceiver(sink, channel, null);
+		receiver.thread.start();
+		return receiver;
+	}
+
+	/**
+	 * Creates a receiver of a UDP stream and starts it.
+	 * @param address Address to listen on, port 0 picks a free one.
+	 * @param sink Destination of the decoded samples.
+	 * @return Started receiver.
+	 * @throws IOException When the address cannot be bound.
+	 */
+	public static StreamReceiver udp(InetSocketAddress address, MetricSink sink) throws IOException {
+		DatagramChannel channel = DatagramChannel.open();
+		channel.bind(address);
+		StreamReceiver receiver = new StreamReceiver(sink, null, channel);
+		receiver.thread.start();
+		return receiver;
+	}
+
+
+	private void acceptLoop() {
+		while(!closed) {
+			try(SocketChannel connection = serverChannel.accept()) {
+				readConnection(connection);
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				if(!closed) {
+					e.printStackTrace();
+					//	TODO: Logging
+				}
+			}
+		}
+	}
+
+	private void readConnection(SocketChannel connection) throws IOException {
+		StreamDecoder decoder = new StreamDecoder(sink);
+		DataInputStream in = new DataInputStream(Channels.newInputStream(connection));
+		byte[] buffer = new byte[64 * 1024];
+
+		while(!closed) {
+			int length;
+			try {
+				length = in.readInt();
+			} catch (EOFException e) {
+				return;
+			}
+			if(length < 0 || length > StreamProtocol.MAX_BATCH_SIZE) {
+				throw new IOException("Invalid batch length " + length + ".");
+			}
+			if(length > buffer.length) {
+				buffer = new byte[length];
+			}
+			in.readFully(buffer, 0, length);
+
+			//  Framing stays intact, so the connection survives a bad batch.
+			decode(decoder, ByteBuffer.wrap(buffer, 0, length));
+		}
+	}
+
+	private void datagramLoop() {
+		StreamDecoder decoder = new StreamDecoder(sink);
+		ByteBuffer buffer = ByteBuffer.allocate(StreamProtocol.MAX_DATAGRAM_SIZE);
+
+		while(!closed) {
+			try {
+				buffer.clear();
+				datagramChannel.receive(buffer);
+				buffer.flip();
+				decode(decoder, buffer);
+			} catch (ClosedChannelException e) {
+				return;
+			} catch (IOException e) {
+				if(!closed) {
+					e.printStackTrace();
+					//	TODO: Logging
+				}
+			}
+		}
+	}
+
+	private void decode(StreamDecoder decoder, ByteBuffer batch) {
+		long samples = decoder.getSampleCount();
+		long lost = decoder.getLostBatchCount();
+		int length = batch.remaining();
+
+		try {
+			decoder.decode(batch);
+			batchCount++;
+		} catch (IOException e) {
+			e.printStackTrace();
+			//	TODO: Logging
+		}
+
+		byteCount += length;
+		sampleCount += decoder.getSampleCount() - samples;
+		lostBatchCount += decoder.getLostBatchCount() - lost;
+	}
+
+
+	/**
+	 * @return Port the receiver listens on.
+	 */
+	public int getPort() {
+		try {
+			InetSocketAddress address = (InetSocketAddress)(serverChannel != null
+					? serverChannel.getLocalAddress()
+					: datagramChannel.getLocalAddress());
+			return address.getPort();
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return Number of batches decoded successfully.
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * @return Number of batches missing from the received sequences.
+	 */
+	public long getLostBatchCount() {
+		return lostBatchCount;
+	}
+
+	/**
+	 * @return Number of batch bytes received, without TCP length prefixes.
+	 */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * @return Number of samples replayed into the sink.
+	 */
+	public long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * @return Average number of received bytes per replayed sample, 0 before
+	 * the first sample.
+	 */
+	public double getBytesPerSample() {
+		long samples = sampleCount;
+		return samples > 0 ? (double)byteCount / samples : 0.0;
+	}
+
+
+	/**
+	 * Stops receiving and waits for the receiving thread to finish.
+	 * @throws IOException When the socket cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			if(serverChannel != null) {
+				serverChannel.close();
+			} else {
+				datagramChannel.close();
+			}
+			thread.interrupt();
+			thread.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
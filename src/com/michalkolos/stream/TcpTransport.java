@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+
+/**
+ * Sends batches over a TCP connection, each preceded by its length. The
+ * connection is established lazily and again after every failure, an
+ * unreachable receiver fails the attempt after CONNECT_TIMEOUT_MILLIS.
+ */
+class TcpTransport implements BatchTransport {
+
+	static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+	private final InetSocketAddress address;
+	private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+	private final ByteBuffer[] buffers = new ByteBuffer[2];
+	private SocketChannel channel;
+
+
+	/**
+	 * @param address Address of the StreamReceiver.
+	 */
+	TcpTransport(InetSocketAddress address) {
+		this.address = address;
+	}
+
+
+	@Override
+	public boolean connect() throws IOException {
+		if(channel != null) {
+			return false;
+		}
+
+		SocketChannel opened = SocketChannel.open();
+		try {
+			opened.socket().connect(address, CONNECT_TIMEOUT_MILLIS);
+			opened.socket().setTcpNoDelay(true);
+		} catch (IOException e) {
+			opened.close();
+			throw e;
+		}
+
+		channel = opened;
+		return true;
+	}
+
+	@Override
+	public void send(byte[] batch, int length) throws IOException {
+		connect();
+
+		header.clear();
+		header.putInt(length).flip();
+		buffers[0] = header;
+		buffers[1] = ByteBuffer.wrap(batch, 0, length);
+
+		try {
+			while(buffers[1].hasRemaining()) {
+				channel.write(buffers);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(channel != null) {
+			SocketChannel closed = channel;
+			channel = null;
+			closed.close();
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.stream;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+
+/**
+ * Sends every batch as a single UDP datagram. Lost datagrams are detected by
+ * the receiver from sequence numbers, it recovers at the next keyframe.
+ */
+class UdpTransport implements BatchTransport {
+
+	private final InetSocketAddress address;
+	private final DatagramChannel channel;
+
+
+	/**
+	 * @param address Address of the StreamReceiver.
+	 * @throws IOException When the socket cannot be opened.
+	 */
+	UdpTransport(InetSocketAddress address) throws IOException {
+		this.address = address;
+		this.channel = DatagramChannel.open();
+	}
+
+
+	@Override
+	public boolean connect() {
+		return false;
+	}
+
+	@Override
+	public void send(byte[] batch, int length) throws IOException {
+		if(length > StreamProtocol.MAX_DATAGRAM_SIZE) {
+			throw new IOException("Batch of " + length + " bytes does not fit a datagram.");
+		}
+
+		channel.send(ByteBuffer.wrap(batch, 0, length), address);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2022 by Michal Kolosowski.
+ */
+
+package com.michalkolos.utils;
+
+
+/**
+ * Formats fixed point numbers digit by digit into char arrays and
+ * StringBuilders, a replacement of String.format() for values rendered many
+ * times per second. Numbers are right aligned and padded up to a minimal
+ * width, "%05.2f" of 7.5 is format(.., scale(7.5f, 2), 2, 5, '0'), which
+ * gives "07.50". Unlike String.format(), negative values rounded to zero are
+ * written without the sign.
+ */
+public final class FixedPoint {
+
+	private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L,
+			100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+			10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L,
+			100_000_000_000_000L, 1_000_000_000_000_000L, 10_000_000_000_000_000L,
+			100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+
+	private FixedPoint() {
+	}
+
+
+	/**
+	 * Rounds a value to a given number of fraction digits.
+	 * @param value Value to be scaled.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @return Value multiplied by 10^fractionDigits and rounded half away
+	 * from zero like String.format(), 0 for NaN.
+	 */
+	public static long scale(float value, int fractionDigits) {
+		double scaled = (double)value * POWERS_OF_TEN[fractionDigits];
+		return scaled < 0 ? -Math.round(-scaled) : Math.round(scaled);
+	}
+
+	/**
+	 * Counts the characters of a formatted number without padding.
+	 * @param unscaledValue Value multiplied by 10^fractionDigits.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @return Length of the number.
+	 */
+	public static int length(long unscaledValue, int fractionDigits) {
+		int digits = digitCount(Math.abs(unscaledValue));
+		int length = Math.max(digits, fractionDigits + 1) + (fractionDigits > 0 ? 1 : 0);
+
+		return unscaledValue < 0 ? length + 1 : length;
+	}
+
+	/**
+	 * Writes a number right aligned in a field of at least minWidth chars.
+	 * @param chars Destination array, it has to fit the whole field.
+	 * @param offset Index the field starts at.
+	 * @param unscaledValue Value multiplied by 10^fractionDigits, greater
+	 *                      than Long.MIN_VALUE.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @param minWidth Minimal width of the field.
+	 * @param pad Padding char, '0' is placed after the sign.
+	 * @return Number of chars written, the larger of minWidth and the number
+	 * length.
+	 */
+	public static int format(char[] chars, int offset, long unscaledValue, int fractionDigits,
+	                         int minWidth, char pad) {
+		int numberLength = length(unscaledValue, fractionDigits);
+		int width = Math.max(minWidth, numberLength);
+		boolean negative = unscaledValue < 0;
+		long value = Math.abs(unscaledValue);
+
+		int position = offset + width;
+		int digits = 0;
+		//  Most values fit an int, whose division is much cheaper.
+		while(value > Integer.MAX_VALUE) {
+			chars[--position] = (char)('0' + value % 10);
+			value /= 10;
+			digits++;
+			if(digits == fractionDigits) {
+				chars[--position] = '.';
+			}
+		}
+		int intValue = (int)value;
+		do {
+			chars[--position] = (char)('0' + intValue % 10);
+			intValue /= 10;
+			digits++;
+			if(digits == fractionDigits) {
+				chars[--position] = '.';
+			}
+		} while(intValue != 0 || digits <= fractionDigits);
+
+		if(pad == '0') {
+			while(position > offset + (negative ? 1 : 0)) {
+				chars[--position] = '0';
+			}
+			if(negative) {
+				chars[--position] = '-';
+			}
+		} else {
+			if(negative) {
+				chars[--position] = '-';
+			}
+			while(position > offset) {
+				chars[--position] = pad;
+			}
+		}
+
+		return width;
+	}
+
+	/**
+	 * Appends a number right aligned in a field of at least minWidth chars.
+	 * @param sb Destination builder.
+	 * @param unscaledValue Value multiplied by 10^fractionDigits, greater
+	 *                      than Long.MIN_VALUE.
+	 * @param fractionDigits Number of fraction digits, 0 to 9.
+	 * @param minWidth Minimal width of the field.
+	 * @param pad Padding char, '0' is placed after the sign.
+	 * @return The builder.
+	 */
+	public static StringBuilder append(StringBuilder sb, long unscaledValue, int fractionDigits,
+	                                   int minWidth, char pad) {
+		int numberLength = length(unscaledValue, fractionDigits);
+		boolean negative = unscaledValue < 0;
+		long value = Math.abs(unscaledValue);
+
+		if(negative && pad == '0') {
+			sb.append('-');
+		}
+		for(int i = numberLength; i < minWidth; i++) {
+			sb.append(pad);
+		}
+		if(negative && pad != '0') {
+			sb.append('-');
+		}
+
+		//  Digits from the most significant one, the integer part has at
+		//  least one digit.
+		int digits = numberLength - (negative ? 1 : 0) - (fractionDigits > 0 ? 1 : 0);
+		for(int i = digits - 1; i >= 0; i--) {
+			if(i == fractionDigits - 1) {
+				sb.append('.');
+			}
+			sb.append((char)('0' + value / POWERS_OF_TEN[i] % 10));
+		}
+
+		return sb;
+	}
+
+
+	/**
+	 * Counts digits by comparisons, long divisions are slow.
+	 */
+	private static int digitCount(long value) {
+		int count = 1;
+		while(count < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[count]) {
+			count++;
+		}
+
+		return count;
+	}
+}
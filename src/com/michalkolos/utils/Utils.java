@@ -4,6 +4,8 @@
 
 package com.michalkolos.utils;
 
+import com.michalkolos.input.SmallFileReader;
+
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -13,31 +15,23 @@ import java.util.Optional;
 
 public class Utils {
 	public static String extractStringFromFile(File file) throws IOException {
-		InputStream inputStream = new FileInputStream(file);
-		String name = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-
-		return name.replaceAll("\n", "");
-	}
-
+		try(InputStream inputStream = new FileInputStream(file)) {
+			String name = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
 
-	public static Optional<String> extractStringFromFileOptional(File file) {
-		String output = null;
-		try {
-			InputStream inputStream = new FileInputStream(file);
-			output = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-		} catch (IOException e) {
-			e.printStackTrace();
+			return name.replaceAll("\n", "");
 		}
-
-		return Optional.ofNullable(output).map(Utils::removeLastEolChar);
 	}
 
-	private static String removeLastEolChar(String str) {
-		if(str.length() != 0 && str.endsWith(System.lineSeparator())) {
-			str = str.substring(0, str.length() - 1);
-		}
 
-		return str;
+	/**
+	 * Reads a small file that is polled repeatedly through the shared
+	 * SmallFileReader, which keeps its channel open between calls.
+	 * @param file File to be read.
+	 * @return Optional containing the file contents without the trailing end
+	 * of line character or empty if the file cannot be read.
+	 */
+	public static Optional<String> extractStringFromFileOptional(File file) {
+		return SmallFileReader.getShared().readString(file);
 	}
 
 